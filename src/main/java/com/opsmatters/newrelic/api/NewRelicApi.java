@@ -19,6 +19,8 @@ package com.opsmatters.newrelic.api;
 import java.util.logging.Logger;
 import com.opsmatters.newrelic.api.httpclient.ApiKeyHttpClientProvider;
 import com.opsmatters.newrelic.api.httpclient.HttpClientProvider;
+import com.opsmatters.newrelic.api.httpclient.ConnectionPool;
+import com.opsmatters.newrelic.api.httpclient.RateLimiter;
 import com.opsmatters.newrelic.api.services.AlertChannelService;
 import com.opsmatters.newrelic.api.services.AlertConditionService;
 import com.opsmatters.newrelic.api.services.AlertEntityConditionService;
@@ -45,6 +47,9 @@ import com.opsmatters.newrelic.api.services.SyntheticsAlertConditionService;
 import com.opsmatters.newrelic.api.services.UsageService;
 import com.opsmatters.newrelic.api.services.UserService;
 import com.opsmatters.newrelic.api.services.DashboardService;
+import com.opsmatters.newrelic.api.services.EntityCache;
+import com.opsmatters.newrelic.api.services.ValidatorCache;
+import com.opsmatters.newrelic.api.services.RetryPolicy;
 
 /**
  * Client used to invoke New Relic operations using the REST API.
@@ -367,6 +372,11 @@ public class NewRelicApi extends NewRelicClient
         private String hostname = DEFAULT_HOST;
         private int port = DEFAULT_PORT;
         private HttpClientProvider provider = new ApiKeyHttpClientProvider("");
+        private ConnectionPool pool;
+        private RateLimiter limiter;
+        private RetryPolicy retryPolicy;
+        private EntityCache cache;
+        private ValidatorCache validators;
 
         /**
          * Default constructor.
@@ -413,13 +423,80 @@ public class NewRelicApi extends NewRelicClient
             return this;
         }
 
+        /**
+         * Sets the pool of persistent connections used by the client.
+         * <P>
+         * The same pool can be shared between several API client instances.
+         * @param pool The connection pool
+         * @return This object
+         */
+        public Builder connectionPool(ConnectionPool pool)
+        {
+            this.pool = pool;
+            return this;
+        }
+
+        /**
+         * Sets the limiter used for the rate and concurrency of the requests made by the client.
+         * <P>
+         * The same limiter should be shared between the clients that use the same key.
+         * @param limiter The rate limiter
+         * @return This object
+         */
+        public Builder rateLimiter(RateLimiter limiter)
+        {
+            this.limiter = limiter;
+            return this;
+        }
+
+        /**
+         * Sets the cache used for the results of GET calls made by the client.
+         * @param cache The entity cache
+         * @return This object
+         */
+        public Builder cache(EntityCache cache)
+        {
+            this.cache = cache;
+            return this;
+        }
+
+        /**
+         * Sets the cache of validators used to make conditional GET calls made by the client.
+         * @param validators The validator cache
+         * @return This object
+         */
+        public Builder validatorCache(ValidatorCache validators)
+        {
+            this.validators = validators;
+            return this;
+        }
+
+        /**
+         * Sets the policy used to retry calls that fail with a transient error.
+         * @param retryPolicy The retry policy
+         * @return This object
+         */
+        public Builder retryPolicy(RetryPolicy retryPolicy)
+        {
+            this.retryPolicy = retryPolicy;
+            return this;
+        }
+
         /**
          * Returns the configured API client instance
          * @return The API client instance
          */
         public NewRelicApi build()
         {
-            return new NewRelicApi(hostname, port, provider);
+            if(pool != null)
+                provider.setConnectionPool(pool);
+            if(limiter != null)
+                provider.setRateLimiter(limiter);
+            NewRelicApi ret = new NewRelicApi(hostname, port, provider);
+            ret.setCache(cache);
+            ret.setValidatorCache(validators);
+            ret.setRetryPolicy(retryPolicy);
+            return ret;
         }
     }
 }
\ No newline at end of file
@@ -19,6 +19,13 @@ package com.opsmatters.newrelic.api;
 import java.util.logging.Logger;
 import javax.ws.rs.client.Client;
 import com.opsmatters.newrelic.api.services.HttpContext;
+import com.opsmatters.newrelic.api.services.ParallelPageFetcher;
+import com.opsmatters.newrelic.api.services.MetricDataFetcher;
+import com.opsmatters.newrelic.api.services.BatchFetcher;
+import com.opsmatters.newrelic.api.services.EntityCache;
+import com.opsmatters.newrelic.api.services.ValidatorCache;
+import com.opsmatters.newrelic.api.services.RetryPolicy;
+import com.opsmatters.newrelic.api.services.ResourceIndex;
 import com.opsmatters.newrelic.api.httpclient.HttpClientProvider;
 
 /**
@@ -40,6 +47,14 @@ public abstract class NewRelicClient
     protected HttpContext httpContext;
     protected HttpClientProvider provider;
     private boolean handleErrors = true;
+    private int pageParallelism = ParallelPageFetcher.DEFAULT_PARALLELISM;
+    private int metricParallelism = MetricDataFetcher.DEFAULT_PARALLELISM;
+    private int batchParallelism = BatchFetcher.DEFAULT_PARALLELISM;
+    private int maxTimeslices = MetricDataFetcher.DEFAULT_MAX_TIMESLICES;
+    private EntityCache cache;
+    private ValidatorCache validators;
+    private long indexTtl = ResourceIndex.DEFAULT_TTL;
+    private RetryPolicy retryPolicy;
     
     /**
      * Default constructor.
@@ -72,6 +87,11 @@ public abstract class NewRelicClient
         httpContext = new HttpContext(client, protocol, hostname, port);
         httpContext.setUriPrefix(getUriPrefix());
         httpContext.setThrowExceptions(handleErrors);
+        httpContext.setCache(cache);
+        httpContext.setValidatorCache(validators);
+        httpContext.getResourceIndex().setTtl(indexTtl);
+        httpContext.setRetryPolicy(retryPolicy);
+        httpContext.setRateLimiter(provider.getRateLimiter());
         String className = getClass().getName();
         logger.fine(className.substring(className.lastIndexOf(".")+1)+" initialized");
         return this;
@@ -133,6 +153,179 @@ public abstract class NewRelicClient
         return handleErrors;
     }
 
+    /**
+     * Sets the maximum number of page requests in flight when listing all the pages of a resource.
+     * <P>
+     * The default is 4.
+     * @param pageParallelism The maximum number of page requests in flight
+     */
+    public void setPageParallelism(int pageParallelism)
+    {
+        this.pageParallelism = pageParallelism;
+    }
+
+    /**
+     * Returns the maximum number of page requests in flight when listing all the pages of a resource.
+     * @return The maximum number of page requests in flight
+     */
+    public int getPageParallelism()
+    {
+        return pageParallelism;
+    }
+
+    /**
+     * Sets the maximum number of chunk requests in flight when fetching the metric data for a long time range.
+     * <P>
+     * The default is 4.
+     * @param metricParallelism The maximum number of chunk requests in flight
+     */
+    public void setMetricParallelism(int metricParallelism)
+    {
+        this.metricParallelism = metricParallelism;
+    }
+
+    /**
+     * Returns the maximum number of chunk requests in flight when fetching the metric data for a long time range.
+     * @return The maximum number of chunk requests in flight
+     */
+    public int getMetricParallelism()
+    {
+        return metricParallelism;
+    }
+
+    /**
+     * Sets the maximum number of calls in flight when making the same call for each of a set of entities.
+     * <P>
+     * The default is 4.
+     * @param batchParallelism The maximum number of calls in flight
+     */
+    public void setBatchParallelism(int batchParallelism)
+    {
+        this.batchParallelism = batchParallelism;
+    }
+
+    /**
+     * Returns the maximum number of calls in flight when making the same call for each of a set of entities.
+     * @return The maximum number of calls in flight
+     */
+    public int getBatchParallelism()
+    {
+        return batchParallelism;
+    }
+
+    /**
+     * Sets the maximum number of timeslices requested by each call when fetching the metric data for a long time range.
+     * <P>
+     * The default is 1440.
+     * @param maxTimeslices The maximum number of timeslices requested by each call
+     */
+    public void setMaxTimeslices(int maxTimeslices)
+    {
+        this.maxTimeslices = maxTimeslices;
+    }
+
+    /**
+     * Returns the maximum number of timeslices requested by each call when fetching the metric data for a long time range.
+     * @return The maximum number of timeslices requested by each call
+     */
+    public int getMaxTimeslices()
+    {
+        return maxTimeslices;
+    }
+
+    /**
+     * Sets the cache used for the results of GET calls made by the client.
+     * <P>
+     * Results are not cached by default.
+     * @param cache The entity cache, or <CODE>null</CODE> if results should not be cached
+     */
+    public void setCache(EntityCache cache)
+    {
+        this.cache = cache;
+        if(httpContext != null)
+            httpContext.setCache(cache);
+    }
+
+    /**
+     * Returns the cache used for the results of GET calls made by the client.
+     * @return The entity cache, or <CODE>null</CODE> if results are not cached
+     */
+    public EntityCache getCache()
+    {
+        return cache;
+    }
+
+    /**
+     * Sets the cache of validators used to make conditional GET calls.
+     * <P>
+     * When set, a GET call for a URI that has been fetched before sends the "ETag" and "Last-Modified"
+     * headers of the earlier response, and a 304 (Not Modified) response returns the earlier result.
+     * GET calls are not conditional by default.
+     * @param validators The validator cache, or <CODE>null</CODE> if GET calls should not be conditional
+     */
+    public void setValidatorCache(ValidatorCache validators)
+    {
+        this.validators = validators;
+        if(httpContext != null)
+            httpContext.setValidatorCache(validators);
+    }
+
+    /**
+     * Returns the cache of validators used to make conditional GET calls.
+     * @return The validator cache, or <CODE>null</CODE> if GET calls are not conditional
+     */
+    public ValidatorCache getValidatorCache()
+    {
+        return validators;
+    }
+
+    /**
+     * Sets the time after which the index used to look up an item in a collection is rebuilt.
+     * <P>
+     * Some lookups (eg. a label by key or a deployment by id) can only be made by listing the collection.
+     * By default the collection is listed again for every lookup, so changes made outside this client are seen at once.
+     * With a time-to-live, the collection is indexed by the first lookup and the index is reused until it expires
+     * or the collection is changed by this client.
+     * @param indexTtl The time-to-live of an index (in milliseconds)
+     */
+    public void setIndexTtl(long indexTtl)
+    {
+        this.indexTtl = indexTtl;
+        if(httpContext != null)
+            httpContext.getResourceIndex().setTtl(indexTtl);
+    }
+
+    /**
+     * Returns the time after which the index used to look up an item in a collection is rebuilt.
+     * @return The time-to-live of an index (in milliseconds)
+     */
+    public long getIndexTtl()
+    {
+        return indexTtl;
+    }
+
+    /**
+     * Sets the policy used to retry calls that fail with a transient error (eg. 429 or 503).
+     * <P>
+     * Calls are not retried by default.
+     * @param retryPolicy The retry policy, or <CODE>null</CODE> if calls should not be retried
+     */
+    public void setRetryPolicy(RetryPolicy retryPolicy)
+    {
+        this.retryPolicy = retryPolicy;
+        if(httpContext != null)
+            httpContext.setRetryPolicy(retryPolicy);
+    }
+
+    /**
+     * Returns the policy used to retry calls that fail with a transient error.
+     * @return The retry policy, or <CODE>null</CODE> if calls are not retried
+     */
+    public RetryPolicy getRetryPolicy()
+    {
+        return retryPolicy;
+    }
+
     /**
      * Returns the uri prefix for resources used by the client.
      * <P>
@@ -19,6 +19,7 @@ package com.opsmatters.newrelic.api;
 import java.util.logging.Logger;
 import com.opsmatters.newrelic.api.httpclient.QueryKeyHttpClientProvider;
 import com.opsmatters.newrelic.api.httpclient.HttpClientProvider;
+import com.opsmatters.newrelic.api.httpclient.ConnectionPool;
 import com.opsmatters.newrelic.api.services.QueryService;
 
 /**
@@ -92,6 +93,7 @@ public class NewRelicInsightsApi extends NewRelicClient
         private String hostname = DEFAULT_HOST;
         private int port = DEFAULT_PORT;
         private HttpClientProvider provider = new QueryKeyHttpClientProvider("");
+        private ConnectionPool pool;
 
         /**
          * Default constructor.
@@ -138,12 +140,27 @@ public class NewRelicInsightsApi extends NewRelicClient
             return this;
         }
 
+        /**
+         * Sets the pool of persistent connections used by the client.
+         * <P>
+         * The same pool can be shared between several API client instances.
+         * @param pool The connection pool
+         * @return This object
+         */
+        public Builder connectionPool(ConnectionPool pool)
+        {
+            this.pool = pool;
+            return this;
+        }
+
         /**
          * Returns the configured Insights API client instance
          * @return The Insights API client instance
          */
         public NewRelicInsightsApi build()
         {
+            if(pool != null)
+                provider.setConnectionPool(pool);
             return new NewRelicInsightsApi(hostname, port, provider);
         }
     }
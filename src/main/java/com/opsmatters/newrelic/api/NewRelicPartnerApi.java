@@ -19,6 +19,7 @@ package com.opsmatters.newrelic.api;
 import java.util.logging.Logger;
 import com.opsmatters.newrelic.api.httpclient.ApiKeyHttpClientProvider;
 import com.opsmatters.newrelic.api.httpclient.HttpClientProvider;
+import com.opsmatters.newrelic.api.httpclient.ConnectionPool;
 import com.opsmatters.newrelic.api.services.PartnerAccountService;
 import com.opsmatters.newrelic.api.services.PartnerUserService;
 import com.opsmatters.newrelic.api.services.PartnerSubscriptionService;
@@ -126,6 +127,7 @@ public class NewRelicPartnerApi extends NewRelicClient
         private String hostname = DEFAULT_HOST;
         private int port = DEFAULT_PORT;
         private HttpClientProvider provider = new ApiKeyHttpClientProvider("");
+        private ConnectionPool pool;
 
         /**
          * Default constructor.
@@ -172,12 +174,27 @@ public class NewRelicPartnerApi extends NewRelicClient
             return this;
         }
 
+        /**
+         * Sets the pool of persistent connections used by the client.
+         * <P>
+         * The same pool can be shared between several API client instances.
+         * @param pool The connection pool
+         * @return This object
+         */
+        public Builder connectionPool(ConnectionPool pool)
+        {
+            this.pool = pool;
+            return this;
+        }
+
         /**
          * Returns the configured Partner API client instance
          * @return The Partner API client instance
          */
         public NewRelicPartnerApi build()
         {
+            if(pool != null)
+                provider.setConnectionPool(pool);
             return new NewRelicPartnerApi(hostname, port, provider);
         }
     }
@@ -19,7 +19,10 @@ package com.opsmatters.newrelic.api;
 import java.util.logging.Logger;
 import com.opsmatters.newrelic.api.httpclient.LicenseKeyHttpClientProvider;
 import com.opsmatters.newrelic.api.httpclient.HttpClientProvider;
+import com.opsmatters.newrelic.api.httpclient.ConnectionPool;
+import com.opsmatters.newrelic.api.httpclient.RateLimiter;
 import com.opsmatters.newrelic.api.services.PluginMetricService;
+import com.opsmatters.newrelic.api.services.RetryPolicy;
 
 /**
  * Client used to invoke New Relic operations using the Plugins API.
@@ -35,6 +38,8 @@ public class NewRelicPluginsApi extends NewRelicClient
      */
     public static final String DEFAULT_HOST = "platform-api.newrelic.com";
 
+    private boolean compressed = false;
+
     /**
      * Default constructor.
      */
@@ -65,6 +70,26 @@ public class NewRelicPluginsApi extends NewRelicClient
         super.setHostname(hostname);
     }
 
+    /**
+     * Set to <CODE>true</CODE> if the metric data should be sent gzip compressed.
+     * <P>
+     * Compression reduces the size of large metric posts at the cost of some CPU.
+     * @param compressed <CODE>true</CODE> if the metric data should be sent gzip compressed
+     */
+    public void setCompressed(boolean compressed)
+    {
+        this.compressed = compressed;
+    }
+
+    /**
+     * Returns <CODE>true</CODE> if the metric data is sent gzip compressed.
+     * @return <CODE>true</CODE> if the metric data is sent gzip compressed
+     */
+    public boolean isCompressed()
+    {
+        return compressed;
+    }
+
     /**
      * Returns the uri prefix for resources used by the client.
      * <P>
@@ -84,7 +109,9 @@ public class NewRelicPluginsApi extends NewRelicClient
     public PluginMetricService metrics()
     {
         checkInitialize();
-        return new PluginMetricService(httpContext, this);
+        PluginMetricService ret = new PluginMetricService(httpContext, this);
+        ret.setCompressed(compressed);
+        return ret;
     }
 
     /**
@@ -104,6 +131,10 @@ public class NewRelicPluginsApi extends NewRelicClient
         private String hostname = DEFAULT_HOST;
         private int port = DEFAULT_PORT;
         private HttpClientProvider provider = new LicenseKeyHttpClientProvider("");
+        private ConnectionPool pool;
+        private RateLimiter limiter;
+        private RetryPolicy retryPolicy;
+        private boolean compressed = false;
 
         /**
          * Default constructor.
@@ -150,13 +181,68 @@ public class NewRelicPluginsApi extends NewRelicClient
             return this;
         }
 
+        /**
+         * Sets the pool of persistent connections used by the client.
+         * <P>
+         * The same pool can be shared between several API client instances.
+         * @param pool The connection pool
+         * @return This object
+         */
+        public Builder connectionPool(ConnectionPool pool)
+        {
+            this.pool = pool;
+            return this;
+        }
+
+        /**
+         * Sets the limiter used for the rate and concurrency of the requests made by the client.
+         * <P>
+         * The same limiter should be shared between the clients that use the same key.
+         * @param limiter The rate limiter
+         * @return This object
+         */
+        public Builder rateLimiter(RateLimiter limiter)
+        {
+            this.limiter = limiter;
+            return this;
+        }
+
+        /**
+         * Set to <CODE>true</CODE> if the metric data should be sent gzip compressed.
+         * @param compressed <CODE>true</CODE> if the metric data should be sent gzip compressed
+         * @return This object
+         */
+        public Builder compressed(boolean compressed)
+        {
+            this.compressed = compressed;
+            return this;
+        }
+
+        /**
+         * Sets the policy used to retry calls that fail with a transient error.
+         * @param retryPolicy The retry policy
+         * @return This object
+         */
+        public Builder retryPolicy(RetryPolicy retryPolicy)
+        {
+            this.retryPolicy = retryPolicy;
+            return this;
+        }
+
         /**
          * Returns the configured Plugins API client instance
          * @return The Plugins API client instance
          */
         public NewRelicPluginsApi build()
         {
-            return new NewRelicPluginsApi(hostname, port, provider);
+            if(pool != null)
+                provider.setConnectionPool(pool);
+            if(limiter != null)
+                provider.setRateLimiter(limiter);
+            NewRelicPluginsApi ret = new NewRelicPluginsApi(hostname, port, provider);
+            ret.setCompressed(compressed);
+            ret.setRetryPolicy(retryPolicy);
+            return ret;
         }
     }
 }
\ No newline at end of file
@@ -19,8 +19,11 @@ package com.opsmatters.newrelic.api;
 import java.util.logging.Logger;
 import com.opsmatters.newrelic.api.httpclient.ApiKeyHttpClientProvider;
 import com.opsmatters.newrelic.api.httpclient.HttpClientProvider;
+import com.opsmatters.newrelic.api.httpclient.ConnectionPool;
+import com.opsmatters.newrelic.api.httpclient.RateLimiter;
 import com.opsmatters.newrelic.api.services.MonitorService;
 import com.opsmatters.newrelic.api.services.LocationService;
+import com.opsmatters.newrelic.api.services.RetryPolicy;
 
 /**
  * Client used to invoke New Relic operations using the Synthetics API.
@@ -115,6 +118,9 @@ public class NewRelicSyntheticsApi extends NewRelicClient
         private String hostname = DEFAULT_HOST;
         private int port = DEFAULT_PORT;
         private HttpClientProvider provider = new ApiKeyHttpClientProvider("");
+        private ConnectionPool pool;
+        private RateLimiter limiter;
+        private RetryPolicy retryPolicy;
 
         /**
          * Default constructor.
@@ -161,13 +167,56 @@ public class NewRelicSyntheticsApi extends NewRelicClient
             return this;
         }
 
+        /**
+         * Sets the pool of persistent connections used by the client.
+         * <P>
+         * The same pool can be shared between several API client instances.
+         * @param pool The connection pool
+         * @return This object
+         */
+        public Builder connectionPool(ConnectionPool pool)
+        {
+            this.pool = pool;
+            return this;
+        }
+
+        /**
+         * Sets the limiter used for the rate and concurrency of the requests made by the client.
+         * <P>
+         * The same limiter should be shared between the clients that use the same key.
+         * @param limiter The rate limiter
+         * @return This object
+         */
+        public Builder rateLimiter(RateLimiter limiter)
+        {
+            this.limiter = limiter;
+            return this;
+        }
+
+        /**
+         * Sets the policy used to retry calls that fail with a transient error.
+         * @param retryPolicy The retry policy
+         * @return This object
+         */
+        public Builder retryPolicy(RetryPolicy retryPolicy)
+        {
+            this.retryPolicy = retryPolicy;
+            return this;
+        }
+
         /**
          * Returns the configured synthetics API client instance
          * @return The synthetics API client instance
          */
         public NewRelicSyntheticsApi build()
         {
-            return new NewRelicSyntheticsApi(hostname, port, provider);
+            if(pool != null)
+                provider.setConnectionPool(pool);
+            if(limiter != null)
+                provider.setRateLimiter(limiter);
+            NewRelicSyntheticsApi ret = new NewRelicSyntheticsApi(hostname, port, provider);
+            ret.setRetryPolicy(retryPolicy);
+            return ret;
         }
     }
 }
\ No newline at end of file
@@ -16,14 +16,7 @@
 
 package com.opsmatters.newrelic.api.httpclient;
 
-import java.util.logging.Level;
-import java.util.logging.Logger;
-import javax.ws.rs.client.Client;
-import javax.ws.rs.client.ClientBuilder;
-import javax.ws.rs.core.Configuration;
-import org.glassfish.jersey.client.ClientConfig;
-import org.glassfish.jersey.client.HttpUrlConnectorProvider;
-import org.glassfish.jersey.logging.LoggingFeature;
+import javax.ws.rs.client.ClientRequestFilter;
 import com.opsmatters.newrelic.api.httpclient.filters.ApiKeyFilter;
 
 /**
@@ -31,10 +24,8 @@ import com.opsmatters.newrelic.api.httpclient.filters.ApiKeyFilter;
  * 
  * @author Gerald Curley (opsmatters)
  */
-public class ApiKeyHttpClientProvider implements HttpClientProvider
+public class ApiKeyHttpClientProvider extends BaseHttpClientProvider
 {
-    private static final Logger logger = Logger.getLogger(ApiKeyHttpClientProvider.class.getName());
-
     private String apiKey;
     
     /**
@@ -47,29 +38,12 @@ public class ApiKeyHttpClientProvider implements HttpClientProvider
     }
 
     /**
-     * Returns <CODE>true</CODE> if the provider should use https.
-     * @return <CODE>true</CODE> if the provider should use https
-     */
-    @Override
-    public boolean useSsl()
-    {
-        return true;
-    }
-
-    /**
-     * Returns the HTTP client.
-     * @return The HTTP client
+     * Returns the filter used to attach the API key to each request.
+     * @return The filter used to attach the API key to each request
      */
     @Override
-    public Client getClient()
+    protected ClientRequestFilter getFilter()
     {
-        ClientConfig config = new ClientConfig();
-        config.register(GsonMessageBodyHandler.class);   
-        Client client = ClientBuilder.newClient(config);
-        client.property(HttpUrlConnectorProvider.SET_METHOD_WORKAROUND, true); // To support PATCH method
-        client.register(new ApiKeyFilter(this.apiKey));
-        if(logger.isLoggable(Level.FINE))
-            client.register(new LoggingFeature(logger, Level.FINE, LoggingFeature.Verbosity.PAYLOAD_TEXT, 8192));
-        return client;
+        return new ApiKeyFilter(this.apiKey);
     }
 }
\ No newline at end of file
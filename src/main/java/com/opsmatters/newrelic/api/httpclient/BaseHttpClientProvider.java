@@ -0,0 +1,141 @@
+/*
+ * Copyright 2018 Gerald Curley
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.opsmatters.newrelic.api.httpclient;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.client.ClientRequestFilter;
+import org.glassfish.jersey.client.ClientConfig;
+import org.glassfish.jersey.client.ClientProperties;
+import org.glassfish.jersey.client.HttpUrlConnectorProvider;
+import org.glassfish.jersey.logging.LoggingFeature;
+import org.glassfish.jersey.message.GZipEncoder;
+
+/**
+ * Base class for the HTTP client providers that attach a key used for authentication.
+ * 
+ * @author Gerald Curley (opsmatters)
+ */
+public abstract class BaseHttpClientProvider implements HttpClientProvider
+{
+    private static final Logger logger = Logger.getLogger(BaseHttpClientProvider.class.getName());
+
+    private ConnectionPool pool;
+    private RateLimiter limiter;
+    private int asyncThreads = 0;
+
+    /**
+     * Returns <CODE>true</CODE> if the provider should use https.
+     * @return <CODE>true</CODE> if the provider should use https
+     */
+    @Override
+    public boolean useSsl()
+    {
+        return true;
+    }
+
+    /**
+     * Returns the HTTP client.
+     * @return The HTTP client
+     */
+    @Override
+    public Client getClient()
+    {
+        ClientConfig config = new ClientConfig();
+        config.register(GsonMessageBodyHandler.class);   
+        config.register(GZipEncoder.class); // Compresses request bodies sent with "Content-Encoding: gzip"
+        if(pool != null)
+            pool.configure(config);
+        if(asyncThreads > 0)
+            config.property(ClientProperties.ASYNC_THREADPOOL_SIZE, asyncThreads);
+        Client client = ClientBuilder.newClient(config);
+        if(pool == null)
+            client.property(HttpUrlConnectorProvider.SET_METHOD_WORKAROUND, true); // To support PATCH method
+        client.register(getFilter());
+        if(logger.isLoggable(Level.FINE))
+            client.register(new LoggingFeature(logger, Level.FINE, LoggingFeature.Verbosity.PAYLOAD_TEXT, 8192));
+        return client;
+    }
+
+    /**
+     * Returns the filter used to attach the key to each request.
+     * @return The filter used to attach the key to each request
+     */
+    protected abstract ClientRequestFilter getFilter();
+
+    /**
+     * Sets the pool of persistent connections to be used by the HTTP client.
+     * @param pool The connection pool
+     */
+    @Override
+    public void setConnectionPool(ConnectionPool pool)
+    {
+        this.pool = pool;
+    }
+
+    /**
+     * Returns the pool of persistent connections used by the HTTP client.
+     * @return The connection pool, or <CODE>null</CODE> if the HTTP client is not pooled
+     */
+    @Override
+    public ConnectionPool getConnectionPool()
+    {
+        return pool;
+    }
+
+    /**
+     * Sets the limiter used for the rate and concurrency of the requests made by the HTTP client.
+     * @param limiter The rate limiter
+     */
+    @Override
+    public void setRateLimiter(RateLimiter limiter)
+    {
+        this.limiter = limiter;
+    }
+
+    /**
+     * Returns the limiter used for the rate and concurrency of the requests made by the HTTP client.
+     * @return The rate limiter, or <CODE>null</CODE> if the requests are not limited
+     */
+    @Override
+    public RateLimiter getRateLimiter()
+    {
+        return limiter;
+    }
+
+    /**
+     * Sets the maximum number of threads used to execute asynchronous requests.
+     * <P>
+     * Defaults to 0 which means that the pool size is not bounded.
+     * @param asyncThreads The maximum number of threads used to execute asynchronous requests
+     */
+    public void setAsyncThreads(int asyncThreads)
+    {
+        this.asyncThreads = asyncThreads;
+    }
+
+    /**
+     * Returns the maximum number of threads used to execute asynchronous requests.
+     * @return The maximum number of threads used to execute asynchronous requests
+     */
+    public int getAsyncThreads()
+    {
+        return asyncThreads;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,404 @@
+/*
+ * Copyright 2018 Gerald Curley
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.opsmatters.newrelic.api.httpclient;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import org.apache.http.config.SocketConfig;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.glassfish.jersey.apache.connector.ApacheClientProperties;
+import org.glassfish.jersey.apache.connector.ApacheConnectorProvider;
+import org.glassfish.jersey.client.ClientConfig;
+import org.glassfish.jersey.client.ClientProperties;
+
+/**
+ * Represents a pool of persistent HTTP connections that can be shared between clients.
+ * <P>
+ * The same pool can be given to the providers of several clients (eg. a NewRelicApi and a NewRelicInfraApi),
+ * in which case all of the clients will reuse the same set of keep-alive connections.
+ *
+ * @author Gerald Curley (opsmatters)
+ */
+public class ConnectionPool
+{
+    private static final Logger logger = Logger.getLogger(ConnectionPool.class.getName());
+
+    /**
+     * The default maximum number of connections in the pool.
+     */
+    public static final int DEFAULT_MAX_TOTAL = 100;
+
+    /**
+     * The default maximum number of connections per route.
+     */
+    public static final int DEFAULT_MAX_PER_ROUTE = 20;
+
+    /**
+     * The default time after which idle connections are evicted (in milliseconds).
+     */
+    public static final long DEFAULT_IDLE_TIMEOUT = 30000L;
+
+    /**
+     * The default maximum lifetime of a keep-alive connection (in milliseconds).
+     */
+    public static final long DEFAULT_KEEP_ALIVE = 300000L;
+
+    /**
+     * The default connect timeout (in milliseconds).
+     */
+    public static final int DEFAULT_CONNECT_TIMEOUT = 10000;
+
+    /**
+     * The default socket timeout (in milliseconds).
+     */
+    public static final int DEFAULT_SOCKET_TIMEOUT = 60000;
+
+    private int maxTotal = DEFAULT_MAX_TOTAL;
+    private int maxPerRoute = DEFAULT_MAX_PER_ROUTE;
+    private long idleTimeout = DEFAULT_IDLE_TIMEOUT;
+    private long keepAlive = DEFAULT_KEEP_ALIVE;
+    private int connectTimeout = DEFAULT_CONNECT_TIMEOUT;
+    private int socketTimeout = DEFAULT_SOCKET_TIMEOUT;
+    private PoolingHttpClientConnectionManager manager;
+    private ScheduledExecutorService evictor;
+
+    /**
+     * Default constructor.
+     */
+    public ConnectionPool()
+    {
+    }
+
+    /**
+     * Sets the maximum number of connections in the pool.
+     * <P>
+     * If the pool is already in use, the new maximum is applied to it straight away.
+     * @param maxTotal The maximum number of connections in the pool
+     */
+    public synchronized void setMaxTotal(int maxTotal)
+    {
+        this.maxTotal = maxTotal;
+        if(manager != null)
+            manager.setMaxTotal(maxTotal);
+    }
+
+    /**
+     * Returns the maximum number of connections in the pool.
+     * @return The maximum number of connections in the pool
+     */
+    public int getMaxTotal()
+    {
+        return maxTotal;
+    }
+
+    /**
+     * Sets the maximum number of connections per route.
+     * <P>
+     * If the pool is already in use, the new maximum is applied to it straight away.
+     * @param maxPerRoute The maximum number of connections per route
+     */
+    public synchronized void setMaxPerRoute(int maxPerRoute)
+    {
+        this.maxPerRoute = maxPerRoute;
+        if(manager != null)
+            manager.setDefaultMaxPerRoute(maxPerRoute);
+    }
+
+    /**
+     * Returns the maximum number of connections per route.
+     * @return The maximum number of connections per route
+     */
+    public int getMaxPerRoute()
+    {
+        return maxPerRoute;
+    }
+
+    /**
+     * Sets the time after which idle connections are evicted from the pool.
+     * @param idleTimeout The idle timeout (in milliseconds)
+     * @throws IllegalStateException if the pool is already in use
+     */
+    public synchronized void setIdleTimeout(long idleTimeout)
+    {
+        checkNotInUse("idleTimeout");
+        this.idleTimeout = idleTimeout;
+    }
+
+    /**
+     * Returns the time after which idle connections are evicted from the pool.
+     * @return The idle timeout (in milliseconds)
+     */
+    public long getIdleTimeout()
+    {
+        return idleTimeout;
+    }
+
+    /**
+     * Sets the maximum lifetime of a keep-alive connection.
+     * @param keepAlive The maximum lifetime of a keep-alive connection (in milliseconds)
+     * @throws IllegalStateException if the pool is already in use
+     */
+    public synchronized void setKeepAlive(long keepAlive)
+    {
+        checkNotInUse("keepAlive");
+        this.keepAlive = keepAlive;
+    }
+
+    /**
+     * Returns the maximum lifetime of a keep-alive connection.
+     * @return The maximum lifetime of a keep-alive connection (in milliseconds)
+     */
+    public long getKeepAlive()
+    {
+        return keepAlive;
+    }
+
+    /**
+     * Sets the connect timeout.
+     * @param connectTimeout The connect timeout (in milliseconds)
+     * @throws IllegalStateException if the pool is already in use
+     */
+    public synchronized void setConnectTimeout(int connectTimeout)
+    {
+        checkNotInUse("connectTimeout");
+        this.connectTimeout = connectTimeout;
+    }
+
+    /**
+     * Returns the connect timeout.
+     * @return The connect timeout (in milliseconds)
+     */
+    public int getConnectTimeout()
+    {
+        return connectTimeout;
+    }
+
+    /**
+     * Sets the socket timeout.
+     * @param socketTimeout The socket timeout (in milliseconds)
+     * @throws IllegalStateException if the pool is already in use
+     */
+    public synchronized void setSocketTimeout(int socketTimeout)
+    {
+        checkNotInUse("socketTimeout");
+        this.socketTimeout = socketTimeout;
+    }
+
+    /**
+     * Returns the socket timeout.
+     * @return The socket timeout (in milliseconds)
+     */
+    public int getSocketTimeout()
+    {
+        return socketTimeout;
+    }
+
+    /**
+     * Throws an exception if the pool is already in use, as the given setting can no longer be applied.
+     * @param name The name of the setting
+     */
+    private void checkNotInUse(String name)
+    {
+        if(manager != null)
+            throw new IllegalStateException(name+" cannot be changed once the pool is in use");
+    }
+
+    /**
+     * Returns the number of connections currently leased from the pool.
+     * @return The number of connections currently leased from the pool
+     */
+    public int getLeased()
+    {
+        return manager != null ? manager.getTotalStats().getLeased() : 0;
+    }
+
+    /**
+     * Returns the number of idle connections currently available in the pool.
+     * @return The number of idle connections currently available in the pool
+     */
+    public int getAvailable()
+    {
+        return manager != null ? manager.getTotalStats().getAvailable() : 0;
+    }
+
+    /**
+     * Configures the given client configuration to use the pooled connector.
+     * @param config The client configuration
+     */
+    public void configure(ClientConfig config)
+    {
+        config.connectorProvider(new ApacheConnectorProvider());
+        config.property(ApacheClientProperties.CONNECTION_MANAGER, getConnectionManager());
+        config.property(ApacheClientProperties.CONNECTION_MANAGER_SHARED, true);
+        config.property(ClientProperties.CONNECT_TIMEOUT, connectTimeout);
+        config.property(ClientProperties.READ_TIMEOUT, socketTimeout);
+    }
+
+    /**
+     * Returns the connection manager, creating it on first use.
+     * @return The connection manager
+     */
+    private synchronized PoolingHttpClientConnectionManager getConnectionManager()
+    {
+        if(manager == null)
+        {
+            manager = new PoolingHttpClientConnectionManager(keepAlive, TimeUnit.MILLISECONDS);
+            manager.setMaxTotal(maxTotal);
+            manager.setDefaultMaxPerRoute(maxPerRoute);
+            manager.setDefaultSocketConfig(SocketConfig.custom()
+                .setSoKeepAlive(true)
+                .setTcpNoDelay(true)
+                .setSoTimeout(socketTimeout)
+                .build());
+
+            if(idleTimeout > 0L)
+            {
+                evictor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+                {
+                    public Thread newThread(Runnable r)
+                    {
+                        Thread thread = new Thread(r, "newrelic-connection-evictor");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+
+                long interval = Math.max(idleTimeout/2L, 1000L);
+                evictor.scheduleWithFixedDelay(new Runnable()
+                {
+                    public void run()
+                    {
+                        manager.closeExpiredConnections();
+                        manager.closeIdleConnections(idleTimeout, TimeUnit.MILLISECONDS);
+                    }
+                }, interval, interval, TimeUnit.MILLISECONDS);
+            }
+
+            logger.fine("Created connection pool: maxTotal="+maxTotal+" maxPerRoute="+maxPerRoute);
+        }
+
+        return manager;
+    }
+
+    /**
+     * Closes all the connections in the pool and stops the idle connection eviction.
+     */
+    public synchronized void shutdown()
+    {
+        if(evictor != null)
+            evictor.shutdownNow();
+        evictor = null;
+        if(manager != null)
+            manager.shutdown();
+        manager = null;
+    }
+
+    /**
+     * Returns a builder for the connection pool.
+     * @return The builder instance.
+     */
+    public static Builder builder()
+    {
+        return new Builder();
+    }
+
+    /**
+     * Builder to make connection pool construction easier.
+     */
+    public static class Builder
+    {
+        private ConnectionPool pool = new ConnectionPool();
+
+        /**
+         * Sets the maximum number of connections in the pool.
+         * @param maxTotal The maximum number of connections in the pool
+         * @return This object
+         */
+        public Builder maxTotal(int maxTotal)
+        {
+            pool.setMaxTotal(maxTotal);
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of connections per route.
+         * @param maxPerRoute The maximum number of connections per route
+         * @return This object
+         */
+        public Builder maxPerRoute(int maxPerRoute)
+        {
+            pool.setMaxPerRoute(maxPerRoute);
+            return this;
+        }
+
+        /**
+         * Sets the time after which idle connections are evicted from the pool.
+         * @param idleTimeout The idle timeout (in milliseconds)
+         * @return This object
+         */
+        public Builder idleTimeout(long idleTimeout)
+        {
+            pool.setIdleTimeout(idleTimeout);
+            return this;
+        }
+
+        /**
+         * Sets the maximum lifetime of a keep-alive connection.
+         * @param keepAlive The maximum lifetime of a keep-alive connection (in milliseconds)
+         * @return This object
+         */
+        public Builder keepAlive(long keepAlive)
+        {
+            pool.setKeepAlive(keepAlive);
+            return this;
+        }
+
+        /**
+         * Sets the connect timeout.
+         * @param connectTimeout The connect timeout (in milliseconds)
+         * @return This object
+         */
+        public Builder connectTimeout(int connectTimeout)
+        {
+            pool.setConnectTimeout(connectTimeout);
+            return this;
+        }
+
+        /**
+         * Sets the socket timeout.
+         * @param socketTimeout The socket timeout (in milliseconds)
+         * @return This object
+         */
+        public Builder socketTimeout(int socketTimeout)
+        {
+            pool.setSocketTimeout(socketTimeout);
+            return this;
+        }
+
+        /**
+         * Returns the configured connection pool instance
+         * @return The connection pool instance
+         */
+        public ConnectionPool build()
+        {
+            return pool;
+        }
+    }
+}
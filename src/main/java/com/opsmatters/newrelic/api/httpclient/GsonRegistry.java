@@ -0,0 +1,312 @@
+/*
+ * Copyright 2018 Gerald Curley
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.opsmatters.newrelic.api.httpclient;
+
+import java.lang.reflect.Type;
+import java.util.Collection;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.reflect.TypeToken;
+import com.opsmatters.newrelic.api.httpclient.adapters.ModelTypeAdapterFactory;
+import com.opsmatters.newrelic.api.httpclient.adapters.MetricSeriesDataTypeAdapter;
+import com.opsmatters.newrelic.api.model.ErrorResponse;
+import com.opsmatters.newrelic.api.model.alerts.AlertIncident;
+import com.opsmatters.newrelic.api.model.alerts.AlertViolation;
+import com.opsmatters.newrelic.api.model.alerts.AlertEvent;
+import com.opsmatters.newrelic.api.model.alerts.policies.AlertPolicy;
+import com.opsmatters.newrelic.api.model.alerts.policies.AlertPolicyChannel;
+import com.opsmatters.newrelic.api.model.alerts.channels.AlertChannel;
+import com.opsmatters.newrelic.api.model.alerts.conditions.AlertCondition;
+import com.opsmatters.newrelic.api.model.alerts.conditions.NrqlAlertCondition;
+import com.opsmatters.newrelic.api.model.alerts.conditions.ExternalServiceAlertCondition;
+import com.opsmatters.newrelic.api.model.alerts.conditions.PluginsAlertCondition;
+import com.opsmatters.newrelic.api.model.alerts.conditions.SyntheticsAlertCondition;
+import com.opsmatters.newrelic.api.model.alerts.conditions.InfraAlertCondition;
+import com.opsmatters.newrelic.api.model.applications.Application;
+import com.opsmatters.newrelic.api.model.applications.ApplicationHost;
+import com.opsmatters.newrelic.api.model.applications.ApplicationInstance;
+import com.opsmatters.newrelic.api.model.applications.BrowserApplication;
+import com.opsmatters.newrelic.api.model.applications.MobileApplication;
+import com.opsmatters.newrelic.api.model.transactions.KeyTransaction;
+import com.opsmatters.newrelic.api.model.plugins.Plugin;
+import com.opsmatters.newrelic.api.model.plugins.PluginComponent;
+import com.opsmatters.newrelic.api.model.servers.Server;
+import com.opsmatters.newrelic.api.model.metrics.Metric;
+import com.opsmatters.newrelic.api.model.metrics.MetricData;
+import com.opsmatters.newrelic.api.model.metrics.MetricSeriesData;
+import com.opsmatters.newrelic.api.model.deployments.Deployment;
+import com.opsmatters.newrelic.api.model.labels.Label;
+import com.opsmatters.newrelic.api.model.accounts.PartnerAccount;
+import com.opsmatters.newrelic.api.model.accounts.PartnerUser;
+import com.opsmatters.newrelic.api.model.accounts.PartnerSubscription;
+import com.opsmatters.newrelic.api.model.accounts.ProductSubscription;
+import com.opsmatters.newrelic.api.model.accounts.User;
+import com.opsmatters.newrelic.api.model.accounts.UsageData;
+import com.opsmatters.newrelic.api.model.synthetics.Monitor;
+import com.opsmatters.newrelic.api.model.insights.Dashboard;
+import com.opsmatters.newrelic.api.model.insights.widgets.Widget;
+import com.opsmatters.newrelic.api.model.insights.widgets.WidgetData;
+import com.opsmatters.newrelic.api.model.insights.widgets.Presentation;
+import com.opsmatters.newrelic.api.httpclient.serializers.alerts.policies.AlertPolicySerializer;
+import com.opsmatters.newrelic.api.httpclient.serializers.alerts.channels.AlertChannelSerializer;
+import com.opsmatters.newrelic.api.httpclient.serializers.alerts.conditions.AlertConditionSerializer;
+import com.opsmatters.newrelic.api.httpclient.serializers.alerts.conditions.NrqlAlertConditionSerializer;
+import com.opsmatters.newrelic.api.httpclient.serializers.alerts.conditions.ExternalServiceAlertConditionSerializer;
+import com.opsmatters.newrelic.api.httpclient.serializers.alerts.conditions.PluginsAlertConditionSerializer;
+import com.opsmatters.newrelic.api.httpclient.serializers.alerts.conditions.SyntheticsAlertConditionSerializer;
+import com.opsmatters.newrelic.api.httpclient.serializers.alerts.conditions.InfraAlertConditionSerializer;
+import com.opsmatters.newrelic.api.httpclient.serializers.applications.ApplicationSerializer;
+import com.opsmatters.newrelic.api.httpclient.serializers.applications.BrowserApplicationSerializer;
+import com.opsmatters.newrelic.api.httpclient.serializers.servers.ServerSerializer;
+import com.opsmatters.newrelic.api.httpclient.serializers.deployments.DeploymentSerializer;
+import com.opsmatters.newrelic.api.httpclient.serializers.labels.LabelSerializer;
+import com.opsmatters.newrelic.api.httpclient.serializers.insights.DashboardSerializer;
+import com.opsmatters.newrelic.api.httpclient.serializers.accounts.PartnerUserSerializer;
+import com.opsmatters.newrelic.api.httpclient.serializers.accounts.ProductSubscriptionsSerializer;
+import com.opsmatters.newrelic.api.httpclient.deserializers.ErrorResponseDeserializer;
+import com.opsmatters.newrelic.api.httpclient.deserializers.alerts.AlertIncidentsDeserializer;
+import com.opsmatters.newrelic.api.httpclient.deserializers.alerts.AlertViolationsDeserializer;
+import com.opsmatters.newrelic.api.httpclient.deserializers.alerts.AlertEventsDeserializer;
+import com.opsmatters.newrelic.api.httpclient.deserializers.alerts.policies.AlertPolicyDeserializer;
+import com.opsmatters.newrelic.api.httpclient.deserializers.alerts.policies.AlertPoliciesDeserializer;
+import com.opsmatters.newrelic.api.httpclient.deserializers.alerts.policies.AlertPolicyChannelDeserializer;
+import com.opsmatters.newrelic.api.httpclient.deserializers.alerts.channels.AlertChannelsDeserializer;
+import com.opsmatters.newrelic.api.httpclient.deserializers.alerts.conditions.AlertConditionDeserializer;
+import com.opsmatters.newrelic.api.httpclient.deserializers.alerts.conditions.AlertConditionsDeserializer;
+import com.opsmatters.newrelic.api.httpclient.deserializers.alerts.conditions.NrqlAlertConditionDeserializer;
+import com.opsmatters.newrelic.api.httpclient.deserializers.alerts.conditions.NrqlAlertConditionsDeserializer;
+import com.opsmatters.newrelic.api.httpclient.deserializers.alerts.conditions.ExternalServiceAlertConditionDeserializer;
+import com.opsmatters.newrelic.api.httpclient.deserializers.alerts.conditions.ExternalServiceAlertConditionsDeserializer;
+import com.opsmatters.newrelic.api.httpclient.deserializers.alerts.conditions.PluginsAlertConditionDeserializer;
+import com.opsmatters.newrelic.api.httpclient.deserializers.alerts.conditions.PluginsAlertConditionsDeserializer;
+import com.opsmatters.newrelic.api.httpclient.deserializers.alerts.conditions.SyntheticsAlertConditionDeserializer;
+import com.opsmatters.newrelic.api.httpclient.deserializers.alerts.conditions.SyntheticsAlertConditionsDeserializer;
+import com.opsmatters.newrelic.api.httpclient.deserializers.alerts.conditions.InfraAlertConditionDeserializer;
+import com.opsmatters.newrelic.api.httpclient.deserializers.alerts.conditions.InfraAlertConditionsDeserializer;
+import com.opsmatters.newrelic.api.httpclient.deserializers.applications.ApplicationDeserializer;
+import com.opsmatters.newrelic.api.httpclient.deserializers.applications.ApplicationsDeserializer;
+import com.opsmatters.newrelic.api.httpclient.deserializers.applications.ApplicationHostDeserializer;
+import com.opsmatters.newrelic.api.httpclient.deserializers.applications.ApplicationHostsDeserializer;
+import com.opsmatters.newrelic.api.httpclient.deserializers.applications.ApplicationInstanceDeserializer;
+import com.opsmatters.newrelic.api.httpclient.deserializers.applications.ApplicationInstancesDeserializer;
+import com.opsmatters.newrelic.api.httpclient.deserializers.applications.BrowserApplicationDeserializer;
+import com.opsmatters.newrelic.api.httpclient.deserializers.applications.BrowserApplicationsDeserializer;
+import com.opsmatters.newrelic.api.httpclient.deserializers.applications.MobileApplicationDeserializer;
+import com.opsmatters.newrelic.api.httpclient.deserializers.applications.MobileApplicationsDeserializer;
+import com.opsmatters.newrelic.api.httpclient.deserializers.transactions.KeyTransactionDeserializer;
+import com.opsmatters.newrelic.api.httpclient.deserializers.transactions.KeyTransactionsDeserializer;
+import com.opsmatters.newrelic.api.httpclient.deserializers.plugins.PluginDeserializer;
+import com.opsmatters.newrelic.api.httpclient.deserializers.plugins.PluginsDeserializer;
+import com.opsmatters.newrelic.api.httpclient.deserializers.plugins.PluginComponentDeserializer;
+import com.opsmatters.newrelic.api.httpclient.deserializers.plugins.PluginComponentsDeserializer;
+import com.opsmatters.newrelic.api.httpclient.deserializers.servers.ServerDeserializer;
+import com.opsmatters.newrelic.api.httpclient.deserializers.servers.ServersDeserializer;
+import com.opsmatters.newrelic.api.httpclient.deserializers.metrics.MetricsDeserializer;
+import com.opsmatters.newrelic.api.httpclient.deserializers.metrics.MetricDataDeserializer;
+import com.opsmatters.newrelic.api.httpclient.deserializers.deployments.DeploymentDeserializer;
+import com.opsmatters.newrelic.api.httpclient.deserializers.deployments.DeploymentsDeserializer;
+import com.opsmatters.newrelic.api.httpclient.deserializers.labels.LabelDeserializer;
+import com.opsmatters.newrelic.api.httpclient.deserializers.labels.LabelsDeserializer;
+import com.opsmatters.newrelic.api.httpclient.deserializers.accounts.PartnerAccountsDeserializer;
+import com.opsmatters.newrelic.api.httpclient.deserializers.accounts.UserDeserializer;
+import com.opsmatters.newrelic.api.httpclient.deserializers.accounts.UsersDeserializer;
+import com.opsmatters.newrelic.api.httpclient.deserializers.accounts.PartnerUsersDeserializer;
+import com.opsmatters.newrelic.api.httpclient.deserializers.accounts.PartnerSubscriptionsDeserializer;
+import com.opsmatters.newrelic.api.httpclient.deserializers.accounts.UsageDataDeserializer;
+import com.opsmatters.newrelic.api.httpclient.deserializers.synthetics.MonitorDeserializer;
+import com.opsmatters.newrelic.api.httpclient.deserializers.synthetics.MonitorsDeserializer;
+import com.opsmatters.newrelic.api.httpclient.deserializers.insights.DashboardDeserializer;
+import com.opsmatters.newrelic.api.httpclient.deserializers.insights.DashboardsDeserializer;
+import com.opsmatters.newrelic.api.httpclient.deserializers.insights.widgets.WidgetDeserializer;
+import com.opsmatters.newrelic.api.httpclient.deserializers.insights.widgets.WidgetDataDeserializer;
+import com.opsmatters.newrelic.api.httpclient.deserializers.insights.widgets.PresentationDeserializer;
+
+/**
+ * Holds the Gson objects shared by the message body handlers, serializers and deserializers.
+ * <P>
+ * The Gson objects are immutable and thread-safe, and are created once when the class is loaded.
+ * 
+ * @author Gerald Curley (opsmatters)
+ */
+public final class GsonRegistry
+{
+    private static final Type ALERT_POLICIES_TYPE = new TypeToken<Collection<AlertPolicy>>(){}.getType();
+    private static final Type ALERT_CHANNELS_TYPE = new TypeToken<Collection<AlertChannel>>(){}.getType();
+    private static final Type ALERT_CONDITIONS_TYPE = new TypeToken<Collection<AlertCondition>>(){}.getType();
+    private static final Type NRQL_ALERT_CONDITIONS_TYPE = new TypeToken<Collection<NrqlAlertCondition>>(){}.getType();
+    private static final Type EXTERNAL_SERVICE_ALERT_CONDITIONS_TYPE = new TypeToken<Collection<ExternalServiceAlertCondition>>(){}.getType();
+    private static final Type PLUGINS_ALERT_CONDITIONS_TYPE = new TypeToken<Collection<PluginsAlertCondition>>(){}.getType();
+    private static final Type SYNTHETICS_ALERT_CONDITIONS_TYPE = new TypeToken<Collection<SyntheticsAlertCondition>>(){}.getType();
+    private static final Type INFRA_ALERT_CONDITIONS_TYPE = new TypeToken<Collection<InfraAlertCondition>>(){}.getType();
+    private static final Type ALERT_INCIDENTS_TYPE = new TypeToken<Collection<AlertIncident>>(){}.getType();
+    private static final Type ALERT_VIOLATIONS_TYPE = new TypeToken<Collection<AlertViolation>>(){}.getType();
+    private static final Type ALERT_EVENTS_TYPE = new TypeToken<Collection<AlertEvent>>(){}.getType();
+    private static final Type APPLICATIONS_TYPE = new TypeToken<Collection<Application>>(){}.getType();
+    private static final Type APPLICATION_HOSTS_TYPE = new TypeToken<Collection<ApplicationHost>>(){}.getType();
+    private static final Type APPLICATION_INSTANCES_TYPE = new TypeToken<Collection<ApplicationInstance>>(){}.getType();
+    private static final Type BROWSER_APPLICATIONS_TYPE = new TypeToken<Collection<BrowserApplication>>(){}.getType();
+    private static final Type MOBILE_APPLICATIONS_TYPE = new TypeToken<Collection<MobileApplication>>(){}.getType();
+    private static final Type KEY_TRANSACTIONS_TYPE = new TypeToken<Collection<KeyTransaction>>(){}.getType();
+    private static final Type PLUGINS_TYPE = new TypeToken<Collection<Plugin>>(){}.getType();
+    private static final Type PLUGIN_COMPONENTS_TYPE = new TypeToken<Collection<PluginComponent>>(){}.getType();
+    private static final Type SERVERS_TYPE = new TypeToken<Collection<Server>>(){}.getType();
+    private static final Type METRICS_TYPE = new TypeToken<Collection<Metric>>(){}.getType();
+    private static final Type DEPLOYMENTS_TYPE = new TypeToken<Collection<Deployment>>(){}.getType();
+    private static final Type LABELS_TYPE = new TypeToken<Collection<Label>>(){}.getType();
+    private static final Type USERS_TYPE = new TypeToken<Collection<User>>(){}.getType();
+    private static final Type PARTNER_ACCOUNTS_TYPE = new TypeToken<Collection<PartnerAccount>>(){}.getType();
+    private static final Type PARTNER_USERS_TYPE = new TypeToken<Collection<PartnerUser>>(){}.getType();
+    private static final Type PARTNER_SUBSCRIPTIONS_TYPE = new TypeToken<Collection<PartnerSubscription>>(){}.getType();
+    private static final Type PRODUCT_SUBSCRIPTIONS_TYPE = new TypeToken<Collection<ProductSubscription>>(){}.getType();
+    private static final Type MONITORS_TYPE = new TypeToken<Collection<Monitor>>(){}.getType();
+    private static final Type DASHBOARDS_TYPE = new TypeToken<Collection<Dashboard>>(){}.getType();
+
+    private static final Gson GSON = createGson();
+
+    /**
+     * Private constructor as the class only has static methods.
+     */
+    private GsonRegistry()
+    {
+    }
+
+    /**
+     * Returns the Gson object with all the custom serializers and deserializers.
+     * <P>
+     * Used to read and write the entities of the HTTP requests and responses.
+     * @return The Gson object
+     */
+    public static Gson getGson()
+    {
+        return GSON;
+    }
+
+    /**
+     * Returns the Gson object used to bind the model objects without any custom serializers or deserializers.
+     * <P>
+     * The model type adapters are registered so that the query results are streamed into their columns.
+     * <P>
+     * Used by the serializers and deserializers to bind the object inside the JSON wrapper,
+     * as the registered adapters for those types would otherwise be called recursively.
+     * @return The Gson object
+     */
+    public static Gson getBaseGson()
+    {
+        return Base.GSON;
+    }
+
+    /**
+     * Creates the Gson object with all the custom serializers and deserializers.
+     * @return The Gson object
+     */
+    private static Gson createGson()
+    {
+        GsonBuilder builder = new GsonBuilder();
+
+        // Registered first so that the adapters below take precedence
+        builder.registerTypeAdapterFactory(new ModelTypeAdapterFactory());
+        builder.registerTypeAdapter(ErrorResponse.class, new ErrorResponseDeserializer());
+        builder.registerTypeAdapter(AlertPolicy.class, new AlertPolicySerializer());
+        builder.registerTypeAdapter(AlertPolicy.class, new AlertPolicyDeserializer());
+        builder.registerTypeAdapter(ALERT_POLICIES_TYPE, new AlertPoliciesDeserializer());
+        builder.registerTypeHierarchyAdapter(AlertChannel.class, new AlertChannelSerializer());
+        builder.registerTypeAdapter(ALERT_CHANNELS_TYPE, new AlertChannelsDeserializer());
+        builder.registerTypeAdapter(AlertPolicyChannel.class, new AlertPolicyChannelDeserializer());
+        builder.registerTypeHierarchyAdapter(AlertCondition.class, new AlertConditionSerializer());
+        builder.registerTypeAdapter(AlertCondition.class, new AlertConditionDeserializer());
+        builder.registerTypeAdapter(ALERT_CONDITIONS_TYPE, new AlertConditionsDeserializer());
+        builder.registerTypeAdapter(NrqlAlertCondition.class, new NrqlAlertConditionSerializer());
+        builder.registerTypeAdapter(NrqlAlertCondition.class, new NrqlAlertConditionDeserializer());
+        builder.registerTypeAdapter(NRQL_ALERT_CONDITIONS_TYPE, new NrqlAlertConditionsDeserializer());
+        builder.registerTypeHierarchyAdapter(ExternalServiceAlertCondition.class, new ExternalServiceAlertConditionSerializer());
+        builder.registerTypeAdapter(ExternalServiceAlertCondition.class, new ExternalServiceAlertConditionDeserializer());
+        builder.registerTypeAdapter(EXTERNAL_SERVICE_ALERT_CONDITIONS_TYPE, new ExternalServiceAlertConditionsDeserializer());
+        builder.registerTypeHierarchyAdapter(PluginsAlertCondition.class, new PluginsAlertConditionSerializer());
+        builder.registerTypeAdapter(PluginsAlertCondition.class, new PluginsAlertConditionDeserializer());
+        builder.registerTypeAdapter(PLUGINS_ALERT_CONDITIONS_TYPE, new PluginsAlertConditionsDeserializer());
+        builder.registerTypeHierarchyAdapter(SyntheticsAlertCondition.class, new SyntheticsAlertConditionSerializer());
+        builder.registerTypeAdapter(SyntheticsAlertCondition.class, new SyntheticsAlertConditionDeserializer());
+        builder.registerTypeAdapter(SYNTHETICS_ALERT_CONDITIONS_TYPE, new SyntheticsAlertConditionsDeserializer());
+        builder.registerTypeHierarchyAdapter(InfraAlertCondition.class, new InfraAlertConditionSerializer());
+        builder.registerTypeAdapter(InfraAlertCondition.class, new InfraAlertConditionDeserializer());
+        builder.registerTypeAdapter(INFRA_ALERT_CONDITIONS_TYPE, new InfraAlertConditionsDeserializer());
+        builder.registerTypeAdapter(ALERT_INCIDENTS_TYPE, new AlertIncidentsDeserializer());
+        builder.registerTypeAdapter(ALERT_VIOLATIONS_TYPE, new AlertViolationsDeserializer());
+        builder.registerTypeAdapter(ALERT_EVENTS_TYPE, new AlertEventsDeserializer());
+        builder.registerTypeAdapter(Application.class, new ApplicationSerializer());
+        builder.registerTypeAdapter(Application.class, new ApplicationDeserializer());
+        builder.registerTypeAdapter(APPLICATIONS_TYPE, new ApplicationsDeserializer());
+        builder.registerTypeAdapter(ApplicationHost.class, new ApplicationHostDeserializer());
+        builder.registerTypeAdapter(APPLICATION_HOSTS_TYPE, new ApplicationHostsDeserializer());
+        builder.registerTypeAdapter(ApplicationInstance.class, new ApplicationInstanceDeserializer());
+        builder.registerTypeAdapter(APPLICATION_INSTANCES_TYPE, new ApplicationInstancesDeserializer());
+        builder.registerTypeAdapter(BrowserApplication.class, new BrowserApplicationSerializer());
+        builder.registerTypeAdapter(BrowserApplication.class, new BrowserApplicationDeserializer());
+        builder.registerTypeAdapter(BROWSER_APPLICATIONS_TYPE, new BrowserApplicationsDeserializer());
+        builder.registerTypeAdapter(MobileApplication.class, new MobileApplicationDeserializer());
+        builder.registerTypeAdapter(MOBILE_APPLICATIONS_TYPE, new MobileApplicationsDeserializer());
+        builder.registerTypeAdapter(KeyTransaction.class, new KeyTransactionDeserializer());
+        builder.registerTypeAdapter(KEY_TRANSACTIONS_TYPE, new KeyTransactionsDeserializer());
+        builder.registerTypeAdapter(Plugin.class, new PluginDeserializer());
+        builder.registerTypeAdapter(PLUGINS_TYPE, new PluginsDeserializer());
+        builder.registerTypeAdapter(PluginComponent.class, new PluginComponentDeserializer());
+        builder.registerTypeAdapter(PLUGIN_COMPONENTS_TYPE, new PluginComponentsDeserializer());
+        builder.registerTypeAdapter(Server.class, new ServerSerializer());
+        builder.registerTypeAdapter(Server.class, new ServerDeserializer());
+        builder.registerTypeAdapter(SERVERS_TYPE, new ServersDeserializer());
+        builder.registerTypeAdapter(METRICS_TYPE, new MetricsDeserializer());
+        builder.registerTypeAdapter(MetricData.class, new MetricDataDeserializer());
+        builder.registerTypeAdapter(MetricSeriesData.class, new MetricSeriesDataTypeAdapter());
+        builder.registerTypeAdapter(Deployment.class, new DeploymentSerializer());
+        builder.registerTypeAdapter(Deployment.class, new DeploymentDeserializer());
+        builder.registerTypeAdapter(DEPLOYMENTS_TYPE, new DeploymentsDeserializer());
+        builder.registerTypeAdapter(Label.class, new LabelSerializer());
+        builder.registerTypeAdapter(Label.class, new LabelDeserializer());
+        builder.registerTypeAdapter(LABELS_TYPE, new LabelsDeserializer());
+        builder.registerTypeAdapter(User.class, new UserDeserializer());
+        builder.registerTypeAdapter(USERS_TYPE, new UsersDeserializer());
+        builder.registerTypeAdapter(UsageData.class, new UsageDataDeserializer());
+        builder.registerTypeAdapter(PARTNER_ACCOUNTS_TYPE, new PartnerAccountsDeserializer());
+        builder.registerTypeAdapter(PartnerUser.class, new PartnerUserSerializer());
+        builder.registerTypeAdapter(PARTNER_USERS_TYPE, new PartnerUsersDeserializer());
+        builder.registerTypeAdapter(PARTNER_SUBSCRIPTIONS_TYPE, new PartnerSubscriptionsDeserializer());
+        builder.registerTypeAdapter(PRODUCT_SUBSCRIPTIONS_TYPE, new ProductSubscriptionsSerializer());
+        builder.registerTypeAdapter(Monitor.class, new MonitorDeserializer());
+        builder.registerTypeAdapter(MONITORS_TYPE, new MonitorsDeserializer());
+        builder.registerTypeAdapter(Dashboard.class, new DashboardSerializer());
+        builder.registerTypeAdapter(Dashboard.class, new DashboardDeserializer());
+        builder.registerTypeAdapter(DASHBOARDS_TYPE, new DashboardsDeserializer());
+        builder.registerTypeAdapter(Widget.class, new WidgetDeserializer());
+        builder.registerTypeAdapter(WidgetData.class, new WidgetDataDeserializer());
+        builder.registerTypeAdapter(Presentation.class, new PresentationDeserializer());
+
+        return builder.create();
+    }
+
+    /**
+     * Holder for the base Gson object.
+     * <P>
+     * Kept in a separate class so that the serializers and deserializers
+     * can be loaded without loading the registry itself.
+     */
+    private static class Base
+    {
+        private static final Gson GSON = new GsonBuilder()
+            .registerTypeAdapterFactory(new ModelTypeAdapterFactory())
+            .create();
+    }
+}
@@ -36,4 +36,52 @@ public interface HttpClientProvider
      * @return the http client
      */
     public Client getClient();
-}
\ No newline at end of file
+
+    /**
+     * Sets the pool of persistent connections to be used by the http client.
+     * <P>
+     * If not set, the http client will use a non-pooled connector.
+     * The default implementation throws an exception, as the provider does not support pooling.
+     * @param pool The connection pool
+     * @throws UnsupportedOperationException if the provider does not support pooling
+     */
+    public default void setConnectionPool(ConnectionPool pool)
+    {
+        throw new UnsupportedOperationException("setConnectionPool");
+    }
+
+    /**
+     * Returns the pool of persistent connections used by the http client.
+     * <P>
+     * The default implementation returns <CODE>null</CODE>.
+     * @return The connection pool, or <CODE>null</CODE> if the http client is not pooled
+     */
+    public default ConnectionPool getConnectionPool()
+    {
+        return null;
+    }
+
+    /**
+     * Sets the limiter used for the rate and concurrency of the requests made by the http client.
+     * <P>
+     * If not set, the requests are not limited.
+     * The default implementation throws an exception, as the provider does not support limiting.
+     * @param limiter The rate limiter
+     * @throws UnsupportedOperationException if the provider does not support limiting
+     */
+    public default void setRateLimiter(RateLimiter limiter)
+    {
+        throw new UnsupportedOperationException("setRateLimiter");
+    }
+
+    /**
+     * Returns the limiter used for the rate and concurrency of the requests made by the http client.
+     * <P>
+     * The default implementation returns <CODE>null</CODE>.
+     * @return The rate limiter, or <CODE>null</CODE> if the requests are not limited
+     */
+    public default RateLimiter getRateLimiter()
+    {
+        return null;
+    }
+}
@@ -0,0 +1,825 @@
+/*
+ * Copyright 2018 Gerald Curley
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.opsmatters.newrelic.api.httpclient;
+
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Pattern;
+import java.util.logging.Logger;
+import java.util.logging.Level;
+
+/**
+ * Represents a limit on the rate and concurrency of the requests made with an API key.
+ * <P>
+ * Requests are limited by a token bucket with the given rate and burst size, and by a maximum number of requests
+ * in flight. Callers that would exceed either limit wait in a queue and are let through in the order they arrived,
+ * either by blocking in {@link #acquire()} or by a future from {@link #acquireAsync()}.
+ * A request is in flight until its permit is released, which should be after the body of the response has been read.
+ * <P>
+ * In adaptive mode the number of requests in flight is adjusted by AIMD (additive increase, multiplicative decrease):
+ * the limit is reduced when a request is throttled with a 429 response or its latency spikes
+ * over the average latency of the same endpoint, and increased slowly while requests succeed.
+ * <P>
+ * As New Relic applies its quotas per key, the same limiter should be given to the providers of all the clients
+ * that use the same key (eg. a NewRelicApi, a NewRelicInfraApi and a NewRelicSyntheticsApi).
+ *
+ * @author Gerald Curley (opsmatters)
+ */
+public class RateLimiter
+{
+    private static final Logger logger = Logger.getLogger(RateLimiter.class.getName());
+
+    /**
+     * The default maximum number of requests in flight.
+     */
+    public static final int DEFAULT_MAX_CONCURRENCY = 20;
+
+    /**
+     * The default minimum number of requests in flight in adaptive mode.
+     */
+    public static final int DEFAULT_MIN_CONCURRENCY = 1;
+
+    /**
+     * The default factor the concurrency limit is multiplied by when requests are throttled.
+     */
+    public static final double DEFAULT_BACKOFF_RATIO = 0.5d;
+
+    /**
+     * The default factor over the average latency at which a request is considered to be a latency spike.
+     */
+    public static final double DEFAULT_LATENCY_TOLERANCE = 3.0d;
+
+    /**
+     * The name of the request property that holds the permit for the request.
+     */
+    public static final String PERMIT = "com.opsmatters.newrelic.api.httpclient.permit";
+
+    private static final int TOO_MANY_REQUESTS = 429;
+    private static final double SMOOTHING = 0.1d;
+    private static final int MAX_ENDPOINTS = 1000;
+    private static final String ANY_ENDPOINT = "*";
+    private static final Pattern ID = Pattern.compile("/(\\d+|[0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12})(?=[/.]|$)");
+
+    private static ScheduledExecutorService scheduler;
+
+    private double rate = 0.0d;
+    private double burst = 1.0d;
+    private int maxConcurrency = DEFAULT_MAX_CONCURRENCY;
+    private int minConcurrency = DEFAULT_MIN_CONCURRENCY;
+    private boolean adaptive = false;
+    private double backoffRatio = DEFAULT_BACKOFF_RATIO;
+    private double latencyTolerance = DEFAULT_LATENCY_TOLERANCE;
+
+    private ReentrantLock lock = new ReentrantLock();
+    private LinkedList<Waiter> waiters = new LinkedList<Waiter>();
+    private int inFlight = 0;
+    private double limit = DEFAULT_MAX_CONCURRENCY;
+    private double tokens = 1.0d;
+    private long refilled = System.nanoTime();
+    private long decreased = refilled;
+    private Map<String,Double> latencies = new HashMap<String,Double>();
+    private long requests = 0L;
+    private long throttled = 0L;
+    private long spikes = 0L;
+    private long waited = 0L;
+
+    /**
+     * Default constructor.
+     */
+    public RateLimiter()
+    {
+    }
+
+    /**
+     * Sets the maximum rate of requests.
+     * @param rate The maximum number of requests per second, or 0 if the rate is not limited
+     */
+    public void setRate(double rate)
+    {
+        this.rate = rate;
+    }
+
+    /**
+     * Returns the maximum rate of requests.
+     * @return The maximum number of requests per second, or 0 if the rate is not limited
+     */
+    public double getRate()
+    {
+        return rate;
+    }
+
+    /**
+     * Sets the number of requests that can be made at once after a quiet period.
+     * @param burst The size of the token bucket
+     */
+    public void setBurst(int burst)
+    {
+        this.burst = Math.max(burst, 1);
+        this.tokens = this.burst;
+    }
+
+    /**
+     * Returns the number of requests that can be made at once after a quiet period.
+     * @return The size of the token bucket
+     */
+    public int getBurst()
+    {
+        return (int)burst;
+    }
+
+    /**
+     * Sets the maximum number of requests in flight.
+     * @param maxConcurrency The maximum number of requests in flight
+     */
+    public void setMaxConcurrency(int maxConcurrency)
+    {
+        this.maxConcurrency = Math.max(maxConcurrency, 1);
+        this.limit = this.maxConcurrency;
+    }
+
+    /**
+     * Returns the maximum number of requests in flight.
+     * @return The maximum number of requests in flight
+     */
+    public int getMaxConcurrency()
+    {
+        return maxConcurrency;
+    }
+
+    /**
+     * Sets the minimum number of requests in flight in adaptive mode.
+     * @param minConcurrency The minimum number of requests in flight
+     */
+    public void setMinConcurrency(int minConcurrency)
+    {
+        this.minConcurrency = Math.max(minConcurrency, 1);
+    }
+
+    /**
+     * Returns the minimum number of requests in flight in adaptive mode.
+     * @return The minimum number of requests in flight
+     */
+    public int getMinConcurrency()
+    {
+        return minConcurrency;
+    }
+
+    /**
+     * Set to <CODE>true</CODE> if the number of requests in flight should adapt to throttling and latency spikes.
+     * @param adaptive <CODE>true</CODE> if the number of requests in flight should be adaptive
+     */
+    public void setAdaptive(boolean adaptive)
+    {
+        this.adaptive = adaptive;
+    }
+
+    /**
+     * Returns <CODE>true</CODE> if the number of requests in flight adapts to throttling and latency spikes.
+     * @return <CODE>true</CODE> if the number of requests in flight is adaptive
+     */
+    public boolean isAdaptive()
+    {
+        return adaptive;
+    }
+
+    /**
+     * Sets the factor the concurrency limit is multiplied by when requests are throttled in adaptive mode.
+     * @param backoffRatio The factor the concurrency limit is multiplied by, between 0 and 1
+     */
+    public void setBackoffRatio(double backoffRatio)
+    {
+        this.backoffRatio = backoffRatio;
+    }
+
+    /**
+     * Returns the factor the concurrency limit is multiplied by when requests are throttled in adaptive mode.
+     * @return The factor the concurrency limit is multiplied by, between 0 and 1
+     */
+    public double getBackoffRatio()
+    {
+        return backoffRatio;
+    }
+
+    /**
+     * Sets the factor over the average latency at which a request is considered to be a latency spike.
+     * @param latencyTolerance The factor over the average latency, or 0 if latency spikes should be ignored
+     */
+    public void setLatencyTolerance(double latencyTolerance)
+    {
+        this.latencyTolerance = latencyTolerance;
+    }
+
+    /**
+     * Returns the factor over the average latency at which a request is considered to be a latency spike.
+     * @return The factor over the average latency, or 0 if latency spikes are ignored
+     */
+    public double getLatencyTolerance()
+    {
+        return latencyTolerance;
+    }
+
+    /**
+     * Waits until a request can be made within the limits.
+     * <P>
+     * Callers are let through in the order they called this method or {@link #acquireAsync()}.
+     * The returned permit must be released when the body of the response has been read.
+     * @return The permit for the request
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public Permit acquire() throws InterruptedException
+    {
+        CompletableFuture<Permit> future = acquireAsync();
+        try
+        {
+            return future.get();
+        }
+        catch(InterruptedException e)
+        {
+            // Hand back the slot if the permit was granted before the wait was cancelled
+            if(!future.cancel(false))
+            {
+                Permit permit = future.getNow(null);
+                if(permit != null)
+                    abandon(permit);
+            }
+            throw e;
+        }
+        catch(ExecutionException e)
+        {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Returns a future that is completed when a request can be made within the limits, without blocking the caller.
+     * <P>
+     * Callers are let through in the order they called this method or {@link #acquire()}.
+     * If the future is cancelled before it is completed, the caller gives up its turn.
+     * The permit must be released when the body of the response has been read.
+     * <P>
+     * A future that has to wait for a token is completed on a shared timer thread,
+     * so the stages that depend on it should not block.
+     * @return The future completed with the permit for the request
+     */
+    public CompletableFuture<Permit> acquireAsync()
+    {
+        Waiter waiter = new Waiter();
+        List<Waiter> granted;
+        lock.lock();
+        try
+        {
+            waiters.add(waiter);
+            granted = dispatch();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+        grant(granted);
+        return waiter.future;
+    }
+
+    /**
+     * Releases the given permit after the body of the response to the request has been read.
+     * <P>
+     * The latency of the request is not recorded, as the endpoint of the request is not known.
+     * @param permit The permit for the request
+     * @param status The status code of the response, or 0 if the request failed without a response
+     */
+    public void release(Permit permit, int status)
+    {
+        release(permit, null, status);
+    }
+
+    /**
+     * Releases the given permit after the body of the response to the request has been read.
+     * <P>
+     * Releasing a permit that has already been released has no effect.
+     * @param permit The permit for the request
+     * @param endpoint The endpoint of the request used to track its average latency (see {@link #getEndpoint}),
+     *      or <CODE>null</CODE> if the latency should not be recorded
+     * @param status The status code of the response, or 0 if the request failed without a response
+     */
+    public void release(Permit permit, String endpoint, int status)
+    {
+        long now = System.nanoTime();
+        long elapsed = now-permit.started;
+        List<Waiter> granted;
+        lock.lock();
+        try
+        {
+            if(permit.released)
+                return;
+            permit.released = true;
+            --inFlight;
+
+            boolean spike = false;
+            if(endpoint != null && status > 0 && status < 400)
+            {
+                if(!latencies.containsKey(endpoint) && latencies.size() >= MAX_ENDPOINTS)
+                    endpoint = ANY_ENDPOINT;
+                Double latency = latencies.get(endpoint);
+                spike = latencyTolerance > 0.0d && latency != null && elapsed > latency*latencyTolerance;
+                latencies.put(endpoint, latency == null ? elapsed : latency+SMOOTHING*(elapsed-latency));
+            }
+
+            if(status == TOO_MANY_REQUESTS)
+                ++throttled;
+            if(spike)
+                ++spikes;
+
+            if(adaptive)
+            {
+                if(status == TOO_MANY_REQUESTS || spike)
+                {
+                    // Only decrease once for the requests that were already in flight at the last decrease
+                    if(permit.started-decreased > 0L)
+                    {
+                        limit = Math.max(minConcurrency, limit*backoffRatio);
+                        decreased = now;
+                        if(logger.isLoggable(Level.FINE))
+                            logger.fine("Reduced concurrency limit to "+(int)limit+" after "+(spike ? "latency spike" : "429"));
+                    }
+                }
+                else if(status > 0 && status < 400)
+                {
+                    limit = Math.min(maxConcurrency, limit+1.0d/limit);
+                }
+            }
+
+            granted = dispatch();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+        grant(granted);
+    }
+
+    /**
+     * Hands back the slot of a permit that was granted after its caller stopped waiting.
+     * @param permit The permit that was not used
+     */
+    private void abandon(Permit permit)
+    {
+        List<Waiter> granted;
+        lock.lock();
+        try
+        {
+            if(permit.released)
+                return;
+            permit.released = true;
+            --inFlight;
+            --requests;
+            granted = dispatch();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+        grant(granted);
+    }
+
+    /**
+     * Takes the waiters at the head of the queue that can make a request within the concurrency limit,
+     * and reserves a token for each of them.
+     * <P>
+     * Must be called while holding the lock.
+     * @return The waiters that can make a request
+     */
+    private List<Waiter> dispatch()
+    {
+        List<Waiter> ret = null;
+        while(!waiters.isEmpty() && inFlight < (int)limit)
+        {
+            Waiter waiter = waiters.removeFirst();
+            if(waiter.future.isDone()) // Cancelled
+                continue;
+
+            ++inFlight;
+            ++requests;
+            waiter.delay = reserve();
+            if(ret == null)
+                ret = new ArrayList<Waiter>();
+            ret.add(waiter);
+        }
+        return ret;
+    }
+
+    /**
+     * Completes the futures of the given waiters once their tokens are available.
+     * <P>
+     * Must be called without holding the lock, as the futures run the stages that depend on them.
+     * @param granted The waiters that can make a request, or <CODE>null</CODE> if there are none
+     */
+    private void grant(List<Waiter> granted)
+    {
+        if(granted == null)
+            return;
+
+        for(final Waiter waiter : granted)
+        {
+            if(waiter.delay > 0L)
+            {
+                // Wait for the reserved token on the timer, the callers behind wait for later tokens
+                getScheduler().schedule(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        grant(waiter);
+                    }
+                }, waiter.delay, TimeUnit.NANOSECONDS);
+            }
+            else
+            {
+                grant(waiter);
+            }
+        }
+    }
+
+    /**
+     * Completes the future of the given waiter with a new permit,
+     * handing back the slot if the waiter has stopped waiting.
+     * @param waiter The waiter that can make a request
+     */
+    private void grant(Waiter waiter)
+    {
+        long now = System.nanoTime();
+        Permit permit = new Permit(this, now);
+        lock.lock();
+        try
+        {
+            waited += now-waiter.start;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+
+        if(!waiter.future.complete(permit))
+            abandon(permit);
+    }
+
+    /**
+     * Returns the timer used to complete the futures of waiters that have to wait for a token.
+     * @return The timer
+     */
+    private static synchronized ScheduledExecutorService getScheduler()
+    {
+        if(scheduler == null)
+        {
+            scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+            {
+                public Thread newThread(Runnable r)
+                {
+                    Thread thread = new Thread(r, "newrelic-rate-limiter");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return scheduler;
+    }
+
+    /**
+     * Returns the endpoint of a request with the given method and path, used to track its average latency.
+     * <P>
+     * The numeric and UUID ids in the path are replaced, so that the requests for different entities
+     * of the same type share an endpoint.
+     * @param method The HTTP method of the request
+     * @param path The path of the request
+     * @return The endpoint of the request
+     */
+    public static String getEndpoint(String method, String path)
+    {
+        return method+" "+ID.matcher(path != null ? path : "").replaceAll("/{id}");
+    }
+
+    /**
+     * Reserves the next token from the bucket, and returns the time until it is available.
+     * <P>
+     * The bucket can go into debt, so that each caller waits for its own token in order.
+     * @return The time until the token is available (in nanoseconds)
+     */
+    private long reserve()
+    {
+        if(rate <= 0.0d)
+            return 0L;
+
+        long now = System.nanoTime();
+        tokens = Math.min(burst, tokens+(now-refilled)*rate/1.0e9d);
+        refilled = now;
+        tokens -= 1.0d;
+        return tokens >= 0.0d ? 0L : (long)(-tokens*1.0e9d/rate);
+    }
+
+    /**
+     * Returns the current limit on the number of requests in flight.
+     * @return The current limit on the number of requests in flight
+     */
+    public int getLimit()
+    {
+        lock.lock();
+        try
+        {
+            return (int)limit;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of requests in flight.
+     * @return The number of requests in flight
+     */
+    public int getInFlight()
+    {
+        lock.lock();
+        try
+        {
+            return inFlight;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of callers waiting to make a request.
+     * @return The number of callers waiting
+     */
+    public int getQueued()
+    {
+        lock.lock();
+        try
+        {
+            int ret = 0;
+            for(Waiter waiter : waiters)
+            {
+                if(!waiter.future.isDone())
+                    ++ret;
+            }
+            return ret;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of requests made.
+     * @return The number of requests made
+     */
+    public long getRequests()
+    {
+        lock.lock();
+        try
+        {
+            return requests;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of requests throttled with a 429 response.
+     * @return The number of requests throttled
+     */
+    public long getThrottled()
+    {
+        lock.lock();
+        try
+        {
+            return throttled;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of requests whose latency was a spike over the average latency.
+     * @return The number of latency spikes
+     */
+    public long getLatencySpikes()
+    {
+        lock.lock();
+        try
+        {
+            return spikes;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the total time callers waited to make a request.
+     * @return The total time callers waited (in milliseconds)
+     */
+    public long getWaitTime()
+    {
+        lock.lock();
+        try
+        {
+            return TimeUnit.NANOSECONDS.toMillis(waited);
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns a string representation of the object.
+     */
+    @Override
+    public String toString()
+    {
+        return "RateLimiter [rate="+rate
+            +", burst="+(int)burst
+            +", maxConcurrency="+maxConcurrency
+            +", adaptive="+adaptive
+            +", limit="+getLimit()
+            +", inFlight="+getInFlight()
+            +", queued="+getQueued()
+            +", requests="+getRequests()
+            +", throttled="+getThrottled()
+            +", latencySpikes="+getLatencySpikes()
+            +", waitTime="+getWaitTime()
+            +"]";
+    }
+
+    /**
+     * Returns a builder for the rate limiter.
+     * @return The builder instance.
+     */
+    public static Builder builder()
+    {
+        return new Builder();
+    }
+
+    /**
+     * Builder to make rate limiter construction easier.
+     */
+    public static class Builder
+    {
+        private RateLimiter limiter = new RateLimiter();
+
+        /**
+         * Sets the maximum rate of requests.
+         * @param rate The maximum number of requests per second, or 0 if the rate is not limited
+         * @return This object
+         */
+        public Builder rate(double rate)
+        {
+            limiter.setRate(rate);
+            return this;
+        }
+
+        /**
+         * Sets the number of requests that can be made at once after a quiet period.
+         * @param burst The size of the token bucket
+         * @return This object
+         */
+        public Builder burst(int burst)
+        {
+            limiter.setBurst(burst);
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of requests in flight.
+         * @param maxConcurrency The maximum number of requests in flight
+         * @return This object
+         */
+        public Builder maxConcurrency(int maxConcurrency)
+        {
+            limiter.setMaxConcurrency(maxConcurrency);
+            return this;
+        }
+
+        /**
+         * Sets the minimum number of requests in flight in adaptive mode.
+         * @param minConcurrency The minimum number of requests in flight
+         * @return This object
+         */
+        public Builder minConcurrency(int minConcurrency)
+        {
+            limiter.setMinConcurrency(minConcurrency);
+            return this;
+        }
+
+        /**
+         * Set to <CODE>true</CODE> if the number of requests in flight should adapt to throttling and latency spikes.
+         * @param adaptive <CODE>true</CODE> if the number of requests in flight should be adaptive
+         * @return This object
+         */
+        public Builder adaptive(boolean adaptive)
+        {
+            limiter.setAdaptive(adaptive);
+            return this;
+        }
+
+        /**
+         * Sets the factor the concurrency limit is multiplied by when requests are throttled in adaptive mode.
+         * @param backoffRatio The factor the concurrency limit is multiplied by, between 0 and 1
+         * @return This object
+         */
+        public Builder backoffRatio(double backoffRatio)
+        {
+            limiter.setBackoffRatio(backoffRatio);
+            return this;
+        }
+
+        /**
+         * Sets the factor over the average latency at which a request is considered to be a latency spike.
+         * @param latencyTolerance The factor over the average latency, or 0 if latency spikes should be ignored
+         * @return This object
+         */
+        public Builder latencyTolerance(double latencyTolerance)
+        {
+            limiter.setLatencyTolerance(latencyTolerance);
+            return this;
+        }
+
+        /**
+         * Returns the configured rate limiter instance
+         * @return The rate limiter instance
+         */
+        public RateLimiter build()
+        {
+            return limiter;
+        }
+    }
+
+    /**
+     * Represents the permission to make a request.
+     */
+    public static class Permit
+    {
+        private RateLimiter limiter;
+        private long started;
+        private boolean released = false;
+
+        Permit(RateLimiter limiter, long started)
+        {
+            this.limiter = limiter;
+            this.started = started;
+        }
+
+        /**
+         * Releases the permit after the body of the response to the request has been read.
+         * @param endpoint The endpoint of the request used to track its average latency,
+         *      or <CODE>null</CODE> if the latency should not be recorded
+         * @param status The status code of the response, or 0 if the request failed without a response
+         */
+        public void release(String endpoint, int status)
+        {
+            limiter.release(this, endpoint, status);
+        }
+    }
+
+    /**
+     * A caller waiting to make a request.
+     */
+    private static class Waiter
+    {
+        private CompletableFuture<Permit> future = new CompletableFuture<Permit>();
+        private long start = System.nanoTime();
+        private long delay = 0L;
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2018 Gerald Curley
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.opsmatters.newrelic.api.httpclient.adapters;
+
+import java.io.IOException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+/**
+ * Base class for the type adapters that stream the model classes.
+ * <P>
+ * The helper methods read a value of the given type, returning <CODE>null</CODE> for a JSON null.
+ * 
+ * @author Gerald Curley (opsmatters)
+ */
+public abstract class BaseTypeAdapter<T> extends TypeAdapter<T>
+{
+    /**
+     * Returns <CODE>true</CODE> and consumes the value if the next value is a JSON null.
+     * @param in The JSON reader
+     * @return <CODE>true</CODE> if the next value was a JSON null
+     * @throws IOException if the value could not be read
+     */
+    protected boolean isNull(JsonReader in) throws IOException
+    {
+        if(in.peek() == JsonToken.NULL)
+        {
+            in.nextNull();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Reads the next value as a string.
+     * @param in The JSON reader
+     * @return The string value, or <CODE>null</CODE> if the value was a JSON null
+     * @throws IOException if the value could not be read
+     */
+    protected String nextString(JsonReader in) throws IOException
+    {
+        if(isNull(in))
+            return null;
+        if(in.peek() == JsonToken.BOOLEAN)
+            return Boolean.toString(in.nextBoolean());
+        return in.nextString();
+    }
+
+    /**
+     * Reads the next value as a long.
+     * @param in The JSON reader
+     * @return The long value, or <CODE>null</CODE> if the value was a JSON null
+     * @throws IOException if the value could not be read
+     */
+    protected Long nextLong(JsonReader in) throws IOException
+    {
+        if(isNull(in))
+            return null;
+        return in.nextLong();
+    }
+
+    /**
+     * Reads the next value as an integer.
+     * @param in The JSON reader
+     * @return The integer value, or <CODE>null</CODE> if the value was a JSON null
+     * @throws IOException if the value could not be read
+     */
+    protected Integer nextInteger(JsonReader in) throws IOException
+    {
+        if(isNull(in))
+            return null;
+        return in.nextInt();
+    }
+
+    /**
+     * Reads the next value as a double.
+     * @param in The JSON reader
+     * @return The double value, or <CODE>null</CODE> if the value was a JSON null
+     * @throws IOException if the value could not be read
+     */
+    protected Double nextDouble(JsonReader in) throws IOException
+    {
+        if(isNull(in))
+            return null;
+        return in.nextDouble();
+    }
+
+    /**
+     * Reads the next value as a boolean.
+     * @param in The JSON reader
+     * @return The boolean value, or <CODE>null</CODE> if the value was a JSON null
+     * @throws IOException if the value could not be read
+     */
+    protected Boolean nextBoolean(JsonReader in) throws IOException
+    {
+        if(isNull(in))
+            return null;
+        if(in.peek() == JsonToken.STRING)
+            return Boolean.parseBoolean(in.nextString());
+        return in.nextBoolean();
+    }
+}
@@ -0,0 +1,385 @@
+/*
+ * Copyright 2018 Gerald Curley
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.opsmatters.newrelic.api.httpclient.adapters;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import com.opsmatters.newrelic.api.model.metrics.MetricSeries;
+import com.opsmatters.newrelic.api.model.metrics.MetricSeriesData;
+
+/**
+ * Type adapter class for metric data held in columns of primitive values.
+ * <P>
+ * The columns are filled directly from the stream of "metric_data" JSON,
+ * without creating an object for each timeslice.
+ * 
+ * @author Gerald Curley (opsmatters)
+ */
+public class MetricSeriesDataTypeAdapter extends BaseTypeAdapter<MetricSeriesData>
+{
+    private static final int INITIAL_CAPACITY = 64;
+
+    /**
+     * Reads the metric data from the given JSON reader.
+     * <P>
+     * The metric data can be either wrapped in a "metric_data" element or unwrapped.
+     * @param in The JSON reader
+     * @return The metric data
+     * @throws IOException if the metric data could not be read
+     */
+    @Override
+    public MetricSeriesData read(JsonReader in) throws IOException
+    {
+        if(isNull(in))
+            return null;
+
+        MetricSeriesData ret = new MetricSeriesData();
+        readFields(in, ret);
+        return ret;
+    }
+
+    /**
+     * Reads the fields of the metric data from the given JSON reader.
+     * @param in The JSON reader
+     * @param data The metric data to populate
+     * @throws IOException if the metric data could not be read
+     */
+    private void readFields(JsonReader in, MetricSeriesData data) throws IOException
+    {
+        in.beginObject();
+        while(in.hasNext())
+        {
+            switch(in.nextName())
+            {
+                case "metric_data":
+                    if(!isNull(in))
+                        readFields(in, data);
+                    break;
+                case "from":
+                    data.setFrom(readDate(in));
+                    break;
+                case "to":
+                    data.setTo(readDate(in));
+                    break;
+                case "metrics_found":
+                    data.setMetricsFound(readStrings(in));
+                    break;
+                case "metrics_not_found":
+                    data.setMetricsNotFound(readStrings(in));
+                    break;
+                case "metrics":
+                    if(!isNull(in))
+                    {
+                        in.beginArray();
+                        while(in.hasNext())
+                            data.getMetrics().add(readSeries(in));
+                        in.endArray();
+                    }
+                    break;
+                default:
+                    in.skipValue();
+            }
+        }
+        in.endObject();
+    }
+
+    /**
+     * Reads the timeslices of a metric into columns of values.
+     * @param in The JSON reader
+     * @return The columns of values for the metric
+     * @throws IOException if the metric could not be read
+     */
+    private MetricSeries readSeries(JsonReader in) throws IOException
+    {
+        String name = null;
+        int size = 0;
+        long[] from = new long[INITIAL_CAPACITY];
+        long[] to = new long[INITIAL_CAPACITY];
+        Map<String,double[]> values = new LinkedHashMap<String,double[]>();
+
+        in.beginObject();
+        while(in.hasNext())
+        {
+            switch(in.nextName())
+            {
+                case "name":
+                    name = nextString(in);
+                    break;
+                case "timeslices":
+                    if(isNull(in))
+                        break;
+                    in.beginArray();
+                    while(in.hasNext())
+                    {
+                        if(size == from.length)
+                        {
+                            int capacity = from.length*2;
+                            from = Arrays.copyOf(from, capacity);
+                            to = Arrays.copyOf(to, capacity);
+                            for(Map.Entry<String,double[]> entry : values.entrySet())
+                                entry.setValue(grow(entry.getValue(), capacity));
+                        }
+                        readTimeslice(in, size, from, to, values);
+                        ++size;
+                    }
+                    in.endArray();
+                    break;
+                default:
+                    in.skipValue();
+            }
+        }
+        in.endObject();
+
+        // Trim the columns to the number of timeslices
+        for(Map.Entry<String,double[]> entry : values.entrySet())
+            entry.setValue(Arrays.copyOf(entry.getValue(), size));
+        return new MetricSeries(name, Arrays.copyOf(from, size), Arrays.copyOf(to, size), values);
+    }
+
+    /**
+     * Reads a timeslice into the given index of the columns of values.
+     * @param in The JSON reader
+     * @param index The index of the timeslice
+     * @param from The start times of the timeslices
+     * @param to The end times of the timeslices
+     * @param values The values of the timeslices, keyed by value name
+     * @throws IOException if the timeslice could not be read
+     */
+    private void readTimeslice(JsonReader in, int index, long[] from, long[] to, Map<String,double[]> values)
+        throws IOException
+    {
+        in.beginObject();
+        while(in.hasNext())
+        {
+            switch(in.nextName())
+            {
+                case "from":
+                    from[index] = readTime(in);
+                    break;
+                case "to":
+                    to[index] = readTime(in);
+                    break;
+                case "values":
+                    if(isNull(in))
+                        break;
+                    in.beginObject();
+                    while(in.hasNext())
+                    {
+                        String name = in.nextName();
+                        if(in.peek() != JsonToken.NUMBER)
+                        {
+                            in.skipValue();
+                            continue;
+                        }
+
+                        double[] column = values.get(name);
+                        if(column == null) // A new value name, so the earlier timeslices are NaN
+                        {
+                            column = grow(new double[0], from.length);
+                            values.put(name, column);
+                        }
+                        column[index] = in.nextDouble();
+                    }
+                    in.endObject();
+                    break;
+                default:
+                    in.skipValue();
+            }
+        }
+        in.endObject();
+    }
+
+    /**
+     * Returns a copy of the given column with the given capacity.
+     * <P>
+     * The new entries are filled with NaN, so that values that are not present in a timeslice are NaN.
+     * @param column The column of values
+     * @param capacity The capacity of the new column
+     * @return The new column
+     */
+    private static double[] grow(double[] column, int capacity)
+    {
+        double[] ret = Arrays.copyOf(column, capacity);
+        Arrays.fill(ret, column.length, capacity, Double.NaN);
+        return ret;
+    }
+
+    /**
+     * Reads a date as epoch milliseconds.
+     * @param in The JSON reader
+     * @return The date (in epoch milliseconds), or 0 if the value was a JSON null
+     * @throws IOException if the date could not be read
+     */
+    private long readTime(JsonReader in) throws IOException
+    {
+        String value = nextString(in);
+        if(value == null)
+            return 0L;
+
+        try
+        {
+            return OffsetDateTime.parse(value).toInstant().toEpochMilli();
+        }
+        catch(DateTimeParseException e)
+        {
+            throw new JsonSyntaxException("Invalid date: "+value, e);
+        }
+    }
+
+    /**
+     * Reads a date.
+     * @param in The JSON reader
+     * @return The date, or <CODE>null</CODE> if the value was a JSON null
+     * @throws IOException if the date could not be read
+     */
+    private Date readDate(JsonReader in) throws IOException
+    {
+        if(isNull(in))
+            return null;
+        return new Date(readTime(in));
+    }
+
+    /**
+     * Reads an array of strings.
+     * @param in The JSON reader
+     * @return The list of strings, or <CODE>null</CODE> if the value was a JSON null
+     * @throws IOException if the strings could not be read
+     */
+    private List<String> readStrings(JsonReader in) throws IOException
+    {
+        if(isNull(in))
+            return null;
+
+        List<String> ret = new ArrayList<String>();
+        in.beginArray();
+        while(in.hasNext())
+            ret.add(nextString(in));
+        in.endArray();
+        return ret;
+    }
+
+    /**
+     * Writes the given metric data to the JSON writer.
+     * <P>
+     * The metric data is written in the unwrapped "metric_data" format.
+     * @param out The JSON writer
+     * @param data The metric data
+     * @throws IOException if the metric data could not be written
+     */
+    @Override
+    public void write(JsonWriter out, MetricSeriesData data) throws IOException
+    {
+        if(data == null)
+        {
+            out.nullValue();
+            return;
+        }
+
+        out.beginObject();
+        if(data.getFrom() != null)
+            out.name("from").value(formatTime(data.getFrom().getTime()));
+        if(data.getTo() != null)
+            out.name("to").value(formatTime(data.getTo().getTime()));
+        out.name("metrics_found");
+        writeStrings(out, data.getMetricsFound());
+        out.name("metrics_not_found");
+        writeStrings(out, data.getMetricsNotFound());
+        out.name("metrics");
+        out.beginArray();
+        for(MetricSeries metric : data.getMetrics())
+            writeSeries(out, metric);
+        out.endArray();
+        out.endObject();
+    }
+
+    /**
+     * Writes the given metric as an array of timeslices.
+     * @param out The JSON writer
+     * @param metric The columns of values for the metric
+     * @throws IOException if the metric could not be written
+     */
+    private void writeSeries(JsonWriter out, MetricSeries metric) throws IOException
+    {
+        out.beginObject();
+        out.name("name").value(metric.getName());
+        out.name("timeslices");
+        out.beginArray();
+        for(int i = 0; i < metric.size(); i++)
+        {
+            out.beginObject();
+            out.name("from").value(formatTime(metric.getFrom(i)));
+            out.name("to").value(formatTime(metric.getTo(i)));
+            out.name("values");
+            out.beginObject();
+            for(String name : metric.getValueNames())
+            {
+                double value = metric.getValue(name, i);
+                if(!Double.isNaN(value))
+                    out.name(name).value(value);
+            }
+            out.endObject();
+            out.endObject();
+        }
+        out.endArray();
+        out.endObject();
+    }
+
+    /**
+     * Writes the given list of strings as an array.
+     * @param out The JSON writer
+     * @param values The list of strings
+     * @throws IOException if the strings could not be written
+     */
+    private void writeStrings(JsonWriter out, List<String> values) throws IOException
+    {
+        if(values == null)
+        {
+            out.nullValue();
+            return;
+        }
+
+        out.beginArray();
+        for(String value : values)
+            out.value(value);
+        out.endArray();
+    }
+
+    /**
+     * Returns the given epoch milliseconds formatted as an ISO8601 date with an offset.
+     * @param time The date (in epoch milliseconds)
+     * @return The formatted date
+     */
+    private static String formatTime(long time)
+    {
+        return OffsetDateTime.ofInstant(Instant.ofEpochMilli(time), ZoneOffset.UTC)
+            .format(DateTimeFormatter.ISO_OFFSET_DATE_TIME);
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2018 Gerald Curley
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.opsmatters.newrelic.api.httpclient.adapters;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.opsmatters.newrelic.api.model.insights.QueryResult;
+
+/**
+ * Factory that provides the type adapters used to stream model classes that are not bound field by field.
+ * <P>
+ * Only the exact model classes are matched, so any subclasses are still bound using reflection.
+ * Types without an adapter are left to the default Gson binding.
+ * 
+ * @author Gerald Curley (opsmatters)
+ */
+public class ModelTypeAdapterFactory implements TypeAdapterFactory
+{
+    /**
+     * Returns the type adapter for the given type.
+     * @param <T> The type parameter of the type
+     * @param gson The Gson object used to look up the adapters for nested types
+     * @param type The type to be bound
+     * @return The type adapter, or <CODE>null</CODE> if the type is not supported by this factory
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type)
+    {
+        Class<? super T> rawType = type.getRawType();
+        TypeAdapter<?> ret = null;
+
+        if(rawType == QueryResult.class)
+            ret = new QueryResultTypeAdapter(gson.getAdapter(Object.class));
+
+        return (TypeAdapter<T>)ret;
+    }
+}
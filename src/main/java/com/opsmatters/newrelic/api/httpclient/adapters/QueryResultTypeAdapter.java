@@ -0,0 +1,775 @@
+/*
+ * Copyright 2018 Gerald Curley
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.opsmatters.newrelic.api.httpclient.adapters;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Map;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import com.opsmatters.newrelic.api.model.insights.QueryResult;
+
+/**
+ * Type adapter class for the columnar result of an Insights NRQL query.
+ * <P>
+ * The response is decoded as it is read, with the values of the facets, time buckets and totals
+ * added straight to primitive arrays, so no intermediate maps or boxed values are created.
+ * The columns are named from the first set of results in the response that is not empty.
+ * <P>
+ * A facet or time bucket without any results is given NaN values, so that the later values stay in line.
+ * For a query with a COMPARE WITH clause, the current results are decoded into the query result
+ * and the previous results into the result returned by {@link QueryResult#getPrevious()}.
+ * 
+ * @author Gerald Curley (opsmatters)
+ */
+public class QueryResultTypeAdapter extends BaseTypeAdapter<QueryResult>
+{
+    private TypeAdapter<Object> objectAdapter;
+
+    /**
+     * Constructor that takes the adapter for the events.
+     * @param objectAdapter The adapter used to read the attributes of each event
+     */
+    public QueryResultTypeAdapter(TypeAdapter<Object> objectAdapter)
+    {
+        this.objectAdapter = objectAdapter;
+    }
+
+    /**
+     * Reads the query result from the given JSON reader.
+     * @param in The JSON reader
+     * @return The query result
+     * @throws IOException if the query result could not be read
+     */
+    @Override
+    public QueryResult read(JsonReader in) throws IOException
+    {
+        if(isNull(in))
+            return null;
+
+        Decoder decoder = new Decoder();
+        QueryResult ret = new QueryResult();
+        Decoder previousDecoder = null;
+        QueryResult previous = null;
+        in.beginObject();
+        while(in.hasNext())
+        {
+            String name = in.nextName();
+            switch(name)
+            {
+                case "current":
+                    readComparison(in, decoder, ret);
+                    break;
+                case "previous":
+                    previousDecoder = new Decoder();
+                    previous = new QueryResult();
+                    readComparison(in, previousDecoder, previous);
+                    break;
+                case "metadata":
+                    readMetadata(in, ret);
+                    break;
+                case "performanceStats":
+                    readPerformanceStats(in, ret);
+                    break;
+                default:
+                    readField(in, name, decoder, ret);
+            }
+        }
+        in.endObject();
+
+        decoder.finish(ret);
+        if(previous != null)
+        {
+            previous.setFacetAttributes(ret.getFacetAttributes());
+            previous.setEventTypes(ret.getEventTypes());
+            previousDecoder.finish(previous);
+            ret.setPrevious(previous);
+        }
+        return ret;
+    }
+
+    /**
+     * Reads a field of the results of the query.
+     * @param in The JSON reader
+     * @param name The name of the field
+     * @param decoder The decoder for the results
+     * @param result The query result
+     * @throws IOException if the field could not be read
+     */
+    private void readField(JsonReader in, String name, Decoder decoder, QueryResult result) throws IOException
+    {
+        switch(name)
+        {
+            case "results":
+                decoder.readResults(in, decoder.values);
+                decoder.simple = true;
+                break;
+            case "timeSeries":
+                result.setTimeseries(true);
+                decoder.readSeries(in);
+                break;
+            case "facets":
+                decoder.readFacets(in, result);
+                break;
+            case "total":
+            case "totalResult":
+                decoder.readTotal(in);
+                break;
+            default:
+                in.skipValue();
+        }
+    }
+
+    /**
+     * Reads the current or previous results of a query with a COMPARE WITH clause.
+     * @param in The JSON reader
+     * @param decoder The decoder for the results
+     * @param result The query result
+     * @throws IOException if the results could not be read
+     */
+    private void readComparison(JsonReader in, Decoder decoder, QueryResult result) throws IOException
+    {
+        if(isNull(in))
+            return;
+
+        in.beginObject();
+        while(in.hasNext())
+            readField(in, in.nextName(), decoder, result);
+        in.endObject();
+    }
+
+    /**
+     * Reads the metadata of the query.
+     * @param in The JSON reader
+     * @param result The query result
+     * @throws IOException if the metadata could not be read
+     */
+    private void readMetadata(JsonReader in, QueryResult result) throws IOException
+    {
+        if(isNull(in))
+            return;
+
+        long beginTime = result.getBeginTime();
+        long endTime = result.getEndTime();
+        in.beginObject();
+        while(in.hasNext())
+        {
+            switch(in.nextName())
+            {
+                case "beginTimeMillis":
+                    beginTime = nextLong(in, beginTime);
+                    break;
+                case "endTimeMillis":
+                    endTime = nextLong(in, endTime);
+                    break;
+                case "facet":
+                    result.setFacetAttributes(nextStrings(in));
+                    break;
+                case "eventType":
+                case "eventTypes":
+                    result.setEventTypes(nextStrings(in));
+                    break;
+                default:
+                    in.skipValue();
+            }
+        }
+        in.endObject();
+        result.setWindow(beginTime, endTime);
+    }
+
+    /**
+     * Reads the performance stats of the query.
+     * @param in The JSON reader
+     * @param result The query result
+     * @throws IOException if the performance stats could not be read
+     */
+    private void readPerformanceStats(JsonReader in, QueryResult result) throws IOException
+    {
+        if(isNull(in))
+            return;
+
+        in.beginObject();
+        while(in.hasNext())
+        {
+            if(in.nextName().equals("inspectedCount"))
+                result.setInspectedCount(nextLong(in, 0L));
+            else
+                in.skipValue();
+        }
+        in.endObject();
+    }
+
+    /**
+     * Reads the next value as a long, returning the given default for a JSON null.
+     * @param in The JSON reader
+     * @param defaultValue The value to return for a JSON null
+     * @return The long value
+     * @throws IOException if the value could not be read
+     */
+    private long nextLong(JsonReader in, long defaultValue) throws IOException
+    {
+        if(isNull(in))
+            return defaultValue;
+        return (long)in.nextDouble();
+    }
+
+    /**
+     * Reads the next value as an array of strings, from either a string or an array of strings.
+     * @param in The JSON reader
+     * @return The strings
+     * @throws IOException if the value could not be read
+     */
+    private String[] nextStrings(JsonReader in) throws IOException
+    {
+        List<String> ret = new ArrayList<String>();
+        if(in.peek() == JsonToken.BEGIN_ARRAY)
+        {
+            in.beginArray();
+            while(in.hasNext())
+                ret.add(nextString(in));
+            in.endArray();
+        }
+        else
+        {
+            String value = nextString(in);
+            if(value != null)
+                ret.add(value);
+        }
+        return ret.toArray(new String[ret.size()]);
+    }
+
+    /**
+     * Writes the given query result to the JSON writer, in the same form as the response.
+     * @param out The JSON writer
+     * @param result The query result
+     * @throws IOException if the query result could not be written
+     */
+    @Override
+    public void write(JsonWriter out, QueryResult result) throws IOException
+    {
+        if(result == null)
+        {
+            out.nullValue();
+            return;
+        }
+
+        out.beginObject();
+        if(result.getPrevious() != null)
+        {
+            out.name("current");
+            out.beginObject();
+            writeBody(out, result);
+            out.endObject();
+            out.name("previous");
+            out.beginObject();
+            writeBody(out, result.getPrevious());
+            out.endObject();
+        }
+        else
+        {
+            writeBody(out, result);
+        }
+
+        out.name("performanceStats");
+        out.beginObject();
+        out.name("inspectedCount").value(result.getInspectedCount());
+        out.endObject();
+
+        out.name("metadata");
+        out.beginObject();
+        out.name("beginTimeMillis").value(result.getBeginTime());
+        out.name("endTimeMillis").value(result.getEndTime());
+        writeStrings(out, "facet", result.getFacetAttributes());
+        writeStrings(out, "eventTypes", result.getEventTypes());
+        out.endObject();
+
+        out.endObject();
+    }
+
+    /**
+     * Writes the facets, time buckets, totals or events of the given query result.
+     * @param out The JSON writer
+     * @param result The query result
+     * @throws IOException if the query result could not be written
+     */
+    private void writeBody(JsonWriter out, QueryResult result) throws IOException
+    {
+        if(result.isFaceted())
+        {
+            out.name("facets");
+            out.beginArray();
+            for(int f = 0; f < result.getFacetCount(); f++)
+            {
+                out.beginObject();
+                out.name("name").value(result.getFacets()[f]);
+                if(result.isTimeseries())
+                {
+                    out.name("timeSeries");
+                    writeSeries(out, result, f);
+                }
+                else
+                {
+                    out.name("results");
+                    writeResults(out, result.getColumns(), result.getValues(), f*result.getColumnCount());
+                }
+                out.endObject();
+            }
+            out.endArray();
+            out.name("totalResult");
+            writeTotal(out, result);
+        }
+        else if(result.isTimeseries())
+        {
+            out.name("timeSeries");
+            writeSeries(out, result, 0);
+            out.name("total");
+            writeTotal(out, result);
+        }
+        else if(result.getEvents() != null)
+        {
+            out.name("results");
+            out.beginArray();
+            out.beginObject();
+            out.name("events");
+            out.beginArray();
+            for(Map<String,Object> event : result.getEvents())
+                objectAdapter.write(out, event);
+            out.endArray();
+            out.endObject();
+            out.endArray();
+        }
+        else if(result.getColumnCount() > 0)
+        {
+            out.name("results");
+            writeResults(out, result.getColumns(), result.getValues(), 0);
+        }
+    }
+
+    /**
+     * Writes the time buckets of the given facet.
+     * @param out The JSON writer
+     * @param result The query result
+     * @param facet The index of the facet
+     * @throws IOException if the buckets could not be written
+     */
+    private void writeSeries(JsonWriter out, QueryResult result, int facet) throws IOException
+    {
+        int columns = result.getColumnCount();
+        out.beginArray();
+        for(int b = 0; b < result.getBucketCount(); b++)
+        {
+            out.beginObject();
+            out.name("results");
+            writeResults(out, result.getColumns(), result.getValues(), (facet*result.getBucketCount()+b)*columns);
+            out.name("beginTimeSeconds").value(result.getBeginTimes()[b]/1000L);
+            out.name("endTimeSeconds").value(result.getEndTimes()[b]/1000L);
+            out.endObject();
+        }
+        out.endArray();
+    }
+
+    /**
+     * Writes the totals of the query result.
+     * @param out The JSON writer
+     * @param result The query result
+     * @throws IOException if the totals could not be written
+     */
+    private void writeTotal(JsonWriter out, QueryResult result) throws IOException
+    {
+        out.beginObject();
+        out.name("results");
+        if(result.getTotals().length == result.getColumnCount())
+            writeResults(out, result.getColumns(), result.getTotals(), 0);
+        else
+            out.beginArray().endArray();
+        out.endObject();
+    }
+
+    /**
+     * Writes a set of results, with an object for each column.
+     * @param out The JSON writer
+     * @param columns The names of the columns
+     * @param values The values
+     * @param offset The index of the value of the first column
+     * @throws IOException if the results could not be written
+     */
+    private void writeResults(JsonWriter out, String[] columns, double[] values, int offset) throws IOException
+    {
+        out.beginArray();
+        for(int c = 0; c < columns.length; c++)
+        {
+            out.beginObject();
+            out.name(columns[c]);
+            double value = values[offset+c];
+            if(Double.isNaN(value) || Double.isInfinite(value))
+                out.nullValue();
+            else
+                out.value(value);
+            out.endObject();
+        }
+        out.endArray();
+    }
+
+    /**
+     * Writes the given strings as an array, if there are any.
+     * @param out The JSON writer
+     * @param name The name of the array
+     * @param values The strings
+     * @throws IOException if the strings could not be written
+     */
+    private void writeStrings(JsonWriter out, String name, String[] values) throws IOException
+    {
+        if(values.length == 0)
+            return;
+        out.name(name);
+        out.beginArray();
+        for(String value : values)
+            out.value(value);
+        out.endArray();
+    }
+
+    /**
+     * Holds the state of a query result while it is being decoded.
+     */
+    private class Decoder
+    {
+        private List<String> columns;
+        private Doubles values = new Doubles();
+        private Doubles totals;
+        private Longs beginTimes = new Longs();
+        private Longs endTimes = new Longs();
+        private List<String> facets = new ArrayList<String>();
+        private Ints rowStarts = new Ints();
+        private Ints facetRows = new Ints();
+        private List<Map<String,Object>> events;
+        private int buckets = -1;
+        private boolean simple = false;
+
+        /**
+         * Reads a set of results, adding a value for each column.
+         */
+        void readResults(JsonReader in, Doubles target) throws IOException
+        {
+            if(isNull(in))
+                return;
+
+            int start = target.size;
+            if(target == values)
+                rowStarts.add(start);
+            List<String> names = columns == null ? new ArrayList<String>() : null;
+            in.beginArray();
+            while(in.hasNext())
+            {
+                if(in.peek() != JsonToken.BEGIN_OBJECT)
+                {
+                    in.skipValue();
+                    continue;
+                }
+
+                in.beginObject();
+                while(in.hasNext())
+                {
+                    String name = in.nextName();
+                    if(name.equals("events") && in.peek() == JsonToken.BEGIN_ARRAY)
+                        readEvents(in);
+                    else
+                        readValue(in, name, target, names);
+                }
+                in.endObject();
+            }
+            in.endArray();
+
+            if(names != null && !names.isEmpty())
+                columns = names;
+
+            // Each set of results should have the same columns as the first
+            if(columns != null)
+                target.resize(start+columns.size());
+        }
+
+        /**
+         * Reads the value of an aggregate function, adding a column for each number in it.
+         */
+        void readValue(JsonReader in, String name, Doubles target, List<String> names) throws IOException
+        {
+            switch(in.peek())
+            {
+                case NUMBER:
+                    target.add(in.nextDouble());
+                    if(names != null)
+                        names.add(name);
+                    break;
+                case BEGIN_OBJECT:
+                    // eg. {"percentile":{"95":1.2,"99":3.4}}
+                    in.beginObject();
+                    while(in.hasNext())
+                        readValue(in, name+"."+in.nextName(), target, names);
+                    in.endObject();
+                    break;
+                default:
+                    in.skipValue();
+                    target.add(Double.NaN);
+                    if(names != null)
+                        names.add(name);
+            }
+        }
+
+        /**
+         * Reads the events of a query without aggregate functions.
+         */
+        @SuppressWarnings("unchecked")
+        void readEvents(JsonReader in) throws IOException
+        {
+            if(events == null)
+                events = new ArrayList<Map<String,Object>>();
+            in.beginArray();
+            while(in.hasNext())
+                events.add((Map<String,Object>)objectAdapter.read(in));
+            in.endArray();
+        }
+
+        /**
+         * Reads a set of time buckets, adding the values of each bucket.
+         * <P>
+         * The times of the buckets are taken from the first set, and any later set
+         * with a different number of buckets is padded with NaN or truncated.
+         */
+        void readSeries(JsonReader in) throws IOException
+        {
+            if(isNull(in))
+                return;
+
+            int start = values.size;
+            int count = 0;
+            in.beginArray();
+            while(in.hasNext())
+            {
+                in.beginObject();
+                while(in.hasNext())
+                {
+                    String name = in.nextName();
+                    if(name.equals("results"))
+                        readResults(in, values);
+                    else if(buckets < 0 && name.equals("beginTimeSeconds"))
+                        beginTimes.add(nextLong(in, 0L)*1000L);
+                    else if(buckets < 0 && name.equals("endTimeSeconds"))
+                        endTimes.add(nextLong(in, 0L)*1000L);
+                    else
+                        in.skipValue();
+                }
+                in.endObject();
+                ++count;
+            }
+            in.endArray();
+
+            if(buckets < 0)
+                buckets = count;
+            else if(count != buckets && columns != null)
+                values.resize(start+buckets*columns.size());
+        }
+
+        /**
+         * Reads the facets, adding the values of each facet.
+         */
+        void readFacets(JsonReader in, QueryResult result) throws IOException
+        {
+            if(isNull(in))
+                return;
+
+            in.beginArray();
+            while(in.hasNext())
+            {
+                String name = null;
+                facetRows.add(rowStarts.size);
+                in.beginObject();
+                while(in.hasNext())
+                {
+                    switch(in.nextName())
+                    {
+                        case "name":
+                            String[] keys = nextStrings(in);
+                            StringBuilder key = new StringBuilder();
+                            for(int i = 0; i < keys.length; i++)
+                                key.append(i > 0 ? ", " : "").append(keys[i]);
+                            name = key.toString();
+                            break;
+                        case "results":
+                            readResults(in, values);
+                            break;
+                        case "timeSeries":
+                            result.setTimeseries(true);
+                            readSeries(in);
+                            break;
+                        default:
+                            in.skipValue();
+                    }
+                }
+                in.endObject();
+                facets.add(name);
+            }
+            in.endArray();
+        }
+
+        /**
+         * Reads the totals of the query.
+         */
+        void readTotal(JsonReader in) throws IOException
+        {
+            if(isNull(in))
+                return;
+
+            in.beginObject();
+            while(in.hasNext())
+            {
+                String name = in.nextName();
+                if(name.equals("results"))
+                {
+                    totals = new Doubles();
+                    readResults(in, totals);
+                }
+                else if(name.equals("total"))
+                {
+                    readTotal(in);
+                }
+                else
+                {
+                    in.skipValue();
+                }
+            }
+            in.endObject();
+        }
+
+        /**
+         * Sets the decoded values on the query result.
+         */
+        void finish(QueryResult result)
+        {
+            if(columns != null && events == null)
+                align();
+            if(columns != null)
+                result.setColumns(columns.toArray(new String[columns.size()]));
+            result.setFacets(facets.toArray(new String[facets.size()]));
+            if(beginTimes.size > 0)
+                result.setBuckets(beginTimes.toArray(), endTimes.toArray());
+            else
+                result.setBuckets(new long[]{result.getBeginTime()}, new long[]{result.getEndTime()});
+            result.setValues(values.toArray());
+            if(totals != null)
+                result.setTotals(totals.toArray());
+            else if(simple && events == null)
+                result.setTotals(values.toArray());
+            result.setEvents(events);
+        }
+
+        /**
+         * Pads each facet or time bucket that had no results with NaN, so that the values of the later ones line up.
+         */
+        void align()
+        {
+            int width = columns.size();
+            int bucketCount = Math.max(buckets, 1);
+            int facetCount = Math.max(facets.size(), 1);
+            if(values.size == facetCount*bucketCount*width)
+                return;
+
+            Doubles aligned = new Doubles();
+            for(int f = 0; f < facetCount; f++)
+            {
+                int first = f < facetRows.size ? facetRows.data[f] : 0;
+                int last = f+1 < facetRows.size ? facetRows.data[f+1] : rowStarts.size;
+                for(int b = 0; b < bucketCount; b++)
+                {
+                    int row = first+b;
+                    int start = row < last ? rowStarts.data[row] : values.size;
+                    int end = row+1 < rowStarts.size ? Math.min(rowStarts.data[row+1], values.size) : values.size;
+                    for(int c = 0; c < width; c++)
+                        aligned.add(start+c < end ? values.data[start+c] : Double.NaN);
+                }
+            }
+            values = aligned;
+        }
+    }
+
+    /**
+     * A growable array of ints.
+     */
+    private static class Ints
+    {
+        private int[] data = new int[16];
+        private int size = 0;
+
+        void add(int value)
+        {
+            if(size == data.length)
+                data = Arrays.copyOf(data, size*2);
+            data[size++] = value;
+        }
+    }
+
+    /**
+     * A growable array of doubles.
+     */
+    private static class Doubles
+    {
+        private double[] data = new double[16];
+        private int size = 0;
+
+        void add(double value)
+        {
+            if(size == data.length)
+                data = Arrays.copyOf(data, size*2);
+            data[size++] = value;
+        }
+
+        void resize(int newSize)
+        {
+            while(size < newSize)
+                add(Double.NaN);
+            size = newSize;
+        }
+
+        double[] toArray()
+        {
+            return Arrays.copyOf(data, size);
+        }
+    }
+
+    /**
+     * A growable array of longs.
+     */
+    private static class Longs
+    {
+        private long[] data = new long[16];
+        private int size = 0;
+
+        void add(long value)
+        {
+            if(size == data.length)
+                data = Arrays.copyOf(data, size*2);
+            data[size++] = value;
+        }
+
+        long[] toArray()
+        {
+            return Arrays.copyOf(data, size);
+        }
+    }
+}
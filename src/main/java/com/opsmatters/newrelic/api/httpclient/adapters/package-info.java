@@ -0,0 +1,4 @@
+/**
+ * The type adapter classes used to stream the New Relic model.
+ */
+package com.opsmatters.newrelic.api.httpclient.adapters;
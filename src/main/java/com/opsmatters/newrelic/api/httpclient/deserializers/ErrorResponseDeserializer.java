@@ -22,6 +22,7 @@ import com.opsmatters.newrelic.api.model.ErrorResponse;
 import com.opsmatters.newrelic.api.model.ErrorDetail;
 import com.opsmatters.newrelic.api.model.ErrorDetails;
 import com.opsmatters.newrelic.api.model.ErrorMessages;
+import com.opsmatters.newrelic.api.httpclient.GsonRegistry;
 
 /**
  * Deserializer class for response errors.
@@ -30,7 +31,7 @@ import com.opsmatters.newrelic.api.model.ErrorMessages;
  */
 public class ErrorResponseDeserializer implements JsonDeserializer<ErrorResponse>
 {
-    private static Gson gson = new Gson();
+    private static Gson gson = GsonRegistry.getBaseGson();
 
     /**
      * Gson invokes this call-back method during deserialization when it encounters a field of the specified type.
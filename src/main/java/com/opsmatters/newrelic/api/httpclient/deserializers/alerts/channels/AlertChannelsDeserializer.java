@@ -33,6 +33,7 @@ import com.opsmatters.newrelic.api.model.alerts.channels.PagerDutyChannel;
 import com.opsmatters.newrelic.api.model.alerts.channels.CampfireChannel;
 import com.opsmatters.newrelic.api.model.alerts.channels.xMattersChannel;
 import com.opsmatters.newrelic.api.model.alerts.channels.WebhookChannel;
+import com.opsmatters.newrelic.api.httpclient.GsonRegistry;
 
 /**
  * Deserializer class for alert channels.
@@ -41,7 +42,7 @@ import com.opsmatters.newrelic.api.model.alerts.channels.WebhookChannel;
  */
 public class AlertChannelsDeserializer implements JsonDeserializer<Collection<AlertChannel>>
 {
-    private static Gson gson = new Gson();
+    private static Gson gson = GsonRegistry.getBaseGson();
 
     /**
      * Gson invokes this call-back method during deserialization when it encounters a field of the specified type.
@@ -28,6 +28,7 @@ import com.opsmatters.newrelic.api.model.alerts.conditions.ApmJvmAlertCondition;
 import com.opsmatters.newrelic.api.model.alerts.conditions.ServersAlertCondition;
 import com.opsmatters.newrelic.api.model.alerts.conditions.BrowserAlertCondition;
 import com.opsmatters.newrelic.api.model.alerts.conditions.MobileAlertCondition;
+import com.opsmatters.newrelic.api.httpclient.GsonRegistry;
 
 /**
  * Deserializer class for APM alert conditions.
@@ -36,7 +37,7 @@ import com.opsmatters.newrelic.api.model.alerts.conditions.MobileAlertCondition;
  */
 public class AlertConditionsDeserializer implements JsonDeserializer<Collection<AlertCondition>>
 {
-    private static Gson gson = new Gson();
+    private static Gson gson = GsonRegistry.getBaseGson();
 
     /**
      * Gson invokes this call-back method during deserialization when it encounters a field of the specified type.
@@ -21,6 +21,7 @@ import com.google.gson.*;
 import com.opsmatters.newrelic.api.model.alerts.conditions.ExternalServiceAlertCondition;
 import com.opsmatters.newrelic.api.model.alerts.conditions.ApmExternalServiceAlertCondition;
 import com.opsmatters.newrelic.api.model.alerts.conditions.MobileExternalServiceAlertCondition;
+import com.opsmatters.newrelic.api.httpclient.GsonRegistry;
 
 /**
  * Deserializer class for external service alert conditions.
@@ -29,7 +30,7 @@ import com.opsmatters.newrelic.api.model.alerts.conditions.MobileExternalService
  */
 public class ExternalServiceAlertConditionDeserializer implements JsonDeserializer<ExternalServiceAlertCondition>
 {
-    private static Gson gson = new Gson();
+    private static Gson gson = GsonRegistry.getBaseGson();
 
     /**
      * Gson invokes this call-back method during deserialization when it encounters a field of the specified type.
@@ -22,6 +22,7 @@ import com.opsmatters.newrelic.api.model.alerts.conditions.InfraAlertCondition;
 import com.opsmatters.newrelic.api.model.alerts.conditions.InfraMetricAlertCondition;
 import com.opsmatters.newrelic.api.model.alerts.conditions.InfraHostNotReportingAlertCondition;
 import com.opsmatters.newrelic.api.model.alerts.conditions.InfraProcessRunningAlertCondition;
+import com.opsmatters.newrelic.api.httpclient.GsonRegistry;
 
 /**
  * Deserializer class for infrastructure alert conditions.
@@ -30,7 +31,7 @@ import com.opsmatters.newrelic.api.model.alerts.conditions.InfraProcessRunningAl
  */
 public class InfraAlertConditionDeserializer implements JsonDeserializer<InfraAlertCondition>
 {
-    private static Gson gson = new Gson();
+    private static Gson gson = GsonRegistry.getBaseGson();
 
     /**
      * Gson invokes this call-back method during deserialization when it encounters a field of the specified type.
@@ -19,6 +19,7 @@ package com.opsmatters.newrelic.api.httpclient.deserializers.alerts.conditions;
 import java.lang.reflect.Type;
 import com.google.gson.*;
 import com.opsmatters.newrelic.api.model.alerts.conditions.NrqlAlertCondition;
+import com.opsmatters.newrelic.api.httpclient.GsonRegistry;
 
 /**
  * Deserializer class for NRQL alert conditions.
@@ -27,7 +28,7 @@ import com.opsmatters.newrelic.api.model.alerts.conditions.NrqlAlertCondition;
  */
 public class NrqlAlertConditionDeserializer implements JsonDeserializer<NrqlAlertCondition>
 {
-    private static Gson gson = new Gson();
+    private static Gson gson = GsonRegistry.getBaseGson();
 
     /**
      * Gson invokes this call-back method during deserialization when it encounters a field of the specified type.
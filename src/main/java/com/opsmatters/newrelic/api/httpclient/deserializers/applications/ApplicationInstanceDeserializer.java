@@ -19,6 +19,7 @@ package com.opsmatters.newrelic.api.httpclient.deserializers.applications;
 import java.lang.reflect.Type;
 import com.google.gson.*;
 import com.opsmatters.newrelic.api.model.applications.ApplicationInstance;
+import com.opsmatters.newrelic.api.httpclient.GsonRegistry;
 
 /**
  * Deserializer class for application instances.
@@ -27,7 +28,7 @@ import com.opsmatters.newrelic.api.model.applications.ApplicationInstance;
  */
 public class ApplicationInstanceDeserializer implements JsonDeserializer<ApplicationInstance>
 {
-    private static Gson gson = new Gson();
+    private static Gson gson = GsonRegistry.getBaseGson();
 
     /**
      * Gson invokes this call-back method during deserialization when it encounters a field of the specified type.
@@ -19,6 +19,7 @@ package com.opsmatters.newrelic.api.httpclient.deserializers.applications;
 import java.lang.reflect.Type;
 import com.google.gson.*;
 import com.opsmatters.newrelic.api.model.applications.MobileApplication;
+import com.opsmatters.newrelic.api.httpclient.GsonRegistry;
 
 /**
  * Deserializer class for Mobile applications.
@@ -27,7 +28,7 @@ import com.opsmatters.newrelic.api.model.applications.MobileApplication;
  */
 public class MobileApplicationDeserializer implements JsonDeserializer<MobileApplication>
 {
-    private static Gson gson = new Gson();
+    private static Gson gson = GsonRegistry.getBaseGson();
 
     /**
      * Gson invokes this call-back method during deserialization when it encounters a field of the specified type.
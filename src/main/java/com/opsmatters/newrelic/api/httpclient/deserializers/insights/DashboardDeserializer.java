@@ -16,11 +16,14 @@
 
 package com.opsmatters.newrelic.api.httpclient.deserializers.insights;
 
+import java.util.List;
+import java.util.Map;
 import java.lang.reflect.Type;
 import com.google.gson.*;
+import com.google.gson.reflect.TypeToken;
 import com.opsmatters.newrelic.api.model.insights.Dashboard;
 import com.opsmatters.newrelic.api.model.insights.widgets.Widget;
-import com.opsmatters.newrelic.api.httpclient.deserializers.insights.widgets.WidgetDeserializer;
+import com.opsmatters.newrelic.api.httpclient.GsonRegistry;
 
 /**
  * Deserializer class for dashboards.
@@ -29,9 +32,8 @@ import com.opsmatters.newrelic.api.httpclient.deserializers.insights.widgets.Wid
  */
 public class DashboardDeserializer implements JsonDeserializer<Dashboard>
 {
-    private static Gson gson =  new GsonBuilder()
-        .registerTypeAdapter(Widget.class, new WidgetDeserializer())
-        .create();
+    private static final Type WIDGETS_TYPE = new TypeToken<List<Widget>>(){}.getType();
+    private static Gson gson = GsonRegistry.getBaseGson();
 
     /**
      * Gson invokes this call-back method during deserialization when it encounters a field of the specified type.
@@ -47,7 +49,22 @@ public class DashboardDeserializer implements JsonDeserializer<Dashboard>
         JsonObject obj = element.getAsJsonObject();
         JsonElement dashboard = obj.get("dashboard");
         if(dashboard != null && dashboard.isJsonObject())
-            return gson.fromJson(dashboard, Dashboard.class);
-        return gson.fromJson(element, Dashboard.class);
+            obj = dashboard.getAsJsonObject();
+
+        // The widgets are deserialized using the context as they need the registered widget deserializers
+        JsonObject fields = new JsonObject();
+        JsonElement widgets = null;
+        for(Map.Entry<String,JsonElement> entry : obj.entrySet())
+        {
+            if(entry.getKey().equals(Dashboard.WIDGETS))
+                widgets = entry.getValue();
+            else
+                fields.add(entry.getKey(), entry.getValue());
+        }
+
+        Dashboard ret = gson.fromJson(fields, Dashboard.class);
+        if(widgets != null && widgets.isJsonArray())
+            ret.setWidgets(context.<List<Widget>>deserialize(widgets, WIDGETS_TYPE));
+        return ret;
     }
 }
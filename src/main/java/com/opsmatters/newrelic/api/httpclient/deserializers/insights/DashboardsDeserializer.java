@@ -30,8 +30,6 @@ import com.opsmatters.newrelic.api.model.insights.Dashboard;
  */
 public class DashboardsDeserializer implements JsonDeserializer<Collection<Dashboard>>
 {
-    private static Gson gson = new Gson();
-
     /**
      * Gson invokes this call-back method during deserialization when it encounters a field of the specified type.
      * @param element The Json data being deserialized
@@ -49,7 +47,7 @@ public class DashboardsDeserializer implements JsonDeserializer<Collection<Dashb
         if(dashboards != null && dashboards.isJsonArray())
         {
             for(JsonElement dashboard : dashboards)
-                values.add(gson.fromJson(dashboard, Dashboard.class));
+                values.add((Dashboard)context.deserialize(dashboard, Dashboard.class));
         }
         return values;
     }
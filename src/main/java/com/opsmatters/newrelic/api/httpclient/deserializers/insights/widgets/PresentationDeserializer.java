@@ -22,6 +22,7 @@ import com.opsmatters.newrelic.api.model.insights.widgets.Presentation;
 import com.opsmatters.newrelic.api.model.insights.widgets.ThresholdPresentation;
 import com.opsmatters.newrelic.api.model.insights.widgets.DrilldownPresentation;
 import com.opsmatters.newrelic.api.model.insights.widgets.TrafficLightPresentation;
+import com.opsmatters.newrelic.api.httpclient.GsonRegistry;
 
 /**
  * Deserializer class for insights widgets presentation.
@@ -30,7 +31,7 @@ import com.opsmatters.newrelic.api.model.insights.widgets.TrafficLightPresentati
  */
 public class PresentationDeserializer implements JsonDeserializer<Presentation>
 {
-    private static Gson gson = new Gson();
+    private static Gson gson = GsonRegistry.getBaseGson();
 
     /**
      * Gson invokes this call-back method during deserialization when it encounters a field of the specified type.
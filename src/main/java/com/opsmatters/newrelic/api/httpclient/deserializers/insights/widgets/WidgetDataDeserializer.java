@@ -23,6 +23,7 @@ import com.opsmatters.newrelic.api.model.insights.widgets.EventsData;
 import com.opsmatters.newrelic.api.model.insights.widgets.MetricsData;
 import com.opsmatters.newrelic.api.model.insights.widgets.MarkdownData;
 import com.opsmatters.newrelic.api.model.insights.widgets.InventoryData;
+import com.opsmatters.newrelic.api.httpclient.GsonRegistry;
 
 /**
  * Deserializer class for insights widgets data.
@@ -31,7 +32,7 @@ import com.opsmatters.newrelic.api.model.insights.widgets.InventoryData;
  */
 public class WidgetDataDeserializer implements JsonDeserializer<WidgetData>
 {
-    private static Gson gson = new Gson();
+    private static Gson gson = GsonRegistry.getBaseGson();
 
     /**
      * Gson invokes this call-back method during deserialization when it encounters a field of the specified type.
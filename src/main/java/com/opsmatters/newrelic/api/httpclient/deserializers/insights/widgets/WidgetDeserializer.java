@@ -27,10 +27,6 @@ import com.opsmatters.newrelic.api.model.insights.widgets.Markdown;
 import com.opsmatters.newrelic.api.model.insights.widgets.MetricLineChart;
 import com.opsmatters.newrelic.api.model.insights.widgets.ThresholdEventChart;
 import com.opsmatters.newrelic.api.model.insights.widgets.TrafficLightChart;
-import com.opsmatters.newrelic.api.model.insights.widgets.WidgetData;
-import com.opsmatters.newrelic.api.model.insights.widgets.Presentation;
-import com.opsmatters.newrelic.api.httpclient.deserializers.insights.widgets.WidgetDataDeserializer;
-import com.opsmatters.newrelic.api.httpclient.deserializers.insights.widgets.PresentationDeserializer;
 
 /**
  * Deserializer class for insights widgets.
@@ -39,11 +35,6 @@ import com.opsmatters.newrelic.api.httpclient.deserializers.insights.widgets.Pre
  */
 public class WidgetDeserializer implements JsonDeserializer<Widget>
 {
-    private static Gson gson =  new GsonBuilder()
-        .registerTypeAdapter(WidgetData.class, new WidgetDataDeserializer())
-        .registerTypeAdapter(Presentation.class, new PresentationDeserializer())
-        .create();
-
     /**
      * Gson invokes this call-back method during deserialization when it encounters a field of the specified type.
      * @param element The Json data being deserialized
@@ -60,21 +51,21 @@ public class WidgetDeserializer implements JsonDeserializer<Widget>
         if(visualization != null)
         {
             if(EventChart.Visualization.contains(visualization))
-                return gson.fromJson(obj, EventChart.class);
+                return context.deserialize(obj, EventChart.class);
             else if(BreakdownMetricChart.Visualization.contains(visualization))
-                return gson.fromJson(obj, BreakdownMetricChart.class);
+                return context.deserialize(obj, BreakdownMetricChart.class);
             else if(FacetChart.Visualization.contains(visualization))
-                return gson.fromJson(obj, FacetChart.class);
+                return context.deserialize(obj, FacetChart.class);
             else if(InventoryChart.Visualization.contains(visualization))
-                return gson.fromJson(obj, InventoryChart.class);
+                return context.deserialize(obj, InventoryChart.class);
             else if(Markdown.Visualization.contains(visualization))
-                return gson.fromJson(obj, Markdown.class);
+                return context.deserialize(obj, Markdown.class);
             else if(MetricLineChart.Visualization.contains(visualization))
-                return gson.fromJson(obj, MetricLineChart.class);
+                return context.deserialize(obj, MetricLineChart.class);
             else if(ThresholdEventChart.Visualization.contains(visualization))
-                return gson.fromJson(obj, ThresholdEventChart.class);
+                return context.deserialize(obj, ThresholdEventChart.class);
             else if(TrafficLightChart.Visualization.contains(visualization))
-                return gson.fromJson(obj, TrafficLightChart.class);
+                return context.deserialize(obj, TrafficLightChart.class);
         }
         return null;
     }
@@ -19,6 +19,7 @@ package com.opsmatters.newrelic.api.httpclient.deserializers.labels;
 import java.lang.reflect.Type;
 import com.google.gson.*;
 import com.opsmatters.newrelic.api.model.labels.Label;
+import com.opsmatters.newrelic.api.httpclient.GsonRegistry;
 
 /**
  * Deserializer class for labels.
@@ -27,7 +28,7 @@ import com.opsmatters.newrelic.api.model.labels.Label;
  */
 public class LabelDeserializer implements JsonDeserializer<Label>
 {
-    private static Gson gson = new Gson();
+    private static Gson gson = GsonRegistry.getBaseGson();
 
     /**
      * Gson invokes this call-back method during deserialization when it encounters a field of the specified type.
@@ -19,6 +19,7 @@ package com.opsmatters.newrelic.api.httpclient.deserializers.plugins;
 import java.lang.reflect.Type;
 import com.google.gson.*;
 import com.opsmatters.newrelic.api.model.plugins.PluginComponent;
+import com.opsmatters.newrelic.api.httpclient.GsonRegistry;
 
 /**
  * Deserializer class for plugin components.
@@ -27,7 +28,7 @@ import com.opsmatters.newrelic.api.model.plugins.PluginComponent;
  */
 public class PluginComponentDeserializer implements JsonDeserializer<PluginComponent>
 {
-    private static Gson gson = new Gson();
+    private static Gson gson = GsonRegistry.getBaseGson();
 
     /**
      * Gson invokes this call-back method during deserialization when it encounters a field of the specified type.
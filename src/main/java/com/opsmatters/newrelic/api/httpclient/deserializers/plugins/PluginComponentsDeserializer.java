@@ -22,6 +22,7 @@ import java.util.ArrayList;
 import java.lang.reflect.Type;
 import com.google.gson.*;
 import com.opsmatters.newrelic.api.model.plugins.PluginComponent;
+import com.opsmatters.newrelic.api.httpclient.GsonRegistry;
 
 /**
  * Deserializer class for plugin components.
@@ -30,7 +31,7 @@ import com.opsmatters.newrelic.api.model.plugins.PluginComponent;
  */
 public class PluginComponentsDeserializer implements JsonDeserializer<Collection<PluginComponent>>
 {
-    private static Gson gson = new Gson();
+    private static Gson gson = GsonRegistry.getBaseGson();
 
     /**
      * Gson invokes this call-back method during deserialization when it encounters a field of the specified type.
@@ -26,6 +26,7 @@ import com.opsmatters.newrelic.api.model.synthetics.SimpleMonitor;
 import com.opsmatters.newrelic.api.model.synthetics.BrowserMonitor;
 import com.opsmatters.newrelic.api.model.synthetics.ScriptBrowserMonitor;
 import com.opsmatters.newrelic.api.model.synthetics.ScriptApiMonitor;
+import com.opsmatters.newrelic.api.httpclient.GsonRegistry;
 
 /**
  * Deserializer class for Synthetics monitors.
@@ -34,7 +35,7 @@ import com.opsmatters.newrelic.api.model.synthetics.ScriptApiMonitor;
  */
 public class MonitorsDeserializer implements JsonDeserializer<Collection<Monitor>>
 {
-    private static Gson gson = new Gson();
+    private static Gson gson = GsonRegistry.getBaseGson();
 
     /**
      * Gson invokes this call-back method during deserialization when it encounters a field of the specified type.
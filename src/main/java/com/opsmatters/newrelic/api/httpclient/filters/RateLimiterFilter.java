@@ -0,0 +1,74 @@
+/*
+ * Copyright 2018 Gerald Curley
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.opsmatters.newrelic.api.httpclient.filters;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import javax.ws.rs.client.ClientRequestContext;
+import javax.ws.rs.client.ClientResponseContext;
+import javax.ws.rs.client.ClientResponseFilter;
+import com.opsmatters.newrelic.api.httpclient.RateLimiter;
+
+/**
+ * Filter to release the rate limiter permit of a request once the body of its response has been read.
+ * <P>
+ * The permit is taken from the {@link RateLimiter#PERMIT} property of the request.
+ * It is released when the entity stream of the response is closed,
+ * or straight away if the response has no entity.
+ * 
+ * @author Gerald Curley (opsmatters)
+ */
+public class RateLimiterFilter implements ClientResponseFilter
+{ 
+    /**
+     * Releases the permit of the request when the response entity has been read.
+     * @param request The client request
+     * @param response The client response
+     */
+    public void filter(ClientRequestContext request, ClientResponseContext response) throws IOException
+    {
+        Object property = request.getProperty(RateLimiter.PERMIT);
+        if(!(property instanceof RateLimiter.Permit))
+            return;
+
+        final RateLimiter.Permit permit = (RateLimiter.Permit)property;
+        final String endpoint = RateLimiter.getEndpoint(request.getMethod(), request.getUri().getPath());
+        final int status = response.getStatus();
+        if(!response.hasEntity())
+        {
+            permit.release(endpoint, status);
+            return;
+        }
+
+        response.setEntityStream(new FilterInputStream(response.getEntityStream())
+        {
+            @Override
+            public void close() throws IOException
+            {
+                try
+                {
+                    super.close();
+                }
+                finally
+                {
+                    permit.release(endpoint, status);
+                }
+            }
+        });
+    } 
+}
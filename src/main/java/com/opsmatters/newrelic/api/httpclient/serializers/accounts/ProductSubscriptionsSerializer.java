@@ -20,6 +20,7 @@ import java.util.Collection;
 import java.lang.reflect.Type;
 import com.google.gson.*;
 import com.opsmatters.newrelic.api.model.accounts.ProductSubscription;
+import com.opsmatters.newrelic.api.httpclient.GsonRegistry;
 
 /**
  * Serializer class for product subscriptions.
@@ -28,7 +29,7 @@ import com.opsmatters.newrelic.api.model.accounts.ProductSubscription;
  */
 public class ProductSubscriptionsSerializer implements JsonSerializer<Collection<ProductSubscription>>
 {
-    private static Gson gson = new Gson();
+    private static Gson gson = GsonRegistry.getBaseGson();
 
     /**
      * Gson invokes this call-back method during serialization when it encounters a field of the specified type.
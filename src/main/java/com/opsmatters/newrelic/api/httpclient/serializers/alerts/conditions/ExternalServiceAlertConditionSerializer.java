@@ -19,6 +19,7 @@ package com.opsmatters.newrelic.api.httpclient.serializers.alerts.conditions;
 import java.lang.reflect.Type;
 import com.google.gson.*;
 import com.opsmatters.newrelic.api.model.alerts.conditions.ExternalServiceAlertCondition;
+import com.opsmatters.newrelic.api.httpclient.GsonRegistry;
 
 /**
  * Serializer class for external service alert conditions.
@@ -27,7 +28,7 @@ import com.opsmatters.newrelic.api.model.alerts.conditions.ExternalServiceAlertC
  */
 public class ExternalServiceAlertConditionSerializer implements JsonSerializer<ExternalServiceAlertCondition>
 {
-    private static Gson gson = new Gson();
+    private static Gson gson = GsonRegistry.getBaseGson();
 
     /**
      * Gson invokes this call-back method during serialization when it encounters a field of the specified type.
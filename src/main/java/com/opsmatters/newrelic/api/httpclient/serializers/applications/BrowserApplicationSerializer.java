@@ -19,6 +19,7 @@ package com.opsmatters.newrelic.api.httpclient.serializers.applications;
 import java.lang.reflect.Type;
 import com.google.gson.*;
 import com.opsmatters.newrelic.api.model.applications.BrowserApplication;
+import com.opsmatters.newrelic.api.httpclient.GsonRegistry;
 
 /**
  * Serializer class for Browser applications.
@@ -27,7 +28,7 @@ import com.opsmatters.newrelic.api.model.applications.BrowserApplication;
  */
 public class BrowserApplicationSerializer implements JsonSerializer<BrowserApplication>
 {
-    private static Gson gson = new Gson();
+    private static Gson gson = GsonRegistry.getBaseGson();
 
     /**
      * Gson invokes this call-back method during serialization when it encounters a field of the specified type.
@@ -19,6 +19,7 @@ package com.opsmatters.newrelic.api.httpclient.serializers.servers;
 import java.lang.reflect.Type;
 import com.google.gson.*;
 import com.opsmatters.newrelic.api.model.servers.Server;
+import com.opsmatters.newrelic.api.httpclient.GsonRegistry;
 
 /**
  * Serializer class for servers.
@@ -27,7 +28,7 @@ import com.opsmatters.newrelic.api.model.servers.Server;
  */
 public class ServerSerializer implements JsonSerializer<Server>
 {
-    private static Gson gson = new Gson();
+    private static Gson gson = GsonRegistry.getBaseGson();
 
     /**
      * Gson invokes this call-back method during serialization when it encounters a field of the specified type.
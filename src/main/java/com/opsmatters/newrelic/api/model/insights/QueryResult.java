@@ -0,0 +1,434 @@
+/*
+ * Copyright 2018 Gerald Curley
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.opsmatters.newrelic.api.model.insights;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Represents the result of an Insights NRQL query, decoded into primitive columns.
+ * <P>
+ * The values are held in a single array, with a row for each facet and time bucket and a column for each
+ * aggregate function in the query. A query without a FACET clause has a single facet,
+ * and a query without a TIMESERIES clause has a single bucket covering the whole window of the query.
+ * Aggregates that are not numeric (eg. latest() of a string attribute) are held as NaN.
+ * <P>
+ * The events of a query without aggregate functions (eg. SELECT * FROM Transaction) are held as a list of maps,
+ * and the previous results of a query with a COMPARE WITH clause are held as another query result.
+ * 
+ * @author Gerald Curley (opsmatters)
+ */
+public class QueryResult
+{
+    private static final String[] EMPTY = new String[0];
+
+    private boolean timeseries;
+    private String[] facets = EMPTY;
+    private String[] facetAttributes = EMPTY;
+    private String[] columns = EMPTY;
+    private long[] beginTimes = new long[0];
+    private long[] endTimes = new long[0];
+    private double[] values = new double[0];
+    private double[] totals = new double[0];
+    private long beginTime;
+    private long endTime;
+    private long inspectedCount;
+    private String[] eventTypes = EMPTY;
+    private List<Map<String,Object>> events;
+    private QueryResult previous;
+
+    /**
+     * Default constructor.
+     */
+    public QueryResult()
+    {
+    }
+
+    /**
+     * Set to <CODE>true</CODE> if the query had a TIMESERIES clause.
+     * @param timeseries <CODE>true</CODE> if the query had a TIMESERIES clause
+     */
+    public void setTimeseries(boolean timeseries)
+    {
+        this.timeseries = timeseries;
+    }
+
+    /**
+     * Returns <CODE>true</CODE> if the query had a TIMESERIES clause.
+     * @return <CODE>true</CODE> if the query had a TIMESERIES clause
+     */
+    public boolean isTimeseries()
+    {
+        return timeseries;
+    }
+
+    /**
+     * Sets the key of each facet, for a query with a FACET clause.
+     * <P>
+     * The values of a facet on several attributes are separated by ", ".
+     * @param facets The key of each facet
+     */
+    public void setFacets(String[] facets)
+    {
+        this.facets = facets;
+    }
+
+    /**
+     * Returns the key of each facet, or an empty array for a query without a FACET clause.
+     * @return The key of each facet
+     */
+    public String[] getFacets()
+    {
+        return facets;
+    }
+
+    /**
+     * Returns <CODE>true</CODE> if the query had a FACET clause.
+     * @return <CODE>true</CODE> if the query had a FACET clause
+     */
+    public boolean isFaceted()
+    {
+        return facets.length > 0;
+    }
+
+    /**
+     * Returns the number of facets, which is 1 for a query without a FACET clause.
+     * @return The number of facets
+     */
+    public int getFacetCount()
+    {
+        return Math.max(facets.length, 1);
+    }
+
+    /**
+     * Returns the index of the facet with the given key.
+     * @param facet The key of the facet
+     * @return The index of the facet, or -1 if there is no facet with the key
+     */
+    public int getFacetIndex(String facet)
+    {
+        return Arrays.asList(facets).indexOf(facet);
+    }
+
+    /**
+     * Sets the names of the attributes of the FACET clause.
+     * @param facetAttributes The names of the attributes of the FACET clause
+     */
+    public void setFacetAttributes(String[] facetAttributes)
+    {
+        this.facetAttributes = facetAttributes;
+    }
+
+    /**
+     * Returns the names of the attributes of the FACET clause.
+     * @return The names of the attributes of the FACET clause
+     */
+    public String[] getFacetAttributes()
+    {
+        return facetAttributes;
+    }
+
+    /**
+     * Sets the name of each column.
+     * @param columns The name of each column
+     */
+    public void setColumns(String[] columns)
+    {
+        this.columns = columns;
+    }
+
+    /**
+     * Returns the name of each column, eg. "count" or "percentile.95".
+     * @return The name of each column
+     */
+    public String[] getColumns()
+    {
+        return columns;
+    }
+
+    /**
+     * Returns the number of columns.
+     * @return The number of columns
+     */
+    public int getColumnCount()
+    {
+        return columns.length;
+    }
+
+    /**
+     * Returns the index of the column with the given name.
+     * @param column The name of the column
+     * @return The index of the column, or -1 if there is no column with the name
+     */
+    public int getColumnIndex(String column)
+    {
+        return Arrays.asList(columns).indexOf(column);
+    }
+
+    /**
+     * Sets the begin and end times of each time bucket.
+     * @param beginTimes The begin time of each bucket (in milliseconds)
+     * @param endTimes The end time of each bucket (in milliseconds)
+     */
+    public void setBuckets(long[] beginTimes, long[] endTimes)
+    {
+        if(beginTimes.length != endTimes.length)
+            throw new IllegalArgumentException("begin and end times of buckets do not match");
+        this.beginTimes = beginTimes;
+        this.endTimes = endTimes;
+    }
+
+    /**
+     * Returns the number of time buckets, which is 1 for a query without a TIMESERIES clause.
+     * @return The number of time buckets
+     */
+    public int getBucketCount()
+    {
+        return beginTimes.length;
+    }
+
+    /**
+     * Returns the begin time of each time bucket.
+     * @return The begin time of each bucket (in milliseconds)
+     */
+    public long[] getBeginTimes()
+    {
+        return beginTimes;
+    }
+
+    /**
+     * Returns the end time of each time bucket.
+     * @return The end time of each bucket (in milliseconds)
+     */
+    public long[] getEndTimes()
+    {
+        return endTimes;
+    }
+
+    /**
+     * Sets the values, with a row for each facet and bucket, and a column for each aggregate.
+     * @param values The values
+     */
+    public void setValues(double[] values)
+    {
+        this.values = values;
+    }
+
+    /**
+     * Returns the values, with a row for each facet and bucket, and a column for each aggregate.
+     * <P>
+     * The value for a facet, bucket and column is at the index ((facet*buckets)+bucket)*columns+column.
+     * @return The values
+     */
+    public double[] getValues()
+    {
+        return values;
+    }
+
+    /**
+     * Returns the value for the given facet, bucket and column.
+     * @param facet The index of the facet
+     * @param bucket The index of the time bucket
+     * @param column The index of the column
+     * @return The value
+     */
+    public double getValue(int facet, int bucket, int column)
+    {
+        return values[getIndex(facet, bucket, column)];
+    }
+
+    /**
+     * Returns the value of the given column for a query without FACET or TIMESERIES clauses.
+     * @param column The name of the column
+     * @return The value, or NaN if there is no column with the name
+     */
+    public double getValue(String column)
+    {
+        int index = getColumnIndex(column);
+        return index >= 0 ? getValue(0, 0, index) : Double.NaN;
+    }
+
+    /**
+     * Returns the values of the given column in each time bucket for the given facet.
+     * @param facet The index of the facet
+     * @param column The index of the column
+     * @return The value in each time bucket
+     */
+    public double[] getSeries(int facet, int column)
+    {
+        double[] ret = new double[getBucketCount()];
+        for(int i = 0; i < ret.length; i++)
+            ret[i] = getValue(facet, i, column);
+        return ret;
+    }
+
+    /**
+     * Returns the index of the value for the given facet, bucket and column.
+     * @param facet The index of the facet
+     * @param bucket The index of the time bucket
+     * @param column The index of the column
+     * @return The index of the value
+     */
+    private int getIndex(int facet, int bucket, int column)
+    {
+        if(facet < 0 || facet >= getFacetCount())
+            throw new IndexOutOfBoundsException("facet: "+facet);
+        if(bucket < 0 || bucket >= getBucketCount())
+            throw new IndexOutOfBoundsException("bucket: "+bucket);
+        if(column < 0 || column >= getColumnCount())
+            throw new IndexOutOfBoundsException("column: "+column);
+        return ((facet*getBucketCount())+bucket)*getColumnCount()+column;
+    }
+
+    /**
+     * Sets the total of each column over all the facets and buckets.
+     * @param totals The total of each column
+     */
+    public void setTotals(double[] totals)
+    {
+        this.totals = totals;
+    }
+
+    /**
+     * Returns the total of each column over all the facets and buckets.
+     * @return The total of each column, or an empty array if the totals were not returned
+     */
+    public double[] getTotals()
+    {
+        return totals;
+    }
+
+    /**
+     * Sets the begin and end times of the window of the query.
+     * @param beginTime The begin time of the window (in milliseconds)
+     * @param endTime The end time of the window (in milliseconds)
+     */
+    public void setWindow(long beginTime, long endTime)
+    {
+        this.beginTime = beginTime;
+        this.endTime = endTime;
+    }
+
+    /**
+     * Returns the begin time of the window of the query.
+     * @return The begin time of the window (in milliseconds)
+     */
+    public long getBeginTime()
+    {
+        return beginTime;
+    }
+
+    /**
+     * Returns the end time of the window of the query.
+     * @return The end time of the window (in milliseconds)
+     */
+    public long getEndTime()
+    {
+        return endTime;
+    }
+
+    /**
+     * Sets the number of events inspected by the query.
+     * @param inspectedCount The number of events inspected
+     */
+    public void setInspectedCount(long inspectedCount)
+    {
+        this.inspectedCount = inspectedCount;
+    }
+
+    /**
+     * Returns the number of events inspected by the query.
+     * @return The number of events inspected
+     */
+    public long getInspectedCount()
+    {
+        return inspectedCount;
+    }
+
+    /**
+     * Sets the event types queried.
+     * @param eventTypes The event types queried
+     */
+    public void setEventTypes(String[] eventTypes)
+    {
+        this.eventTypes = eventTypes;
+    }
+
+    /**
+     * Returns the event types queried.
+     * @return The event types queried
+     */
+    public String[] getEventTypes()
+    {
+        return eventTypes;
+    }
+
+    /**
+     * Sets the events returned by a query without aggregate functions.
+     * @param events The events returned
+     */
+    public void setEvents(List<Map<String,Object>> events)
+    {
+        this.events = events;
+    }
+
+    /**
+     * Returns the events returned by a query without aggregate functions.
+     * @return The events returned, or <CODE>null</CODE> if the query had aggregate functions
+     */
+    public List<Map<String,Object>> getEvents()
+    {
+        return events;
+    }
+
+    /**
+     * Sets the previous results of a query with a COMPARE WITH clause.
+     * @param previous The previous results
+     */
+    public void setPrevious(QueryResult previous)
+    {
+        this.previous = previous;
+    }
+
+    /**
+     * Returns the previous results of a query with a COMPARE WITH clause.
+     * <P>
+     * The previous results have the same facet attributes and columns as the current results,
+     * and for a query with a TIMESERIES clause they have their own time buckets.
+     * @return The previous results, or <CODE>null</CODE> if the query had no COMPARE WITH clause
+     */
+    public QueryResult getPrevious()
+    {
+        return previous;
+    }
+
+    /**
+     * Returns a string representation of the object.
+     */
+    @Override
+    public String toString()
+    {
+        return "QueryResult [facets="+facets.length
+            +", buckets="+getBucketCount()
+            +", columns="+Arrays.toString(columns)
+            +", beginTime="+beginTime
+            +", endTime="+endTime
+            +", inspectedCount="+inspectedCount
+            +"]";
+    }
+}
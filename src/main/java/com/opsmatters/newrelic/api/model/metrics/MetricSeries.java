@@ -0,0 +1,228 @@
+/*
+ * Copyright 2018 Gerald Curley
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.opsmatters.newrelic.api.model.metrics;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Represents the timeslices of a New Relic metric held in columns of primitive values.  
+ * <P>
+ * The start and end times of the timeslices are held as arrays of epoch milliseconds,
+ * and each value name (eg. "average_response_time") has an array with one value per timeslice.
+ * A value that was not present for a timeslice is held as {@link Double#NaN}.
+ * 
+ * @author Gerald Curley (opsmatters)
+ */
+public class MetricSeries
+{
+    private String name;
+    private long[] from;
+    private long[] to;
+    private Map<String,double[]> values;
+
+    /**
+     * Constructor that takes a name, the timeslice times and the columns of values.
+     * <P>
+     * All of the arrays must have the same length.
+     * @param name The name of the metric
+     * @param from The start time of each timeslice (in epoch milliseconds)
+     * @param to The end time of each timeslice (in epoch milliseconds)
+     * @param values The values for each timeslice, keyed by value name
+     */
+    public MetricSeries(String name, long[] from, long[] to, Map<String,double[]> values)
+    {
+        if(from.length != to.length)
+            throw new IllegalArgumentException("from and to must have the same length");
+        for(Map.Entry<String,double[]> entry : values.entrySet())
+        {
+            if(entry.getValue().length != from.length)
+                throw new IllegalArgumentException("values for "+entry.getKey()+" must have the same length as from");
+        }
+
+        this.name = name;
+        this.from = from;
+        this.to = to;
+        this.values = new LinkedHashMap<String,double[]>(values);
+    }
+
+    /**
+     * Returns the name of the metric.
+     * @return The name of the metric
+     */
+    public String getName()
+    {
+        return name;
+    }
+
+    /**
+     * Returns the number of timeslices.
+     * @return The number of timeslices
+     */
+    public int size()
+    {
+        return from.length;
+    }
+
+    /**
+     * Returns the start time of each timeslice.
+     * @return The start time of each timeslice (in epoch milliseconds)
+     */
+    public long[] getFrom()
+    {
+        return from;
+    }
+
+    /**
+     * Returns the start time of the given timeslice.
+     * @param index The index of the timeslice
+     * @return The start time of the timeslice (in epoch milliseconds)
+     */
+    public long getFrom(int index)
+    {
+        return from[index];
+    }
+
+    /**
+     * Returns the end time of each timeslice.
+     * @return The end time of each timeslice (in epoch milliseconds)
+     */
+    public long[] getTo()
+    {
+        return to;
+    }
+
+    /**
+     * Returns the end time of the given timeslice.
+     * @param index The index of the timeslice
+     * @return The end time of the timeslice (in epoch milliseconds)
+     */
+    public long getTo(int index)
+    {
+        return to[index];
+    }
+
+    /**
+     * Returns the names of the values of the timeslices.
+     * @return The names of the values
+     */
+    public Set<String> getValueNames()
+    {
+        return Collections.unmodifiableSet(values.keySet());
+    }
+
+    /**
+     * Returns the given value for each timeslice.
+     * @param name The name of the value
+     * @return The value for each timeslice, or <CODE>null</CODE> if the value name is not present
+     */
+    public double[] getValues(String name)
+    {
+        return values.get(name);
+    }
+
+    /**
+     * Returns the given value for the given timeslice.
+     * @param name The name of the value
+     * @param index The index of the timeslice
+     * @return The value for the timeslice, or {@link Double#NaN} if the value is not present
+     */
+    public double getValue(String name, int index)
+    {
+        double[] column = values.get(name);
+        return column != null ? column[index] : Double.NaN;
+    }
+
+    /**
+     * Returns the metric converted to the timeslice object model.
+     * @return The timeslices of the metric
+     */
+    public MetricTimeslices toTimeslices()
+    {
+        MetricTimeslices ret = new MetricTimeslices();
+        ret.setName(name);
+        List<MetricTimeslice> timeslices = ret.getTimeslices();
+        for(int i = 0; i < from.length; i++)
+        {
+            MetricTimeslice timeslice = new MetricTimeslice();
+            timeslice.setFrom(new Date(from[i]));
+            timeslice.setTo(new Date(to[i]));
+            Map<String,Object> map = timeslice.getValues();
+            for(Map.Entry<String,double[]> entry : values.entrySet())
+            {
+                double value = entry.getValue()[i];
+                if(!Double.isNaN(value))
+                    map.put(entry.getKey(), value);
+            }
+            timeslices.add(timeslice);
+        }
+        return ret;
+    }
+
+    /**
+     * Returns the given timeslices converted to columns of values.
+     * <P>
+     * Any values that are not numbers are left out.
+     * @param timeslices The timeslices of the metric
+     * @return The columns of values
+     */
+    public static MetricSeries fromTimeslices(MetricTimeslices timeslices)
+    {
+        List<MetricTimeslice> list = timeslices.getTimeslices();
+        int size = list.size();
+        long[] from = new long[size];
+        long[] to = new long[size];
+        Map<String,double[]> values = new LinkedHashMap<String,double[]>();
+        for(int i = 0; i < size; i++)
+        {
+            MetricTimeslice timeslice = list.get(i);
+            from[i] = timeslice.getFrom() != null ? timeslice.getFrom().getTime() : 0L;
+            to[i] = timeslice.getTo() != null ? timeslice.getTo().getTime() : 0L;
+            for(Map.Entry<String,Object> entry : timeslice.getValues().entrySet())
+            {
+                if(!(entry.getValue() instanceof Number))
+                    continue;
+                double[] column = values.get(entry.getKey());
+                if(column == null)
+                {
+                    column = new double[size];
+                    Arrays.fill(column, Double.NaN);
+                    values.put(entry.getKey(), column);
+                }
+                column[i] = ((Number)entry.getValue()).doubleValue();
+            }
+        }
+        return new MetricSeries(timeslices.getName(), from, to, values);
+    }
+
+    /**
+     * Returns a string representation of the object.
+     */
+    @Override
+    public String toString()
+    {
+        return "MetricSeries [name="+name
+            +", size="+size()
+            +", values="+values.keySet()
+            +"]";
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright 2018 Gerald Curley
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.opsmatters.newrelic.api.model.metrics;
+
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Date;
+
+/**
+ * Represents a set of New Relic metric data held in columns of primitive values.  
+ * <P>
+ * This is an alternative to {@link MetricData} that uses much less memory for long series,
+ * as each metric is held as arrays of primitives rather than an object per timeslice.
+ * 
+ * @author Gerald Curley (opsmatters)
+ */
+public class MetricSeriesData
+{
+    private Date from;
+    private Date to;
+    private List<String> metricsFound;
+    private List<String> metricsNotFound;
+    private List<MetricSeries> metrics = new ArrayList<MetricSeries>();
+
+    /**
+     * Default constructor.
+     */
+    public MetricSeriesData()
+    {
+    }
+
+    /**
+     * Sets the start date of the metric data.
+     * @param from The start date of the metric data
+     */
+    public void setFrom(Date from)
+    {
+        this.from = from;
+    }
+
+    /**
+     * Returns the start date of the metric data.
+     * @return The start date of the metric data
+     */
+    public Date getFrom()
+    {
+        return from;
+    }
+
+    /**
+     * Sets the end date of the metric data.
+     * @param to The end date of the metric data
+     */
+    public void setTo(Date to)
+    {
+        this.to = to;
+    }
+
+    /**
+     * Returns the end date of the metric data.
+     * @return The end date of the metric data
+     */
+    public Date getTo()
+    {
+        return to;
+    }
+
+    /**
+     * Sets the list of metrics found.
+     * @param metricsFound The list of metrics found
+     */
+    public void setMetricsFound(List<String> metricsFound)
+    {
+        this.metricsFound = metricsFound;
+    }
+
+    /**
+     * Returns the list of metrics found.
+     * @return The list of metrics found
+     */
+    public List<String> getMetricsFound()
+    {
+        return metricsFound;
+    }
+
+    /**
+     * Sets the list of metrics not found.
+     * @param metricsNotFound The list of metrics not found
+     */
+    public void setMetricsNotFound(List<String> metricsNotFound)
+    {
+        this.metricsNotFound = metricsNotFound;
+    }
+
+    /**
+     * Returns the list of metrics not found.
+     * @return The list of metrics not found
+     */
+    public List<String> getMetricsNotFound()
+    {
+        return metricsNotFound;
+    }
+
+    /**
+     * Sets the list of metrics.
+     * @param metrics The list of metrics
+     */
+    public void setMetrics(List<MetricSeries> metrics)
+    {
+        this.metrics.clear();
+        this.metrics.addAll(metrics);
+    }
+
+    /**
+     * Returns the list of metrics.
+     * @return The list of metrics
+     */
+    public List<MetricSeries> getMetrics()
+    {
+        return metrics;
+    }
+
+    /**
+     * Returns the metric with the given name.
+     * @param name The name of the metric
+     * @return The metric, or <CODE>null</CODE> if the metric was not found
+     */
+    public MetricSeries getMetric(String name)
+    {
+        for(MetricSeries metric : metrics)
+        {
+            if(metric.getName() != null && metric.getName().equals(name))
+                return metric;
+        }
+        return null;
+    }
+
+    /**
+     * Returns the metric data converted to the timeslice object model.
+     * @return The metric data
+     */
+    public MetricData toMetricData()
+    {
+        MetricData ret = new MetricData();
+        ret.setFrom(from);
+        ret.setTo(to);
+        ret.setMetricsFound(metricsFound);
+        ret.setMetricsNotFound(metricsNotFound);
+        for(MetricSeries metric : metrics)
+            ret.getMetrics().add(metric.toTimeslices());
+        return ret;
+    }
+
+    /**
+     * Returns the given metric data converted to columns of values.
+     * @param data The metric data
+     * @return The metric data held in columns of values
+     */
+    public static MetricSeriesData fromMetricData(MetricData data)
+    {
+        MetricSeriesData ret = new MetricSeriesData();
+        ret.setFrom(data.getFrom());
+        ret.setTo(data.getTo());
+        ret.setMetricsFound(data.getMetricsFound());
+        ret.setMetricsNotFound(data.getMetricsNotFound());
+        for(MetricTimeslices metric : data.getMetrics())
+            ret.getMetrics().add(MetricSeries.fromTimeslices(metric));
+        return ret;
+    }
+
+    /**
+     * Returns a string representation of the object.
+     */
+    @Override
+    public String toString()
+    {
+        return "MetricSeriesData [from="+from
+            +", to="+to
+            +", metricsFound="+metricsFound
+            +", metricsNotFound="+metricsNotFound
+            +", metrics="+metrics
+            +"]";
+    }
+}
@@ -156,6 +156,21 @@ public class Component implements NamedResource
         metrics.put(name, timeslice);
     }
 
+    /**
+     * Takes the timeslice of the values recorded by the given aggregator, and adds it to the set of metrics.
+     * <P>
+     * Taking the timeslice resets the aggregator, so the values are removed from it.
+     * The metric is not added if no values have been recorded since the aggregator was last reset.
+     * @param name The name of the metric
+     * @param aggregator The aggregator with the values of the metric timeslice
+     */
+    public void addMetricThenReset(String name, MetricAggregator aggregator)
+    {
+        MetricTimeslice<Double> timeslice = aggregator.getThenReset();
+        if(timeslice != null)
+            metrics.put(name, timeslice);
+    }
+
     /**
      * Returns a string representation of the object.
      */
@@ -0,0 +1,220 @@
+/*
+ * Copyright 2018 Gerald Curley
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.opsmatters.newrelic.api.model.plugins;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.DoubleAccumulator;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleBinaryOperator;
+
+/**
+ * Aggregates the values of a plugin metric recorded by many threads into a metric timeslice.
+ * <P>
+ * Each value is added to striped cells for the count, total, minimum, maximum and sum of squares,
+ * so recording a value takes no locks and does not allocate.
+ * There are two sets of cells: values are recorded into the current set, and taking the timeslice swaps in the
+ * other set and waits for the values being recorded into the old set to complete before reading it.
+ * Each value is therefore in exactly one timeslice, with all its fields.
+ *
+ * @author Gerald Curley (opsmatters)
+ */
+public class MetricAggregator
+{
+    private static final DoubleBinaryOperator MIN = new DoubleBinaryOperator()
+    {
+        @Override
+        public double applyAsDouble(double left, double right)
+        {
+            return Math.min(left, right);
+        }
+    };
+
+    private static final DoubleBinaryOperator MAX = new DoubleBinaryOperator()
+    {
+        @Override
+        public double applyAsDouble(double left, double right)
+        {
+            return Math.max(left, right);
+        }
+    };
+
+    private AtomicReference<Cells> current = new AtomicReference<Cells>(new Cells());
+    private Cells spare = new Cells();
+
+    /**
+     * Default constructor.
+     */
+    public MetricAggregator()
+    {
+    }
+
+    /**
+     * Adds the given value to the metric.
+     * @param value The value to add
+     */
+    public void record(double value)
+    {
+        Cells cells = enter();
+        try
+        {
+            cells.total.add(value);
+            cells.sumOfSquares.add(value*value);
+            cells.min.accumulate(value);
+            cells.max.accumulate(value);
+            cells.count.increment();
+        }
+        finally
+        {
+            cells.writers.decrementAndGet();
+        }
+    }
+
+    /**
+     * Adds the values of the given timeslice to the metric.
+     * @param <T> The type parameter used for the timeslice
+     * @param timeslice The timeslice to add
+     */
+    public <T extends Number> void add(MetricTimeslice<T> timeslice)
+    {
+        Cells cells = enter();
+        try
+        {
+            cells.total.add(timeslice.getTotal().doubleValue());
+            cells.sumOfSquares.add(timeslice.getSumOfSquares().doubleValue());
+            if(timeslice.getMin() != null)
+                cells.min.accumulate(timeslice.getMin().doubleValue());
+            if(timeslice.getMax() != null)
+                cells.max.accumulate(timeslice.getMax().doubleValue());
+            cells.count.add(timeslice.getCount().longValue());
+        }
+        finally
+        {
+            cells.writers.decrementAndGet();
+        }
+    }
+
+    /**
+     * Returns the current set of cells, registered as being written to by the caller.
+     * <P>
+     * The caller must decrement the writers of the cells when the value has been recorded.
+     * @return The current set of cells
+     */
+    private Cells enter()
+    {
+        while(true)
+        {
+            Cells ret = current.get();
+            ret.writers.incrementAndGet();
+
+            // Check the cells were not swapped out before the writer was registered
+            if(ret == current.get())
+                return ret;
+            ret.writers.decrementAndGet();
+        }
+    }
+
+    /**
+     * Returns the number of values recorded since the last timeslice was taken.
+     * @return The number of values recorded
+     */
+    public long getCount()
+    {
+        return current.get().count.sum();
+    }
+
+    /**
+     * Returns the values recorded since the last timeslice was taken, and resets the metric.
+     * <P>
+     * The minimum and maximum are left unset if they are not known, for example if a timeslice added back
+     * had no minimum or maximum.
+     * @return The timeslice for the recorded values, or <CODE>null</CODE> if no values were recorded
+     */
+    public synchronized MetricTimeslice<Double> getThenReset()
+    {
+        Cells cells = current.getAndSet(spare);
+
+        // Wait for the values already being recorded into the old cells
+        while(cells.writers.get() > 0)
+            Thread.yield();
+
+        MetricTimeslice<Double> ret = null;
+        long n = cells.count.sum();
+        if(n > 0L)
+        {
+            ret = new MetricTimeslice<Double>();
+            ret.setCount((double)n);
+            ret.setTotal(cells.total.sum());
+            ret.setSumOfSquares(cells.sumOfSquares.sum());
+            double lo = cells.min.get();
+            if(!Double.isInfinite(lo))
+                ret.setMin(lo);
+            double hi = cells.max.get();
+            if(!Double.isInfinite(hi))
+                ret.setMax(hi);
+        }
+
+        cells.reset();
+        spare = cells;
+        return ret;
+    }
+
+    /**
+     * Returns a string representation of the object.
+     */
+    @Override
+    public String toString()
+    {
+        Cells cells = current.get();
+        return "MetricAggregator [count="+cells.count
+            +", total="+cells.total
+            +", min="+cells.min
+            +", max="+cells.max
+            +", sumOfSquares="+cells.sumOfSquares
+            +"]";
+    }
+
+    /**
+     * A set of cells for the values recorded in a timeslice.
+     */
+    private static class Cells
+    {
+        // An exact count rather than a LongAdder, as the sum of a LongAdder is not an atomic snapshot
+        private AtomicInteger writers = new AtomicInteger();
+        private LongAdder count = new LongAdder();
+        private DoubleAdder total = new DoubleAdder();
+        private DoubleAdder sumOfSquares = new DoubleAdder();
+        private DoubleAccumulator min = new DoubleAccumulator(MIN, Double.POSITIVE_INFINITY);
+        private DoubleAccumulator max = new DoubleAccumulator(MAX, Double.NEGATIVE_INFINITY);
+
+        /**
+         * Resets the values once there are no writers.
+         * <P>
+         * The count of writers is not reset, as a writer that found the cells swapped out may still decrement it.
+         */
+        void reset()
+        {
+            count.reset();
+            total.reset();
+            sumOfSquares.reset();
+            min.reset();
+            max.reset();
+        }
+    }
+}
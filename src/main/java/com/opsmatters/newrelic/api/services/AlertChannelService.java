@@ -17,6 +17,7 @@
 package com.opsmatters.newrelic.api.services;
 
 import java.util.Collection;
+import java.util.stream.Stream;
 import java.util.Map;
 import java.util.HashMap;
 import java.util.List;
@@ -54,6 +55,44 @@ public class AlertChannelService extends BaseFluent
         return HTTP.GET("/v2/alerts_channels.json", null, queryParams, ALERT_CHANNELS).get();
     }
 
+    /**
+     * Returns an iterator over all the alert channels with the given query parameters.
+     * <P>
+     * Each page of alert channels is only fetched when the iterator reaches it.
+     * @param queryParams The query parameters
+     * @return The iterator over the alert channels
+     */
+    public PagedIterator<AlertChannel> iterator(List<String> queryParams)
+    {
+        return new PagedIterator<AlertChannel>(HTTP, "/v2/alerts_channels.json", queryParams, ALERT_CHANNELS);
+    }
+
+    /**
+     * Returns a stream of all the alert channels with the given query parameters.
+     * <P>
+     * Each page of alert channels is only fetched when the stream reaches it.
+     * @param queryParams The query parameters
+     * @return The stream of alert channels
+     */
+    public Stream<AlertChannel> stream(List<String> queryParams)
+    {
+        return iterator(queryParams).stream();
+    }
+
+    /**
+     * Returns all the alert channels with the given query parameters.
+     * <P>
+     * The last page is taken from the first response, and the remaining pages 
+     * are then requested concurrently, limited by the client's page parallelism.
+     * @param queryParams The query parameters
+     * @return The set of alert channels
+     */
+    public Collection<AlertChannel> listAll(List<String> queryParams)
+    {
+        return new ParallelPageFetcher<AlertChannel>(HTTP, "/v2/alerts_channels.json", queryParams, ALERT_CHANNELS, 
+            getClient().getPageParallelism()).fetch();
+    }
+
     /**
      * Returns the set of alert channels.
      * @return The set of alert channels
@@ -71,14 +110,7 @@ public class AlertChannelService extends BaseFluent
      */
     public Collection<AlertChannel> list(String name)
     {
-        List<AlertChannel> ret = new ArrayList<AlertChannel>();
-        Collection<AlertChannel> channels = list();
-        for(AlertChannel channel : channels)
-        {
-            if(channel.getName().equals(name))
-                ret.add(channel);
-        }
-        return ret;
+        return HTTP.getResourceIndex().findAll("/v2/alerts_channels.json", null, ALERT_CHANNELS, ResourceIndex.NAME, name);
     }
 
     /**
@@ -132,14 +164,7 @@ public class AlertChannelService extends BaseFluent
      */
     public Optional<AlertChannel> show(long channelId)
     {
-        Optional<AlertChannel> ret = Optional.absent();
-        Collection<AlertChannel> channels = list();
-        for(AlertChannel channel : channels)
-        {
-            if(channel.getId() == channelId)
-                ret = Optional.of(channel);
-        }
-        return ret;
+        return HTTP.getResourceIndex().find("/v2/alerts_channels.json", null, ALERT_CHANNELS, ResourceIndex.ID, channelId);
     }
 
     /**
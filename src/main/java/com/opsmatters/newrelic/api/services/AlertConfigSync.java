@@ -0,0 +1,1190 @@
+/*
+ * Copyright 2018 Gerald Curley
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.opsmatters.newrelic.api.services;
+
+import java.util.Map;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.LinkedList;
+import java.util.Iterator;
+import java.util.ArrayList;
+import java.util.Set;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Logger;
+import java.util.logging.Level;
+import com.google.common.base.Optional;
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.opsmatters.newrelic.api.NewRelicApi;
+import com.opsmatters.newrelic.api.NewRelicInfraApi;
+import com.opsmatters.newrelic.api.httpclient.GsonRegistry;
+import com.opsmatters.newrelic.api.model.alerts.channels.AlertChannel;
+import com.opsmatters.newrelic.api.model.alerts.conditions.AlertCondition;
+import com.opsmatters.newrelic.api.model.alerts.conditions.BaseCondition;
+import com.opsmatters.newrelic.api.model.alerts.conditions.ExternalServiceAlertCondition;
+import com.opsmatters.newrelic.api.model.alerts.conditions.InfraAlertCondition;
+import com.opsmatters.newrelic.api.model.alerts.conditions.NrqlAlertCondition;
+import com.opsmatters.newrelic.api.model.alerts.conditions.PluginsAlertCondition;
+import com.opsmatters.newrelic.api.model.alerts.conditions.SyntheticsAlertCondition;
+import com.opsmatters.newrelic.api.model.alerts.policies.AlertPolicy;
+
+/**
+ * Brings the alert policies, their conditions and their channels in line with a desired configuration,
+ * making only the calls needed to change what is different.
+ * <P>
+ * The desired policies are matched to the existing policies by name, and the desired conditions are
+ * matched to the existing conditions of the policy by type and name. The fields set in a desired object
+ * are compared with the existing object, and it is only updated if one of those fields is different.
+ * Existing conditions of a policy that are not in the desired configuration are deleted, and the
+ * channels of a policy are only changed if the desired channel ids have been given.
+ * <P>
+ * {@link #plan(Collection)} fetches the current state concurrently and returns the changes without making them,
+ * so that they can be reviewed as a dry run. {@link #apply(Plan)} then makes the changes, with the changes
+ * for each policy made in order and the different policies updated in parallel.
+ *
+ * @author Gerald Curley (opsmatters)
+ */
+public class AlertConfigSync
+{
+    private static final Logger logger = Logger.getLogger(AlertConfigSync.class.getName());
+
+    /**
+     * The default maximum number of calls in flight.
+     */
+    public static final int DEFAULT_PARALLELISM = 8;
+
+    /**
+     * The fields that are set by New Relic and so are never compared.
+     */
+    private static final Set<String> IGNORED_FIELDS = new HashSet<String>();
+
+    static
+    {
+        Collections.addAll(IGNORED_FIELDS, "id", "policy_id", "links",
+            "created_at", "updated_at", "created_at_epoch_millis", "updated_at_epoch_millis");
+    }
+
+    private NewRelicApi api;
+    private NewRelicInfraApi infraApi;
+    private int parallelism = DEFAULT_PARALLELISM;
+    private boolean deletePolicies = false;
+    private List<ConditionType<?>> conditionTypes = new ArrayList<ConditionType<?>>();
+
+    /**
+     * Constructor that takes an API client.
+     * @param api The client used to read and change the alert configuration
+     */
+    public AlertConfigSync(NewRelicApi api)
+    {
+        this(api, null);
+    }
+
+    /**
+     * Constructor that takes an API client and an Infrastructure API client.
+     * @param api The client used to read and change the alert configuration
+     * @param infraApi The client used to read and change the infrastructure alert conditions
+     */
+    public AlertConfigSync(NewRelicApi api, NewRelicInfraApi infraApi)
+    {
+        this.api = api;
+        this.infraApi = infraApi;
+        addConditionTypes();
+    }
+
+    /**
+     * Sets the maximum number of calls in flight.
+     * @param parallelism The maximum number of calls in flight
+     */
+    public void setParallelism(int parallelism)
+    {
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Returns the maximum number of calls in flight.
+     * @return The maximum number of calls in flight
+     */
+    public int getParallelism()
+    {
+        return parallelism;
+    }
+
+    /**
+     * Set to <CODE>true</CODE> if existing policies that are not in the desired configuration should be deleted.
+     * @param deletePolicies <CODE>true</CODE> if existing policies that are not in the desired configuration should be deleted
+     */
+    public void setDeletePolicies(boolean deletePolicies)
+    {
+        this.deletePolicies = deletePolicies;
+    }
+
+    /**
+     * Returns <CODE>true</CODE> if existing policies that are not in the desired configuration should be deleted.
+     * @return <CODE>true</CODE> if existing policies that are not in the desired configuration should be deleted
+     */
+    public boolean getDeletePolicies()
+    {
+        return deletePolicies;
+    }
+
+    /**
+     * Returns the changes needed to bring the existing alert configuration in line with the given policies.
+     * <P>
+     * No changes are made by this call.
+     * @param desired The desired configuration of each policy
+     * @return The plan of the changes needed
+     */
+    public Plan plan(Collection<PolicyConfig> desired)
+    {
+        for(PolicyConfig config : desired)
+        {
+            for(BaseCondition condition : config.getConditions())
+                getConditionType(condition);
+        }
+
+        ExecutorService executor = newExecutor();
+        try
+        {
+            // Fetch the policies and channels at the same time
+            Future<Collection<AlertPolicy>> policiesFuture = executor.submit(new Callable<Collection<AlertPolicy>>()
+            {
+                public Collection<AlertPolicy> call()
+                {
+                    return api.alertPolicies().listAll(null);
+                }
+            });
+            Future<Collection<AlertChannel>> channelsFuture = executor.submit(new Callable<Collection<AlertChannel>>()
+            {
+                public Collection<AlertChannel> call()
+                {
+                    return api.alertChannels().listAll(null);
+                }
+            });
+
+            Map<String,AlertPolicy> policies = new LinkedHashMap<String,AlertPolicy>();
+            for(AlertPolicy policy : get(policiesFuture))
+            {
+                if(policies.containsKey(policy.getName()))
+                    logger.warning("Duplicate alert policy name, only the first is synchronized: "+policy.getName());
+                else
+                    policies.put(policy.getName(), policy);
+            }
+
+            Map<Long,Set<Long>> policyChannels = new HashMap<Long,Set<Long>>();
+            for(AlertChannel channel : get(channelsFuture))
+            {
+                if(channel.getLinks() == null || channel.getLinks().getPolicyIds() == null)
+                    continue;
+                for(Long policyId : channel.getLinks().getPolicyIds())
+                {
+                    Set<Long> channelIds = policyChannels.get(policyId);
+                    if(channelIds == null)
+                        policyChannels.put(policyId, channelIds = new HashSet<Long>());
+                    channelIds.add(channel.getId());
+                }
+            }
+
+            // Fetch the conditions of each type for all the existing policies at the same time
+            Map<Long,List<Future<? extends Collection<? extends BaseCondition>>>> conditionFutures
+                = new HashMap<Long,List<Future<? extends Collection<? extends BaseCondition>>>>();
+            for(PolicyConfig config : desired)
+            {
+                final AlertPolicy policy = policies.get(config.getPolicy().getName());
+                if(policy == null || conditionFutures.containsKey(policy.getId()))
+                    continue;
+                List<Future<? extends Collection<? extends BaseCondition>>> futures
+                    = new ArrayList<Future<? extends Collection<? extends BaseCondition>>>();
+                for(final ConditionType<?> type : getConditionTypes())
+                {
+                    futures.add(executor.submit(new Callable<Collection<? extends BaseCondition>>()
+                    {
+                        public Collection<? extends BaseCondition> call()
+                        {
+                            return type.list(policy.getId());
+                        }
+                    }));
+                }
+                conditionFutures.put(policy.getId(), futures);
+            }
+
+            Plan ret = new Plan();
+            Set<String> names = new HashSet<String>();
+            for(PolicyConfig config : desired)
+            {
+                String name = config.getPolicy().getName();
+                if(!names.add(name))
+                    throw new IllegalArgumentException("duplicate policy in desired configuration: "+name);
+
+                AlertPolicy policy = policies.get(name);
+                List<BaseCondition> conditions = new ArrayList<BaseCondition>();
+                Set<Long> channelIds = new HashSet<Long>();
+                if(policy != null)
+                {
+                    for(Future<? extends Collection<? extends BaseCondition>> future : conditionFutures.get(policy.getId()))
+                        conditions.addAll(get(future));
+                    if(policyChannels.containsKey(policy.getId()))
+                        channelIds.addAll(policyChannels.get(policy.getId()));
+                }
+
+                ret.add(name, getChanges(config, policy, conditions, channelIds));
+            }
+
+            if(deletePolicies)
+            {
+                for(AlertPolicy policy : policies.values())
+                {
+                    if(!names.contains(policy.getName()))
+                        ret.add(policy.getName(), Collections.singletonList(deletePolicy(policy)));
+                }
+            }
+
+            return ret;
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Makes the changes in the given plan.
+     * <P>
+     * The changes for each policy are made in order, and stop at the first change that fails,
+     * as the later changes may depend on it. The changes for the other policies are still made.
+     * @param plan The plan of the changes to make
+     * @return <CODE>true</CODE> if all the changes were made
+     */
+    public boolean apply(Plan plan)
+    {
+        ExecutorService executor = newExecutor();
+        try
+        {
+            List<Future<Boolean>> futures = new ArrayList<Future<Boolean>>();
+            for(final Map.Entry<String,List<Change>> entry : plan.policies.entrySet())
+            {
+                futures.add(executor.submit(new Callable<Boolean>()
+                {
+                    public Boolean call()
+                    {
+                        return apply(entry.getKey(), entry.getValue());
+                    }
+                }));
+            }
+
+            boolean ret = true;
+            for(Future<Boolean> future : futures)
+                ret &= get(future);
+            return ret;
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Makes the given changes for a policy in order.
+     * @param name The name of the policy
+     * @param changes The changes to make
+     * @return <CODE>true</CODE> if all the changes were made
+     */
+    private boolean apply(String name, List<Change> changes)
+    {
+        for(Change change : changes)
+        {
+            try
+            {
+                change.apply();
+                change.applied = true;
+            }
+            catch(RuntimeException e)
+            {
+                change.failure = e;
+                logger.log(Level.WARNING, "Unable to apply alert change: "+change, e);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the changes needed for the given policy.
+     * @param config The desired configuration of the policy
+     * @param policy The existing policy, or <CODE>null</CODE> if it does not exist
+     * @param conditions The existing conditions of the policy
+     * @param channelIds The ids of the existing channels of the policy
+     * @return The changes needed for the policy
+     */
+    private List<Change> getChanges(final PolicyConfig config, AlertPolicy policy,
+        List<BaseCondition> conditions, Set<Long> channelIds)
+    {
+        final String policyName = config.getPolicy().getName();
+        final PolicyTarget target = new PolicyTarget();
+        List<Change> ret = new ArrayList<Change>();
+
+        if(policy == null)
+        {
+            ret.add(new Change(Change.Action.CREATE, policyName, "policy", policyName, null)
+            {
+                void apply()
+                {
+                    Optional<AlertPolicy> created = api.alertPolicies().create(config.getPolicy());
+                    if(!created.isPresent())
+                        throw new IllegalStateException("alert policy not created: "+policyName);
+                    target.id = created.get().getId();
+                }
+            });
+        }
+        else
+        {
+            target.id = policy.getId();
+            List<String> fields = diff(config.getPolicy(), policy);
+            if(!fields.isEmpty())
+            {
+                final AlertPolicy updated = copy(config.getPolicy());
+                updated.setId(policy.getId());
+                ret.add(new Change(Change.Action.UPDATE, policyName, "policy", policyName, fields)
+                {
+                    void apply()
+                    {
+                        api.alertPolicies().update(updated);
+                    }
+                });
+            }
+        }
+
+        // Match the desired conditions to the existing conditions by type and name
+        Map<String,BaseCondition> existing = new LinkedHashMap<String,BaseCondition>();
+        for(BaseCondition condition : conditions)
+        {
+            String key = getConditionType(condition).name+":"+condition.getName();
+            if(!existing.containsKey(key))
+                existing.put(key, condition);
+        }
+
+        for(final BaseCondition condition : config.getConditions())
+        {
+            final ConditionType<?> type = getConditionType(condition);
+            BaseCondition current = existing.remove(type.name+":"+condition.getName());
+            if(current == null)
+            {
+                ret.add(new Change(Change.Action.CREATE, policyName, type.name, condition.getName(), null)
+                {
+                    void apply()
+                    {
+                        type.createCondition(target.id, copy(condition));
+                    }
+                });
+            }
+            else
+            {
+                List<String> fields = diff(condition, current);
+                if(!fields.isEmpty())
+                {
+                    final BaseCondition updated = copy(condition);
+                    updated.setId(current.getId());
+                    ret.add(new Change(Change.Action.UPDATE, policyName, type.name, condition.getName(), fields)
+                    {
+                        void apply()
+                        {
+                            type.updateCondition(target.id, updated);
+                        }
+                    });
+                }
+            }
+        }
+
+        for(final BaseCondition condition : existing.values())
+        {
+            final ConditionType<?> type = getConditionType(condition);
+            ret.add(new Change(Change.Action.DELETE, policyName, type.name, condition.getName(), null)
+            {
+                void apply()
+                {
+                    type.delete(condition.getId());
+                }
+            });
+        }
+
+        // Only change the channels if the desired channels have been given
+        if(config.getChannelIds() != null)
+        {
+            // The new channels are added with a single call
+            final List<Long> added = new ArrayList<Long>();
+            for(Long channelId : config.getChannelIds())
+            {
+                if(!channelIds.contains(channelId))
+                    added.add(channelId);
+            }
+
+            if(!added.isEmpty())
+            {
+                ret.add(new Change(Change.Action.CREATE, policyName, "channel", added.toString(), null)
+                {
+                    void apply()
+                    {
+                        api.alertPolicyChannels().update(target.id, added);
+                    }
+                });
+            }
+
+            for(final Long channelId : channelIds)
+            {
+                if(!config.getChannelIds().contains(channelId))
+                {
+                    ret.add(new Change(Change.Action.DELETE, policyName, "channel", Long.toString(channelId), null)
+                    {
+                        void apply()
+                        {
+                            api.alertPolicyChannels().delete(target.id, channelId);
+                        }
+                    });
+                }
+            }
+        }
+
+        return ret;
+    }
+
+    /**
+     * Returns the change to delete the given policy.
+     * @param policy The policy to delete
+     * @return The change to delete the policy
+     */
+    private Change deletePolicy(final AlertPolicy policy)
+    {
+        return new Change(Change.Action.DELETE, policy.getName(), "policy", policy.getName(), null)
+        {
+            void apply()
+            {
+                api.alertPolicies().delete(policy.getId());
+            }
+        };
+    }
+
+    /**
+     * Returns the names of the fields set in the desired object that are different in the existing object.
+     * @param desired The desired object
+     * @param current The existing object
+     * @return The names of the fields that are different
+     */
+    static List<String> diff(Object desired, Object current)
+    {
+        Gson gson = GsonRegistry.getBaseGson();
+        List<String> ret = new ArrayList<String>();
+        diff(gson.toJsonTree(desired).getAsJsonObject(), gson.toJsonTree(current).getAsJsonObject(), "", ret);
+        return ret;
+    }
+
+    /**
+     * Adds the names of the fields set in the desired object that are different in the existing object.
+     * <P>
+     * Nested objects are compared field by field, and arrays are compared element by element using {@link #matches}.
+     * @param desired The desired object
+     * @param current The existing object
+     * @param prefix The prefix for the names of the fields
+     * @param fields The names of the fields that are different
+     */
+    private static void diff(JsonObject desired, JsonObject current, String prefix, List<String> fields)
+    {
+        for(Map.Entry<String,JsonElement> entry : desired.entrySet())
+        {
+            String name = entry.getKey();
+            if(prefix.length() == 0 && IGNORED_FIELDS.contains(name))
+                continue;
+
+            JsonElement value = entry.getValue();
+            JsonElement existing = current.get(name);
+            if(value.isJsonObject() && existing != null && existing.isJsonObject())
+                diff(value.getAsJsonObject(), existing.getAsJsonObject(), prefix+name+".", fields);
+            else if(!matches(value, existing))
+                fields.add(prefix+name);
+        }
+    }
+
+    /**
+     * Returns <CODE>true</CODE> if the fields set in the desired element are the same in the existing element.
+     * <P>
+     * Only the fields set in a desired object are compared, so that fields filled in by New Relic,
+     * such as the defaults of the terms of a condition, are not reported as different.
+     * The elements of arrays are matched regardless of their order, and values are compared
+     * as strings, so that a number returned as a string is the same as the number.
+     * @param desired The desired element
+     * @param current The existing element
+     * @return <CODE>true</CODE> if the existing element matches the desired element
+     */
+    static boolean matches(JsonElement desired, JsonElement current)
+    {
+        if(current == null || current.isJsonNull())
+            return desired.isJsonNull();
+
+        if(desired.isJsonObject())
+        {
+            if(!current.isJsonObject())
+                return false;
+            List<String> fields = new ArrayList<String>();
+            diff(desired.getAsJsonObject(), current.getAsJsonObject(), ".", fields);
+            return fields.isEmpty();
+        }
+
+        if(desired.isJsonArray())
+        {
+            if(!current.isJsonArray() || desired.getAsJsonArray().size() != current.getAsJsonArray().size())
+                return false;
+            List<JsonElement> remaining = new LinkedList<JsonElement>();
+            for(JsonElement element : current.getAsJsonArray())
+                remaining.add(element);
+            for(JsonElement element : desired.getAsJsonArray())
+            {
+                boolean found = false;
+                for(Iterator<JsonElement> it = remaining.iterator(); it.hasNext() && !found;)
+                {
+                    if(matches(element, it.next()))
+                    {
+                        it.remove();
+                        found = true;
+                    }
+                }
+                if(!found)
+                    return false;
+            }
+            return true;
+        }
+
+        if(desired.isJsonPrimitive())
+            return current.isJsonPrimitive() && desired.getAsString().equals(current.getAsString());
+        return desired.equals(current);
+    }
+
+    /**
+     * Returns a copy of the given object, so that the desired configuration is not changed.
+     * @param obj The object to copy
+     * @return The copy of the object
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> T copy(T obj)
+    {
+        Gson gson = GsonRegistry.getBaseGson();
+        return (T)gson.fromJson(gson.toJsonTree(obj), obj.getClass());
+    }
+
+    /**
+     * Returns the result of the given future, rethrowing any exception it threw.
+     * @param future The future
+     * @return The result of the future
+     */
+    private static <T> T get(Future<T> future)
+    {
+        try
+        {
+            return future.get();
+        }
+        catch(ExecutionException e)
+        {
+            if(e.getCause() instanceof RuntimeException)
+                throw (RuntimeException)e.getCause();
+            throw new IllegalStateException(e.getCause());
+        }
+        catch(InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted", e);
+        }
+    }
+
+    /**
+     * Returns a new executor for the calls.
+     * @return The executor for the calls
+     */
+    private ExecutorService newExecutor()
+    {
+        return Executors.newFixedThreadPool(Math.max(parallelism, 1), new ThreadFactory()
+        {
+            public Thread newThread(Runnable r)
+            {
+                Thread thread = new Thread(r, "newrelic-alert-sync");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Returns the condition types whose conditions can be read.
+     * @return The condition types
+     */
+    private List<ConditionType<?>> getConditionTypes()
+    {
+        List<ConditionType<?>> ret = new ArrayList<ConditionType<?>>();
+        for(ConditionType<?> type : conditionTypes)
+        {
+            if(type.isAvailable())
+                ret.add(type);
+        }
+        return ret;
+    }
+
+    /**
+     * Returns the type of the given condition.
+     * @param condition The condition
+     * @return The type of the condition
+     */
+    private ConditionType<?> getConditionType(BaseCondition condition)
+    {
+        for(ConditionType<?> type : conditionTypes)
+        {
+            if(type.type.isInstance(condition))
+            {
+                if(!type.isAvailable())
+                    throw new IllegalStateException("an infrastructure API client is needed for condition: "+condition.getName());
+                return type;
+            }
+        }
+        throw new IllegalArgumentException("unsupported condition type: "+condition.getClass().getName());
+    }
+
+    /**
+     * Adds the type of each condition and the operations used to change it.
+     */
+    private void addConditionTypes()
+    {
+        conditionTypes.add(new ConditionType<AlertCondition>("APM condition", AlertCondition.class)
+        {
+            Collection<AlertCondition> list(long policyId)
+            {
+                return api.alertConditions().listAll(AlertConditionService.filters().policyId(policyId).build());
+            }
+
+            void create(long policyId, AlertCondition condition)
+            {
+                api.alertConditions().create(policyId, condition);
+            }
+
+            void update(long policyId, AlertCondition condition)
+            {
+                api.alertConditions().update(condition);
+            }
+
+            void delete(long conditionId)
+            {
+                api.alertConditions().delete(conditionId);
+            }
+        });
+
+        conditionTypes.add(new ConditionType<NrqlAlertCondition>("NRQL condition", NrqlAlertCondition.class)
+        {
+            Collection<NrqlAlertCondition> list(long policyId)
+            {
+                return api.nrqlAlertConditions().listAll(NrqlAlertConditionService.filters().policyId(policyId).build());
+            }
+
+            void create(long policyId, NrqlAlertCondition condition)
+            {
+                api.nrqlAlertConditions().create(policyId, condition);
+            }
+
+            void update(long policyId, NrqlAlertCondition condition)
+            {
+                api.nrqlAlertConditions().update(condition);
+            }
+
+            void delete(long conditionId)
+            {
+                api.nrqlAlertConditions().delete(conditionId);
+            }
+        });
+
+        conditionTypes.add(new ConditionType<ExternalServiceAlertCondition>("external service condition",
+            ExternalServiceAlertCondition.class)
+        {
+            Collection<ExternalServiceAlertCondition> list(long policyId)
+            {
+                return api.externalServiceAlertConditions().listAll(ExternalServiceAlertConditionService.filters().policyId(policyId).build());
+            }
+
+            void create(long policyId, ExternalServiceAlertCondition condition)
+            {
+                api.externalServiceAlertConditions().create(policyId, condition);
+            }
+
+            void update(long policyId, ExternalServiceAlertCondition condition)
+            {
+                api.externalServiceAlertConditions().update(condition);
+            }
+
+            void delete(long conditionId)
+            {
+                api.externalServiceAlertConditions().delete(conditionId);
+            }
+        });
+
+        conditionTypes.add(new ConditionType<SyntheticsAlertCondition>("synthetics condition", SyntheticsAlertCondition.class)
+        {
+            Collection<SyntheticsAlertCondition> list(long policyId)
+            {
+                return api.syntheticsAlertConditions().listAll(SyntheticsAlertConditionService.filters().policyId(policyId).build());
+            }
+
+            void create(long policyId, SyntheticsAlertCondition condition)
+            {
+                api.syntheticsAlertConditions().create(policyId, condition);
+            }
+
+            void update(long policyId, SyntheticsAlertCondition condition)
+            {
+                api.syntheticsAlertConditions().update(condition);
+            }
+
+            void delete(long conditionId)
+            {
+                api.syntheticsAlertConditions().delete(conditionId);
+            }
+        });
+
+        conditionTypes.add(new ConditionType<PluginsAlertCondition>("plugins condition", PluginsAlertCondition.class)
+        {
+            Collection<PluginsAlertCondition> list(long policyId)
+            {
+                return api.pluginsAlertConditions().listAll(PluginsAlertConditionService.filters().policyId(policyId).build());
+            }
+
+            void create(long policyId, PluginsAlertCondition condition)
+            {
+                api.pluginsAlertConditions().create(policyId, condition);
+            }
+
+            void update(long policyId, PluginsAlertCondition condition)
+            {
+                api.pluginsAlertConditions().update(condition);
+            }
+
+            void delete(long conditionId)
+            {
+                api.pluginsAlertConditions().delete(conditionId);
+            }
+        });
+
+        conditionTypes.add(new ConditionType<InfraAlertCondition>("infrastructure condition", InfraAlertCondition.class)
+        {
+            boolean isAvailable()
+            {
+                return infraApi != null;
+            }
+
+            Collection<InfraAlertCondition> list(long policyId)
+            {
+                return infraApi.infraAlertConditions().listAll(policyId);
+            }
+
+            void create(long policyId, InfraAlertCondition condition)
+            {
+                condition.setPolicyId(policyId);
+                infraApi.infraAlertConditions().create(condition);
+            }
+
+            void update(long policyId, InfraAlertCondition condition)
+            {
+                condition.setPolicyId(policyId);
+                infraApi.infraAlertConditions().update(condition);
+            }
+
+            void delete(long conditionId)
+            {
+                infraApi.infraAlertConditions().delete(conditionId);
+            }
+        });
+    }
+
+    /**
+     * Returns a builder for the alert configuration sync.
+     * @param api The client used to read and change the alert configuration
+     * @return The builder instance.
+     */
+    public static Builder builder(NewRelicApi api)
+    {
+        return new Builder(api);
+    }
+
+    /**
+     * Builder to make alert configuration sync construction easier.
+     */
+    public static class Builder
+    {
+        private NewRelicApi api;
+        private NewRelicInfraApi infraApi;
+        private int parallelism = DEFAULT_PARALLELISM;
+        private boolean deletePolicies = false;
+
+        /**
+         * Constructor that takes an API client.
+         * @param api The client used to read and change the alert configuration
+         */
+        public Builder(NewRelicApi api)
+        {
+            this.api = api;
+        }
+
+        /**
+         * Sets the client used to read and change the infrastructure alert conditions.
+         * @param infraApi The Infrastructure API client
+         * @return This object
+         */
+        public Builder infraApi(NewRelicInfraApi infraApi)
+        {
+            this.infraApi = infraApi;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of calls in flight.
+         * @param parallelism The maximum number of calls in flight
+         * @return This object
+         */
+        public Builder parallelism(int parallelism)
+        {
+            this.parallelism = parallelism;
+            return this;
+        }
+
+        /**
+         * Set to <CODE>true</CODE> if existing policies that are not in the desired configuration should be deleted.
+         * @param deletePolicies <CODE>true</CODE> if existing policies that are not in the desired configuration should be deleted
+         * @return This object
+         */
+        public Builder deletePolicies(boolean deletePolicies)
+        {
+            this.deletePolicies = deletePolicies;
+            return this;
+        }
+
+        /**
+         * Returns the configured alert configuration sync instance
+         * @return The alert configuration sync instance
+         */
+        public AlertConfigSync build()
+        {
+            AlertConfigSync ret = new AlertConfigSync(api, infraApi);
+            ret.setParallelism(parallelism);
+            ret.setDeletePolicies(deletePolicies);
+            return ret;
+        }
+    }
+
+    /**
+     * The desired configuration of a policy, with its conditions and channels.
+     */
+    public static class PolicyConfig
+    {
+        private AlertPolicy policy;
+        private List<BaseCondition> conditions = new ArrayList<BaseCondition>();
+        private Set<Long> channelIds;
+
+        /**
+         * Constructor that takes the desired policy.
+         * @param policy The desired policy, matched to the existing policies by name
+         */
+        public PolicyConfig(AlertPolicy policy)
+        {
+            this.policy = policy;
+        }
+
+        /**
+         * Returns the desired policy.
+         * @return The desired policy
+         */
+        public AlertPolicy getPolicy()
+        {
+            return policy;
+        }
+
+        /**
+         * Adds a desired condition to the policy.
+         * @param condition The desired condition, matched to the existing conditions by type and name
+         * @return This object
+         */
+        public PolicyConfig condition(BaseCondition condition)
+        {
+            conditions.add(condition);
+            return this;
+        }
+
+        /**
+         * Returns the desired conditions of the policy.
+         * @return The desired conditions
+         */
+        public List<BaseCondition> getConditions()
+        {
+            return conditions;
+        }
+
+        /**
+         * Adds a desired channel to the policy.
+         * <P>
+         * If no channels are added, the existing channels of the policy are left unchanged.
+         * @param channelId The id of the desired channel
+         * @return This object
+         */
+        public PolicyConfig channel(long channelId)
+        {
+            if(channelIds == null)
+                channelIds = new LinkedHashSet<Long>();
+            channelIds.add(channelId);
+            return this;
+        }
+
+        /**
+         * Returns the ids of the desired channels of the policy.
+         * @return The ids of the desired channels, or <CODE>null</CODE> if the channels should be left unchanged
+         */
+        public Set<Long> getChannelIds()
+        {
+            return channelIds;
+        }
+    }
+
+    /**
+     * The changes needed for each policy.
+     */
+    public static class Plan
+    {
+        private Map<String,List<Change>> policies = new LinkedHashMap<String,List<Change>>();
+
+        /**
+         * Adds the changes for the given policy.
+         * @param name The name of the policy
+         * @param changes The changes for the policy
+         */
+        private void add(String name, List<Change> changes)
+        {
+            if(!changes.isEmpty())
+                policies.put(name, changes);
+        }
+
+        /**
+         * Returns all the changes in the plan.
+         * @return The changes in the plan
+         */
+        public List<Change> getChanges()
+        {
+            List<Change> ret = new ArrayList<Change>();
+            for(List<Change> changes : policies.values())
+                ret.addAll(changes);
+            return ret;
+        }
+
+        /**
+         * Returns the changes for the given policy.
+         * @param name The name of the policy
+         * @return The changes for the policy
+         */
+        public List<Change> getChanges(String name)
+        {
+            List<Change> ret = policies.get(name);
+            return ret != null ? ret : Collections.<Change>emptyList();
+        }
+
+        /**
+         * Returns <CODE>true</CODE> if no changes are needed.
+         * @return <CODE>true</CODE> if no changes are needed
+         */
+        public boolean isEmpty()
+        {
+            return policies.isEmpty();
+        }
+
+        /**
+         * Returns a string representation of the object, with a line for each change.
+         */
+        @Override
+        public String toString()
+        {
+            StringBuilder ret = new StringBuilder();
+            for(Change change : getChanges())
+                ret.append(change).append("\n");
+            return ret.toString();
+        }
+    }
+
+    /**
+     * A create, update or delete of a policy, condition or channel.
+     */
+    public abstract static class Change
+    {
+        /**
+         * The kind of change.
+         */
+        public enum Action
+        {
+            CREATE,
+            UPDATE,
+            DELETE;
+        }
+
+        private Action action;
+        private String policy;
+        private String type;
+        private String name;
+        private List<String> fields;
+        private volatile boolean applied = false;
+        private volatile Throwable failure;
+
+        private Change(Action action, String policy, String type, String name, List<String> fields)
+        {
+            this.action = action;
+            this.policy = policy;
+            this.type = type;
+            this.name = name;
+            this.fields = fields != null ? fields : Collections.<String>emptyList();
+        }
+
+        /**
+         * Makes the change.
+         */
+        abstract void apply();
+
+        /**
+         * Returns the kind of change.
+         * @return The kind of change
+         */
+        public Action getAction()
+        {
+            return action;
+        }
+
+        /**
+         * Returns the name of the policy that is changed.
+         * @return The name of the policy
+         */
+        public String getPolicy()
+        {
+            return policy;
+        }
+
+        /**
+         * Returns the type of object that is changed, eg. "policy", "NRQL condition" or "channel".
+         * @return The type of object
+         */
+        public String getType()
+        {
+            return type;
+        }
+
+        /**
+         * Returns the name of the object that is changed, or the ids for channels.
+         * @return The name of the object
+         */
+        public String getName()
+        {
+            return name;
+        }
+
+        /**
+         * Returns the names of the fields that are different for an update.
+         * @return The names of the fields that are different
+         */
+        public List<String> getFields()
+        {
+            return fields;
+        }
+
+        /**
+         * Returns <CODE>true</CODE> if the change has been made.
+         * @return <CODE>true</CODE> if the change has been made
+         */
+        public boolean isApplied()
+        {
+            return applied;
+        }
+
+        /**
+         * Returns the exception thrown if the change failed.
+         * @return The exception thrown if the change failed, or <CODE>null</CODE>
+         */
+        public Throwable getFailure()
+        {
+            return failure;
+        }
+
+        /**
+         * Returns a string representation of the object.
+         */
+        @Override
+        public String toString()
+        {
+            return action.name().toLowerCase()+" "+type+" \""+name+"\""
+                +(type.equals("policy") ? "" : " in policy \""+policy+"\"")
+                +(fields.isEmpty() ? "" : " "+fields);
+        }
+    }
+
+    /**
+     * The id of a policy, which is only known after the policy is created.
+     */
+    private static class PolicyTarget
+    {
+        private volatile Long id;
+    }
+
+    /**
+     * The operations used to read and change a type of condition.
+     */
+    private abstract static class ConditionType<T extends BaseCondition>
+    {
+        private String name;
+        private Class<T> type;
+
+        ConditionType(String name, Class<T> type)
+        {
+            this.name = name;
+            this.type = type;
+        }
+
+        boolean isAvailable()
+        {
+            return true;
+        }
+
+        abstract Collection<T> list(long policyId);
+
+        abstract void create(long policyId, T condition);
+
+        abstract void update(long policyId, T condition);
+
+        abstract void delete(long conditionId);
+
+        void createCondition(long policyId, BaseCondition condition)
+        {
+            create(policyId, type.cast(condition));
+        }
+
+        void updateCondition(long policyId, BaseCondition condition)
+        {
+            update(policyId, type.cast(condition));
+        }
+    }
+}
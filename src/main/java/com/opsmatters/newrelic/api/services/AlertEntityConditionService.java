@@ -21,6 +21,7 @@ import com.google.common.base.Optional;
 import com.opsmatters.newrelic.api.NewRelicClient;
 import com.opsmatters.newrelic.api.model.Entity;
 import com.opsmatters.newrelic.api.model.alerts.conditions.AlertCondition;
+import com.opsmatters.newrelic.api.util.BatchResult;
 import com.opsmatters.newrelic.api.util.QueryParameterList;
 
 /**
@@ -89,6 +90,39 @@ public class AlertEntityConditionService extends BaseFluent
         return add(entity.getId(), entity.getType(), conditionId);
     }
 
+    /**
+     * Adds the given entities to the alert condition with the given id.
+     * <P>
+     * The API only takes one entity per call, so the calls are made concurrently,
+     * limited by the client's batch parallelism, and are subject to the client's rate limiter.
+     * A failed call does not stop the other calls, and is reported in the failures of the results.
+     * @param entityIds The ids of the entities to add
+     * @param entityType The type of the entities to add
+     * @param conditionId The id of the alert condition to add the entities to
+     * @return The alert condition returned for each entity, keyed by entity id
+     */
+    public BatchResult<AlertCondition> add(Collection<Long> entityIds, String entityType, long conditionId)
+    {
+        return add(entityIds, entityType, conditionId, getClient().getBatchParallelism());
+    }
+
+    /**
+     * Adds the given entities to the alert condition with the given id, with the given number of calls in flight.
+     * @param entityIds The ids of the entities to add
+     * @param entityType The type of the entities to add
+     * @param conditionId The id of the alert condition to add the entities to
+     * @param parallelism The maximum number of calls in flight
+     * @return The alert condition returned for each entity, keyed by entity id
+     */
+    public BatchResult<AlertCondition> add(Collection<Long> entityIds, String entityType, long conditionId, int parallelism)
+    {
+        QueryParameterList queryParams = new QueryParameterList();
+        queryParams.add("entity_type", entityType);
+        queryParams.add("condition_id", conditionId);
+        return new BatchFetcher<AlertCondition>(HTTP, ALERT_CONDITION, parallelism, 0L)
+            .put(entityIds, "/v2/alerts_entity_conditions/%d.json", queryParams);
+    }
+
     /**
      * Removes the given entity from the alert condition with the given id.
      * @param entityId The id of the entity to remove
@@ -115,4 +149,22 @@ public class AlertEntityConditionService extends BaseFluent
     {
         return remove(entity.getId(), entity.getType(), conditionId);
     }
+
+    /**
+     * Removes the given entities from the alert condition with the given id.
+     * <P>
+     * The calls are made concurrently, limited by the client's batch parallelism.
+     * @param entityIds The ids of the entities to remove
+     * @param entityType The type of the entities to remove
+     * @param conditionId The id of the alert condition from which to delete the entities
+     * @return <CODE>true</CODE> for each entity that was removed, keyed by entity id
+     */
+    public BatchResult<Boolean> remove(Collection<Long> entityIds, String entityType, long conditionId)
+    {
+        QueryParameterList queryParams = new QueryParameterList();
+        queryParams.add("entity_type", entityType);
+        queryParams.add("condition_id", conditionId);
+        return new BatchFetcher<AlertCondition>(HTTP, ALERT_CONDITION, getClient().getBatchParallelism(), 0L)
+            .delete(entityIds, "/v2/alerts_entity_conditions/%d.json", queryParams);
+    }
 }
@@ -18,6 +18,8 @@ package com.opsmatters.newrelic.api.services;
 
 import java.util.List;
 import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
 import com.opsmatters.newrelic.api.NewRelicClient;
 import com.opsmatters.newrelic.api.model.EntityType;
 import com.opsmatters.newrelic.api.model.accounts.Product;
@@ -51,6 +53,54 @@ public class AlertEventService extends BaseFluent
         return HTTP.GET("/v2/alerts_events.json", null, queryParams, ALERT_EVENTS).get();
     }
 
+    /**
+     * Returns an iterator over all the alert events with the given query parameters.
+     * <P>
+     * Each page of alert events is only fetched when the iterator reaches it.
+     * @param queryParams The query parameters
+     * @return The iterator over the alert events
+     */
+    public PagedIterator<AlertEvent> iterator(List<String> queryParams)
+    {
+        return new PagedIterator<AlertEvent>(HTTP, "/v2/alerts_events.json", queryParams, ALERT_EVENTS);
+    }
+
+    /**
+     * Returns a stream of all the alert events with the given query parameters.
+     * <P>
+     * Each page of alert events is only fetched when the stream reaches it.
+     * @param queryParams The query parameters
+     * @return The stream of alert events
+     */
+    public Stream<AlertEvent> stream(List<String> queryParams)
+    {
+        return iterator(queryParams).stream();
+    }
+
+    /**
+     * Returns all the alert events with the given query parameters.
+     * <P>
+     * The last page is taken from the first response, and the remaining pages 
+     * are then requested concurrently, limited by the client's page parallelism.
+     * @param queryParams The query parameters
+     * @return The set of alert events
+     */
+    public Collection<AlertEvent> listAll(List<String> queryParams)
+    {
+        return new ParallelPageFetcher<AlertEvent>(HTTP, "/v2/alerts_events.json", queryParams, ALERT_EVENTS, 
+            getClient().getPageParallelism()).fetch();
+    }
+
+    /**
+     * Asynchronously returns the set of alert events with the given query parameters.
+     * @param queryParams The query parameters
+     * @return The future set of alert events
+     */
+    public CompletableFuture<Collection<AlertEvent>> listAsync(List<String> queryParams)
+    {
+        return unwrap(HTTP.GETAsync("/v2/alerts_events.json", null, queryParams, ALERT_EVENTS));
+    }
+
     /**
      * Returns the set of alert events.
      * @return The set of alert events
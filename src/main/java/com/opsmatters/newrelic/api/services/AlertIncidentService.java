@@ -18,6 +18,8 @@ package com.opsmatters.newrelic.api.services;
 
 import java.util.List;
 import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
 import com.opsmatters.newrelic.api.NewRelicClient;
 import com.opsmatters.newrelic.api.model.alerts.AlertIncident;
 import com.opsmatters.newrelic.api.util.QueryParameterList;
@@ -49,6 +51,54 @@ public class AlertIncidentService extends BaseFluent
         return HTTP.GET("/v2/alerts_incidents.json", null, queryParams, ALERT_INCIDENTS).get();
     }
 
+    /**
+     * Returns an iterator over all the alert incidents with the given query parameters.
+     * <P>
+     * Each page of alert incidents is only fetched when the iterator reaches it.
+     * @param queryParams The query parameters
+     * @return The iterator over the alert incidents
+     */
+    public PagedIterator<AlertIncident> iterator(List<String> queryParams)
+    {
+        return new PagedIterator<AlertIncident>(HTTP, "/v2/alerts_incidents.json", queryParams, ALERT_INCIDENTS);
+    }
+
+    /**
+     * Returns a stream of all the alert incidents with the given query parameters.
+     * <P>
+     * Each page of alert incidents is only fetched when the stream reaches it.
+     * @param queryParams The query parameters
+     * @return The stream of alert incidents
+     */
+    public Stream<AlertIncident> stream(List<String> queryParams)
+    {
+        return iterator(queryParams).stream();
+    }
+
+    /**
+     * Returns all the alert incidents with the given query parameters.
+     * <P>
+     * The last page is taken from the first response, and the remaining pages 
+     * are then requested concurrently, limited by the client's page parallelism.
+     * @param queryParams The query parameters
+     * @return The set of alert incidents
+     */
+    public Collection<AlertIncident> listAll(List<String> queryParams)
+    {
+        return new ParallelPageFetcher<AlertIncident>(HTTP, "/v2/alerts_incidents.json", queryParams, ALERT_INCIDENTS, 
+            getClient().getPageParallelism()).fetch();
+    }
+
+    /**
+     * Asynchronously returns the set of alert incidents with the given query parameters.
+     * @param queryParams The query parameters
+     * @return The future set of alert incidents
+     */
+    public CompletableFuture<Collection<AlertIncident>> listAsync(List<String> queryParams)
+    {
+        return unwrap(HTTP.GETAsync("/v2/alerts_incidents.json", null, queryParams, ALERT_INCIDENTS));
+    }
+
     /**
      * Returns the set of alert incidents.
      * @param onlyOpen Filter by open incidents
@@ -16,6 +16,7 @@
 
 package com.opsmatters.newrelic.api.services;
 
+import java.util.Collection;
 import com.google.common.base.Optional;
 import com.opsmatters.newrelic.api.NewRelicClient;
 import com.opsmatters.newrelic.api.model.alerts.policies.AlertPolicyChannel;
@@ -52,6 +53,33 @@ public class AlertPolicyChannelService extends BaseFluent
         return HTTP.PUT("/v2/alerts_policy_channels.json", null, null, queryParams, ALERT_POLICY_CHANNEL);
     }
 
+    /**
+     * Adds the given alert channels to the alert policy with the given id.
+     * <P>
+     * The channels are all added with a single call, as the API takes a comma-separated list of channel ids.
+     * @param policyId The id of the alert policy to add the channels to
+     * @param channelIds The ids of the alert channels to add
+     * @return The alert policy channel that was updated
+     */
+    public Optional<AlertPolicyChannel> update(long policyId, Collection<Long> channelIds)
+    {
+        if(channelIds.isEmpty())
+            throw new IllegalArgumentException("no channel ids to add");
+
+        StringBuilder ids = new StringBuilder();
+        for(Long channelId : channelIds)
+        {
+            if(ids.length() > 0)
+                ids.append(",");
+            ids.append(channelId);
+        }
+
+        QueryParameterList queryParams = new QueryParameterList();
+        queryParams.add("policy_id", policyId);
+        queryParams.add("channel_ids", ids.toString());
+        return HTTP.PUT("/v2/alerts_policy_channels.json", null, null, queryParams, ALERT_POLICY_CHANNEL);
+    }
+
     /**
      * Deletes the given alert channel from the alert policy with the given id.
      * @param policyId The id of the alert policy from which to delete the channel
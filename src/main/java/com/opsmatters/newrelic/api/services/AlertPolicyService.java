@@ -18,6 +18,7 @@ package com.opsmatters.newrelic.api.services;
 
 import java.util.List;
 import java.util.Collection;
+import java.util.stream.Stream;
 import com.google.common.base.Optional;
 import com.opsmatters.newrelic.api.NewRelicClient;
 import com.opsmatters.newrelic.api.model.alerts.policies.AlertPolicy;
@@ -50,6 +51,44 @@ public class AlertPolicyService extends BaseFluent
         return HTTP.GET("/v2/alerts_policies.json", null, queryParams, ALERT_POLICIES).get();
     }
 
+    /**
+     * Returns an iterator over all the alert policies with the given query parameters.
+     * <P>
+     * Each page of alert policies is only fetched when the iterator reaches it.
+     * @param queryParams The query parameters
+     * @return The iterator over the alert policies
+     */
+    public PagedIterator<AlertPolicy> iterator(List<String> queryParams)
+    {
+        return new PagedIterator<AlertPolicy>(HTTP, "/v2/alerts_policies.json", queryParams, ALERT_POLICIES);
+    }
+
+    /**
+     * Returns a stream of all the alert policies with the given query parameters.
+     * <P>
+     * Each page of alert policies is only fetched when the stream reaches it.
+     * @param queryParams The query parameters
+     * @return The stream of alert policies
+     */
+    public Stream<AlertPolicy> stream(List<String> queryParams)
+    {
+        return iterator(queryParams).stream();
+    }
+
+    /**
+     * Returns all the alert policies with the given query parameters.
+     * <P>
+     * The last page is taken from the first response, and the remaining pages 
+     * are then requested concurrently, limited by the client's page parallelism.
+     * @param queryParams The query parameters
+     * @return The set of alert policies
+     */
+    public Collection<AlertPolicy> listAll(List<String> queryParams)
+    {
+        return new ParallelPageFetcher<AlertPolicy>(HTTP, "/v2/alerts_policies.json", queryParams, ALERT_POLICIES, 
+            getClient().getPageParallelism()).fetch();
+    }
+
     /**
      * Returns the set of alert policies.
      * @return The set of alert policies
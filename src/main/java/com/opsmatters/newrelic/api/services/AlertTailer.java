@@ -0,0 +1,688 @@
+/*
+ * Copyright 2018 Gerald Curley
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.opsmatters.newrelic.api.services;
+
+import java.util.Map;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import java.util.logging.Level;
+import javax.ws.rs.core.GenericType;
+import com.google.common.base.Optional;
+import com.opsmatters.newrelic.api.NewRelicApi;
+import com.opsmatters.newrelic.api.model.IdResource;
+import com.opsmatters.newrelic.api.model.alerts.AlertEvent;
+import com.opsmatters.newrelic.api.model.alerts.AlertViolation;
+import com.opsmatters.newrelic.api.model.alerts.AlertIncident;
+import com.opsmatters.newrelic.api.util.Page;
+import com.opsmatters.newrelic.api.util.QueryParameterList;
+
+/**
+ * Polls the alert events, violations and incidents on a fixed interval and passes each new record to the listeners.
+ * <P>
+ * Each type of record keeps a high-water mark of the latest timestamp it has seen,
+ * and each poll only requests the records since the mark less a small overlap,
+ * to allow for records that arrive late. Events and incidents are returned newest first,
+ * so the pages are read until a record older than the window is reached.
+ * Violations are requested with a start date filter for the window.
+ * The records in the overlap are de-duplicated using the ids of the most recent records,
+ * so the number of ids kept should be more than the number of records expected within the overlap.
+ * <P>
+ * Only the types of record that have a listener are polled.
+ * <P>
+ * To restart from where a previous tailer stopped, save its marks and set them on the new tailer.
+ * The ids are not saved, so the records within the overlap before a saved mark may be passed on again.
+ *
+ * @author Gerald Curley (opsmatters)
+ */
+public class AlertTailer
+{
+    private static final Logger logger = Logger.getLogger(AlertTailer.class.getName());
+
+    /**
+     * The default poll interval (in milliseconds).
+     */
+    public static final long DEFAULT_INTERVAL = 30000L;
+
+    /**
+     * The default overlap of each poll with the previous one (in milliseconds).
+     */
+    public static final long DEFAULT_OVERLAP = 60000L;
+
+    /**
+     * The default maximum number of ids kept for each type of record.
+     */
+    public static final int DEFAULT_MAX_IDS = 10000;
+
+    /**
+     * Listener for new records.
+     */
+    public interface Listener<T>
+    {
+        /**
+         * Called for each new record, in timestamp order.
+         * @param resource The new record
+         */
+        void received(T resource);
+    }
+
+    private HttpContext http;
+    private long interval = DEFAULT_INTERVAL;
+    private long overlap = DEFAULT_OVERLAP;
+    private int maxIds = DEFAULT_MAX_IDS;
+    private long since = System.currentTimeMillis();
+    private List<String> eventFilters;
+    private boolean onlyOpen = false;
+    private ScheduledExecutorService scheduler;
+
+    private Tail<AlertEvent> events = new Tail<AlertEvent>("/v2/alerts_events.json", BaseFluent.ALERT_EVENTS, true)
+    {
+        List<String> getQueryParams(long from, long to)
+        {
+            return eventFilters;
+        }
+
+        Long getTimestamp(AlertEvent event)
+        {
+            return event.getTimestamp();
+        }
+    };
+
+    private Tail<AlertViolation> violations = new Tail<AlertViolation>("/v2/alerts_violations.json", BaseFluent.ALERT_VIOLATIONS, false)
+    {
+        List<String> getQueryParams(long from, long to)
+        {
+            return AlertViolationService.filters().startDate(from).endDate(to).onlyOpen(onlyOpen).build();
+        }
+
+        Long getTimestamp(AlertViolation violation)
+        {
+            return violation.getOpenedAt();
+        }
+    };
+
+    private Tail<AlertIncident> incidents = new Tail<AlertIncident>("/v2/alerts_incidents.json", BaseFluent.ALERT_INCIDENTS, true)
+    {
+        List<String> getQueryParams(long from, long to)
+        {
+            return AlertIncidentService.filters().onlyOpen(onlyOpen).build();
+        }
+
+        Long getTimestamp(AlertIncident incident)
+        {
+            return incident.getOpenedAt();
+        }
+    };
+
+    /**
+     * Constructor that takes an API client.
+     * @param api The client used to list the alert records
+     */
+    public AlertTailer(NewRelicApi api)
+    {
+        // Creating the service makes sure that the client has been initialized
+        this.http = api.alertEvents().HTTP;
+    }
+
+    /**
+     * Sets the time between polls.
+     * @param interval The poll interval (in milliseconds)
+     */
+    public void setInterval(long interval)
+    {
+        this.interval = interval;
+    }
+
+    /**
+     * Returns the time between polls.
+     * @return The poll interval (in milliseconds)
+     */
+    public long getInterval()
+    {
+        return interval;
+    }
+
+    /**
+     * Sets the overlap of each poll with the previous one, to allow for records that arrive late.
+     * @param overlap The overlap (in milliseconds)
+     */
+    public void setOverlap(long overlap)
+    {
+        this.overlap = overlap;
+    }
+
+    /**
+     * Returns the overlap of each poll with the previous one.
+     * @return The overlap (in milliseconds)
+     */
+    public long getOverlap()
+    {
+        return overlap;
+    }
+
+    /**
+     * Sets the maximum number of ids kept for each type of record to de-duplicate the overlap.
+     * @param maxIds The maximum number of ids
+     */
+    public void setMaxIds(int maxIds)
+    {
+        this.maxIds = maxIds;
+    }
+
+    /**
+     * Returns the maximum number of ids kept for each type of record to de-duplicate the overlap.
+     * @return The maximum number of ids
+     */
+    public int getMaxIds()
+    {
+        return maxIds;
+    }
+
+    /**
+     * Sets the time of the oldest records to be passed to the listeners.
+     * <P>
+     * Defaults to the time the tailer was created, so that only records that arrive afterwards are passed on.
+     * @param since The time of the oldest records (in milliseconds)
+     */
+    public void setSince(long since)
+    {
+        this.since = since;
+    }
+
+    /**
+     * Returns the time of the oldest records to be passed to the listeners.
+     * @return The time of the oldest records (in milliseconds)
+     */
+    public long getSince()
+    {
+        return since;
+    }
+
+    /**
+     * Sets the filters used when listing the alert events.
+     * @param eventFilters The filters for the alert events, from {@link AlertEventService#filters()}
+     */
+    public void setEventFilters(List<String> eventFilters)
+    {
+        this.eventFilters = PagedIterator.getQueryParams(eventFilters);
+    }
+
+    /**
+     * Returns the filters used when listing the alert events.
+     * @return The filters for the alert events
+     */
+    public List<String> getEventFilters()
+    {
+        return eventFilters;
+    }
+
+    /**
+     * Set to <CODE>true</CODE> if only open violations and incidents should be included.
+     * @param onlyOpen <CODE>true</CODE> if only open violations and incidents should be included
+     */
+    public void setOnlyOpen(boolean onlyOpen)
+    {
+        this.onlyOpen = onlyOpen;
+    }
+
+    /**
+     * Returns <CODE>true</CODE> if only open violations and incidents should be included.
+     * @return <CODE>true</CODE> if only open violations and incidents should be included
+     */
+    public boolean getOnlyOpen()
+    {
+        return onlyOpen;
+    }
+
+    /**
+     * Adds a listener for new alert events.
+     * @param listener The listener to add
+     */
+    public void addEventListener(Listener<AlertEvent> listener)
+    {
+        events.listeners.add(listener);
+    }
+
+    /**
+     * Adds a listener for new alert violations.
+     * @param listener The listener to add
+     */
+    public void addViolationListener(Listener<AlertViolation> listener)
+    {
+        violations.listeners.add(listener);
+    }
+
+    /**
+     * Adds a listener for new alert incidents.
+     * @param listener The listener to add
+     */
+    public void addIncidentListener(Listener<AlertIncident> listener)
+    {
+        incidents.listeners.add(listener);
+    }
+
+    /**
+     * Returns the high-water mark of the alert events, polls start from this time less the overlap.
+     * @return The high-water mark of the alert events (in milliseconds)
+     */
+    public synchronized long getEventMark()
+    {
+        return events.mark;
+    }
+
+    /**
+     * Sets the high-water mark of the alert events, eg. to restart from a mark saved by a previous tailer.
+     * @param mark The high-water mark of the alert events (in milliseconds)
+     */
+    public synchronized void setEventMark(long mark)
+    {
+        events.mark = mark;
+    }
+
+    /**
+     * Returns the high-water mark of the alert violations, polls start from this time less the overlap.
+     * @return The high-water mark of the alert violations (in milliseconds)
+     */
+    public synchronized long getViolationMark()
+    {
+        return violations.mark;
+    }
+
+    /**
+     * Sets the high-water mark of the alert violations, eg. to restart from a mark saved by a previous tailer.
+     * @param mark The high-water mark of the alert violations (in milliseconds)
+     */
+    public synchronized void setViolationMark(long mark)
+    {
+        violations.mark = mark;
+    }
+
+    /**
+     * Returns the high-water mark of the alert incidents, polls start from this time less the overlap.
+     * @return The high-water mark of the alert incidents (in milliseconds)
+     */
+    public synchronized long getIncidentMark()
+    {
+        return incidents.mark;
+    }
+
+    /**
+     * Sets the high-water mark of the alert incidents, eg. to restart from a mark saved by a previous tailer.
+     * @param mark The high-water mark of the alert incidents (in milliseconds)
+     */
+    public synchronized void setIncidentMark(long mark)
+    {
+        incidents.mark = mark;
+    }
+
+    /**
+     * Starts polling for new records on the poll interval.
+     * @return This object
+     */
+    public synchronized AlertTailer start()
+    {
+        if(scheduler == null)
+        {
+            scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+            {
+                public Thread newThread(Runnable r)
+                {
+                    Thread thread = new Thread(r, "newrelic-alert-tailer");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+            scheduler.scheduleWithFixedDelay(new Runnable()
+            {
+                public void run()
+                {
+                    poll();
+                }
+            }, 0L, interval, TimeUnit.MILLISECONDS);
+        }
+
+        return this;
+    }
+
+    /**
+     * Stops polling for new records.
+     */
+    public synchronized void shutdown()
+    {
+        if(scheduler != null)
+            scheduler.shutdown();
+        scheduler = null;
+    }
+
+    /**
+     * Requests the records since the last poll and passes the new records to the listeners.
+     * <P>
+     * If the records of a type could not be retrieved, its mark is left unchanged so that
+     * the same window is requested again by the next poll.
+     * @return The number of new records
+     */
+    public synchronized int poll()
+    {
+        long now = System.currentTimeMillis();
+        return events.poll(now)+violations.poll(now)+incidents.poll(now);
+    }
+
+    /**
+     * Returns a builder for the alert tailer.
+     * @param api The client used to list the alert records
+     * @return The builder instance.
+     */
+    public static Builder builder(NewRelicApi api)
+    {
+        return new Builder(api);
+    }
+
+    /**
+     * Builder to make alert tailer construction easier.
+     */
+    public static class Builder
+    {
+        private AlertTailer tailer;
+
+        /**
+         * Constructor that takes an API client.
+         * @param api The client used to list the alert records
+         */
+        public Builder(NewRelicApi api)
+        {
+            tailer = new AlertTailer(api);
+        }
+
+        /**
+         * Sets the time between polls.
+         * @param interval The poll interval (in milliseconds)
+         * @return This object
+         */
+        public Builder interval(long interval)
+        {
+            tailer.setInterval(interval);
+            return this;
+        }
+
+        /**
+         * Sets the overlap of each poll with the previous one.
+         * @param overlap The overlap (in milliseconds)
+         * @return This object
+         */
+        public Builder overlap(long overlap)
+        {
+            tailer.setOverlap(overlap);
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of ids kept for each type of record.
+         * @param maxIds The maximum number of ids
+         * @return This object
+         */
+        public Builder maxIds(int maxIds)
+        {
+            tailer.setMaxIds(maxIds);
+            return this;
+        }
+
+        /**
+         * Sets the time of the oldest records to be passed to the listeners.
+         * @param since The time of the oldest records (in milliseconds)
+         * @return This object
+         */
+        public Builder since(long since)
+        {
+            tailer.setSince(since);
+            return this;
+        }
+
+        /**
+         * Sets the filters used when listing the alert events.
+         * @param eventFilters The filters for the alert events
+         * @return This object
+         */
+        public Builder eventFilters(List<String> eventFilters)
+        {
+            tailer.setEventFilters(eventFilters);
+            return this;
+        }
+
+        /**
+         * Set to <CODE>true</CODE> if only open violations and incidents should be included.
+         * @param onlyOpen <CODE>true</CODE> if only open violations and incidents should be included
+         * @return This object
+         */
+        public Builder onlyOpen(boolean onlyOpen)
+        {
+            tailer.setOnlyOpen(onlyOpen);
+            return this;
+        }
+
+        /**
+         * Sets the high-water mark of the alert events, eg. to restart from a mark saved by a previous tailer.
+         * @param mark The high-water mark of the alert events (in milliseconds)
+         * @return This object
+         */
+        public Builder eventMark(long mark)
+        {
+            tailer.setEventMark(mark);
+            return this;
+        }
+
+        /**
+         * Sets the high-water mark of the alert violations, eg. to restart from a mark saved by a previous tailer.
+         * @param mark The high-water mark of the alert violations (in milliseconds)
+         * @return This object
+         */
+        public Builder violationMark(long mark)
+        {
+            tailer.setViolationMark(mark);
+            return this;
+        }
+
+        /**
+         * Sets the high-water mark of the alert incidents, eg. to restart from a mark saved by a previous tailer.
+         * @param mark The high-water mark of the alert incidents (in milliseconds)
+         * @return This object
+         */
+        public Builder incidentMark(long mark)
+        {
+            tailer.setIncidentMark(mark);
+            return this;
+        }
+
+        /**
+         * Adds a listener for new alert events.
+         * @param listener The listener to add
+         * @return This object
+         */
+        public Builder eventListener(Listener<AlertEvent> listener)
+        {
+            tailer.addEventListener(listener);
+            return this;
+        }
+
+        /**
+         * Adds a listener for new alert violations.
+         * @param listener The listener to add
+         * @return This object
+         */
+        public Builder violationListener(Listener<AlertViolation> listener)
+        {
+            tailer.addViolationListener(listener);
+            return this;
+        }
+
+        /**
+         * Adds a listener for new alert incidents.
+         * @param listener The listener to add
+         * @return This object
+         */
+        public Builder incidentListener(Listener<AlertIncident> listener)
+        {
+            tailer.addIncidentListener(listener);
+            return this;
+        }
+
+        /**
+         * Returns the configured alert tailer instance
+         * @return The alert tailer instance
+         */
+        public AlertTailer build()
+        {
+            return tailer;
+        }
+    }
+
+    /**
+     * The high-water mark, recent ids and listeners for one type of record.
+     */
+    private abstract class Tail<T extends IdResource>
+    {
+        private String partialUrl;
+        private GenericType<Collection<T>> returnType;
+        private boolean newestFirst;
+        private long mark = -1L;
+        private List<Listener<T>> listeners = new CopyOnWriteArrayList<Listener<T>>();
+        private Map<Long,Boolean> ids = new LinkedHashMap<Long,Boolean>()
+        {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long,Boolean> eldest)
+            {
+                return size() > maxIds;
+            }
+        };
+
+        Tail(String partialUrl, GenericType<Collection<T>> returnType, boolean newestFirst)
+        {
+            this.partialUrl = partialUrl;
+            this.returnType = returnType;
+            this.newestFirst = newestFirst;
+        }
+
+        /**
+         * Returns the query parameters for the given window.
+         */
+        abstract List<String> getQueryParams(long from, long to);
+
+        /**
+         * Returns the timestamp of the given record.
+         */
+        abstract Long getTimestamp(T resource);
+
+        /**
+         * Requests the records since the mark less the overlap and passes the new records to the listeners.
+         */
+        int poll(long now)
+        {
+            if(listeners.isEmpty())
+                return 0;
+
+            long from = mark < 0L ? since : Math.max(mark-overlap, since);
+
+            // Keyed by id as a record can appear on two pages if new records arrive during the poll
+            Map<Long,T> received = new LinkedHashMap<Long,T>();
+            try
+            {
+                // The pages are requested one at a time so that no page beyond the window is fetched
+                int pageNumber = 1;
+                boolean done = false;
+                while(!done)
+                {
+                    QueryParameterList params = new QueryParameterList();
+                    params.addAll(PagedIterator.getQueryParams(getQueryParams(from, now)));
+                    params.add(HttpContext.PAGE, pageNumber);
+                    Optional<Page<Collection<T>>> page = http.GETPage(partialUrl, null, params, returnType);
+                    if(!page.isPresent())
+                    {
+                        // Keep the mark so that the records on the missing page are requested again
+                        logger.warning("Unable to poll alert records: page "+pageNumber+" of "+partialUrl+" not returned");
+                        return 0;
+                    }
+                    if(page.get().getData().isEmpty())
+                        break;
+
+                    for(T resource : page.get().getData())
+                    {
+                        Long timestamp = getTimestamp(resource);
+                        if(timestamp == null || timestamp < from)
+                        {
+                            // The remaining records are older than the window
+                            if(newestFirst && timestamp != null)
+                                done = true;
+                            continue;
+                        }
+                        if(resource.getId() != null && !ids.containsKey(resource.getId()))
+                            received.put(resource.getId(), resource);
+                    }
+
+                    if(!page.get().hasNext())
+                        break;
+                    pageNumber = page.get().getNextPage();
+                }
+            }
+            catch(RuntimeException e)
+            {
+                logger.log(Level.WARNING, "Unable to poll alert records: "+partialUrl, e);
+                return 0;
+            }
+
+            List<T> sorted = new ArrayList<T>(received.values());
+            Collections.sort(sorted, new Comparator<T>()
+            {
+                public int compare(T r1, T r2)
+                {
+                    return Long.compare(getTimestamp(r1), getTimestamp(r2));
+                }
+            });
+
+            for(T resource : sorted)
+            {
+                ids.put(resource.getId(), Boolean.TRUE);
+                mark = Math.max(mark, getTimestamp(resource));
+                for(Listener<T> listener : listeners)
+                {
+                    try
+                    {
+                        listener.received(resource);
+                    }
+                    catch(RuntimeException e)
+                    {
+                        logger.log(Level.WARNING, "Alert listener failed", e);
+                    }
+                }
+            }
+
+            // Move the mark on when there are no new records, so that the window does not keep growing
+            mark = Math.max(mark, Math.max(now-overlap, since));
+            return sorted.size();
+        }
+    }
+}
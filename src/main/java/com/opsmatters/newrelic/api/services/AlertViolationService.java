@@ -18,6 +18,8 @@ package com.opsmatters.newrelic.api.services;
 
 import java.util.List;
 import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
 import com.opsmatters.newrelic.api.NewRelicClient;
 import com.opsmatters.newrelic.api.model.alerts.AlertViolation;
 import com.opsmatters.newrelic.api.util.QueryParameterList;
@@ -50,6 +52,54 @@ public class AlertViolationService extends BaseFluent
         return HTTP.GET("/v2/alerts_violations.json", null, queryParams, ALERT_VIOLATIONS).get();
     }
 
+    /**
+     * Returns an iterator over all the alert violations with the given query parameters.
+     * <P>
+     * Each page of alert violations is only fetched when the iterator reaches it.
+     * @param queryParams The query parameters
+     * @return The iterator over the alert violations
+     */
+    public PagedIterator<AlertViolation> iterator(List<String> queryParams)
+    {
+        return new PagedIterator<AlertViolation>(HTTP, "/v2/alerts_violations.json", queryParams, ALERT_VIOLATIONS);
+    }
+
+    /**
+     * Returns a stream of all the alert violations with the given query parameters.
+     * <P>
+     * Each page of alert violations is only fetched when the stream reaches it.
+     * @param queryParams The query parameters
+     * @return The stream of alert violations
+     */
+    public Stream<AlertViolation> stream(List<String> queryParams)
+    {
+        return iterator(queryParams).stream();
+    }
+
+    /**
+     * Returns all the alert violations with the given query parameters.
+     * <P>
+     * The last page is taken from the first response, and the remaining pages 
+     * are then requested concurrently, limited by the client's page parallelism.
+     * @param queryParams The query parameters
+     * @return The set of alert violations
+     */
+    public Collection<AlertViolation> listAll(List<String> queryParams)
+    {
+        return new ParallelPageFetcher<AlertViolation>(HTTP, "/v2/alerts_violations.json", queryParams, ALERT_VIOLATIONS, 
+            getClient().getPageParallelism()).fetch();
+    }
+
+    /**
+     * Asynchronously returns the set of alert violations with the given query parameters.
+     * @param queryParams The query parameters
+     * @return The future set of alert violations
+     */
+    public CompletableFuture<Collection<AlertViolation>> listAsync(List<String> queryParams)
+    {
+        return unwrap(HTTP.GETAsync("/v2/alerts_violations.json", null, queryParams, ALERT_VIOLATIONS));
+    }
+
     /**
      * Returns the set of alert violations.
      * @param startDate Retrieves violations created after this date (in milliseconds)
@@ -18,11 +18,15 @@ package com.opsmatters.newrelic.api.services;
 
 import java.util.List;
 import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
 import com.google.common.base.Optional;
 import com.opsmatters.newrelic.api.NewRelicClient;
 import com.opsmatters.newrelic.api.model.applications.ApplicationHost;
 import com.opsmatters.newrelic.api.model.metrics.Metric;
 import com.opsmatters.newrelic.api.model.metrics.MetricData;
+import com.opsmatters.newrelic.api.model.metrics.MetricSeriesData;
+import com.opsmatters.newrelic.api.util.BatchResult;
 import com.opsmatters.newrelic.api.util.QueryParameterList;
 
 /**
@@ -53,6 +57,58 @@ public class ApplicationHostService extends BaseFluent
         return HTTP.GET(String.format("/v2/applications/%d/hosts.json", applicationId), null, queryParams, APPLICATION_HOSTS).get();
     }
 
+    /**
+     * Returns an iterator over all the application hosts with the given query parameters.
+     * <P>
+     * Each page of application hosts is only fetched when the iterator reaches it.
+     * @param applicationId The application id
+     * @param queryParams The query parameters
+     * @return The iterator over the application hosts
+     */
+    public PagedIterator<ApplicationHost> iterator(long applicationId, List<String> queryParams)
+    {
+        return new PagedIterator<ApplicationHost>(HTTP, String.format("/v2/applications/%d/hosts.json", applicationId), queryParams, APPLICATION_HOSTS);
+    }
+
+    /**
+     * Returns a stream of all the application hosts with the given query parameters.
+     * <P>
+     * Each page of application hosts is only fetched when the stream reaches it.
+     * @param applicationId The application id
+     * @param queryParams The query parameters
+     * @return The stream of application hosts
+     */
+    public Stream<ApplicationHost> stream(long applicationId, List<String> queryParams)
+    {
+        return iterator(applicationId, queryParams).stream();
+    }
+
+    /**
+     * Returns all the application hosts with the given query parameters.
+     * <P>
+     * The last page is taken from the first response, and the remaining pages 
+     * are then requested concurrently, limited by the client's page parallelism.
+     * @param applicationId The application id
+     * @param queryParams The query parameters
+     * @return The set of application hosts
+     */
+    public Collection<ApplicationHost> listAll(long applicationId, List<String> queryParams)
+    {
+        return new ParallelPageFetcher<ApplicationHost>(HTTP, String.format("/v2/applications/%d/hosts.json", applicationId), queryParams, APPLICATION_HOSTS, 
+            getClient().getPageParallelism()).fetch();
+    }
+
+    /**
+     * Asynchronously returns the set of application hosts with the given query parameters.
+     * @param applicationId The application id
+     * @param queryParams The query parameters
+     * @return The future set of application hosts
+     */
+    public CompletableFuture<Collection<ApplicationHost>> listAsync(long applicationId, List<String> queryParams)
+    {
+        return unwrap(HTTP.GETAsync(String.format("/v2/applications/%d/hosts.json", applicationId), null, queryParams, APPLICATION_HOSTS));
+    }
+
     /**
      * Returns the set of application hosts.
      * @param applicationId The application id
@@ -74,6 +130,17 @@ public class ApplicationHostService extends BaseFluent
         return HTTP.GET(String.format("/v2/applications/%d/hosts/%d.json", applicationId, hostId), APPLICATION_HOST);
     }
 
+    /**
+     * Asynchronously returns the application host for the given id.
+     * @param applicationId The application id
+     * @param hostId The application host id
+     * @return The future application host
+     */
+    public CompletableFuture<Optional<ApplicationHost>> showAsync(long applicationId, long hostId)
+    {
+        return HTTP.GETAsync(String.format("/v2/applications/%d/hosts/%d.json", applicationId, hostId), APPLICATION_HOST);
+    }
+
     /**
      * Returns the set of metrics for the given application host.
      * @param applicationId The application id
@@ -112,6 +179,59 @@ public class ApplicationHostService extends BaseFluent
         return HTTP.GET(String.format("/v2/applications/%d/hosts/%d/metrics/data.json", applicationId, hostId), null, queryParams, METRIC_DATA);
     }
 
+    /**
+     * Returns the set of metric data for the given application host, splitting a long time range into chunks.
+     * <P>
+     * The chunks are fetched concurrently and the timeslices are merged in time order.
+     * @param applicationId The application id
+     * @param hostId The application host id
+     * @param params The metric parameters, including the time range
+     * @return The set of metric data
+     */
+    public Optional<MetricData> metricData(long applicationId, long hostId, MetricParameterBuilder params)
+    {
+        return new MetricDataFetcher(HTTP, String.format("/v2/applications/%d/hosts/%d/metrics/data.json", applicationId, hostId), params,
+            getClient().getMaxTimeslices(), getClient().getMetricParallelism()).fetch();
+    }
+
+    /**
+     * Returns the metric data for each of the given hosts of an application.
+     * @param applicationId The application id
+     * @param hostIds The ids of the application hosts to return metric data for
+     * @param params The metric parameters to use for every host
+     * @param timeout The time allowed for the whole batch (in milliseconds), or 0 for no limit
+     * @return The metric data keyed by host id, with any failed calls
+     */
+    public BatchResult<MetricData> metricData(long applicationId, Collection<Long> hostIds, MetricParameterBuilder params, long timeout)
+    {
+        return new BatchFetcher<MetricData>(HTTP, METRIC_DATA, getClient().getMetricParallelism(), timeout)
+            .fetch(hostIds, "/v2/applications/"+applicationId+"/hosts/%d/metrics/data.json", params.build());
+    }
+
+    /**
+     * Asynchronously returns the set of metric data for the given application host.
+     * @param applicationId The application id
+     * @param hostId The application host id
+     * @param queryParams The query parameters
+     * @return The future set of metric data
+     */
+    public CompletableFuture<Optional<MetricData>> metricDataAsync(long applicationId, long hostId, List<String> queryParams)
+    {
+        return HTTP.GETAsync(String.format("/v2/applications/%d/hosts/%d/metrics/data.json", applicationId, hostId), null, queryParams, METRIC_DATA);
+    }
+
+    /**
+     * Returns the set of metric data for the given application host as columns of values.
+     * @param applicationId The application id
+     * @param hostId The application host id
+     * @param queryParams The query parameters
+     * @return The set of metric data as columns of values
+     */
+    public Optional<MetricSeriesData> metricSeries(long applicationId, long hostId, List<String> queryParams)
+    {
+        return HTTP.GET(String.format("/v2/applications/%d/hosts/%d/metrics/data.json", applicationId, hostId), null, queryParams, METRIC_SERIES_DATA);
+    }
+
     /**
      * Returns a builder for the metric data parameters.
      * @return The builder instance.
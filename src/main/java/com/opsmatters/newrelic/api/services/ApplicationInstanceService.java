@@ -18,11 +18,14 @@ package com.opsmatters.newrelic.api.services;
 
 import java.util.List;
 import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
 import com.google.common.base.Optional;
 import com.opsmatters.newrelic.api.NewRelicClient;
 import com.opsmatters.newrelic.api.model.applications.ApplicationInstance;
 import com.opsmatters.newrelic.api.model.metrics.Metric;
 import com.opsmatters.newrelic.api.model.metrics.MetricData;
+import com.opsmatters.newrelic.api.model.metrics.MetricSeriesData;
 import com.opsmatters.newrelic.api.util.QueryParameterList;
 
 /**
@@ -53,6 +56,58 @@ public class ApplicationInstanceService extends BaseFluent
         return HTTP.GET(String.format("/v2/applications/%d/instances.json", applicationId), null, queryParams, APPLICATION_INSTANCES).get();
     }
 
+    /**
+     * Returns an iterator over all the application instances with the given query parameters.
+     * <P>
+     * Each page of application instances is only fetched when the iterator reaches it.
+     * @param applicationId The application id
+     * @param queryParams The query parameters
+     * @return The iterator over the application instances
+     */
+    public PagedIterator<ApplicationInstance> iterator(long applicationId, List<String> queryParams)
+    {
+        return new PagedIterator<ApplicationInstance>(HTTP, String.format("/v2/applications/%d/instances.json", applicationId), queryParams, APPLICATION_INSTANCES);
+    }
+
+    /**
+     * Returns a stream of all the application instances with the given query parameters.
+     * <P>
+     * Each page of application instances is only fetched when the stream reaches it.
+     * @param applicationId The application id
+     * @param queryParams The query parameters
+     * @return The stream of application instances
+     */
+    public Stream<ApplicationInstance> stream(long applicationId, List<String> queryParams)
+    {
+        return iterator(applicationId, queryParams).stream();
+    }
+
+    /**
+     * Returns all the application instances with the given query parameters.
+     * <P>
+     * The last page is taken from the first response, and the remaining pages 
+     * are then requested concurrently, limited by the client's page parallelism.
+     * @param applicationId The application id
+     * @param queryParams The query parameters
+     * @return The set of application instances
+     */
+    public Collection<ApplicationInstance> listAll(long applicationId, List<String> queryParams)
+    {
+        return new ParallelPageFetcher<ApplicationInstance>(HTTP, String.format("/v2/applications/%d/instances.json", applicationId), queryParams, APPLICATION_INSTANCES, 
+            getClient().getPageParallelism()).fetch();
+    }
+
+    /**
+     * Asynchronously returns the set of application instances with the given query parameters.
+     * @param applicationId The application id
+     * @param queryParams The query parameters
+     * @return The future set of application instances
+     */
+    public CompletableFuture<Collection<ApplicationInstance>> listAsync(long applicationId, List<String> queryParams)
+    {
+        return unwrap(HTTP.GETAsync(String.format("/v2/applications/%d/instances.json", applicationId), null, queryParams, APPLICATION_INSTANCES));
+    }
+
     /**
      * Returns the set of application instances.
      * @param applicationId The application id
@@ -74,6 +129,17 @@ public class ApplicationInstanceService extends BaseFluent
         return HTTP.GET(String.format("/v2/applications/%d/instances/%d.json", applicationId, instanceId), APPLICATION_INSTANCE);
     }
 
+    /**
+     * Asynchronously returns the application instance for the given id.
+     * @param applicationId The application id
+     * @param instanceId The application instance id
+     * @return The future application instance
+     */
+    public CompletableFuture<Optional<ApplicationInstance>> showAsync(long applicationId, long instanceId)
+    {
+        return HTTP.GETAsync(String.format("/v2/applications/%d/instances/%d.json", applicationId, instanceId), APPLICATION_INSTANCE);
+    }
+
     /**
      * Returns the set of metrics for the given application instance.
      * @param applicationId The application id
@@ -112,6 +178,45 @@ public class ApplicationInstanceService extends BaseFluent
         return HTTP.GET(String.format("/v2/applications/%d/instances/%d/metrics/data.json", applicationId, instanceId), null, queryParams, METRIC_DATA);
     }
 
+    /**
+     * Returns the set of metric data for the given application instance, splitting a long time range into chunks.
+     * <P>
+     * The chunks are fetched concurrently and the timeslices are merged in time order.
+     * @param applicationId The application id
+     * @param instanceId The application instance id
+     * @param params The metric parameters, including the time range
+     * @return The set of metric data
+     */
+    public Optional<MetricData> metricData(long applicationId, long instanceId, MetricParameterBuilder params)
+    {
+        return new MetricDataFetcher(HTTP, String.format("/v2/applications/%d/instances/%d/metrics/data.json", applicationId, instanceId), params,
+            getClient().getMaxTimeslices(), getClient().getMetricParallelism()).fetch();
+    }
+
+    /**
+     * Asynchronously returns the set of metric data for the given application instance.
+     * @param applicationId The application id
+     * @param instanceId The application instance id
+     * @param queryParams The query parameters
+     * @return The future set of metric data
+     */
+    public CompletableFuture<Optional<MetricData>> metricDataAsync(long applicationId, long instanceId, List<String> queryParams)
+    {
+        return HTTP.GETAsync(String.format("/v2/applications/%d/instances/%d/metrics/data.json", applicationId, instanceId), null, queryParams, METRIC_DATA);
+    }
+
+    /**
+     * Returns the set of metric data for the given application instance as columns of values.
+     * @param applicationId The application id
+     * @param instanceId The application instance id
+     * @param queryParams The query parameters
+     * @return The set of metric data as columns of values
+     */
+    public Optional<MetricSeriesData> metricSeries(long applicationId, long instanceId, List<String> queryParams)
+    {
+        return HTTP.GET(String.format("/v2/applications/%d/instances/%d/metrics/data.json", applicationId, instanceId), null, queryParams, METRIC_SERIES_DATA);
+    }
+
     /**
      * Returns a builder for the metric data parameters.
      * @return The builder instance.
@@ -20,12 +20,17 @@ import java.util.Map;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Iterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
 import com.google.common.base.Optional;
 import com.google.common.collect.Maps;
 import com.opsmatters.newrelic.api.NewRelicClient;
 import com.opsmatters.newrelic.api.model.applications.Application;
 import com.opsmatters.newrelic.api.model.metrics.Metric;
 import com.opsmatters.newrelic.api.model.metrics.MetricData;
+import com.opsmatters.newrelic.api.model.metrics.MetricSeriesData;
+import com.opsmatters.newrelic.api.util.BatchResult;
 import com.opsmatters.newrelic.api.util.QueryParameterList;
 
 /**
@@ -55,6 +60,54 @@ public class ApplicationService extends BaseFluent
         return HTTP.GET("/v2/applications.json", null, queryParams, APPLICATIONS).get();
     }
 
+    /**
+     * Returns an iterator over all the applications with the given query parameters.
+     * <P>
+     * Each page of applications is only fetched when the iterator reaches it.
+     * @param queryParams The query parameters
+     * @return The iterator over the applications
+     */
+    public PagedIterator<Application> iterator(List<String> queryParams)
+    {
+        return new PagedIterator<Application>(HTTP, "/v2/applications.json", queryParams, APPLICATIONS);
+    }
+
+    /**
+     * Returns a stream of all the applications with the given query parameters.
+     * <P>
+     * Each page of applications is only fetched when the stream reaches it.
+     * @param queryParams The query parameters
+     * @return The stream of applications
+     */
+    public Stream<Application> stream(List<String> queryParams)
+    {
+        return iterator(queryParams).stream();
+    }
+
+    /**
+     * Returns all the applications with the given query parameters.
+     * <P>
+     * The last page is taken from the first response, and the remaining pages 
+     * are then requested concurrently, limited by the client's page parallelism.
+     * @param queryParams The query parameters
+     * @return The set of applications
+     */
+    public Collection<Application> listAll(List<String> queryParams)
+    {
+        return new ParallelPageFetcher<Application>(HTTP, "/v2/applications.json", queryParams, APPLICATIONS, 
+            getClient().getPageParallelism()).fetch();
+    }
+
+    /**
+     * Asynchronously returns the set of applications with the given query parameters.
+     * @param queryParams The query parameters
+     * @return The future set of applications
+     */
+    public CompletableFuture<Collection<Application>> listAsync(List<String> queryParams)
+    {
+        return unwrap(HTTP.GETAsync("/v2/applications.json", null, queryParams, APPLICATIONS));
+    }
+
     /**
      * Returns the set of applications.
      * @return The set of applications
@@ -67,15 +120,18 @@ public class ApplicationService extends BaseFluent
 
     /**
      * Returns the set of applications for the given name.
+     * <P>
+     * The server filters the applications on the name, and the pages of matches are then checked for an exact match.
      * @param name The name of the applications
      * @return The set of applications
      */
     public Collection<Application> list(String name)
     {
         List<Application> ret = new ArrayList<Application>();
-        Collection<Application> applications = list();
-        for(Application application : applications)
+        Iterator<Application> applications = name != null ? iterator(filters().name(name).build()) : list().iterator();
+        while(applications.hasNext())
         {
+            Application application = applications.next();
             if(name == null || application.getName().equals(name))
                 ret.add(application);
         }
@@ -92,6 +148,16 @@ public class ApplicationService extends BaseFluent
         return HTTP.GET(String.format("/v2/applications/%d.json", applicationId), APPLICATION);
     }
 
+    /**
+     * Asynchronously returns the application for the given application id.
+     * @param applicationId The id for the application to return
+     * @return The future application
+     */
+    public CompletableFuture<Optional<Application>> showAsync(long applicationId)
+    {
+        return HTTP.GETAsync(String.format("/v2/applications/%d.json", applicationId), APPLICATION);
+    }
+
     /**
      * Updates the given application.
      * @param application The application to update
@@ -148,6 +214,58 @@ public class ApplicationService extends BaseFluent
         return HTTP.GET(String.format("/v2/applications/%d/metrics/data.json", applicationId), null, queryParams, METRIC_DATA);
     }
 
+    /**
+     * Returns the set of metric data for the given application, splitting a long time range into chunks.
+     * <P>
+     * The chunks are fetched concurrently and the timeslices are merged in time order.
+     * @param applicationId The id of the application to return metric data for
+     * @param params The metric parameters, including the time range
+     * @return The set of metric data
+     */
+    public Optional<MetricData> metricData(long applicationId, MetricParameterBuilder params)
+    {
+        return new MetricDataFetcher(HTTP, String.format("/v2/applications/%d/metrics/data.json", applicationId), params,
+            getClient().getMaxTimeslices(), getClient().getMetricParallelism()).fetch();
+    }
+
+    /**
+     * Returns the metric data for each of the given applications, with the same metric parameters for every call.
+     * <P>
+     * The calls are made concurrently, limited by the client's metric parallelism.
+     * Applications whose call failed or did not complete before the timeout are reported as failures.
+     * @param applicationIds The ids of the applications to return metric data for
+     * @param params The metric parameters
+     * @param timeout The time allowed for the whole batch (in milliseconds), or 0 for no limit
+     * @return The metric data keyed by application id
+     */
+    public BatchResult<MetricData> metricData(Collection<Long> applicationIds, MetricParameterBuilder params, long timeout)
+    {
+        return new BatchFetcher<MetricData>(HTTP, METRIC_DATA, getClient().getMetricParallelism(), timeout)
+            .fetch(applicationIds, "/v2/applications/%d/metrics/data.json", params.build());
+    }
+
+    /**
+     * Asynchronously returns the set of metric data for the given application.
+     * @param applicationId The id of the application to return metric data for
+     * @param queryParams The query parameters
+     * @return The future set of metric data
+     */
+    public CompletableFuture<Optional<MetricData>> metricDataAsync(long applicationId, List<String> queryParams)
+    {
+        return HTTP.GETAsync(String.format("/v2/applications/%d/metrics/data.json", applicationId), null, queryParams, METRIC_DATA);
+    }
+
+    /**
+     * Returns the set of metric data for the given application as columns of values.
+     * @param applicationId The id of the application to return metric data for
+     * @param queryParams The query parameters
+     * @return The set of metric data as columns of values
+     */
+    public Optional<MetricSeriesData> metricSeries(long applicationId, List<String> queryParams)
+    {
+        return HTTP.GET(String.format("/v2/applications/%d/metrics/data.json", applicationId), null, queryParams, METRIC_SERIES_DATA);
+    }
+
     /**
      * Returns a builder for the metric data parameters.
      * @return The builder instance.
@@ -19,8 +19,11 @@ package com.opsmatters.newrelic.api.services;
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
 import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
 import java.util.logging.Logger;
 import javax.ws.rs.core.GenericType;
+import com.google.common.base.Optional;
 import com.opsmatters.newrelic.api.NewRelicClient;
 import com.opsmatters.newrelic.api.model.alerts.AlertIncident;
 import com.opsmatters.newrelic.api.model.alerts.AlertViolation;
@@ -45,6 +48,7 @@ import com.opsmatters.newrelic.api.model.plugins.PluginComponent;
 import com.opsmatters.newrelic.api.model.servers.Server;
 import com.opsmatters.newrelic.api.model.metrics.Metric;
 import com.opsmatters.newrelic.api.model.metrics.MetricData;
+import com.opsmatters.newrelic.api.model.metrics.MetricSeriesData;
 import com.opsmatters.newrelic.api.model.deployments.Deployment;
 import com.opsmatters.newrelic.api.model.labels.Label;
 import com.opsmatters.newrelic.api.model.accounts.PartnerAccount;
@@ -56,6 +60,7 @@ import com.opsmatters.newrelic.api.model.synthetics.Monitor;
 import com.opsmatters.newrelic.api.model.synthetics.Script;
 import com.opsmatters.newrelic.api.model.synthetics.Location;
 import com.opsmatters.newrelic.api.model.insights.QueryData;
+import com.opsmatters.newrelic.api.model.insights.QueryResult;
 import com.opsmatters.newrelic.api.model.Status;
 import com.opsmatters.newrelic.api.model.insights.Dashboard;
 
@@ -132,6 +137,7 @@ public class BaseFluent
 
     protected static final GenericType<Collection<Metric>> METRICS = new GenericType<Collection<Metric>>(){};
     protected static final GenericType<MetricData> METRIC_DATA = new GenericType<MetricData>(){};
+    protected static final GenericType<MetricSeriesData> METRIC_SERIES_DATA = new GenericType<MetricSeriesData>(){};
 
     protected static final GenericType<Deployment> DEPLOYMENT = new GenericType<Deployment>(){};
     protected static final GenericType<Collection<Deployment>> DEPLOYMENTS = new GenericType<Collection<Deployment>>(){};
@@ -160,6 +166,8 @@ public class BaseFluent
 
     protected static final GenericType<QueryData> QUERY_DATA = new GenericType<QueryData>(){};
 
+    protected static final GenericType<QueryResult> QUERY_RESULT = new GenericType<QueryResult>(){};
+
     protected static final GenericType<Status> STATUS = new GenericType<Status>(){};
 
     protected static final GenericType<Dashboard> DASHBOARD = new GenericType<Dashboard>(){};
@@ -188,6 +196,26 @@ public class BaseFluent
         return this.client;
     }
 
+    /**
+     * Returns a future for the value contained in the result of the given future.
+     * <P>
+     * The returned future fails if the result is absent, in the same way as the equivalent synchronous call.
+     * @param <T> The type parameter used for the return object
+     * @param future The future result of the HTTP call
+     * @return The future value of the HTTP call
+     */
+    protected static <T> CompletableFuture<T> unwrap(CompletableFuture<Optional<T>> future)
+    {
+        return future.thenApply(new Function<Optional<T>,T>()
+        {
+            @Override
+            public T apply(Optional<T> input)
+            {
+                return input.get();
+            }
+        });
+    }
+
     /**
      * Encode special character in query string to the URL encoded representation.
      * @param str The input string
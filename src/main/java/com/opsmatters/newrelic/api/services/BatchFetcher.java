@@ -0,0 +1,239 @@
+/*
+ * Copyright 2018 Gerald Curley
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.opsmatters.newrelic.api.services;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiConsumer;
+import java.util.logging.Logger;
+import java.util.logging.Level;
+import javax.ws.rs.core.GenericType;
+import com.google.common.base.Optional;
+import com.opsmatters.newrelic.api.util.BatchResult;
+
+/**
+ * Makes the same API call for each of a set of entities, with a bounded number of calls in flight.
+ * <P>
+ * The calls go through the HTTP context, so they are also subject to its rate limiter and retry policy.
+ * <P>
+ * The results are returned keyed by entity id. A failed call does not stop the other calls,
+ * and is instead reported in the failures of the results. A call that returns no result
+ * (eg. an error response when errors are not thrown) is reported as failed with a {@link NoSuchElementException}.
+ * If a timeout is given, any calls that have not completed when it expires are reported as failed
+ * with a {@link TimeoutException}.
+ *
+ * @author Gerald Curley (opsmatters)
+ */
+public class BatchFetcher<T>
+{
+    private static final Logger logger = Logger.getLogger(BatchFetcher.class.getName());
+
+    /**
+     * The default maximum number of calls in flight.
+     */
+    public static final int DEFAULT_PARALLELISM = 4;
+
+    private HttpContext http;
+    private GenericType<T> returnType;
+    private int parallelism;
+    private long timeout;
+
+    /**
+     * Constructor that takes a http context, return type, parallelism and timeout.
+     * @param httpContext The set of HTTP operations
+     * @param returnType The type of the result of each call
+     * @param parallelism The maximum number of calls in flight
+     * @param timeout The time allowed for the whole batch (in milliseconds), or 0 for no limit
+     */
+    public BatchFetcher(HttpContext httpContext, GenericType<T> returnType, int parallelism, long timeout)
+    {
+        this.http = httpContext;
+        this.returnType = returnType;
+        this.parallelism = Math.max(parallelism, 1);
+        this.timeout = timeout;
+    }
+
+    /**
+     * Makes the call for each of the given entities and returns the results.
+     * @param entityIds The ids of the entities
+     * @param urlFormat The format of the partial URL of each call, with a "%d" for the entity id
+     * @param queryParams The query parameters to add to each call
+     * @return The results of the calls keyed by entity id
+     */
+    public BatchResult<T> fetch(Collection<Long> entityIds, final String urlFormat, final List<String> queryParams)
+    {
+        return execute(entityIds, "GET "+urlFormat, new Call<T>()
+        {
+            public CompletableFuture<Optional<T>> call(long id)
+            {
+                return http.GETAsync(String.format(urlFormat, id), null, queryParams, returnType);
+            }
+        });
+    }
+
+    /**
+     * Makes a PUT call with no payload for each of the given entities and returns the results.
+     * @param entityIds The ids of the entities
+     * @param urlFormat The format of the partial URL of each call, with a "%d" for the entity id
+     * @param queryParams The query parameters to add to each call
+     * @return The results of the calls keyed by entity id
+     */
+    public BatchResult<T> put(Collection<Long> entityIds, final String urlFormat, final List<String> queryParams)
+    {
+        return execute(entityIds, "PUT "+urlFormat, new Call<T>()
+        {
+            public CompletableFuture<Optional<T>> call(long id)
+            {
+                return http.PUTAsync(String.format(urlFormat, id), null, null, queryParams, returnType);
+            }
+        });
+    }
+
+    /**
+     * Makes a DELETE call for each of the given entities.
+     * <P>
+     * The result for each entity that was deleted is <CODE>true</CODE>, and a DELETE 
+     * with an error response is reported in the failures of the results.
+     * @param entityIds The ids of the entities
+     * @param urlFormat The format of the partial URL of each call, with a "%d" for the entity id
+     * @param queryParams The query parameters to add to each call
+     * @return The results of the calls keyed by entity id
+     */
+    public BatchResult<Boolean> delete(Collection<Long> entityIds, final String urlFormat, final List<String> queryParams)
+    {
+        return execute(entityIds, "DELETE "+urlFormat, new Call<Boolean>()
+        {
+            public CompletableFuture<Optional<Boolean>> call(long id)
+            {
+                return http.DELETEStatusAsync(String.format(urlFormat, id), null, queryParams);
+            }
+        });
+    }
+
+    /**
+     * Makes the given call for each of the given entities and returns the results.
+     * @param entityIds The ids of the entities
+     * @param description The description of the call used in the log
+     * @param call The call to make for each entity
+     * @return The results of the calls keyed by entity id
+     */
+    private <R> BatchResult<R> execute(Collection<Long> entityIds, String description, Call<R> call)
+    {
+        Set<Long> ids = new LinkedHashSet<Long>(entityIds);
+        final Map<Long,R> results = new ConcurrentHashMap<Long,R>();
+        final Map<Long,Throwable> failures = new ConcurrentHashMap<Long,Throwable>();
+        final Set<Long> completed = Collections.newSetFromMap(new ConcurrentHashMap<Long,Boolean>());
+        final CountDownLatch remaining = new CountDownLatch(ids.size());
+        final Semaphore permits = new Semaphore(parallelism);
+        long deadline = timeout > 0L ? System.currentTimeMillis()+timeout : Long.MAX_VALUE;
+
+        if(logger.isLoggable(Level.FINE))
+            logger.fine("Calling "+description+" for "+ids.size()+" entities with parallelism "+parallelism);
+
+        try
+        {
+            for(final Long id : ids)
+            {
+                if(!permits.tryAcquire(getWait(deadline), TimeUnit.MILLISECONDS))
+                    break;
+
+                CompletableFuture<Optional<R>> future;
+                try
+                {
+                    future = call.call(id);
+                }
+                catch(RuntimeException e)
+                {
+                    // The call can fail before it is sent, eg. if the rate limiter is interrupted
+                    failures.put(id, e);
+                    completed.add(id);
+                    permits.release();
+                    remaining.countDown();
+                    continue;
+                }
+
+                future.whenComplete(new BiConsumer<Optional<R>,Throwable>()
+                {
+                    public void accept(Optional<R> result, Throwable t)
+                    {
+                        if(t != null)
+                            failures.put(id, t instanceof CompletionException && t.getCause() != null ? t.getCause() : t);
+                        else if(result.isPresent())
+                            results.put(id, result.get());
+                        else
+                            failures.put(id, new NoSuchElementException("call for entity "+id+" returned no result"));
+                        completed.add(id);
+                        permits.release();
+                        remaining.countDown();
+                    }
+                });
+            }
+
+            remaining.await(getWait(deadline), TimeUnit.MILLISECONDS);
+        }
+        catch(InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+
+        // Collect the results in the order of the ids
+        BatchResult<R> ret = new BatchResult<R>();
+        for(Long id : ids)
+        {
+            if(!completed.contains(id))
+                ret.addFailure(id, new TimeoutException("call for entity "+id+" did not complete within "+timeout+"ms"));
+            else if(results.containsKey(id))
+                ret.addResult(id, results.get(id));
+            else if(failures.containsKey(id))
+                ret.addFailure(id, failures.get(id));
+        }
+
+        return ret;
+    }
+
+    /**
+     * Returns the time to wait until the given deadline.
+     * @param deadline The deadline (in epoch milliseconds)
+     * @return The time to wait (in milliseconds)
+     */
+    private long getWait(long deadline)
+    {
+        if(deadline == Long.MAX_VALUE)
+            return Long.MAX_VALUE;
+        return Math.max(deadline-System.currentTimeMillis(), 0L);
+    }
+
+    /**
+     * The asynchronous call made for each entity.
+     */
+    private interface Call<R>
+    {
+        CompletableFuture<Optional<R>> call(long id);
+    }
+}
@@ -18,6 +18,8 @@ package com.opsmatters.newrelic.api.services;
 
 import java.util.List;
 import java.util.Collection;
+import java.util.Iterator;
+import java.util.stream.Stream;
 import java.util.ArrayList;
 import com.google.common.base.Optional;
 import com.opsmatters.newrelic.api.NewRelicClient;
@@ -51,6 +53,47 @@ public class BrowserApplicationService extends BaseFluent
         return HTTP.GET("/v2/browser_applications.json", null, queryParams, BROWSER_APPLICATIONS).get();
     }
 
+    /**
+     * Returns an iterator over all the Browser applications with the given query parameters.
+     * <P>
+     * Each page of Browser applications is only fetched when the iterator reaches it.
+     * @param queryParams The query parameters
+     * @return The set of applications
+     * @return The iterator over the Browser applications
+     */
+    public PagedIterator<BrowserApplication> iterator(List<String> queryParams)
+    {
+        return new PagedIterator<BrowserApplication>(HTTP, "/v2/browser_applications.json", queryParams, BROWSER_APPLICATIONS);
+    }
+
+    /**
+     * Returns a stream of all the Browser applications with the given query parameters.
+     * <P>
+     * Each page of Browser applications is only fetched when the stream reaches it.
+     * @param queryParams The query parameters
+     * @return The set of applications
+     * @return The stream of Browser applications
+     */
+    public Stream<BrowserApplication> stream(List<String> queryParams)
+    {
+        return iterator(queryParams).stream();
+    }
+
+    /**
+     * Returns all the Browser applications with the given query parameters.
+     * <P>
+     * The last page is taken from the first response, and the remaining pages 
+     * are then requested concurrently, limited by the client's page parallelism.
+     * @param queryParams The query parameters
+     * @return The set of applications
+     * @return The set of Browser applications
+     */
+    public Collection<BrowserApplication> listAll(List<String> queryParams)
+    {
+        return new ParallelPageFetcher<BrowserApplication>(HTTP, "/v2/browser_applications.json", queryParams, BROWSER_APPLICATIONS, 
+            getClient().getPageParallelism()).fetch();
+    }
+
     /**
      * Returns the set of Browser applications.
      * @return The set of applications
@@ -64,15 +107,18 @@ public class BrowserApplicationService extends BaseFluent
 
     /**
      * Returns the set of Browser applications for the given name.
+     * <P>
+     * The server filters the applications on the name, and the pages of matches are then checked for an exact match.
      * @param name The name of the applications
      * @return The set of applications
      */
     public Collection<BrowserApplication> list(String name)
     {
         List<BrowserApplication> ret = new ArrayList<BrowserApplication>();
-        Collection<BrowserApplication> applications = list();
-        for(BrowserApplication application : applications)
+        Iterator<BrowserApplication> applications = name != null ? iterator(filters().name(name).build()) : list().iterator();
+        while(applications.hasNext())
         {
+            BrowserApplication application = applications.next();
             if(name == null || application.getName().equals(name))
                 ret.add(application);
         }
@@ -18,6 +18,7 @@ package com.opsmatters.newrelic.api.services;
 
 import java.util.List;
 import java.util.Collection;
+import java.util.stream.Stream;
 import com.google.common.base.Optional;
 import com.opsmatters.newrelic.api.NewRelicClient;
 import com.opsmatters.newrelic.api.model.insights.Dashboard;
@@ -51,6 +52,44 @@ public class DashboardService extends BaseFluent
         return HTTP.GET("/v2/dashboards.json", null, queryParams, DASHBOARDS).get();
     }
 
+    /**
+     * Returns an iterator over all the dashboards with the given query parameters.
+     * <P>
+     * Each page of dashboards is only fetched when the iterator reaches it.
+     * @param queryParams The query parameters
+     * @return The iterator over the dashboards
+     */
+    public PagedIterator<Dashboard> iterator(List<String> queryParams)
+    {
+        return new PagedIterator<Dashboard>(HTTP, "/v2/dashboards.json", queryParams, DASHBOARDS);
+    }
+
+    /**
+     * Returns a stream of all the dashboards with the given query parameters.
+     * <P>
+     * Each page of dashboards is only fetched when the stream reaches it.
+     * @param queryParams The query parameters
+     * @return The stream of dashboards
+     */
+    public Stream<Dashboard> stream(List<String> queryParams)
+    {
+        return iterator(queryParams).stream();
+    }
+
+    /**
+     * Returns all the dashboards with the given query parameters.
+     * <P>
+     * The last page is taken from the first response, and the remaining pages 
+     * are then requested concurrently, limited by the client's page parallelism.
+     * @param queryParams The query parameters
+     * @return The set of dashboards
+     */
+    public Collection<Dashboard> listAll(List<String> queryParams)
+    {
+        return new ParallelPageFetcher<Dashboard>(HTTP, "/v2/dashboards.json", queryParams, DASHBOARDS, 
+            getClient().getPageParallelism()).fetch();
+    }
+
     /**
      * Returns the set of dashboards for the given title.
      * @param title The dashboard title
@@ -18,6 +18,7 @@ package com.opsmatters.newrelic.api.services;
 
 import java.util.List;
 import java.util.Collection;
+import java.util.stream.Stream;
 import com.google.common.base.Optional;
 import com.opsmatters.newrelic.api.NewRelicClient;
 import com.opsmatters.newrelic.api.model.deployments.Deployment;
@@ -51,6 +52,47 @@ public class DeploymentService extends BaseFluent
         return HTTP.GET(String.format("/v2/applications/%d/deployments.json", applicationId), null, queryParams, DEPLOYMENTS).get();
     }
 
+    /**
+     * Returns an iterator over all the deployments with the given query parameters.
+     * <P>
+     * Each page of deployments is only fetched when the iterator reaches it.
+     * @param applicationId The application id for the deployments
+     * @param queryParams The query parameters
+     * @return The iterator over the deployments
+     */
+    public PagedIterator<Deployment> iterator(long applicationId, List<String> queryParams)
+    {
+        return new PagedIterator<Deployment>(HTTP, String.format("/v2/applications/%d/deployments.json", applicationId), queryParams, DEPLOYMENTS);
+    }
+
+    /**
+     * Returns a stream of all the deployments with the given query parameters.
+     * <P>
+     * Each page of deployments is only fetched when the stream reaches it.
+     * @param applicationId The application id for the deployments
+     * @param queryParams The query parameters
+     * @return The stream of deployments
+     */
+    public Stream<Deployment> stream(long applicationId, List<String> queryParams)
+    {
+        return iterator(applicationId, queryParams).stream();
+    }
+
+    /**
+     * Returns all the deployments with the given query parameters.
+     * <P>
+     * The last page is taken from the first response, and the remaining pages 
+     * are then requested concurrently, limited by the client's page parallelism.
+     * @param applicationId The application id for the deployments
+     * @param queryParams The query parameters
+     * @return The set of deployments
+     */
+    public Collection<Deployment> listAll(long applicationId, List<String> queryParams)
+    {
+        return new ParallelPageFetcher<Deployment>(HTTP, String.format("/v2/applications/%d/deployments.json", applicationId), queryParams, DEPLOYMENTS, 
+            getClient().getPageParallelism()).fetch();
+    }
+
     /**
      * Returns the set of deployments.
      * @param applicationId The application id for the deployments
@@ -71,14 +113,8 @@ public class DeploymentService extends BaseFluent
      */
     public Optional<Deployment> show(long applicationId, long deploymentId)
     {
-        Optional<Deployment> ret = Optional.absent();
-        Collection<Deployment> deployments = list(applicationId);
-        for(Deployment deployment : deployments)
-        {
-            if(deployment.getId() == deploymentId)
-                ret = Optional.of(deployment);
-        }
-        return ret;
+        return HTTP.getResourceIndex().find(String.format("/v2/applications/%d/deployments.json", applicationId), null, 
+            DEPLOYMENTS, ResourceIndex.ID, deploymentId);
     }
     
     /**
@@ -0,0 +1,553 @@
+/*
+ * Copyright 2018 Gerald Curley
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.opsmatters.newrelic.api.services;
+
+import java.net.URI;
+import java.util.Map;
+import java.util.HashMap;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+import java.util.logging.Level;
+import javax.ws.rs.core.GenericType;
+import com.google.common.base.Optional;
+import com.google.gson.Gson;
+import com.opsmatters.newrelic.api.httpclient.GsonRegistry;
+
+/**
+ * Represents a cache of the results of GET calls, held in front of the HTTP operations.
+ * <P>
+ * Each result is cached against its resource type, which is the first part of the path
+ * after the API version (eg. "applications" for "/v2/applications/123.json"),
+ * and the id of the entity if the path includes one (eg. "123").
+ * Each resource type can be given its own time-to-live, and the least recently used
+ * results are evicted once the cache reaches its maximum size.
+ * <P>
+ * A PUT, POST, PATCH or DELETE made through the same HTTP context removes the results
+ * for the entity it changes, together with the lists of that resource type.
+ * A call without an entity id (eg. a create) removes all the results of the resource type.
+ * A change that also alters other resource types removes all their results as well,
+ * eg. linking a channel to a policy through "alerts_policy_channels" removes the cached channels and policies.
+ * <P>
+ * Each result is copied when it is added to the cache and again each time it is returned,
+ * so a caller can change a returned object or list without changing the result seen by other callers.
+ * <P>
+ * A GET that was in flight when a change removed its results does not add its result afterwards,
+ * as the result may have been read before the change was made.
+ *
+ * @author Gerald Curley (opsmatters)
+ */
+public class EntityCache
+{
+    private static final Logger logger = Logger.getLogger(EntityCache.class.getName());
+
+    /**
+     * The default maximum number of results in the cache.
+     */
+    public static final int DEFAULT_MAX_SIZE = 1000;
+
+    /**
+     * The default time-to-live of a result (in milliseconds).
+     */
+    public static final long DEFAULT_TTL = 60000L;
+
+    private static final String[] CONDITIONS = {"alerts_conditions", "alerts_nrql_conditions",
+        "alerts_external_service_conditions", "alerts_synthetics_conditions", "alerts_plugins_conditions"};
+
+    // The other resource types changed as a side effect of a change to a resource type
+    private static final Map<String,List<String>> dependents = new HashMap<String,List<String>>();
+
+    static
+    {
+        dependents.put("alerts_policy_channels", Arrays.asList("alerts_channels", "alerts_policies"));
+        dependents.put("alerts_entity_conditions", Arrays.asList("alerts_conditions"));
+        List<String> policies = new ArrayList<String>(Arrays.asList(CONDITIONS));
+        policies.add("alerts_channels");
+        dependents.put("alerts_policies", policies);
+    }
+
+    private int maxSize = DEFAULT_MAX_SIZE;
+    private long ttl = DEFAULT_TTL;
+    private Map<String,Long> ttls = new ConcurrentHashMap<String,Long>();
+    private AtomicLong hits = new AtomicLong();
+    private AtomicLong misses = new AtomicLong();
+    private AtomicLong evictions = new AtomicLong();
+    private long generation = 0L;
+    private Map<String,Entry> entries = new LinkedHashMap<String,Entry>(16, 0.75f, true)
+    {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String,EntityCache.Entry> eldest)
+        {
+            boolean ret = size() > maxSize;
+            if(ret)
+                evictions.incrementAndGet();
+            return ret;
+        }
+    };
+
+    /**
+     * Default constructor.
+     */
+    public EntityCache()
+    {
+    }
+
+    /**
+     * Sets the maximum number of results in the cache.
+     * @param maxSize The maximum number of results in the cache
+     */
+    public void setMaxSize(int maxSize)
+    {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Returns the maximum number of results in the cache.
+     * @return The maximum number of results in the cache
+     */
+    public int getMaxSize()
+    {
+        return maxSize;
+    }
+
+    /**
+     * Sets the time-to-live of the results of resource types without their own time-to-live.
+     * @param ttl The time-to-live (in milliseconds)
+     */
+    public void setTtl(long ttl)
+    {
+        this.ttl = ttl;
+    }
+
+    /**
+     * Returns the time-to-live of the results of resource types without their own time-to-live.
+     * @return The time-to-live (in milliseconds)
+     */
+    public long getTtl()
+    {
+        return ttl;
+    }
+
+    /**
+     * Sets the time-to-live of the results of the given resource type.
+     * <P>
+     * A time-to-live of 0 means that the results of the resource type are not cached.
+     * @param resource The resource type, eg. "applications"
+     * @param ttl The time-to-live (in milliseconds)
+     */
+    public void setTtl(String resource, long ttl)
+    {
+        ttls.put(resource, ttl);
+    }
+
+    /**
+     * Returns the time-to-live of the results of the given resource type.
+     * @param resource The resource type, eg. "applications"
+     * @return The time-to-live (in milliseconds)
+     */
+    public long getTtl(String resource)
+    {
+        Long ret = resource != null ? ttls.get(resource) : null;
+        return ret != null ? ret : ttl;
+    }
+
+    /**
+     * Returns the number of calls that were answered from the cache.
+     * @return The number of cache hits
+     */
+    public long getHits()
+    {
+        return hits.get();
+    }
+
+    /**
+     * Returns the number of calls that were not found in the cache.
+     * @return The number of cache misses
+     */
+    public long getMisses()
+    {
+        return misses.get();
+    }
+
+    /**
+     * Returns the number of results removed to keep the cache within its maximum size.
+     * @return The number of evictions
+     */
+    public long getEvictions()
+    {
+        return evictions.get();
+    }
+
+    /**
+     * Returns the number of results in the cache, including any that have expired.
+     * @return The number of results in the cache
+     */
+    public synchronized int size()
+    {
+        return entries.size();
+    }
+
+    /**
+     * Returns the current generation of the cache, which changes each time results are removed by a change.
+     * <P>
+     * The generation is taken before a GET is made, and passed to {@link #put} with its result.
+     * @return The current generation of the cache
+     */
+    synchronized long getGeneration()
+    {
+        return generation;
+    }
+
+    /**
+     * Returns the cached result of the GET call for the given URI.
+     * @param <T> The type parameter used for the return object
+     * @param uri The URI of the call
+     * @param queryParams The query parameters of the call
+     * @param returnType The return type of the call
+     * @return The cached result, or <CODE>null</CODE> if there is no current result in the cache
+     */
+    @SuppressWarnings("unchecked")
+    <T> Optional<T> get(URI uri, List<String> queryParams, GenericType<T> returnType)
+    {
+        String key = getKey(uri, queryParams, returnType);
+        Entry entry = null;
+        synchronized(this)
+        {
+            entry = entries.get(key);
+            if(entry != null && entry.expires <= System.currentTimeMillis())
+            {
+                entries.remove(key);
+                entry = null;
+            }
+        }
+
+        if(entry == null)
+        {
+            misses.incrementAndGet();
+            return null;
+        }
+
+        hits.incrementAndGet();
+        return Optional.of((T)copy(entry.value));
+    }
+
+    /**
+     * Adds the result of the GET call for the given URI to the cache.
+     * <P>
+     * Empty results are not cached, and nor is a result read before results were removed by a change.
+     * @param <T> The type parameter used for the return object
+     * @param uri The URI of the call
+     * @param queryParams The query parameters of the call
+     * @param returnType The return type of the call
+     * @param result The result of the call
+     * @param generation The generation of the cache when the call was made
+     */
+    <T> void put(URI uri, List<String> queryParams, GenericType<T> returnType, Optional<T> result, long generation)
+    {
+        if(result == null || !result.isPresent())
+            return;
+
+        String[] resource = getResource(uri);
+        long resourceTtl = getTtl(resource[0]);
+        if(resourceTtl <= 0L)
+            return;
+
+        Object value;
+        try
+        {
+            value = copy(result.get());
+        }
+        catch(RuntimeException e)
+        {
+            logger.log(Level.FINE, "Unable to copy result for the cache: "+uri.getPath(), e);
+            return;
+        }
+
+        Entry entry = new Entry(resource[0], resource[1], value, System.currentTimeMillis()+resourceTtl);
+        synchronized(this)
+        {
+            if(generation == this.generation)
+                entries.put(getKey(uri, queryParams, returnType), entry);
+        }
+    }
+
+    /**
+     * Removes the results affected by a change to the resource at the given URI.
+     * @param uri The URI of the changed resource
+     */
+    void invalidate(URI uri)
+    {
+        String[] resource = getResource(uri);
+        if(resource[0] == null)
+            return;
+
+        List<String> related = getDependents(resource[0]);
+        int count = 0;
+        synchronized(this)
+        {
+            ++generation;
+            Iterator<Entry> it = entries.values().iterator();
+            while(it.hasNext())
+            {
+                Entry entry = it.next();
+                if(isAffected(resource, entry.resource, entry.id) || related.contains(entry.resource))
+                {
+                    it.remove();
+                    ++count;
+                }
+            }
+        }
+
+        if(count > 0 && logger.isLoggable(Level.FINE))
+            logger.fine("Invalidated "+count+" cached results for "+uri.getPath());
+    }
+
+    /**
+     * Removes all the results of the given resource type.
+     * @param resource The resource type, eg. "applications"
+     */
+    public synchronized void invalidate(String resource)
+    {
+        ++generation;
+        Iterator<Entry> it = entries.values().iterator();
+        while(it.hasNext())
+        {
+            if(it.next().resource.equals(resource))
+                it.remove();
+        }
+    }
+
+    /**
+     * Removes all the results from the cache.
+     */
+    public synchronized void clear()
+    {
+        ++generation;
+        entries.clear();
+    }
+
+    /**
+     * Returns a copy of the given result, so that a change made by one caller is not seen by the others.
+     * <P>
+     * Each object is copied through its JSON form, and the items of a list are copied one by one
+     * so that each keeps its own class.
+     * @param value The result to copy
+     * @return The copy of the result
+     */
+    @SuppressWarnings("unchecked")
+    static Object copy(Object value)
+    {
+        if(value == null || value instanceof String || value instanceof Number || value instanceof Boolean)
+            return value;
+        if(value instanceof Collection)
+        {
+            List<Object> ret = new ArrayList<Object>(((Collection<Object>)value).size());
+            for(Object item : (Collection<Object>)value)
+                ret.add(copy(item));
+            return ret;
+        }
+        Gson gson = GsonRegistry.getBaseGson();
+        return gson.fromJson(gson.toJsonTree(value), value.getClass());
+    }
+
+    /**
+     * Returns the key of the result of the GET call for the given URI.
+     * @param uri The URI of the call
+     * @param queryParams The query parameters of the call
+     * @param returnType The return type of the call
+     * @return The key of the result
+     */
+    static String getKey(URI uri, List<String> queryParams, GenericType<?> returnType)
+    {
+        StringBuilder ret = new StringBuilder(uri.getPath());
+        if(queryParams != null && queryParams.size() > 0)
+            ret.append(queryParams);
+        ret.append('|').append(returnType.getType());
+        return ret.toString();
+    }
+
+    /**
+     * Returns the resource type and entity id for the given URI.
+     * <P>
+     * The resource type is the first part of the path after any version (eg. "v2"),
+     * and the entity id is the part that follows it, if any.
+     * @param uri The URI of the resource
+     * @return The resource type and entity id, either of which may be <CODE>null</CODE>
+     */
+    static String[] getResource(URI uri)
+    {
+        String[] ret = new String[2];
+        String path = uri.getPath();
+        if(path == null)
+            return ret;
+
+        String[] parts = path.split("/");
+        int start = 0;
+        for(int i = 0; i < parts.length; i++)
+        {
+            if(parts[i].matches("v[0-9]+"))
+                start = i+1;
+        }
+
+        for(int i = start; i < parts.length && ret[1] == null; i++)
+        {
+            String part = parts[i];
+            if(part.endsWith(".json"))
+                part = part.substring(0, part.length()-5);
+            if(part.length() == 0)
+                continue;
+            if(ret[0] == null)
+                ret[0] = part;
+            else
+                ret[1] = part;
+        }
+
+        return ret;
+    }
+
+    /**
+     * Returns the other resource types changed as a side effect of a change to the given resource type.
+     * <P>
+     * For example, deleting a policy also deletes its conditions and its links to channels.
+     * @param resource The changed resource type, eg. "alerts_policies"
+     * @return The other resource types changed, which may be empty
+     */
+    static List<String> getDependents(String resource)
+    {
+        List<String> ret = resource != null ? dependents.get(resource) : null;
+        return ret != null ? ret : Collections.<String>emptyList();
+    }
+
+    /**
+     * Returns <CODE>true</CODE> if a change to the given resource affects the results of the given resource type and id.
+     * <P>
+     * A change to an entity affects the results for that entity and the lists of its resource type,
+     * and a change without an entity id affects all the results of the resource type.
+     * @param changed The resource type and entity id of the changed resource
+     * @param resource The resource type of the results
+     * @param id The entity id of the results, or <CODE>null</CODE> for a list
+     * @return <CODE>true</CODE> if the results are affected by the change
+     */
+    static boolean isAffected(String[] changed, String resource, String id)
+    {
+        return changed[0] != null && changed[0].equals(resource)
+            && (changed[1] == null || id == null || changed[1].equals(id));
+    }
+
+    /**
+     * Returns a string representation of the object.
+     */
+    @Override
+    public String toString()
+    {
+        return "EntityCache [maxSize="+maxSize
+            +", ttl="+ttl
+            +", size="+size()
+            +", hits="+hits
+            +", misses="+misses
+            +", evictions="+evictions
+            +"]";
+    }
+
+    /**
+     * A cached result with its resource type, entity id and expiry time.
+     */
+    private static class Entry
+    {
+        private String resource;
+        private String id;
+        private Object value;
+        private long expires;
+
+        Entry(String resource, String id, Object value, long expires)
+        {
+            this.resource = resource;
+            this.id = id;
+            this.value = value;
+            this.expires = expires;
+        }
+    }
+
+    /**
+     * Returns a builder for the entity cache.
+     * @return The builder instance.
+     */
+    public static Builder builder()
+    {
+        return new Builder();
+    }
+
+    /**
+     * Builder to make entity cache construction easier.
+     */
+    public static class Builder
+    {
+        private EntityCache cache = new EntityCache();
+
+        /**
+         * Sets the maximum number of results in the cache.
+         * @param maxSize The maximum number of results in the cache
+         * @return This object
+         */
+        public Builder maxSize(int maxSize)
+        {
+            cache.setMaxSize(maxSize);
+            return this;
+        }
+
+        /**
+         * Sets the time-to-live of the results of resource types without their own time-to-live.
+         * @param ttl The time-to-live (in milliseconds)
+         * @return This object
+         */
+        public Builder ttl(long ttl)
+        {
+            cache.setTtl(ttl);
+            return this;
+        }
+
+        /**
+         * Sets the time-to-live of the results of the given resource type.
+         * @param resource The resource type, eg. "applications"
+         * @param ttl The time-to-live (in milliseconds)
+         * @return This object
+         */
+        public Builder ttl(String resource, long ttl)
+        {
+            cache.setTtl(resource, ttl);
+            return this;
+        }
+
+        /**
+         * Returns the configured entity cache instance
+         * @return The entity cache instance
+         */
+        public EntityCache build()
+        {
+            return cache;
+        }
+    }
+}
@@ -20,19 +20,34 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.Map;
 import java.util.List;
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
 import java.util.logging.Logger;
 import java.util.logging.Level;
+import javax.ws.rs.ProcessingException;
 import javax.ws.rs.client.Client;
 import javax.ws.rs.client.WebTarget;
 import javax.ws.rs.client.Invocation;
 import javax.ws.rs.client.Entity;
 import javax.ws.rs.core.GenericType;
+import javax.ws.rs.core.Link;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.MediaType;
-import com.google.gson.Gson;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Variant;
+import org.glassfish.jersey.client.JerseyClient;
 import com.google.common.base.Optional;
 import com.opsmatters.newrelic.api.model.ErrorResponse;
 import com.opsmatters.newrelic.api.exceptions.ErrorResponseException;
+import com.opsmatters.newrelic.api.httpclient.RateLimiter;
+import com.opsmatters.newrelic.api.httpclient.filters.RateLimiterFilter;
+import com.opsmatters.newrelic.api.util.Page;
 
 /**
  * Represents the set of HTTP operations to be used with the API calls.  
@@ -47,11 +62,18 @@ public class HttpContext
     private String protocol = "http";
     private String hostname;
     private int port;
-    private Gson gson = new Gson();
     private boolean throwExceptions = false;
     private String uriPrefix = "";
+    private EntityCache cache;
+    private ValidatorCache validators;
+    private RetryPolicy retryPolicy;
+    private RateLimiter limiter;
+    private ResourceIndex index = new ResourceIndex(this);
+    private Executor executor;
 
     private static final GenericType<ErrorResponse> ERROR = new GenericType<ErrorResponse>(){};
+
+    static final String PAGE = "page";
     
     /**
      * Constructor that takes a client, protocol, hostname and port.
@@ -66,6 +88,15 @@ public class HttpContext
         this.hostname = hostname;
         this.port = port;
         this.client = client;
+
+        // Use the executor of the client for the retries of asynchronous calls if it has one
+        if(client instanceof JerseyClient && ((JerseyClient)client).getExecutorService() != null)
+            executor = ((JerseyClient)client).getExecutorService();
+        else
+            executor = ForkJoinPool.commonPool();
+
+        // Releases the permits from the rate limiter once the response bodies have been read
+        client.register(RateLimiterFilter.class);
     }
     
     /**
@@ -128,6 +159,56 @@ public class HttpContext
         return executeGetRequest(uri, headers, queryParams, returnType);
     }
     
+    /**
+     * Execute a GET call against the partial URL and return a page of deserialized results.
+     * <P>
+     * The next and last page numbers are taken from the "Link" header of the response.
+     * @param <T> The type parameter used for the page data
+     * @param partialUrl The partial URL to build
+     * @param headers A set of headers to add to the request
+     * @param queryParams A set of query parameters to add to the request, including the page number
+     * @param returnType The expected type of the page data
+     * @return The page of results
+     */
+    public <T> Optional<Page<T>> GETPage(String partialUrl, Map<String, Object> headers, 
+        List<String> queryParams, GenericType<T> returnType)
+    {
+        URI uri = buildUri(partialUrl);
+        WebTarget target = this.client.target(uri);
+        target = applyQueryParams(target, queryParams);
+        Invocation.Builder invocation = target.request(MediaType.APPLICATION_JSON);
+        applyHeaders(invocation, headers);
+        Response response = invoke("GET", invocation, null);
+        handleResponseError("GET", uri, response);
+        logResponse(uri, response);
+        return extractPageFromResponse(response, queryParams, returnType);
+    }
+
+    /**
+     * Execute an asynchronous GET call against the partial URL and return a page of deserialized results.
+     * @param <T> The type parameter used for the page data
+     * @param partialUrl The partial URL to build
+     * @param headers A set of headers to add to the request
+     * @param queryParams A set of query parameters to add to the request, including the page number
+     * @param returnType The expected type of the page data
+     * @return The future page of results
+     */
+    public <T> CompletableFuture<Optional<Page<T>>> GETPageAsync(String partialUrl, Map<String, Object> headers, 
+        final List<String> queryParams, final GenericType<T> returnType)
+    {
+        final URI uri = buildUri(partialUrl);
+        return executeAsync("GET", uri, null, headers, queryParams, new Function<Response,Optional<Page<T>>>()
+        {
+            @Override
+            public Optional<Page<T>> apply(Response response)
+            {
+                handleResponseError("GET", uri, response);
+                logResponse(uri, response);
+                return extractPageFromResponse(response, queryParams, returnType);
+            }
+        });
+    }
+
     /**
      * Execute a PUT call against the partial URL.
      * @param partialUrl The partial URL to build
@@ -318,6 +399,130 @@ public class HttpContext
         executeDeleteRequest(uri, headers, queryParams);
     }
     
+    /**
+     * Execute an asynchronous GET call against the partial URL and deserialize the results.
+     * @param <T> The type parameter used for the return object
+     * @param partialUrl The partial URL to build
+     * @param returnType The expected return type
+     * @return The future return type
+     */
+    public <T> CompletableFuture<Optional<T>> GETAsync(String partialUrl, GenericType<T> returnType)
+    {    
+        return GETAsync(partialUrl, null, null, returnType);
+    }
+
+    /**
+     * Execute an asynchronous GET call against the partial URL and deserialize the results.
+     * @param <T> The type parameter used for the return object
+     * @param partialUrl The partial URL to build
+     * @param headers A set of headers to add to the request
+     * @param queryParams A set of query parameters to add to the request
+     * @param returnType The expected return type
+     * @return The future return type
+     */
+    public <T> CompletableFuture<Optional<T>> GETAsync(String partialUrl, Map<String, Object> headers, 
+        List<String> queryParams, GenericType<T> returnType)
+    {
+        URI uri = buildUri(partialUrl);
+        return executeAsyncRequest("GET", uri, null, headers, queryParams, returnType);
+    }
+
+    /**
+     * Execute an asynchronous PUT call against the partial URL.
+     * @param <T> The type parameter used for the return object
+     * @param partialUrl The partial URL to build
+     * @param payload The object to use for the PUT
+     * @param headers A set of headers to add to the request
+     * @param queryParams A set of query parameters to add to the request
+     * @param returnType The expected return type
+     * @return The future return type
+     */
+    public <T> CompletableFuture<Optional<T>> PUTAsync(String partialUrl, Object payload, 
+        Map<String, Object> headers, List<String> queryParams, GenericType<T> returnType)
+    {
+        URI uri = buildUri(partialUrl);
+        return executeAsyncRequest("PUT", uri, getEntity(payload), headers, queryParams, returnType);
+    }
+
+    /**
+     * Execute an asynchronous POST call against the partial URL.
+     * @param <T> The type parameter used for the return object
+     * @param partialUrl The partial URL to build
+     * @param payload The object to use for the POST
+     * @param headers A set of headers to add to the request
+     * @param returnType The expected return type
+     * @return The future return type
+     */
+    public <T> CompletableFuture<Optional<T>> POSTAsync(String partialUrl, Object payload, 
+        Map<String, Object> headers, GenericType<T> returnType)
+    {
+        URI uri = buildUri(partialUrl);
+        return executeAsyncRequest("POST", uri, getPostEntity(payload, headers), 
+            headers, null, returnType);
+    }
+
+    /**
+     * Execute an asynchronous PATCH call against the partial URL.
+     * @param <T> The type parameter used for the return object
+     * @param partialUrl The partial URL to build
+     * @param payload The object to use for the PATCH
+     * @param headers A set of headers to add to the request
+     * @param queryParams A set of query parameters to add to the request
+     * @param returnType The expected return type
+     * @return The future return type
+     */
+    public <T> CompletableFuture<Optional<T>> PATCHAsync(String partialUrl, Object payload, 
+        Map<String, Object> headers, List<String> queryParams, GenericType<T> returnType)
+    {
+        URI uri = buildUri(partialUrl);
+        return executeAsyncRequest("PATCH", uri, getEntity(payload), headers, queryParams, returnType);
+    }
+
+    /**
+     * Execute an asynchronous DELETE call against the partial URL.
+     * @param partialUrl The partial URL to build
+     * @param headers A set of headers to add to the request
+     * @param queryParams A set of query parameters to add to the request
+     * @return The future that completes when the DELETE has completed
+     */
+    public CompletableFuture<Optional<Void>> DELETEAsync(String partialUrl, Map<String, Object> headers, 
+        List<String> queryParams)
+    {
+        URI uri = buildUri(partialUrl);
+        return executeAsyncRequest("DELETE", uri, null, headers, queryParams, null);
+    }
+
+    /**
+     * Execute an asynchronous DELETE call against the partial URL and return whether it succeeded.
+     * <P>
+     * The result is <CODE>true</CODE> if the response was successful, and absent otherwise,
+     * so that a failed DELETE is reported even when exceptions are not thrown for errors.
+     * @param partialUrl The partial URL to build
+     * @param headers A set of headers to add to the request
+     * @param queryParams A set of query parameters to add to the request
+     * @return The future result of the DELETE
+     */
+    public CompletableFuture<Optional<Boolean>> DELETEStatusAsync(String partialUrl, Map<String, Object> headers, 
+        List<String> queryParams)
+    {
+        final URI uri = buildUri(partialUrl);
+        return executeAsync("DELETE", uri, null, headers, queryParams, new Function<Response,Optional<Boolean>>()
+        {
+            @Override
+            public Optional<Boolean> apply(Response response)
+            {
+                invalidate(uri);
+                handleResponseError("DELETE", uri, response);
+                logResponse(uri, response);
+                int status = response.getStatus();
+                response.close();
+                if(status == 200 || status == 201 || status == 204)
+                    return Optional.of(Boolean.TRUE);
+                return Optional.absent();
+            }
+        });
+    }
+
     /**
      * Execute a GET request and return the result.
      * @param <T> The type parameter used for the return object
@@ -342,14 +547,52 @@ public class HttpContext
     protected <T> Optional<T> executeGetRequest(URI uri, Map<String, Object> headers, 
         List<String> queryParams, GenericType<T> returnType)
     {
+        boolean cacheable = cache != null && (headers == null || headers.isEmpty());
+        long generation = 0L;
+        if(cacheable)
+        {
+            generation = cache.getGeneration();
+            Optional<T> ret = cache.get(uri, queryParams, returnType);
+            if(ret != null)
+                return ret;
+        }
+
         WebTarget target = this.client.target(uri);
         target = applyQueryParams(target, queryParams);
         Invocation.Builder invocation = target.request(MediaType.APPLICATION_JSON);
         applyHeaders(invocation, headers);
-        Response response = invocation.get();
-        handleResponseError("GET", uri, response);
-        logResponse(uri, response);
-        return extractEntityFromResponse(response, returnType);
+
+        // Send the validators of an earlier response so an unchanged payload is not sent again
+        ValidatorCache.Validator validator = null;
+        if(validators != null)
+        {
+            validator = validators.get(uri, queryParams, returnType);
+            if(validator != null && validator.getETag() != null)
+                invocation.header(HttpHeaders.IF_NONE_MATCH, validator.getETag());
+            if(validator != null && validator.getLastModified() != null)
+                invocation.header(HttpHeaders.IF_MODIFIED_SINCE, validator.getLastModified());
+        }
+
+        Response response = invoke("GET", invocation, null);
+        Optional<T> ret = null;
+        if(validator != null && response.getStatus() == Response.Status.NOT_MODIFIED.getStatusCode())
+        {
+            logResponse(uri, response);
+            response.close();
+            ret = validators.notModified(validator);
+        }
+        else
+        {
+            handleResponseError("GET", uri, response);
+            logResponse(uri, response);
+            ret = extractEntityFromResponse(response, returnType);
+            if(validators != null)
+                validators.put(uri, queryParams, returnType, validator, response, ret);
+        }
+
+        if(cacheable)
+            cache.put(uri, queryParams, returnType, ret, generation);
+        return ret;
     }
 
     /**
@@ -378,9 +621,11 @@ public class HttpContext
         applyHeaders(invocation, headers);
         if(obj == null)
             obj = Entity.text("");
-        Response response = invocation.put(Entity.entity(obj, MediaType.APPLICATION_JSON));
+        Response response = invoke("PUT", invocation, Entity.entity(obj, MediaType.APPLICATION_JSON));
+        invalidate(uri);
         handleResponseError("PUT", uri, response);
         logResponse(uri, response);
+        response.close();
     }
 
     /**
@@ -402,7 +647,8 @@ public class HttpContext
         applyHeaders(invocation, headers);
         if(obj == null)
             obj = Entity.text("");
-        Response response = invocation.put(Entity.entity(obj, MediaType.APPLICATION_JSON));
+        Response response = invoke("PUT", invocation, Entity.entity(obj, MediaType.APPLICATION_JSON));
+        invalidate(uri);
         handleResponseError("PUT", uri, response);
         logResponse(uri, response);
         return extractEntityFromResponse(response, returnType);
@@ -430,7 +676,8 @@ public class HttpContext
     {
         Invocation.Builder invocation = this.client.target(uri).request(MediaType.APPLICATION_JSON);
         applyHeaders(invocation, headers);
-        Response response = invocation.post(Entity.entity(obj, MediaType.APPLICATION_JSON));
+        Response response = invoke("POST", invocation, getPostEntity(obj, headers));
+        invalidate(uri);
         handleResponseError("POST", uri, response);
         logResponse(uri, response);
         return Optional.of(response);
@@ -462,7 +709,8 @@ public class HttpContext
     {
         Invocation.Builder invocation = this.client.target(uri).request(MediaType.APPLICATION_JSON);
         applyHeaders(invocation, headers);
-        Response response = invocation.post(Entity.entity(obj, MediaType.APPLICATION_JSON));
+        Response response = invoke("POST", invocation, getPostEntity(obj, headers));
+        invalidate(uri);
         handleResponseError("POST", uri, response);
         logResponse(uri, response);
         return extractEntityFromResponse(response, returnType);
@@ -494,9 +742,11 @@ public class HttpContext
         applyHeaders(invocation, headers);
         if(obj == null)
             obj = Entity.text("");
-        Response response = invocation.method("PATCH", Entity.entity(obj, MediaType.APPLICATION_JSON));
+        Response response = invoke("PATCH", invocation, Entity.entity(obj, MediaType.APPLICATION_JSON));
+        invalidate(uri);
         handleResponseError("PATCH", uri, response);
         logResponse(uri, response);
+        response.close();
     }
 
     /**
@@ -518,7 +768,8 @@ public class HttpContext
         applyHeaders(invocation, headers);
         if(obj == null)
             obj = Entity.text("");
-        Response response = invocation.method("PATCH", Entity.entity(obj, MediaType.APPLICATION_JSON));
+        Response response = invoke("PATCH", invocation, Entity.entity(obj, MediaType.APPLICATION_JSON));
+        invalidate(uri);
         handleResponseError("PATCH", uri, response);
         logResponse(uri, response);
         return extractEntityFromResponse(response, returnType);
@@ -546,9 +797,341 @@ public class HttpContext
         target = applyQueryParams(target, queryParams);
         Invocation.Builder invocation = target.request(MediaType.APPLICATION_JSON);
         applyHeaders(invocation, headers);
-        Response response = invocation.delete();
+        Response response = invoke("DELETE", invocation, null);
+        invalidate(uri);
         handleResponseError("DELETE", uri, response);
         logResponse(uri, response);
+        response.close();
+    }
+
+    /**
+     * Execute an asynchronous request and return the future result.
+     * <P>
+     * The request is submitted using the client's reactive invoker, and the response 
+     * is processed in the same way as the corresponding synchronous request.
+     * @param <T> The type parameter used for the return object
+     * @param method The HTTP method type
+     * @param uri The URI to call
+     * @param entity The entity to send with the request, or <CODE>null</CODE> if there is no payload
+     * @param headers A set of headers to add to the request
+     * @param queryParams A set of query parameters to add to the request
+     * @param returnType The type to marshall the result back into, or <CODE>null</CODE> if there is no return object
+     * @return The future return type
+     */
+    protected <T> CompletableFuture<Optional<T>> executeAsyncRequest(final String method, final URI uri, 
+        Entity<?> entity, Map<String, Object> headers, List<String> queryParams, final GenericType<T> returnType)
+    {
+        return executeAsync(method, uri, entity, headers, queryParams, new Function<Response,Optional<T>>()
+        {
+            @Override
+            public Optional<T> apply(Response response)
+            {
+                if(!method.equals("GET"))
+                    invalidate(uri);
+                handleResponseError(method, uri, response);
+                logResponse(uri, response);
+                if(returnType != null)
+                    return extractEntityFromResponse(response, returnType);
+                response.close();
+                return Optional.absent();
+            }
+        });
+    }
+
+    /**
+     * Removes any cached results and indexes affected by a change to the resource at the given URI.
+     * @param uri The URI of the changed resource
+     */
+    private void invalidate(URI uri)
+    {
+        if(cache != null)
+            cache.invalidate(uri);
+        index.invalidate(uri);
+    }
+
+    /**
+     * Execute an asynchronous request and return the future result produced by the given response handler.
+     * @param <R> The type parameter used for the result of the handler
+     * @param method The HTTP method type
+     * @param uri The URI to call
+     * @param entity The entity to send with the request, or <CODE>null</CODE> if there is no payload
+     * @param headers A set of headers to add to the request
+     * @param queryParams A set of query parameters to add to the request
+     * @param handler The handler used to process the response
+     * @return The future result of the handler
+     */
+    private <R> CompletableFuture<R> executeAsync(String method, URI uri, Entity<?> entity, 
+        Map<String, Object> headers, List<String> queryParams, final Function<Response,R> handler)
+    {
+        WebTarget target = this.client.target(uri);
+        target = applyQueryParams(target, queryParams);
+        Invocation.Builder invocation = target.request(MediaType.APPLICATION_JSON);
+        applyHeaders(invocation, headers);
+        CompletableFuture<Response> response = new CompletableFuture<Response>();
+        invokeAsync(method, invocation, entity, 1, System.currentTimeMillis(), response);
+        final CompletableFuture<R> ret = new CompletableFuture<R>();
+        response.whenComplete(new BiConsumer<Response,Throwable>()
+        {
+            @Override
+            public void accept(Response r, Throwable error)
+            {
+                if(error != null)
+                {
+                    ret.completeExceptionally(error);
+                }
+                else if(ret.isCancelled())
+                {
+                    // The call was cancelled before the response arrived, so close it to release the connection
+                    r.close();
+                }
+                else
+                {
+                    try
+                    {
+                        ret.complete(handler.apply(r));
+                    }
+                    catch(RuntimeException e)
+                    {
+                        ret.completeExceptionally(e);
+                    }
+                }
+            }
+        });
+        return ret;
+    }
+
+    /**
+     * Execute a request, retrying it if it fails with an error allowed by the retry policy.
+     * @param method The HTTP method type
+     * @param invocation The request to execute
+     * @param entity The entity to send with the request, or <CODE>null</CODE> if there is no payload
+     * @return The response to the last attempt
+     */
+    private Response invoke(String method, Invocation.Builder invocation, Entity<?> entity)
+    {
+        RetryPolicy policy = retryPolicy;
+        long start = System.currentTimeMillis();
+        for(int attempt = 1; ; attempt++)
+        {
+            Response response = null;
+            try
+            {
+                response = call(method, invocation, entity);
+            }
+            catch(ProcessingException e)
+            {
+                long delay = policy != null ? policy.getDelay(method, attempt, null, System.currentTimeMillis()-start) : -1L;
+                if(delay < 0L)
+                    throw e;
+                logger.log(Level.FINE, method+" failed, retrying", e);
+                sleep(delay);
+                continue;
+            }
+
+            if(policy == null)
+                return response;
+            long delay = policy.getDelay(method, attempt, response, System.currentTimeMillis()-start);
+            if(delay < 0L)
+                return response;
+
+            response.close();
+            sleep(delay);
+        }
+    }
+
+    /**
+     * Execute a single attempt of a request, waiting for the rate limiter if there is one.
+     * <P>
+     * The permit from the rate limiter is released by the {@link RateLimiterFilter}
+     * once the body of the response has been read or the response has been closed.
+     * @param method The HTTP method type
+     * @param invocation The request to execute
+     * @param entity The entity to send with the request, or <CODE>null</CODE> if there is no payload
+     * @return The response to the request
+     */
+    private Response call(String method, Invocation.Builder invocation, Entity<?> entity)
+    {
+        RateLimiter.Permit permit = acquire(limiter);
+        invocation.property(RateLimiter.PERMIT, permit);
+        try
+        {
+            return entity != null ? invocation.method(method, entity) : invocation.method(method);
+        }
+        catch(RuntimeException e)
+        {
+            if(permit != null)
+                permit.release(null, 0);
+            throw e;
+        }
+    }
+
+    /**
+     * Waits for the given rate limiter to allow a request.
+     * @param limiter The rate limiter, or <CODE>null</CODE> if requests are not limited
+     * @return The permit for the request, or <CODE>null</CODE> if requests are not limited
+     */
+    private RateLimiter.Permit acquire(RateLimiter limiter)
+    {
+        if(limiter == null)
+            return null;
+
+        try
+        {
+            return limiter.acquire();
+        }
+        catch(InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new ProcessingException("Interrupted while waiting for rate limiter", e);
+        }
+    }
+
+    /**
+     * Execute an asynchronous request, retrying it if it fails with an error allowed by the retry policy.
+     * <P>
+     * The request is submitted once the rate limiter allows it, without blocking the caller.
+     * @param method The HTTP method type
+     * @param invocation The request to execute
+     * @param entity The entity to send with the request, or <CODE>null</CODE> if there is no payload
+     * @param attempt The number of the attempt, starting at 1
+     * @param start The time of the first attempt
+     * @param result The future completed with the response to the last attempt
+     */
+    private void invokeAsync(final String method, final Invocation.Builder invocation, final Entity<?> entity,
+        final int attempt, final long start, final CompletableFuture<Response> result)
+    {
+        RateLimiter limiter = this.limiter;
+        if(limiter == null)
+        {
+            submitAsync(method, invocation, entity, attempt, start, result, null);
+            return;
+        }
+
+        limiter.acquireAsync().whenComplete(new BiConsumer<RateLimiter.Permit,Throwable>()
+        {
+            @Override
+            public void accept(RateLimiter.Permit permit, Throwable error)
+            {
+                if(error != null)
+                    result.completeExceptionally(error);
+                else
+                    submitAsync(method, invocation, entity, attempt, start, result, permit);
+            }
+        });
+    }
+
+    /**
+     * Submits an attempt of an asynchronous request, retrying it if it fails with an error allowed by the retry policy.
+     * @param method The HTTP method type
+     * @param invocation The request to execute
+     * @param entity The entity to send with the request, or <CODE>null</CODE> if there is no payload
+     * @param attempt The number of the attempt, starting at 1
+     * @param start The time of the first attempt
+     * @param result The future completed with the response to the last attempt
+     * @param permit The permit from the rate limiter, or <CODE>null</CODE> if requests are not limited
+     */
+    private void submitAsync(final String method, final Invocation.Builder invocation, final Entity<?> entity,
+        final int attempt, final long start, final CompletableFuture<Response> result, final RateLimiter.Permit permit)
+    {
+        CompletionStage<Response> stage = null;
+        try
+        {
+            invocation.property(RateLimiter.PERMIT, permit);
+            if(entity != null)
+                stage = invocation.rx().method(method, entity);
+            else
+                stage = invocation.rx().method(method);
+        }
+        catch(RuntimeException e)
+        {
+            if(permit != null)
+                permit.release(null, 0);
+            result.completeExceptionally(e);
+            return;
+        }
+
+        final RetryPolicy policy = retryPolicy;
+        stage.whenComplete(new BiConsumer<Response,Throwable>()
+        {
+            @Override
+            public void accept(Response response, Throwable error)
+            {
+                // A response releases the permit when its body is read, otherwise release it here
+                if(response == null && permit != null)
+                    permit.release(null, 0);
+
+                long delay = -1L;
+                Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                if(policy != null && (error == null || cause instanceof ProcessingException))
+                    delay = policy.getDelay(method, attempt, response, System.currentTimeMillis()-start);
+
+                if(delay < 0L)
+                {
+                    if(error != null)
+                        result.completeExceptionally(cause);
+                    else
+                        result.complete(response);
+                    return;
+                }
+
+                if(response != null)
+                    response.close();
+                RetryPolicy.schedule(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        invokeAsync(method, invocation, entity, attempt+1, start, result);
+                    }
+                }, delay, executor, result);
+            }
+        });
+    }
+
+    /**
+     * Waits for the given delay before the next attempt of a request.
+     * @param delay The delay (in milliseconds)
+     */
+    private void sleep(long delay)
+    {
+        try
+        {
+            Thread.sleep(delay);
+        }
+        catch(InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new ProcessingException("Interrupted while waiting to retry request", e);
+        }
+    }
+
+    /**
+     * Returns the JSON entity for the given payload, using an empty text entity if the payload is <CODE>null</CODE>.
+     * @param obj The payload
+     * @return The entity for the payload
+     */
+    private Entity<?> getEntity(Object obj)
+    {
+        if(obj == null)
+            obj = Entity.text("");
+        return Entity.entity(obj, MediaType.APPLICATION_JSON);
+    }
+
+    /**
+     * Returns the JSON entity to use for the given POST payload.
+     * <P>
+     * If the headers include a "Content-Encoding" (eg. "gzip") it is applied to the entity,
+     * so that the body is compressed by the matching encoder.
+     * @param obj The object to use for the payload
+     * @param headers The set of headers to add to the request
+     * @return The entity for the payload
+     */
+    private Entity<?> getPostEntity(Object obj, Map<String, Object> headers)
+    {
+        Object encoding = headers != null ? headers.get(HttpHeaders.CONTENT_ENCODING) : null;
+        if(encoding != null)
+            return Entity.entity(obj, new Variant(MediaType.APPLICATION_JSON_TYPE, (String)null, encoding.toString()));
+        return Entity.entity(obj, MediaType.APPLICATION_JSON);
     }
 
     /**
@@ -562,9 +1145,83 @@ public class HttpContext
     {
         if(response.hasEntity() && (response.getStatus() == 200 || response.getStatus() == 201))
             return Optional.of(response.readEntity(returnType));
+        response.close(); // Release the connection
         return Optional.absent();
     }
 
+    /**
+     * Extract a page of results from the HTTP response.
+     * @param <T> The type parameter used for the page data
+     * @param response The HTTP response to extract the page from
+     * @param queryParams The query parameters used for the request
+     * @param returnType The type to marshall the page data back into
+     * @return The extracted page
+     */
+    private <T> Optional<Page<T>> extractPageFromResponse(Response response, List<String> queryParams, 
+        GenericType<T> returnType)
+    {
+        int page = Math.max(getPageNumber(queryParams), 1);
+        int nextPage = getPageNumber(response.getLink("next"));
+        int lastPage = getPageNumber(response.getLink("last"));
+        Optional<T> data = extractEntityFromResponse(response, returnType);
+        if(!data.isPresent())
+            return Optional.absent();
+        return Optional.of(new Page<T>(data.get(), page, nextPage, lastPage));
+    }
+
+    /**
+     * Returns the page number contained in the given link.
+     * @param link The link from the "Link" header
+     * @return The page number in the link, or 0 if the link is not present
+     */
+    private int getPageNumber(Link link)
+    {
+        int ret = 0;
+        if(link != null && link.getUri().getQuery() != null)
+        {
+            List<String> params = new ArrayList<String>();
+            for(String param : link.getUri().getQuery().split("&"))
+            {
+                int pos = param.indexOf("=");
+                if(pos > 0)
+                {
+                    params.add(param.substring(0, pos));
+                    params.add(param.substring(pos+1));
+                }
+            }
+            ret = getPageNumber(params);
+        }
+        return ret;
+    }
+
+    /**
+     * Returns the page number contained in the given query parameters.
+     * @param queryParams The query parameters
+     * @return The page number in the query parameters, or 0 if the page parameter is not present
+     */
+    static int getPageNumber(List<String> queryParams)
+    {
+        int ret = 0;
+        if(queryParams != null)
+        {
+            for(int i = 0; i < queryParams.size()-1; i += 2)
+            {
+                if(queryParams.get(i).equals(PAGE))
+                {
+                    try
+                    {
+                        ret = Integer.parseInt(queryParams.get(i+1));
+                    }
+                    catch(NumberFormatException e)
+                    {
+                        logger.warning("Invalid page number: "+queryParams.get(i+1));
+                    }
+                }
+            }
+        }
+        return ret;
+    }
+
     /**
      * Add the given set of headers to the web target.
      * @param builder The invocation to add the headers to
@@ -609,7 +1266,7 @@ public class HttpContext
     {
         if(logger.isLoggable(Level.FINE))
             logger.fine(uri.toString()+" => "+response.getStatus());
-        if(response.getStatus() > 300)
+        if(response.getStatus() > 300 && response.getStatus() != Response.Status.NOT_MODIFIED.getStatusCode())
             logger.warning(response.toString());
     }
 
@@ -626,9 +1283,17 @@ public class HttpContext
              && response.getStatus() != 201 
              && response.getStatus() != 204)
         {
+            // Close the response so that the connection is returned to the pool
             ErrorResponse error = null;
-            if(response.hasEntity())
-                error = response.readEntity(ERROR);
+            try
+            {
+                if(response.hasEntity())
+                    error = response.readEntity(ERROR);
+            }
+            finally
+            {
+                response.close();
+            }
             throw new ErrorResponseException(method, response.getStatus(), 
                 response.getStatusInfo().getReasonPhrase(), error);
         }
@@ -669,4 +1334,105 @@ public class HttpContext
     {
         return uriPrefix;
     }
+
+    /**
+     * Sets the cache used for the results of GET calls.
+     * @param cache The entity cache, or <CODE>null</CODE> if results should not be cached
+     */
+    public void setCache(EntityCache cache)
+    {
+        this.cache = cache;
+    }
+
+    /**
+     * Returns the cache used for the results of GET calls.
+     * @return The entity cache, or <CODE>null</CODE> if results are not cached
+     */
+    public EntityCache getCache()
+    {
+        return cache;
+    }
+
+    /**
+     * Sets the cache of validators used to make conditional GET calls.
+     * @param validators The validator cache, or <CODE>null</CODE> if GET calls should not be conditional
+     */
+    public void setValidatorCache(ValidatorCache validators)
+    {
+        this.validators = validators;
+    }
+
+    /**
+     * Returns the cache of validators used to make conditional GET calls.
+     * @return The validator cache, or <CODE>null</CODE> if GET calls are not conditional
+     */
+    public ValidatorCache getValidatorCache()
+    {
+        return validators;
+    }
+
+    /**
+     * Returns the indexes used to look up items in collections that can only be searched by listing them.
+     * @return The resource indexes
+     */
+    public ResourceIndex getResourceIndex()
+    {
+        return index;
+    }
+
+    /**
+     * Sets the policy used to retry calls that fail with a transient error.
+     * @param retryPolicy The retry policy, or <CODE>null</CODE> if calls should not be retried
+     */
+    public void setRetryPolicy(RetryPolicy retryPolicy)
+    {
+        this.retryPolicy = retryPolicy;
+    }
+
+    /**
+     * Returns the policy used to retry calls that fail with a transient error.
+     * @return The retry policy, or <CODE>null</CODE> if calls are not retried
+     */
+    public RetryPolicy getRetryPolicy()
+    {
+        return retryPolicy;
+    }
+
+    /**
+     * Sets the executor used to make the retries of asynchronous calls once their delay has passed.
+     * <P>
+     * Defaults to the executor of the client if it has one, otherwise the common fork/join pool.
+     * @param executor The executor used for the retries of asynchronous calls
+     */
+    public void setExecutor(Executor executor)
+    {
+        this.executor = executor;
+    }
+
+    /**
+     * Returns the executor used to make the retries of asynchronous calls once their delay has passed.
+     * @return The executor used for the retries of asynchronous calls
+     */
+    public Executor getExecutor()
+    {
+        return executor;
+    }
+
+    /**
+     * Sets the limiter used for the rate and concurrency of the requests.
+     * @param limiter The rate limiter, or <CODE>null</CODE> if requests should not be limited
+     */
+    public void setRateLimiter(RateLimiter limiter)
+    {
+        this.limiter = limiter;
+    }
+
+    /**
+     * Returns the limiter used for the rate and concurrency of the requests.
+     * @return The rate limiter, or <CODE>null</CODE> if requests are not limited
+     */
+    public RateLimiter getRateLimiter()
+    {
+        return limiter;
+    }
 }
@@ -31,6 +31,11 @@ import com.opsmatters.newrelic.api.util.QueryParameterList;
  */
 public class InfraAlertConditionService extends BaseFluent
 {
+    /**
+     * The maximum number of results per page.
+     */
+    public static final int MAX_LIMIT = 50;
+
     /**
      * Constructor that takes a http context and API client.
      * @param httpContext The set of HTTP operations
@@ -73,6 +78,26 @@ public class InfraAlertConditionService extends BaseFluent
         return list(policyId, 0, -1);
     }
 
+    /**
+     * Returns all the alert conditions for the given policy id.
+     * <P>
+     * The conditions are requested a page at a time until a page is returned that is not full.
+     * @param policyId The id of the alert policy to return the conditions for
+     * @return The set of alert conditions
+     */
+    public Collection<InfraAlertCondition> listAll(long policyId)
+    {
+        List<InfraAlertCondition> ret = new ArrayList<InfraAlertCondition>();
+        Collection<InfraAlertCondition> conditions;
+        do
+        {
+            conditions = list(policyId, ret.size(), MAX_LIMIT);
+            ret.addAll(conditions);
+        }
+        while(conditions.size() >= MAX_LIMIT);
+        return ret;
+    }
+
     /**
      * Returns the set of alert conditions for the given policy id and name.
      * @param policyId The id of the alert policy to return the conditions for
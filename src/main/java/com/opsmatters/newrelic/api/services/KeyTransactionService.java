@@ -19,6 +19,8 @@ package com.opsmatters.newrelic.api.services;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Iterator;
+import java.util.stream.Stream;
 import com.google.common.base.Optional;
 import com.opsmatters.newrelic.api.NewRelicClient;
 import com.opsmatters.newrelic.api.model.transactions.KeyTransaction;
@@ -51,6 +53,44 @@ public class KeyTransactionService extends BaseFluent
         return HTTP.GET("/v2/key_transactions.json", null, queryParams, KEY_TRANSACTIONS).get();
     }
 
+    /**
+     * Returns an iterator over all the key transactions with the given query parameters.
+     * <P>
+     * Each page of key transactions is only fetched when the iterator reaches it.
+     * @param queryParams The query parameters
+     * @return The iterator over the key transactions
+     */
+    public PagedIterator<KeyTransaction> iterator(List<String> queryParams)
+    {
+        return new PagedIterator<KeyTransaction>(HTTP, "/v2/key_transactions.json", queryParams, KEY_TRANSACTIONS);
+    }
+
+    /**
+     * Returns a stream of all the key transactions with the given query parameters.
+     * <P>
+     * Each page of key transactions is only fetched when the stream reaches it.
+     * @param queryParams The query parameters
+     * @return The stream of key transactions
+     */
+    public Stream<KeyTransaction> stream(List<String> queryParams)
+    {
+        return iterator(queryParams).stream();
+    }
+
+    /**
+     * Returns all the key transactions with the given query parameters.
+     * <P>
+     * The last page is taken from the first response, and the remaining pages 
+     * are then requested concurrently, limited by the client's page parallelism.
+     * @param queryParams The query parameters
+     * @return The set of key transactions
+     */
+    public Collection<KeyTransaction> listAll(List<String> queryParams)
+    {
+        return new ParallelPageFetcher<KeyTransaction>(HTTP, "/v2/key_transactions.json", queryParams, KEY_TRANSACTIONS, 
+            getClient().getPageParallelism()).fetch();
+    }
+
     /**
      * Returns the set of key transactions.
      * @return The set of key transactions
@@ -63,15 +103,18 @@ public class KeyTransactionService extends BaseFluent
 
     /**
      * Returns the set of key transactions for the given name.
+     * <P>
+     * The server filters the transactions on the name, and the pages of matches are then checked for an exact match.
      * @param name The name of the transactions
      * @return The set of transactions
      */
     public Collection<KeyTransaction> list(String name)
     {
         List<KeyTransaction> ret = new ArrayList<KeyTransaction>();
-        Collection<KeyTransaction> transactions = list();
-        for(KeyTransaction transaction : transactions)
+        Iterator<KeyTransaction> transactions = name != null ? iterator(filters().name(name).build()) : list().iterator();
+        while(transactions.hasNext())
         {
+            KeyTransaction transaction = transactions.next();
             if(name == null || transaction.getName().equals(name))
                 ret.add(transaction);
         }
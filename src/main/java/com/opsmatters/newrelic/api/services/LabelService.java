@@ -19,6 +19,8 @@ package com.opsmatters.newrelic.api.services;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.stream.Stream;
+import com.google.common.base.Function;
 import com.google.common.base.Optional;
 import com.opsmatters.newrelic.api.NewRelicClient;
 import com.opsmatters.newrelic.api.model.labels.Label;
@@ -31,6 +33,24 @@ import com.opsmatters.newrelic.api.util.QueryParameterList;
  */
 public class LabelService extends BaseFluent
 {
+    /**
+     * Indexes labels by their key.
+     */
+    private static final Function<Label,String> KEY = new Function<Label,String>()
+    {
+        @Override
+        public String apply(Label label)
+        {
+            return label.getKey();
+        }
+
+        @Override
+        public String toString()
+        {
+            return "key";
+        }
+    };
+
     /**
      * Constructor that takes a http context and API client.
      * @param httpContext The set of HTTP operations
@@ -51,6 +71,44 @@ public class LabelService extends BaseFluent
         return HTTP.GET("/v2/labels.json", null, queryParams, LABELS).get();
     }
 
+    /**
+     * Returns an iterator over all the labels with the given query parameters.
+     * <P>
+     * Each page of labels is only fetched when the iterator reaches it.
+     * @param queryParams The query parameters
+     * @return The iterator over the labels
+     */
+    public PagedIterator<Label> iterator(List<String> queryParams)
+    {
+        return new PagedIterator<Label>(HTTP, "/v2/labels.json", queryParams, LABELS);
+    }
+
+    /**
+     * Returns a stream of all the labels with the given query parameters.
+     * <P>
+     * Each page of labels is only fetched when the stream reaches it.
+     * @param queryParams The query parameters
+     * @return The stream of labels
+     */
+    public Stream<Label> stream(List<String> queryParams)
+    {
+        return iterator(queryParams).stream();
+    }
+
+    /**
+     * Returns all the labels with the given query parameters.
+     * <P>
+     * The last page is taken from the first response, and the remaining pages 
+     * are then requested concurrently, limited by the client's page parallelism.
+     * @param queryParams The query parameters
+     * @return The set of labels
+     */
+    public Collection<Label> listAll(List<String> queryParams)
+    {
+        return new ParallelPageFetcher<Label>(HTTP, "/v2/labels.json", queryParams, LABELS, 
+            getClient().getPageParallelism()).fetch();
+    }
+
     /**
      * Returns the set of labels.
      * @return The set of labels
@@ -87,14 +145,7 @@ public class LabelService extends BaseFluent
      */
     public Optional<Label> show(String key)
     {
-        Optional<Label> ret = Optional.absent();
-        Collection<Label> labels = list();
-        for(Label label : labels)
-        {
-            if(label.getKey().equals(key))
-                ret = Optional.of(label);
-        }
-        return ret;
+        return HTTP.getResourceIndex().find("/v2/labels.json", null, LABELS, KEY, key);
     }
     
     /**
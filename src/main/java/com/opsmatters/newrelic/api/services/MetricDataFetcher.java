@@ -0,0 +1,218 @@
+/*
+ * Copyright 2018 Gerald Curley
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.opsmatters.newrelic.api.services;
+
+import java.util.List;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.logging.Logger;
+import java.util.logging.Level;
+import javax.ws.rs.core.GenericType;
+import com.google.common.base.Optional;
+import com.opsmatters.newrelic.api.model.metrics.MetricData;
+import com.opsmatters.newrelic.api.model.metrics.MetricTimeslice;
+import com.opsmatters.newrelic.api.model.metrics.MetricTimeslices;
+
+/**
+ * Fetches the metric data for a long time range by splitting it into chunks that are requested concurrently.
+ * <P>
+ * The server limits the number of timeslices returned by each call, so the time range is split into chunks
+ * using {@link MetricParameterBuilder#chunks(int)}. The chunks are requested with at most the given number
+ * of requests in flight, and the timeslices are merged back into a single set of metric data in time order.
+ * A timeslice at the boundary of two chunks that is returned by both is only included once.
+ * <P>
+ * If any chunk returns no data, the whole fetch returns no data rather than merged data with a gap in it.
+ *
+ * @author Gerald Curley (opsmatters)
+ */
+public class MetricDataFetcher
+{
+    private static final Logger logger = Logger.getLogger(MetricDataFetcher.class.getName());
+
+    /**
+     * The default maximum number of chunk requests in flight.
+     */
+    public static final int DEFAULT_PARALLELISM = 4;
+
+    /**
+     * The default maximum number of timeslices requested in each chunk.
+     */
+    public static final int DEFAULT_MAX_TIMESLICES = 1440;
+
+    private static final GenericType<MetricData> METRIC_DATA = new GenericType<MetricData>(){};
+
+    private HttpContext http;
+    private String partialUrl;
+    private List<List<String>> chunks;
+    private int parallelism;
+
+    /**
+     * Constructor that takes a http context, partial URL, metric parameters, chunk size and parallelism.
+     * @param httpContext The set of HTTP operations
+     * @param partialUrl The partial URL of the metric data resource
+     * @param params The metric parameters, including the time range
+     * @param maxTimeslices The maximum number of timeslices requested in each chunk
+     * @param parallelism The maximum number of chunk requests in flight
+     */
+    public MetricDataFetcher(HttpContext httpContext, String partialUrl, MetricParameterBuilder params,
+        int maxTimeslices, int parallelism)
+    {
+        this.http = httpContext;
+        this.partialUrl = partialUrl;
+        this.chunks = params.chunks(maxTimeslices);
+        this.parallelism = Math.max(parallelism, 1);
+    }
+
+    /**
+     * Fetches the metric data for all the chunks and returns the merged results.
+     * @return The merged metric data, or absent if the data for any chunk was not returned
+     */
+    public Optional<MetricData> fetch()
+    {
+        if(chunks.size() == 1)
+            return http.GET(partialUrl, null, chunks.get(0), METRIC_DATA);
+
+        if(logger.isLoggable(Level.FINE))
+            logger.fine("Fetching "+chunks.size()+" chunks of "+partialUrl+" with parallelism "+parallelism);
+
+        // Keep at most "parallelism" requests in flight, consuming them in time order
+        List<MetricData> results = new ArrayList<MetricData>();
+        LinkedList<CompletableFuture<Optional<MetricData>>> futures = new LinkedList<CompletableFuture<Optional<MetricData>>>();
+        for(List<String> chunk : chunks)
+        {
+            if(futures.size() >= parallelism && !add(results, futures.removeFirst()))
+                return Optional.absent();
+            futures.add(http.GETAsync(partialUrl, null, chunk, METRIC_DATA));
+        }
+
+        while(!futures.isEmpty())
+        {
+            if(!add(results, futures.removeFirst()))
+                return Optional.absent();
+        }
+
+        return Optional.of(merge(results));
+    }
+
+    /**
+     * Waits for the given future metric data and adds it to the given list.
+     * @param list The list to add the metric data to
+     * @param future The future metric data
+     * @return <CODE>true</CODE> if the metric data was returned
+     */
+    private boolean add(List<MetricData> list, CompletableFuture<Optional<MetricData>> future)
+    {
+        try
+        {
+            Optional<MetricData> data = future.join();
+            if(!data.isPresent())
+            {
+                List<String> chunk = chunks.get(list.size());
+                logger.warning("No metric data returned for "+partialUrl+" from "+getParameter(chunk, "from")
+                    +" to "+getParameter(chunk, "to")+" (chunk "+(list.size()+1)+" of "+chunks.size()+")");
+                return false;
+            }
+            list.add(data.get());
+            return true;
+        }
+        catch(CompletionException e)
+        {
+            if(e.getCause() instanceof RuntimeException)
+                throw (RuntimeException)e.getCause();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the value of the given parameter of a chunk.
+     * @param chunk The parameters of the chunk
+     * @param name The name of the parameter
+     * @return The value of the parameter, or <CODE>null</CODE> if the parameter is not present
+     */
+    private static String getParameter(List<String> chunk, String name)
+    {
+        for(int i = 0; i < chunk.size()-1; i += 2)
+        {
+            if(chunk.get(i).equals(name))
+                return chunk.get(i+1);
+        }
+        return null;
+    }
+
+    /**
+     * Merges the given chunks of metric data into a single set of metric data.
+     * <P>
+     * The chunks must be in time order. A timeslice is only added to a metric 
+     * if it starts after the last timeslice already added for that metric.
+     * @param chunks The chunks of metric data in time order
+     * @return The merged metric data
+     */
+    public static MetricData merge(List<MetricData> chunks)
+    {
+        MetricData ret = new MetricData();
+        Set<String> found = new LinkedHashSet<String>();
+        Set<String> notFound = new LinkedHashSet<String>();
+        Map<String,MetricTimeslices> metrics = new LinkedHashMap<String,MetricTimeslices>();
+
+        for(MetricData chunk : chunks)
+        {
+            if(ret.getFrom() == null)
+                ret.setFrom(chunk.getFrom());
+            if(chunk.getTo() != null)
+                ret.setTo(chunk.getTo());
+            if(chunk.getMetricsFound() != null)
+                found.addAll(chunk.getMetricsFound());
+            if(chunk.getMetricsNotFound() != null)
+                notFound.addAll(chunk.getMetricsNotFound());
+
+            for(MetricTimeslices metric : chunk.getMetrics())
+            {
+                MetricTimeslices merged = metrics.get(metric.getName());
+                if(merged == null)
+                {
+                    merged = new MetricTimeslices();
+                    merged.setName(metric.getName());
+                    metrics.put(metric.getName(), merged);
+                }
+
+                List<MetricTimeslice> timeslices = merged.getTimeslices();
+                for(MetricTimeslice timeslice : metric.getTimeslices())
+                {
+                    // Skip any timeslice at the chunk boundary that has already been added
+                    MetricTimeslice last = timeslices.isEmpty() ? null : timeslices.get(timeslices.size()-1);
+                    if(last != null && last.getFrom() != null && timeslice.getFrom() != null
+                        && !timeslice.getFrom().after(last.getFrom()))
+                        continue;
+                    timeslices.add(timeslice);
+                }
+            }
+        }
+
+        // A metric is only not found if it was not found in any chunk
+        notFound.removeAll(found);
+        ret.setMetricsFound(new ArrayList<String>(found));
+        ret.setMetricsNotFound(new ArrayList<String>(notFound));
+        ret.setMetrics(new ArrayList<MetricTimeslices>(metrics.values()));
+        return ret;
+    }
+}
@@ -17,6 +17,7 @@
 package com.opsmatters.newrelic.api.services;
 
 import java.util.List;
+import java.util.ArrayList;
 import com.opsmatters.newrelic.api.util.Utils;
 import com.opsmatters.newrelic.api.util.QueryParameterList;
 
@@ -27,7 +28,16 @@ import com.opsmatters.newrelic.api.util.QueryParameterList;
  */
 public class MetricParameterBuilder
 {
+    /**
+     * The period of timeslices assumed when splitting a time range if no period has been given (in seconds).
+     */
+    public static final int DEFAULT_PERIOD = 60;
+
     private QueryParameterList parameters = new QueryParameterList();
+    private long from = -1L;
+    private long to = -1L;
+    private int period = -1;
+    private boolean summarize = false;
 
     /**
      * Returns a builder for the metric data parameters.
@@ -68,6 +78,7 @@ public class MetricParameterBuilder
     public MetricParameterBuilder from(long from)
     {
         parameters.add("from", Utils.getUtcDateTime(from));
+        this.from = from;
         return this;
     }
 
@@ -79,6 +90,7 @@ public class MetricParameterBuilder
     public MetricParameterBuilder to(long to)
     {
         parameters.add("to", Utils.getUtcDateTime(to));
+        this.to = to;
         return this;
     }
 
@@ -90,6 +102,7 @@ public class MetricParameterBuilder
     public MetricParameterBuilder period(int period)
     {
         parameters.add("period", Integer.toString(period));
+        this.period = period;
         return this;
     }
 
@@ -101,6 +114,7 @@ public class MetricParameterBuilder
     public MetricParameterBuilder summarize(boolean summarize)
     {
         parameters.add("summarize", Boolean.toString(summarize));
+        this.summarize = summarize;
         return this;
     }
 
@@ -125,4 +139,46 @@ public class MetricParameterBuilder
             throw new IllegalArgumentException("parameter list must contain at least one names[] parameter");
         return parameters;
     }
+
+    /**
+     * Returns the configured parameters split into chunks of the time range.
+     * <P>
+     * Each chunk covers at most the given number of timeslices of the period,
+     * and the chunks are returned in time order.
+     * If the from or to dates have not been given, or the data is to be summarized,
+     * a single chunk with all the parameters is returned.
+     * @param maxTimeslices The maximum number of timeslices in each chunk
+     * @return The parameters for each chunk
+     */
+    public List<List<String>> chunks(int maxTimeslices)
+    {
+        List<String> params = build();
+        List<List<String>> ret = new ArrayList<List<String>>();
+        if(from < 0L || to <= from || summarize || maxTimeslices <= 0)
+        {
+            ret.add(params);
+            return ret;
+        }
+
+        // Copy the parameters without the time range
+        QueryParameterList base = new QueryParameterList();
+        for(int i = 0; i < params.size()-1; i += 2)
+        {
+            String name = params.get(i);
+            if(!name.equals("from") && !name.equals("to"))
+                base.add(name, params.get(i+1));
+        }
+
+        long step = (long)maxTimeslices*(period > 0 ? period : DEFAULT_PERIOD)*1000L;
+        for(long start = from; start < to; start += step)
+        {
+            QueryParameterList chunk = new QueryParameterList();
+            chunk.addAll(base);
+            chunk.add("from", Utils.getUtcDateTime(start));
+            chunk.add("to", Utils.getUtcDateTime(Math.min(start+step, to)));
+            ret.add(chunk);
+        }
+
+        return ret;
+    }
 }
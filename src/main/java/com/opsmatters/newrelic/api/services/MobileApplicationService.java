@@ -19,11 +19,15 @@ package com.opsmatters.newrelic.api.services;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Iterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
 import com.google.common.base.Optional;
 import com.opsmatters.newrelic.api.NewRelicClient;
 import com.opsmatters.newrelic.api.model.applications.MobileApplication;
 import com.opsmatters.newrelic.api.model.metrics.Metric;
 import com.opsmatters.newrelic.api.model.metrics.MetricData;
+import com.opsmatters.newrelic.api.model.metrics.MetricSeriesData;
 import com.opsmatters.newrelic.api.util.QueryParameterList;
 
 /**
@@ -53,6 +57,57 @@ public class MobileApplicationService extends BaseFluent
         return HTTP.GET("/v2/mobile_applications.json", null, queryParams, MOBILE_APPLICATIONS).get();
     }
 
+    /**
+     * Returns an iterator over all the Mobile applications with the given query parameters.
+     * <P>
+     * Each page of Mobile applications is only fetched when the iterator reaches it.
+     * @param queryParams The query parameters
+     * @return The set of applications
+     * @return The iterator over the Mobile applications
+     */
+    public PagedIterator<MobileApplication> iterator(List<String> queryParams)
+    {
+        return new PagedIterator<MobileApplication>(HTTP, "/v2/mobile_applications.json", queryParams, MOBILE_APPLICATIONS);
+    }
+
+    /**
+     * Returns a stream of all the Mobile applications with the given query parameters.
+     * <P>
+     * Each page of Mobile applications is only fetched when the stream reaches it.
+     * @param queryParams The query parameters
+     * @return The set of applications
+     * @return The stream of Mobile applications
+     */
+    public Stream<MobileApplication> stream(List<String> queryParams)
+    {
+        return iterator(queryParams).stream();
+    }
+
+    /**
+     * Returns all the Mobile applications with the given query parameters.
+     * <P>
+     * The last page is taken from the first response, and the remaining pages 
+     * are then requested concurrently, limited by the client's page parallelism.
+     * @param queryParams The query parameters
+     * @return The set of applications
+     * @return The set of Mobile applications
+     */
+    public Collection<MobileApplication> listAll(List<String> queryParams)
+    {
+        return new ParallelPageFetcher<MobileApplication>(HTTP, "/v2/mobile_applications.json", queryParams, MOBILE_APPLICATIONS, 
+            getClient().getPageParallelism()).fetch();
+    }
+
+    /**
+     * Asynchronously returns the set of Mobile applications with the given query parameters.
+     * @param queryParams The query parameters
+     * @return The future set of applications
+     */
+    public CompletableFuture<Collection<MobileApplication>> listAsync(List<String> queryParams)
+    {
+        return unwrap(HTTP.GETAsync("/v2/mobile_applications.json", null, queryParams, MOBILE_APPLICATIONS));
+    }
+
     /**
      * Returns the set of Mobile applications.
      * @return The set of applications
@@ -66,15 +121,18 @@ public class MobileApplicationService extends BaseFluent
 
     /**
      * Returns the set of Mobile applications for the given name.
+     * <P>
+     * The server filters the applications on the name, and the pages of matches are then checked for an exact match.
      * @param name The name of the applications
      * @return The set of applications
      */
     public Collection<MobileApplication> list(String name)
     {
         List<MobileApplication> ret = new ArrayList<MobileApplication>();
-        Collection<MobileApplication> applications = list();
-        for(MobileApplication application : applications)
+        Iterator<MobileApplication> applications = name != null ? iterator(filters().name(name).build()) : list().iterator();
+        while(applications.hasNext())
         {
+            MobileApplication application = applications.next();
             if(name == null || application.getName().equals(name))
                 ret.add(application);
         }
@@ -91,6 +149,16 @@ public class MobileApplicationService extends BaseFluent
         return HTTP.GET(String.format("/v2/mobile_applications/%d.json", applicationId), MOBILE_APPLICATION);
     }
 
+    /**
+     * Asynchronously returns the Mobile application for the given application id.
+     * @param applicationId The id for the application to return
+     * @return The future application
+     */
+    public CompletableFuture<Optional<MobileApplication>> showAsync(long applicationId)
+    {
+        return HTTP.GETAsync(String.format("/v2/mobile_applications/%d.json", applicationId), MOBILE_APPLICATION);
+    }
+
     /**
      * Returns the set of metrics for the given application.
      * @param applicationId The id of the application to return metrics for
@@ -126,6 +194,42 @@ public class MobileApplicationService extends BaseFluent
         return HTTP.GET(String.format("/v2/mobile_applications/%d/metrics/data.json", applicationId), null, queryParams, METRIC_DATA);
     }
 
+    /**
+     * Returns the set of metric data for the given application, splitting a long time range into chunks.
+     * <P>
+     * The chunks are fetched concurrently and the timeslices are merged in time order.
+     * @param applicationId The id of the application to return metric data for
+     * @param params The metric parameters, including the time range
+     * @return The set of metric data
+     */
+    public Optional<MetricData> metricData(long applicationId, MetricParameterBuilder params)
+    {
+        return new MetricDataFetcher(HTTP, String.format("/v2/mobile_applications/%d/metrics/data.json", applicationId), params,
+            getClient().getMaxTimeslices(), getClient().getMetricParallelism()).fetch();
+    }
+
+    /**
+     * Asynchronously returns the set of metric data for the given application.
+     * @param applicationId The id of the application to return metric data for
+     * @param queryParams The query parameters
+     * @return The future set of metric data
+     */
+    public CompletableFuture<Optional<MetricData>> metricDataAsync(long applicationId, List<String> queryParams)
+    {
+        return HTTP.GETAsync(String.format("/v2/mobile_applications/%d/metrics/data.json", applicationId), null, queryParams, METRIC_DATA);
+    }
+
+    /**
+     * Returns the set of metric data for the given application as columns of values.
+     * @param applicationId The id of the application to return metric data for
+     * @param queryParams The query parameters
+     * @return The set of metric data as columns of values
+     */
+    public Optional<MetricSeriesData> metricSeries(long applicationId, List<String> queryParams)
+    {
+        return HTTP.GET(String.format("/v2/mobile_applications/%d/metrics/data.json", applicationId), null, queryParams, METRIC_SERIES_DATA);
+    }
+
     /**
      * Returns a builder for the metric data parameters.
      * @return The builder instance.
@@ -149,6 +149,7 @@ public class MonitorService extends BaseFluent
     {
         Response obj = HTTP.POST("/v3/monitors", monitor).get();
         String location = obj.getStringHeaders().getFirst("location");
+        obj.close(); // Release the connection
         if(location != null)
             monitor.setId(location.substring(location.lastIndexOf("/")+1));
         return Optional.of(monitor);
@@ -196,7 +197,7 @@ public class MonitorService extends BaseFluent
      */
     public Optional<Label> createLabel(String monitorId, Label label)
     {
-        HTTP.POST(String.format("/v1/monitors/%s/labels", monitorId), label.getKey());
+        HTTP.POST(String.format("/v1/monitors/%s/labels", monitorId), label.getKey()).get().close();
         return Optional.of(label);
     }
 
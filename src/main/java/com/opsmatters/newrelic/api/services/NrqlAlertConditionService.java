@@ -17,8 +17,8 @@
 package com.opsmatters.newrelic.api.services;
 
 import java.util.List;
-import java.util.ArrayList;
 import java.util.Collection;
+import java.util.stream.Stream;
 import com.google.common.base.Optional;
 import com.opsmatters.newrelic.api.NewRelicClient;
 import com.opsmatters.newrelic.api.model.alerts.conditions.NrqlAlertCondition;
@@ -51,6 +51,44 @@ public class NrqlAlertConditionService extends BaseFluent
         return HTTP.GET("/v2/alerts_nrql_conditions.json", null, queryParams, NRQL_ALERT_CONDITIONS).get();
     }
 
+    /**
+     * Returns an iterator over all the alert conditions with the given query parameters.
+     * <P>
+     * Each page of alert conditions is only fetched when the iterator reaches it.
+     * @param queryParams The query parameters
+     * @return The iterator over the alert conditions
+     */
+    public PagedIterator<NrqlAlertCondition> iterator(List<String> queryParams)
+    {
+        return new PagedIterator<NrqlAlertCondition>(HTTP, "/v2/alerts_nrql_conditions.json", queryParams, NRQL_ALERT_CONDITIONS);
+    }
+
+    /**
+     * Returns a stream of all the alert conditions with the given query parameters.
+     * <P>
+     * Each page of alert conditions is only fetched when the stream reaches it.
+     * @param queryParams The query parameters
+     * @return The stream of alert conditions
+     */
+    public Stream<NrqlAlertCondition> stream(List<String> queryParams)
+    {
+        return iterator(queryParams).stream();
+    }
+
+    /**
+     * Returns all the alert conditions with the given query parameters.
+     * <P>
+     * The last page is taken from the first response, and the remaining pages 
+     * are then requested concurrently, limited by the client's page parallelism.
+     * @param queryParams The query parameters
+     * @return The set of alert conditions
+     */
+    public Collection<NrqlAlertCondition> listAll(List<String> queryParams)
+    {
+        return new ParallelPageFetcher<NrqlAlertCondition>(HTTP, "/v2/alerts_nrql_conditions.json", queryParams, NRQL_ALERT_CONDITIONS, 
+            getClient().getPageParallelism()).fetch();
+    }
+
     /**
      * Returns the set of alert conditions for the given policy id.
      * @param policyId The id of the alert policy to return the conditions for
@@ -69,14 +107,8 @@ public class NrqlAlertConditionService extends BaseFluent
      */
     public Collection<NrqlAlertCondition> list(long policyId, String name)
     {
-        List<NrqlAlertCondition> ret = new ArrayList<NrqlAlertCondition>();
-        Collection<NrqlAlertCondition> conditions = list(policyId);
-        for(NrqlAlertCondition condition : conditions)
-        {
-            if(condition.getName().equals(name))
-                ret.add(condition);
-        }
-        return ret;
+        return HTTP.getResourceIndex().findAll("/v2/alerts_nrql_conditions.json", filters().policyId(policyId).build(), 
+            NRQL_ALERT_CONDITIONS, ResourceIndex.NAME, name);
     }
 
     /**
@@ -89,14 +121,8 @@ public class NrqlAlertConditionService extends BaseFluent
      */
     public Optional<NrqlAlertCondition> show(long policyId, long conditionId)
     {
-        Optional<NrqlAlertCondition> ret = Optional.absent();
-        Collection<NrqlAlertCondition> conditions = list(policyId);
-        for(NrqlAlertCondition condition : conditions)
-        {
-            if(condition.getId() == conditionId)
-                ret = Optional.of(condition);
-        }
-        return ret;
+        return HTTP.getResourceIndex().find("/v2/alerts_nrql_conditions.json", filters().policyId(policyId).build(), 
+            NRQL_ALERT_CONDITIONS, ResourceIndex.ID, conditionId);
     }
    
     /**
@@ -0,0 +1,191 @@
+/*
+ * Copyright 2018 Gerald Curley
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.opsmatters.newrelic.api.services;
+
+import java.util.List;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import javax.ws.rs.core.GenericType;
+import com.google.common.base.Optional;
+import com.opsmatters.newrelic.api.util.Page;
+import com.opsmatters.newrelic.api.util.QueryParameterList;
+
+/**
+ * Iterator that walks the results of a paged API call, fetching each page only when it is needed.
+ * <P>
+ * The request for page N+1 is issued asynchronously while the caller is consuming page N,
+ * so at most two pages are held in memory at any time.
+ * The iteration stops when the "Link" header of a response no longer includes a next page,
+ * or when a page is empty.
+ *
+ * @author Gerald Curley (opsmatters)
+ */
+public class PagedIterator<T> implements Iterator<T>
+{
+    private HttpContext http;
+    private String partialUrl;
+    private List<String> queryParams;
+    private GenericType<Collection<T>> returnType;
+    private int startPage;
+    private int pageNumber;
+    private boolean started = false;
+    private Iterator<T> current;
+    private CompletableFuture<Optional<Page<Collection<T>>>> pending;
+
+    /**
+     * Constructor that takes a http context, partial URL, query parameters and return type.
+     * <P>
+     * If the query parameters include a page number, the iteration starts at that page.
+     * @param httpContext The set of HTTP operations
+     * @param partialUrl The partial URL of the paged resource
+     * @param queryParams The query parameters to add to each request
+     * @param returnType The type of each page of results
+     */
+    public PagedIterator(HttpContext httpContext, String partialUrl, List<String> queryParams,
+        GenericType<Collection<T>> returnType)
+    {
+        this.http = httpContext;
+        this.partialUrl = partialUrl;
+        this.queryParams = getQueryParams(queryParams);
+        this.returnType = returnType;
+        this.startPage = Math.max(HttpContext.getPageNumber(queryParams), 1);
+    }
+
+    /**
+     * Returns <CODE>true</CODE> if the iteration has more elements.
+     * @return <CODE>true</CODE> if the iteration has more elements
+     * @throws IllegalStateException if a page was not returned
+     */
+    @Override
+    public boolean hasNext()
+    {
+        if(!started)
+        {
+            pending = fetch(pageNumber = startPage);
+            started = true;
+        }
+
+        while(current == null || !current.hasNext())
+        {
+            if(pending == null)
+                return false;
+
+            Optional<Page<Collection<T>>> page = await(pending);
+            pending = null;
+            if(!page.isPresent())
+                throw new IllegalStateException("page "+pageNumber+" of "+partialUrl+" not returned");
+            if(page.get().getData().isEmpty())
+                return false;
+
+            // Prefetch the next page while this one is being consumed
+            if(page.get().hasNext())
+                pending = fetch(pageNumber = page.get().getNextPage());
+            current = page.get().getData().iterator();
+        }
+
+        return true;
+    }
+
+    /**
+     * Returns the next element in the iteration.
+     * @return The next element in the iteration
+     */
+    @Override
+    public T next()
+    {
+        if(!hasNext())
+            throw new NoSuchElementException();
+        return current.next();
+    }
+
+    /**
+     * Not supported.
+     */
+    @Override
+    public void remove()
+    {
+        throw new UnsupportedOperationException("remove");
+    }
+
+    /**
+     * Returns a sequential stream of the remaining elements in the iteration.
+     * @return The stream of elements
+     */
+    public Stream<T> stream()
+    {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this,
+            Spliterator.ORDERED|Spliterator.NONNULL), false);
+    }
+
+    /**
+     * Issues the asynchronous request for the given page.
+     * @param page The number of the page to fetch
+     * @return The future page of results
+     */
+    private CompletableFuture<Optional<Page<Collection<T>>>> fetch(int page)
+    {
+        QueryParameterList params = new QueryParameterList();
+        params.addAll(queryParams);
+        params.add(HttpContext.PAGE, page);
+        return http.GETPageAsync(partialUrl, null, params, returnType);
+    }
+
+    /**
+     * Waits for the given future page to complete.
+     * @param future The future page
+     * @return The page of results
+     */
+    private Optional<Page<Collection<T>>> await(CompletableFuture<Optional<Page<Collection<T>>>> future)
+    {
+        try
+        {
+            return future.join();
+        }
+        catch(CompletionException e)
+        {
+            if(e.getCause() instanceof RuntimeException)
+                throw (RuntimeException)e.getCause();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns a copy of the given query parameters without the page parameter.
+     * @param queryParams The query parameters
+     * @return The query parameters without the page parameter
+     */
+    static List<String> getQueryParams(List<String> queryParams)
+    {
+        QueryParameterList ret = new QueryParameterList();
+        if(queryParams != null)
+        {
+            for(int i = 0; i < queryParams.size()-1; i += 2)
+            {
+                if(!queryParams.get(i).equals(HttpContext.PAGE))
+                    ret.add(queryParams.get(i), queryParams.get(i+1));
+            }
+        }
+        return ret;
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright 2018 Gerald Curley
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.opsmatters.newrelic.api.services;
+
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.logging.Logger;
+import java.util.logging.Level;
+import javax.ws.rs.core.GenericType;
+import com.google.common.base.Optional;
+import com.opsmatters.newrelic.api.util.Page;
+import com.opsmatters.newrelic.api.util.QueryParameterList;
+
+/**
+ * Fetches all the pages of a paged API call, requesting the pages after the first concurrently.
+ * <P>
+ * The number of the last page is taken from the "Link" header of the first response,
+ * and the remaining pages are then requested with at most the given number of requests in flight.
+ * The results are merged in page order.
+ *
+ * @author Gerald Curley (opsmatters)
+ */
+public class ParallelPageFetcher<T>
+{
+    private static final Logger logger = Logger.getLogger(ParallelPageFetcher.class.getName());
+
+    /**
+     * The default maximum number of page requests in flight.
+     */
+    public static final int DEFAULT_PARALLELISM = 4;
+
+    private HttpContext http;
+    private String partialUrl;
+    private List<String> queryParams;
+    private GenericType<Collection<T>> returnType;
+    private int startPage;
+    private int parallelism;
+
+    /**
+     * Constructor that takes a http context, partial URL, query parameters, return type and parallelism.
+     * <P>
+     * If the query parameters include a page number, the fetch starts at that page.
+     * @param httpContext The set of HTTP operations
+     * @param partialUrl The partial URL of the paged resource
+     * @param queryParams The query parameters to add to each request
+     * @param returnType The type of each page of results
+     * @param parallelism The maximum number of page requests in flight
+     */
+    public ParallelPageFetcher(HttpContext httpContext, String partialUrl, List<String> queryParams,
+        GenericType<Collection<T>> returnType, int parallelism)
+    {
+        this.http = httpContext;
+        this.partialUrl = partialUrl;
+        this.queryParams = PagedIterator.getQueryParams(queryParams);
+        this.returnType = returnType;
+        this.startPage = Math.max(HttpContext.getPageNumber(queryParams), 1);
+        this.parallelism = Math.max(parallelism, 1);
+    }
+
+    /**
+     * Fetches all the pages and returns the merged results in page order.
+     * <P>
+     * If a page is not returned, the requests still in flight are cancelled and an exception is thrown,
+     * rather than returning a partial list.
+     * @return The merged results
+     * @throws IllegalStateException if a page was not returned
+     */
+    public List<T> fetch()
+    {
+        List<T> ret = new ArrayList<T>();
+
+        Optional<Page<Collection<T>>> first = http.GETPage(partialUrl, null, getQueryParams(startPage), returnType);
+        if(!first.isPresent())
+            throw new IllegalStateException("page "+startPage+" of "+partialUrl+" not returned");
+        ret.addAll(first.get().getData());
+
+        int lastPage = first.get().getLastPage();
+        if(lastPage > startPage)
+        {
+            if(logger.isLoggable(Level.FINE))
+                logger.fine("Fetching pages "+(startPage+1)+"-"+lastPage+" of "+partialUrl+" with parallelism "+parallelism);
+
+            // Keep at most "parallelism" requests in flight, consuming them in page order
+            LinkedList<CompletableFuture<Optional<Page<Collection<T>>>>> futures
+                = new LinkedList<CompletableFuture<Optional<Page<Collection<T>>>>>();
+            int next = startPage+1;
+            try
+            {
+                for(int page = startPage+1; page <= lastPage; page++)
+                {
+                    if(futures.size() >= parallelism)
+                        add(ret, futures.removeFirst(), next++);
+                    futures.add(http.GETPageAsync(partialUrl, null, getQueryParams(page), returnType));
+                }
+
+                while(!futures.isEmpty())
+                    add(ret, futures.removeFirst(), next++);
+            }
+            catch(RuntimeException e)
+            {
+                for(CompletableFuture<Optional<Page<Collection<T>>>> future : futures)
+                    future.cancel(true);
+                throw e;
+            }
+        }
+        else if(first.get().hasNext()) // No last page given, so walk the remaining pages in turn
+        {
+            PagedIterator<T> iterator = new PagedIterator<T>(http, partialUrl,
+                getQueryParams(first.get().getNextPage()), returnType);
+            while(iterator.hasNext())
+                ret.add(iterator.next());
+        }
+
+        return ret;
+    }
+
+    /**
+     * Waits for the given future page and adds its results to the given list.
+     * @param list The list to add the results to
+     * @param future The future page
+     * @param pageNumber The number of the page
+     * @throws IllegalStateException if the page was not returned
+     */
+    private void add(List<T> list, CompletableFuture<Optional<Page<Collection<T>>>> future, int pageNumber)
+    {
+        Optional<Page<Collection<T>>> page;
+        try
+        {
+            page = future.join();
+        }
+        catch(CompletionException e)
+        {
+            if(e.getCause() instanceof RuntimeException)
+                throw (RuntimeException)e.getCause();
+            throw e;
+        }
+
+        if(!page.isPresent())
+            throw new IllegalStateException("page "+pageNumber+" of "+partialUrl+" not returned");
+        list.addAll(page.get().getData());
+    }
+
+    /**
+     * Returns the query parameters for the given page.
+     * @param page The page number
+     * @return The query parameters for the page
+     */
+    private List<String> getQueryParams(int page)
+    {
+        QueryParameterList ret = new QueryParameterList();
+        ret.addAll(queryParams);
+        ret.add(HttpContext.PAGE, page);
+        return ret;
+    }
+}
@@ -18,11 +18,15 @@ package com.opsmatters.newrelic.api.services;
 
 import java.util.List;
 import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
 import com.google.common.base.Optional;
 import com.opsmatters.newrelic.api.NewRelicClient;
 import com.opsmatters.newrelic.api.model.plugins.PluginComponent;
 import com.opsmatters.newrelic.api.model.metrics.Metric;
 import com.opsmatters.newrelic.api.model.metrics.MetricData;
+import com.opsmatters.newrelic.api.model.metrics.MetricSeriesData;
+import com.opsmatters.newrelic.api.util.BatchResult;
 import com.opsmatters.newrelic.api.util.QueryParameterList;
 
 /**
@@ -52,6 +56,54 @@ public class PluginComponentService extends BaseFluent
         return HTTP.GET("/v2/components.json", null, queryParams, PLUGIN_COMPONENTS).get();
     }
 
+    /**
+     * Returns an iterator over all the plugin components with the given query parameters.
+     * <P>
+     * Each page of plugin components is only fetched when the iterator reaches it.
+     * @param queryParams The query parameters
+     * @return The iterator over the plugin components
+     */
+    public PagedIterator<PluginComponent> iterator(List<String> queryParams)
+    {
+        return new PagedIterator<PluginComponent>(HTTP, "/v2/components.json", queryParams, PLUGIN_COMPONENTS);
+    }
+
+    /**
+     * Returns a stream of all the plugin components with the given query parameters.
+     * <P>
+     * Each page of plugin components is only fetched when the stream reaches it.
+     * @param queryParams The query parameters
+     * @return The stream of plugin components
+     */
+    public Stream<PluginComponent> stream(List<String> queryParams)
+    {
+        return iterator(queryParams).stream();
+    }
+
+    /**
+     * Returns all the plugin components with the given query parameters.
+     * <P>
+     * The last page is taken from the first response, and the remaining pages 
+     * are then requested concurrently, limited by the client's page parallelism.
+     * @param queryParams The query parameters
+     * @return The set of plugin components
+     */
+    public Collection<PluginComponent> listAll(List<String> queryParams)
+    {
+        return new ParallelPageFetcher<PluginComponent>(HTTP, "/v2/components.json", queryParams, PLUGIN_COMPONENTS, 
+            getClient().getPageParallelism()).fetch();
+    }
+
+    /**
+     * Asynchronously returns the set of plugin components with the given query parameters.
+     * @param queryParams The query parameters
+     * @return The future set of plugin components
+     */
+    public CompletableFuture<Collection<PluginComponent>> listAsync(List<String> queryParams)
+    {
+        return unwrap(HTTP.GETAsync("/v2/components.json", null, queryParams, PLUGIN_COMPONENTS));
+    }
+
     /**
      * Returns the set of plugin components.
      * @return The set of plugin components
@@ -71,6 +123,16 @@ public class PluginComponentService extends BaseFluent
         return HTTP.GET(String.format("/v2/components/%d.json", componentId), PLUGIN_COMPONENT);
     }
 
+    /**
+     * Asynchronously returns the plugin component for the given id.
+     * @param componentId The plugin component id
+     * @return The future plugin component
+     */
+    public CompletableFuture<Optional<PluginComponent>> showAsync(long componentId)
+    {
+        return HTTP.GETAsync(String.format("/v2/components/%d.json", componentId), PLUGIN_COMPONENT);
+    }
+
     /**
      * Returns the set of metrics for the given plugin component.
      * @param componentId The plugin component id
@@ -106,6 +168,55 @@ public class PluginComponentService extends BaseFluent
         return HTTP.GET(String.format("/v2/components/%d/metrics/data.json", componentId), null, queryParams, METRIC_DATA);
     }
 
+    /**
+     * Returns the set of metric data for the given plugin component, splitting a long time range into chunks.
+     * <P>
+     * The chunks are fetched concurrently and the timeslices are merged in time order.
+     * @param componentId The plugin component id
+     * @param params The metric parameters, including the time range
+     * @return The set of metric data
+     */
+    public Optional<MetricData> metricData(long componentId, MetricParameterBuilder params)
+    {
+        return new MetricDataFetcher(HTTP, String.format("/v2/components/%d/metrics/data.json", componentId), params,
+            getClient().getMaxTimeslices(), getClient().getMetricParallelism()).fetch();
+    }
+
+    /**
+     * Returns the metric data for each of the given plugin components.
+     * @param componentIds The ids of the plugin components to return metric data for
+     * @param params The metric parameters to use for every component
+     * @param timeout The time allowed for the whole batch (in milliseconds), or 0 for no limit
+     * @return The metric data keyed by component id, with any failed calls
+     */
+    public BatchResult<MetricData> metricData(Collection<Long> componentIds, MetricParameterBuilder params, long timeout)
+    {
+        return new BatchFetcher<MetricData>(HTTP, METRIC_DATA, getClient().getMetricParallelism(), timeout)
+            .fetch(componentIds, "/v2/components/%d/metrics/data.json", params.build());
+    }
+
+    /**
+     * Asynchronously returns the set of metric data for the given plugin component.
+     * @param componentId The plugin component id
+     * @param queryParams The query parameters
+     * @return The future set of metric data
+     */
+    public CompletableFuture<Optional<MetricData>> metricDataAsync(long componentId, List<String> queryParams)
+    {
+        return HTTP.GETAsync(String.format("/v2/components/%d/metrics/data.json", componentId), null, queryParams, METRIC_DATA);
+    }
+
+    /**
+     * Returns the set of metric data for the given plugin component as columns of values.
+     * @param componentId The plugin component id
+     * @param queryParams The query parameters
+     * @return The set of metric data as columns of values
+     */
+    public Optional<MetricSeriesData> metricSeries(long componentId, List<String> queryParams)
+    {
+        return HTTP.GET(String.format("/v2/components/%d/metrics/data.json", componentId), null, queryParams, METRIC_SERIES_DATA);
+    }
+
     /**
      * Returns a builder for the plugin component filters.
      * @return The builder instance.
@@ -0,0 +1,775 @@
+/*
+ * Copyright 2018 Gerald Curley
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.opsmatters.newrelic.api.services;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import java.util.logging.Level;
+import com.google.common.base.Optional;
+import com.google.gson.Gson;
+import com.opsmatters.newrelic.api.httpclient.GsonRegistry;
+import com.opsmatters.newrelic.api.model.Status;
+import com.opsmatters.newrelic.api.model.plugins.Agent;
+import com.opsmatters.newrelic.api.model.plugins.Component;
+import com.opsmatters.newrelic.api.model.plugins.MetricAggregator;
+import com.opsmatters.newrelic.api.model.plugins.MetricTimeslice;
+import com.opsmatters.newrelic.api.model.plugins.PluginData;
+
+/**
+ * Aggregates plugin metric values recorded by many threads and sends them to New Relic on a fixed harvest interval.
+ * <P>
+ * The values for each component and metric name are aggregated into a timeslice with the total, count,
+ * minimum, maximum and sum of squares. At each harvest the timeslices are sent with the duration since the metric
+ * was last sent, and the payload is split into several calls if it would be larger than the maximum size.
+ * If a call fails, its timeslices are added back and sent with the next harvest, covering the longer duration,
+ * unless a {@link PluginMetricSpool} has been set to keep the failed payloads on disk.
+ * The metrics that were sent by the other calls of the same harvest keep their own shorter duration.
+ * <P>
+ * A metric that has no values for a whole harvest is removed, together with its component once it has no metrics,
+ * unless its aggregator is kept by a caller.
+ *
+ * @author Gerald Curley (opsmatters)
+ */
+public class PluginMetricHarvester
+{
+    private static final Logger logger = Logger.getLogger(PluginMetricHarvester.class.getName());
+
+    /**
+     * The default harvest interval (in milliseconds).
+     */
+    public static final long DEFAULT_INTERVAL = 60000L;
+
+    /**
+     * The default maximum size of a payload (in bytes).
+     */
+    public static final int DEFAULT_MAX_PAYLOAD_SIZE = 1000000;
+
+    private PluginMetricService service;
+    private Agent agent = new Agent();
+    private long interval = DEFAULT_INTERVAL;
+    private int maxPayloadSize = DEFAULT_MAX_PAYLOAD_SIZE;
+    private ConcurrentHashMap<ComponentKey,ConcurrentHashMap<String,Metric>> components
+        = new ConcurrentHashMap<ComponentKey,ConcurrentHashMap<String,Metric>>();
+    private volatile long lastHarvest = System.currentTimeMillis();
+    private PluginMetricSpool spool;
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * Constructor that takes a plugin metric service.
+     * @param service The service used to send the metric data
+     */
+    public PluginMetricHarvester(PluginMetricService service)
+    {
+        this.service = service;
+    }
+
+    /**
+     * Sets the agent that is sending the metric data.
+     * @param agent The agent sending the metric data
+     */
+    public void setAgent(Agent agent)
+    {
+        this.agent = agent;
+    }
+
+    /**
+     * Returns the agent that is sending the metric data.
+     * @return The agent sending the metric data
+     */
+    public Agent getAgent()
+    {
+        return agent;
+    }
+
+    /**
+     * Sets the time between harvests.
+     * @param interval The harvest interval (in milliseconds)
+     */
+    public void setInterval(long interval)
+    {
+        this.interval = interval;
+    }
+
+    /**
+     * Returns the time between harvests.
+     * @return The harvest interval (in milliseconds)
+     */
+    public long getInterval()
+    {
+        return interval;
+    }
+
+    /**
+     * Sets the maximum size of the payload of each call.
+     * @param maxPayloadSize The maximum size of a payload (in bytes)
+     */
+    public void setMaxPayloadSize(int maxPayloadSize)
+    {
+        this.maxPayloadSize = maxPayloadSize;
+    }
+
+    /**
+     * Returns the maximum size of the payload of each call.
+     * @return The maximum size of a payload (in bytes)
+     */
+    public int getMaxPayloadSize()
+    {
+        return maxPayloadSize;
+    }
+
+    /**
+     * Sets the spool used to keep the payloads that could not be sent.
+     * <P>
+     * Without a spool, the values that could not be sent are kept in memory and added to the next harvest.
+     * @param spool The spool used to keep the payloads that could not be sent
+     */
+    public void setSpool(PluginMetricSpool spool)
+    {
+        this.spool = spool;
+    }
+
+    /**
+     * Returns the spool used to keep the payloads that could not be sent.
+     * @return The spool used to keep the payloads that could not be sent
+     */
+    public PluginMetricSpool getSpool()
+    {
+        return spool;
+    }
+
+    /**
+     * Records a value for the given metric of the given component.
+     * @param guid The GUID of the plugin
+     * @param component The name of the component
+     * @param metric The name of the metric, eg. "Component/Requests[requests/second]"
+     * @param value The value to record
+     */
+    public void record(String guid, String component, String metric, double value)
+    {
+        ComponentKey key = new ComponentKey(guid, component);
+        Metric ret = getMetric(key, metric);
+        ret.aggregator.record(value);
+
+        // The metric was removed as idle while the value was being recorded, so move the value to its replacement
+        if(ret.removed)
+            restore(key, metric, ret.aggregator.getThenReset());
+    }
+
+    /**
+     * Returns the aggregator for the given metric of the given component, creating it if necessary.
+     * <P>
+     * Callers on a hot path can keep the aggregator and record values on it directly,
+     * which avoids looking up the metric for each value.
+     * The metric is not removed when it is idle until the aggregator is released.
+     * @param guid The GUID of the plugin
+     * @param component The name of the component
+     * @param metric The name of the metric, eg. "Component/Requests[requests/second]"
+     * @return The aggregator for the metric
+     */
+    public MetricAggregator getAggregator(String guid, String component, String metric)
+    {
+        ComponentKey key = new ComponentKey(guid, component);
+        while(true)
+        {
+            Metric ret = getMetric(key, metric);
+            if(ret.keep())
+                return ret.aggregator;
+        }
+    }
+
+    /**
+     * Releases the aggregator for the given metric of the given component,
+     * so that the metric is removed once it has no values for a whole harvest.
+     * @param guid The GUID of the plugin
+     * @param component The name of the component
+     * @param metric The name of the metric, eg. "Component/Requests[requests/second]"
+     */
+    public void release(String guid, String component, String metric)
+    {
+        Map<String,Metric> metrics = components.get(new ComponentKey(guid, component));
+        Metric ret = metrics != null ? metrics.get(metric) : null;
+        if(ret != null)
+            ret.release();
+    }
+
+    /**
+     * Returns the number of metrics being aggregated.
+     * @return The number of metrics being aggregated
+     */
+    int getMetricCount()
+    {
+        int ret = 0;
+        for(Map<String,Metric> metrics : components.values())
+            ret += metrics.size();
+        return ret;
+    }
+
+    /**
+     * Returns the given metric of the given component, creating it if necessary.
+     * <P>
+     * A new metric covers the time since the last harvest, and replaces a metric that was removed as idle.
+     * @param key The component
+     * @param metric The name of the metric
+     * @return The metric
+     */
+    private Metric getMetric(ComponentKey key, String metric)
+    {
+        ConcurrentHashMap<String,Metric> metrics = components.get(key);
+        Metric ret = metrics != null ? metrics.get(metric) : null;
+        if(ret != null && !ret.removed)
+            return ret;
+
+        // Metrics are only added with the lock held, so that a component is not removed as it is being added to
+        synchronized(components)
+        {
+            metrics = components.get(key);
+            if(metrics == null)
+            {
+                metrics = new ConcurrentHashMap<String,Metric>();
+                components.put(key, metrics);
+            }
+
+            ret = metrics.get(metric);
+            if(ret == null || ret.removed)
+            {
+                ret = new Metric(lastHarvest);
+                metrics.put(metric, ret);
+            }
+            return ret;
+        }
+    }
+
+    /**
+     * Adds the given timeslice back to the values of the given metric of the given component.
+     * @param key The component
+     * @param metric The name of the metric
+     * @param timeslice The timeslice to add, or <CODE>null</CODE> if there are no values to add
+     */
+    private void restore(ComponentKey key, String metric, MetricTimeslice<Double> timeslice)
+    {
+        while(timeslice != null)
+        {
+            Metric ret = getMetric(key, metric);
+            ret.aggregator.add(timeslice);
+
+            // Move the values again if the metric was removed as idle while they were being added
+            timeslice = ret.removed ? ret.aggregator.getThenReset() : null;
+        }
+    }
+
+    /**
+     * Starts harvesting the recorded values on the harvest interval.
+     * @return This object
+     */
+    public synchronized PluginMetricHarvester start()
+    {
+        if(scheduler == null)
+        {
+            scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+            {
+                public Thread newThread(Runnable r)
+                {
+                    Thread thread = new Thread(r, "newrelic-plugin-harvester");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+            scheduler.scheduleAtFixedRate(new Runnable()
+            {
+                public void run()
+                {
+                    try
+                    {
+                        harvest();
+                    }
+                    catch(RuntimeException e)
+                    {
+                        logger.log(Level.WARNING, "Plugin metric harvest failed", e);
+                    }
+                }
+            }, interval, interval, TimeUnit.MILLISECONDS);
+        }
+
+        return this;
+    }
+
+    /**
+     * Stops the harvests, and sends any values recorded since the last harvest.
+     */
+    public void shutdown()
+    {
+        synchronized(this)
+        {
+            if(scheduler != null)
+                scheduler.shutdown();
+            scheduler = null;
+        }
+        harvest();
+    }
+
+    /**
+     * Sends the values recorded since the last harvest, together with any values that could not be sent before.
+     * @return <CODE>true</CODE> if all the values were sent
+     */
+    public synchronized boolean harvest()
+    {
+        // The metrics of a component are grouped by the time they were last sent,
+        // which only differs if some of the metrics could not be sent
+        List<Harvest> harvested = new ArrayList<Harvest>();
+        long now = System.currentTimeMillis();
+        for(Map.Entry<ComponentKey,ConcurrentHashMap<String,Metric>> entry : components.entrySet())
+        {
+            Map<Long,Harvest> groups = new LinkedHashMap<Long,Harvest>();
+            for(Map.Entry<String,Metric> metric : entry.getValue().entrySet())
+            {
+                Metric value = metric.getValue();
+                MetricTimeslice<Double> timeslice = value.aggregator.getThenReset();
+                if(timeslice == null)
+                {
+                    // Remove a metric with no values for a whole harvest, unless its aggregator is kept
+                    if(value.expire())
+                    {
+                        entry.getValue().remove(metric.getKey(), value);
+                        restore(entry.getKey(), metric.getKey(), value.aggregator.getThenReset());
+                    }
+                    else
+                    {
+                        value.since = now;
+                    }
+                    continue;
+                }
+
+                Harvest harvest = groups.get(value.since);
+                if(harvest == null)
+                {
+                    harvest = new Harvest(entry.getKey(), getDuration(value.since, now));
+                    groups.put(value.since, harvest);
+                }
+                harvest.add(metric.getKey(), timeslice);
+            }
+            harvested.addAll(groups.values());
+
+            if(entry.getValue().isEmpty())
+            {
+                synchronized(components)
+                {
+                    if(entry.getValue().isEmpty())
+                        components.remove(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+
+        lastHarvest = now;
+        boolean ret = true;
+        for(PluginData data : getPayloads(harvested))
+        {
+            boolean sent = spool != null ? spool.send(data) : send(service, data);
+            if(sent)
+            {
+                // The next values of these metrics cover the time from this harvest
+                for(Component component : data.getComponents())
+                {
+                    ComponentKey key = new ComponentKey(component.getGuid(), component.getName());
+                    for(String metric : component.getMetrics().keySet())
+                        getMetric(key, metric).since = now;
+                }
+            }
+            else
+            {
+                ret = false;
+                restore(data);
+            }
+        }
+
+        if(spool != null)
+            spool.replay();
+        return ret;
+    }
+
+    /**
+     * Returns the duration between the given times, rounded to the nearest second.
+     * @param since The start of the duration (in epoch milliseconds)
+     * @param now The end of the duration (in epoch milliseconds)
+     * @return The duration (in seconds), at least 1 second
+     */
+    static int getDuration(long since, long now)
+    {
+        return (int)Math.max(Math.round((now-since)/1000.0d), 1L);
+    }
+
+    /**
+     * Sends the given payload.
+     * @param service The service used to send the payload
+     * @param data The payload to send
+     * @return <CODE>true</CODE> if the payload was sent
+     */
+    static boolean send(PluginMetricService service, PluginData data)
+    {
+        try
+        {
+            Optional<Status> status = service.metricData(data);
+            if(status.isPresent())
+                return true;
+            logger.warning("Plugin metric data not accepted for "+data.getComponents().size()+" components");
+        }
+        catch(RuntimeException e)
+        {
+            logger.log(Level.WARNING, "Unable to send plugin metric data", e);
+        }
+        return false;
+    }
+
+    /**
+     * Adds the timeslices of the given payload back to the values to be sent at the next harvest.
+     * @param data The payload that was not sent
+     */
+    @SuppressWarnings("unchecked")
+    private void restore(PluginData data)
+    {
+        for(Component component : data.getComponents())
+        {
+            ComponentKey key = new ComponentKey(component.getGuid(), component.getName());
+            for(Map.Entry<String,Object> metric : component.getMetrics().entrySet())
+                restore(key, metric.getKey(), (MetricTimeslice<Double>)metric.getValue());
+        }
+    }
+
+    /**
+     * Returns the payloads for the given timeslices, each within the maximum payload size.
+     * @param harvested The timeslices for each component, with the duration they cover
+     * @return The payloads to send
+     */
+    List<PluginData> getPayloads(List<Harvest> harvested)
+    {
+        Gson gson = GsonRegistry.getGson();
+        List<PluginData> ret = new ArrayList<PluginData>();
+        int base = size(gson, newPayload());
+        PluginData data = newPayload();
+        int size = base;
+
+        for(Harvest harvest : harvested)
+        {
+            ComponentKey key = harvest.key;
+            int duration = harvest.duration;
+            Component component = newComponent(key, duration);
+            int componentSize = size(gson, component);
+            Map<String,MetricTimeslice<Double>> timeslices = harvest.timeslices;
+            Map<String,Integer> sizes = new HashMap<String,Integer>();
+            int total = componentSize;
+            for(Map.Entry<String,MetricTimeslice<Double>> metric : timeslices.entrySet())
+            {
+                int metricSize = size(gson, metric.getKey())+size(gson, metric.getValue())+2;
+                sizes.put(metric.getKey(), metricSize);
+                total += metricSize;
+            }
+
+            // Start a new payload if this component would make the payload too big
+            if(size+total > maxPayloadSize && !data.getComponents().isEmpty())
+            {
+                ret.add(data);
+                data = newPayload();
+                size = base;
+            }
+
+            // Split a component that is too big for a payload on its own into several components with the same GUID
+            for(Map.Entry<String,MetricTimeslice<Double>> metric : timeslices.entrySet())
+            {
+                int metricSize = sizes.get(metric.getKey());
+                if(size+componentSize+metricSize > maxPayloadSize && !component.getMetrics().isEmpty())
+                {
+                    size = add(data, component, size, componentSize);
+                    ret.add(data);
+                    data = newPayload();
+                    size = base;
+                    component = newComponent(key, duration);
+                    componentSize = size(gson, component);
+                }
+
+                component.addMetric(metric.getKey(), metric.getValue());
+                componentSize += metricSize;
+            }
+
+            size = add(data, component, size, componentSize);
+        }
+
+        if(!data.getComponents().isEmpty())
+            ret.add(data);
+        return ret;
+    }
+
+    /**
+     * Adds the given component to the given payload.
+     * @param data The payload
+     * @param component The component to add
+     * @param size The current size of the payload
+     * @param componentSize The size of the component
+     * @return The new size of the payload
+     */
+    private int add(PluginData data, Component component, int size, int componentSize)
+    {
+        data.addComponent(component);
+        return size+componentSize+1;
+    }
+
+    /**
+     * Returns a new payload for the agent.
+     * @return The new payload
+     */
+    private PluginData newPayload()
+    {
+        PluginData ret = new PluginData();
+        ret.setAgent(agent);
+        return ret;
+    }
+
+    /**
+     * Returns a new component with no metrics.
+     * @param key The GUID and name of the component
+     * @param duration The duration covered by the metrics (in seconds)
+     * @return The new component
+     */
+    private Component newComponent(ComponentKey key, int duration)
+    {
+        return Component.builder().guid(key.guid).name(key.name).duration(duration).build();
+    }
+
+    /**
+     * Returns the size of the given object when serialized.
+     * @param gson The Gson instance used to serialize the object
+     * @param obj The object
+     * @return The size of the serialized object (in bytes)
+     */
+    private int size(Gson gson, Object obj)
+    {
+        return gson.toJson(obj).getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    /**
+     * Returns a builder for the plugin metric harvester.
+     * @param service The service used to send the metric data
+     * @return The builder instance.
+     */
+    public static Builder builder(PluginMetricService service)
+    {
+        return new Builder(service);
+    }
+
+    /**
+     * Builder to make plugin metric harvester construction easier.
+     */
+    public static class Builder
+    {
+        private PluginMetricHarvester harvester;
+
+        /**
+         * Constructor that takes a plugin metric service.
+         * @param service The service used to send the metric data
+         */
+        public Builder(PluginMetricService service)
+        {
+            harvester = new PluginMetricHarvester(service);
+        }
+
+        /**
+         * Sets the host of the agent sending the metric data.
+         * @param host The host of the agent
+         * @return This object
+         */
+        public Builder host(String host)
+        {
+            harvester.getAgent().setHost(host);
+            return this;
+        }
+
+        /**
+         * Sets the process id of the agent sending the metric data.
+         * @param pid The process id of the agent
+         * @return This object
+         */
+        public Builder pid(int pid)
+        {
+            harvester.getAgent().setPid(pid);
+            return this;
+        }
+
+        /**
+         * Sets the version of the agent sending the metric data.
+         * @param version The version of the agent
+         * @return This object
+         */
+        public Builder version(String version)
+        {
+            harvester.getAgent().setVersion(version);
+            return this;
+        }
+
+        /**
+         * Sets the time between harvests.
+         * @param interval The harvest interval (in milliseconds)
+         * @return This object
+         */
+        public Builder interval(long interval)
+        {
+            harvester.setInterval(interval);
+            return this;
+        }
+
+        /**
+         * Sets the maximum size of the payload of each call.
+         * @param maxPayloadSize The maximum size of a payload (in bytes)
+         * @return This object
+         */
+        public Builder maxPayloadSize(int maxPayloadSize)
+        {
+            harvester.setMaxPayloadSize(maxPayloadSize);
+            return this;
+        }
+
+        /**
+         * Sets the spool used to keep the payloads that could not be sent.
+         * @param spool The spool used to keep the payloads that could not be sent
+         * @return This object
+         */
+        public Builder spool(PluginMetricSpool spool)
+        {
+            harvester.setSpool(spool);
+            return this;
+        }
+
+        /**
+         * Returns the configured plugin metric harvester instance
+         * @return The plugin metric harvester instance
+         */
+        public PluginMetricHarvester build()
+        {
+            return harvester;
+        }
+    }
+
+    /**
+     * The GUID and name of a component.
+     */
+    static class ComponentKey
+    {
+        private String guid;
+        private String name;
+
+        ComponentKey(String guid, String name)
+        {
+            this.guid = guid;
+            this.name = name;
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if(!(obj instanceof ComponentKey))
+                return false;
+            ComponentKey key = (ComponentKey)obj;
+            return Objects.equals(guid, key.guid) && Objects.equals(name, key.name);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash(guid, name);
+        }
+    }
+
+    /**
+     * The aggregator of a metric, with the time the metric was last sent.
+     */
+    private static class Metric
+    {
+        private MetricAggregator aggregator = new MetricAggregator();
+        private volatile long since;
+        private boolean kept = false;
+        private volatile boolean removed = false;
+
+        Metric(long since)
+        {
+            this.since = since;
+        }
+
+        /**
+         * Keeps the metric when it is idle, returning <CODE>false</CODE> if it has already been removed.
+         */
+        synchronized boolean keep()
+        {
+            if(removed)
+                return false;
+            kept = true;
+            return true;
+        }
+
+        /**
+         * Allows the metric to be removed when it is idle.
+         */
+        synchronized void release()
+        {
+            kept = false;
+        }
+
+        /**
+         * Marks the metric as removed, returning <CODE>false</CODE> if it is being kept.
+         */
+        synchronized boolean expire()
+        {
+            if(kept)
+                return false;
+            removed = true;
+            return true;
+        }
+    }
+
+    /**
+     * The timeslices harvested for a component, with the duration they cover.
+     */
+    static class Harvest
+    {
+        private ComponentKey key;
+        private int duration;
+        private Map<String,MetricTimeslice<Double>> timeslices = new LinkedHashMap<String,MetricTimeslice<Double>>();
+
+        Harvest(ComponentKey key, int duration)
+        {
+            this.key = key;
+            this.duration = duration;
+        }
+
+        /**
+         * Adds the timeslice for the given metric.
+         */
+        Harvest add(String metric, MetricTimeslice<Double> timeslice)
+        {
+            timeslices.put(metric, timeslice);
+            return this;
+        }
+    }
+}
@@ -16,6 +16,9 @@
 
 package com.opsmatters.newrelic.api.services;
 
+import java.util.Map;
+import java.util.HashMap;
+import javax.ws.rs.core.HttpHeaders;
 import com.google.common.base.Optional;
 import com.opsmatters.newrelic.api.NewRelicClient;
 import com.opsmatters.newrelic.api.model.plugins.PluginData;
@@ -28,6 +31,8 @@ import com.opsmatters.newrelic.api.model.Status;
  */
 public class PluginMetricService extends BaseFluent
 {
+    private boolean compressed = false;
+
     /**
      * Constructor that takes a http context and API client.
      * @param httpContext The set of HTTP operations
@@ -45,6 +50,27 @@ public class PluginMetricService extends BaseFluent
      */
     public Optional<Status> metricData(PluginData data)
     {
-        return HTTP.POST("/v1/metrics", data, STATUS);
+        Map<String, Object> headers = new HashMap<String, Object>();
+        if(compressed)
+            headers.put(HttpHeaders.CONTENT_ENCODING, "gzip");
+        return HTTP.POST("/v1/metrics", data, headers, STATUS);
+    }
+
+    /**
+     * Set to <CODE>true</CODE> if the metric data should be sent gzip compressed.
+     * @param compressed <CODE>true</CODE> if the metric data should be sent gzip compressed
+     */
+    public void setCompressed(boolean compressed)
+    {
+        this.compressed = compressed;
+    }
+
+    /**
+     * Returns <CODE>true</CODE> if the metric data is sent gzip compressed.
+     * @return <CODE>true</CODE> if the metric data is sent gzip compressed
+     */
+    public boolean isCompressed()
+    {
+        return compressed;
     }
 }
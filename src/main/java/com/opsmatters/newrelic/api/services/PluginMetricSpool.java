@@ -0,0 +1,712 @@
+/*
+ * Copyright 2018 Gerald Curley
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.opsmatters.newrelic.api.services;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.zip.CRC32;
+import java.util.logging.Logger;
+import java.util.logging.Level;
+import com.google.gson.JsonParseException;
+import com.opsmatters.newrelic.api.httpclient.GsonRegistry;
+import com.opsmatters.newrelic.api.model.plugins.PluginData;
+
+/**
+ * Keeps plugin metric payloads that could not be sent in files on disk, and sends them again later.
+ * <P>
+ * The payloads are appended in order to memory-mapped segment files in the spool directory.
+ * Each record has its length, a checksum and the payload as JSON, and a record is marked as sent
+ * by negating its length, so a spool that is opened again after a restart only sends the records
+ * that were still pending. The payloads are sent again in the order they were added,
+ * waiting longer after each failure up to a maximum backoff.
+ * <P>
+ * If the segment files would be larger than the quota, the oldest segments are deleted first,
+ * and no segment file is created larger than the quota.
+ *
+ * @author Gerald Curley (opsmatters)
+ */
+public class PluginMetricSpool
+{
+    private static final Logger logger = Logger.getLogger(PluginMetricSpool.class.getName());
+
+    /**
+     * The default maximum size of the spool files (in bytes).
+     */
+    public static final long DEFAULT_QUOTA = 100000000L;
+
+    /**
+     * The default size of each spool file (in bytes).
+     */
+    public static final int DEFAULT_SEGMENT_SIZE = 4000000;
+
+    /**
+     * The default time to wait after the first failure to send the spooled payloads (in milliseconds).
+     */
+    public static final long DEFAULT_INITIAL_BACKOFF = 1000L;
+
+    /**
+     * The default maximum time to wait between attempts to send the spooled payloads (in milliseconds).
+     */
+    public static final long DEFAULT_MAX_BACKOFF = 300000L;
+
+    private static final String PREFIX = "plugin-metrics-";
+    private static final String SUFFIX = ".spool";
+    private static final int HEADER = 8;
+
+    private PluginMetricService service;
+    private File directory;
+    private long quota = DEFAULT_QUOTA;
+    private int segmentSize = DEFAULT_SEGMENT_SIZE;
+    private long initialBackoff = DEFAULT_INITIAL_BACKOFF;
+    private long maxBackoff = DEFAULT_MAX_BACKOFF;
+    private LinkedList<Segment> segments;
+    private long nextSequence = 0L;
+    private long backoff = 0L;
+    private long nextAttempt = 0L;
+    private long evicted = 0L;
+
+    /**
+     * Constructor that takes a plugin metric service and a directory.
+     * @param service The service used to send the spooled payloads
+     * @param directory The directory containing the spool files
+     */
+    public PluginMetricSpool(PluginMetricService service, File directory)
+    {
+        this.service = service;
+        this.directory = directory;
+    }
+
+    /**
+     * Returns the directory containing the spool files.
+     * @return The directory containing the spool files
+     */
+    public File getDirectory()
+    {
+        return directory;
+    }
+
+    /**
+     * Sets the maximum size of the spool files.
+     * @param quota The maximum size of the spool files (in bytes)
+     */
+    public void setQuota(long quota)
+    {
+        this.quota = quota;
+    }
+
+    /**
+     * Returns the maximum size of the spool files.
+     * @return The maximum size of the spool files (in bytes)
+     */
+    public long getQuota()
+    {
+        return quota;
+    }
+
+    /**
+     * Sets the size of each spool file.
+     * <P>
+     * A payload larger than this is kept in a spool file of its own.
+     * A spool file is never larger than the quota.
+     * @param segmentSize The size of each spool file (in bytes)
+     */
+    public void setSegmentSize(int segmentSize)
+    {
+        this.segmentSize = segmentSize;
+    }
+
+    /**
+     * Returns the size of each spool file.
+     * @return The size of each spool file (in bytes)
+     */
+    public int getSegmentSize()
+    {
+        return segmentSize;
+    }
+
+    /**
+     * Sets the time to wait after the first failure to send the spooled payloads.
+     * @param initialBackoff The time to wait after the first failure (in milliseconds)
+     */
+    public void setInitialBackoff(long initialBackoff)
+    {
+        this.initialBackoff = initialBackoff;
+    }
+
+    /**
+     * Returns the time to wait after the first failure to send the spooled payloads.
+     * @return The time to wait after the first failure (in milliseconds)
+     */
+    public long getInitialBackoff()
+    {
+        return initialBackoff;
+    }
+
+    /**
+     * Sets the maximum time to wait between attempts to send the spooled payloads.
+     * @param maxBackoff The maximum time to wait between attempts (in milliseconds)
+     */
+    public void setMaxBackoff(long maxBackoff)
+    {
+        this.maxBackoff = maxBackoff;
+    }
+
+    /**
+     * Returns the maximum time to wait between attempts to send the spooled payloads.
+     * @return The maximum time to wait between attempts (in milliseconds)
+     */
+    public long getMaxBackoff()
+    {
+        return maxBackoff;
+    }
+
+    /**
+     * Opens the spool files in the directory, creating the directory if necessary.
+     * @return This object
+     * @throws IOException if the spool files cannot be opened
+     */
+    public synchronized PluginMetricSpool open() throws IOException
+    {
+        if(segments != null)
+            return this;
+
+        if(!directory.isDirectory() && !directory.mkdirs())
+            throw new IOException("Unable to create spool directory: "+directory);
+
+        File[] files = directory.listFiles(new FilenameFilter()
+        {
+            public boolean accept(File dir, String name)
+            {
+                return name.startsWith(PREFIX) && name.endsWith(SUFFIX);
+            }
+        });
+
+        // The file names have fixed-width sequence numbers, so they sort in the order they were created
+        Arrays.sort(files);
+        segments = new LinkedList<Segment>();
+        for(File file : files)
+        {
+            Segment segment = new Segment(file, getSequence(file), 0);
+            nextSequence = segment.sequence+1;
+            if(segment.pending > 0)
+            {
+                segments.add(segment);
+            }
+            else
+            {
+                segment.close();
+                segment.delete();
+            }
+        }
+
+        if(getPending() > 0)
+            logger.info("Opened plugin metric spool with "+getPending()+" pending payloads: "+directory);
+        return this;
+    }
+
+    /**
+     * Closes the spool files.
+     * <P>
+     * The payloads that have not been sent are kept for when the spool is opened again.
+     */
+    public synchronized void close()
+    {
+        if(segments == null)
+            return;
+        for(Segment segment : segments)
+            segment.close();
+        segments = null;
+    }
+
+    /**
+     * Sends the given payload, adding it to the spool if it cannot be sent.
+     * <P>
+     * The payload is added to the spool without trying to send it if there are earlier payloads
+     * still in the spool, so that the payloads are sent in order.
+     * @param data The payload to send
+     * @return <CODE>true</CODE> if the payload was sent or added to the spool
+     */
+    public synchronized boolean send(PluginData data)
+    {
+        if(getPending() == 0 && PluginMetricHarvester.send(service, data))
+            return true;
+        return add(data);
+    }
+
+    /**
+     * Adds the given payload to the end of the spool.
+     * @param data The payload to add
+     * @return <CODE>true</CODE> if the payload was added to the spool
+     */
+    public synchronized boolean add(PluginData data)
+    {
+        byte[] bytes = GsonRegistry.getGson().toJson(data).getBytes(StandardCharsets.UTF_8);
+        int length = HEADER+bytes.length;
+        if(length > quota)
+        {
+            logger.warning("Plugin metric payload of "+bytes.length+" bytes is larger than the spool quota");
+            return false;
+        }
+
+        try
+        {
+            open();
+            Segment segment = segments.peekLast();
+            if(segment == null || segment.remaining() < length)
+            {
+                int size = (int)Math.max(Math.min(segmentSize, quota), length);
+                evict(size);
+                segment = new Segment(getFile(nextSequence), nextSequence, size);
+                ++nextSequence;
+                segments.add(segment);
+            }
+
+            segment.append(bytes);
+            return true;
+        }
+        catch(IOException e)
+        {
+            logger.log(Level.SEVERE, "Unable to add plugin metric payload to spool: "+directory, e);
+            return false;
+        }
+    }
+
+    /**
+     * Sends the payloads in the spool in the order they were added.
+     * <P>
+     * Stops at the first payload that cannot be sent, and waits for the backoff to expire before trying again.
+     * @return The number of payloads that were sent
+     */
+    public synchronized int replay()
+    {
+        int ret = 0;
+        if(segments == null || getPending() == 0 || System.currentTimeMillis() < nextAttempt)
+            return ret;
+
+        while(!segments.isEmpty())
+        {
+            Segment segment = segments.peekFirst();
+            while(segment.pending > 0)
+            {
+                PluginData data = segment.read();
+                if(data != null)
+                {
+                    if(!PluginMetricHarvester.send(service, data))
+                    {
+                        backoff = backoff == 0L ? initialBackoff : Math.min(backoff*2L, maxBackoff);
+                        nextAttempt = System.currentTimeMillis()+backoff;
+                        logger.warning("Unable to send spooled plugin metric data, next attempt in "+backoff+"ms");
+                        return ret;
+                    }
+                    ++ret;
+                }
+                segment.acknowledge();
+            }
+
+            segment.close();
+            segment.delete();
+            segments.removeFirst();
+        }
+
+        backoff = 0L;
+        nextAttempt = 0L;
+        return ret;
+    }
+
+    /**
+     * Returns the number of payloads in the spool that have not been sent.
+     * @return The number of payloads that have not been sent
+     */
+    public synchronized int getPending()
+    {
+        int ret = 0;
+        if(segments != null)
+        {
+            for(Segment segment : segments)
+                ret += segment.pending;
+        }
+        return ret;
+    }
+
+    /**
+     * Returns the number of payloads that were deleted because the spool was over its quota.
+     * @return The number of payloads deleted
+     */
+    public synchronized long getEvicted()
+    {
+        return evicted;
+    }
+
+    /**
+     * Returns the total size of the spool files.
+     * @return The total size of the spool files (in bytes)
+     */
+    public synchronized long getSize()
+    {
+        long ret = 0L;
+        if(segments != null)
+        {
+            for(Segment segment : segments)
+                ret += segment.capacity;
+        }
+        return ret;
+    }
+
+    /**
+     * Deletes the oldest spool files until there is room for a new spool file of the given size.
+     * @param size The size of the new spool file
+     */
+    private void evict(int size)
+    {
+        while(!segments.isEmpty() && getSize()+size > quota)
+        {
+            Segment segment = segments.removeFirst();
+            evicted += segment.pending;
+            logger.warning("Spool quota exceeded, deleted "+segment.pending+" plugin metric payloads: "+segment.file);
+            segment.close();
+            segment.delete();
+        }
+    }
+
+    /**
+     * Returns the spool file with the given sequence number.
+     * @param sequence The sequence number of the file
+     * @return The spool file
+     */
+    private File getFile(long sequence)
+    {
+        return new File(directory, String.format("%s%016d%s", PREFIX, sequence, SUFFIX));
+    }
+
+    /**
+     * Returns the sequence number of the given spool file.
+     * @param file The spool file
+     * @return The sequence number of the file
+     */
+    private static long getSequence(File file)
+    {
+        String name = file.getName();
+        return Long.parseLong(name.substring(PREFIX.length(), name.length()-SUFFIX.length()));
+    }
+
+    /**
+     * Returns a string representation of the object.
+     */
+    @Override
+    public String toString()
+    {
+        return "PluginMetricSpool [directory="+directory
+            +", quota="+quota
+            +", pending="+getPending()
+            +", evicted="+evicted
+            +"]";
+    }
+
+    /**
+     * Returns a builder for the plugin metric spool.
+     * @param service The service used to send the spooled payloads
+     * @param directory The directory containing the spool files
+     * @return The builder instance.
+     */
+    public static Builder builder(PluginMetricService service, File directory)
+    {
+        return new Builder(service, directory);
+    }
+
+    /**
+     * Builder to make plugin metric spool construction easier.
+     */
+    public static class Builder
+    {
+        private PluginMetricSpool spool;
+
+        /**
+         * Constructor that takes a plugin metric service and a directory.
+         * @param service The service used to send the spooled payloads
+         * @param directory The directory containing the spool files
+         */
+        public Builder(PluginMetricService service, File directory)
+        {
+            spool = new PluginMetricSpool(service, directory);
+        }
+
+        /**
+         * Sets the maximum size of the spool files.
+         * @param quota The maximum size of the spool files (in bytes)
+         * @return This object
+         */
+        public Builder quota(long quota)
+        {
+            spool.setQuota(quota);
+            return this;
+        }
+
+        /**
+         * Sets the size of each spool file.
+         * @param segmentSize The size of each spool file (in bytes)
+         * @return This object
+         */
+        public Builder segmentSize(int segmentSize)
+        {
+            spool.setSegmentSize(segmentSize);
+            return this;
+        }
+
+        /**
+         * Sets the time to wait after the first failure to send the spooled payloads.
+         * @param initialBackoff The time to wait after the first failure (in milliseconds)
+         * @return This object
+         */
+        public Builder initialBackoff(long initialBackoff)
+        {
+            spool.setInitialBackoff(initialBackoff);
+            return this;
+        }
+
+        /**
+         * Sets the maximum time to wait between attempts to send the spooled payloads.
+         * @param maxBackoff The maximum time to wait between attempts (in milliseconds)
+         * @return This object
+         */
+        public Builder maxBackoff(long maxBackoff)
+        {
+            spool.setMaxBackoff(maxBackoff);
+            return this;
+        }
+
+        /**
+         * Returns the configured plugin metric spool instance, opening the spool files.
+         * @return The plugin metric spool instance
+         * @throws IOException if the spool files cannot be opened
+         */
+        public PluginMetricSpool build() throws IOException
+        {
+            return spool.open();
+        }
+    }
+
+    /**
+     * A memory-mapped spool file.
+     * <P>
+     * Each record has the length of the payload, the CRC32 of the payload and the payload.
+     * The length is written last, after a zero length for the following record,
+     * so a record that was only partly written reads as the end of the file.
+     * The length of a record that has been sent is negated.
+     */
+    private static class Segment
+    {
+        private File file;
+        private long sequence;
+        private int capacity;
+        private MappedByteBuffer buffer;
+        private int readPosition = -1;
+        private int writePosition = 0;
+        private int pending = 0;
+
+        /**
+         * Opens the given spool file, creating it with the given size if it does not exist.
+         * @param file The spool file
+         * @param sequence The sequence number of the file
+         * @param size The size of a new file
+         * @throws IOException if the file cannot be opened
+         */
+        Segment(File file, long sequence, int size) throws IOException
+        {
+            this.file = file;
+            this.sequence = sequence;
+
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            try
+            {
+                if(raf.length() == 0L)
+                    raf.setLength(size);
+                capacity = (int)raf.length();
+                buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0L, capacity);
+            }
+            finally
+            {
+                raf.close(); // The mapping remains valid after the channel is closed
+            }
+
+            // Find the first pending record and the end of the records
+            int position = 0;
+            while(position+HEADER <= capacity)
+            {
+                int length = buffer.getInt(position);
+                if(length == 0 || position+HEADER+Math.abs(length) > capacity)
+                    break;
+                if(length > 0)
+                {
+                    if(readPosition < 0)
+                        readPosition = position;
+                    ++pending;
+                }
+                position += HEADER+Math.abs(length);
+            }
+            writePosition = position;
+        }
+
+        /**
+         * Returns the space left in the file.
+         * @return The space left in the file (in bytes)
+         */
+        int remaining()
+        {
+            return capacity-writePosition;
+        }
+
+        /**
+         * Appends the given payload to the file.
+         * @param bytes The payload to append
+         */
+        void append(byte[] bytes)
+        {
+            CRC32 crc = new CRC32();
+            crc.update(bytes);
+            buffer.putInt(writePosition+4, (int)crc.getValue());
+            buffer.position(writePosition+HEADER);
+            buffer.put(bytes);
+
+            // Terminate the records in case there is a partly written record from before a restart after this one
+            int next = writePosition+HEADER+bytes.length;
+            if(next+4 <= capacity)
+                buffer.putInt(next, 0);
+            buffer.force();
+            buffer.putInt(writePosition, bytes.length);
+            buffer.force();
+
+            if(pending == 0)
+                readPosition = writePosition;
+            ++pending;
+            writePosition += HEADER+bytes.length;
+        }
+
+        /**
+         * Returns the first pending payload in the file.
+         * @return The first pending payload, or <CODE>null</CODE> if the record is corrupt
+         */
+        PluginData read()
+        {
+            int length = buffer.getInt(readPosition);
+            byte[] bytes = new byte[length];
+            buffer.position(readPosition+HEADER);
+            buffer.get(bytes);
+
+            CRC32 crc = new CRC32();
+            crc.update(bytes);
+            if((int)crc.getValue() != buffer.getInt(readPosition+4))
+            {
+                logger.warning("Skipped corrupt plugin metric payload in spool: "+file);
+                return null;
+            }
+
+            try
+            {
+                return GsonRegistry.getGson().fromJson(new String(bytes, StandardCharsets.UTF_8), PluginData.class);
+            }
+            catch(JsonParseException e)
+            {
+                logger.log(Level.WARNING, "Skipped invalid plugin metric payload in spool: "+file, e);
+                return null;
+            }
+        }
+
+        /**
+         * Marks the first pending payload in the file as sent.
+         */
+        void acknowledge()
+        {
+            int length = buffer.getInt(readPosition);
+            buffer.putInt(readPosition, -length);
+            buffer.force();
+            --pending;
+
+            readPosition += HEADER+length;
+            while(pending > 0 && buffer.getInt(readPosition) < 0)
+                readPosition += HEADER-buffer.getInt(readPosition);
+        }
+
+        /**
+         * Releases the mapping of the file.
+         * <P>
+         * The file is unmapped straight away rather than when the buffer is garbage collected,
+         * so that the file can be deleted on all platforms and its pages are released.
+         */
+        void close()
+        {
+            if(buffer != null)
+                unmap(buffer);
+            buffer = null;
+        }
+
+        /**
+         * Unmaps the given buffer.
+         * <P>
+         * There is no public method to unmap a buffer, so this uses the cleaner of the buffer,
+         * and leaves the buffer to be unmapped when it is garbage collected if that is not available.
+         * The buffer must not be used after it has been unmapped.
+         * @param buffer The buffer to unmap
+         */
+        private static void unmap(MappedByteBuffer buffer)
+        {
+            try
+            {
+                try
+                {
+                    // Java 9 and later
+                    Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+                    Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+                    Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+                    theUnsafe.setAccessible(true);
+                    invokeCleaner.invoke(theUnsafe.get(null), buffer);
+                }
+                catch(NoSuchMethodException e)
+                {
+                    // Java 8
+                    Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+                    cleanerMethod.setAccessible(true);
+                    Object cleaner = cleanerMethod.invoke(buffer);
+                    if(cleaner != null)
+                        cleaner.getClass().getMethod("clean").invoke(cleaner);
+                }
+            }
+            catch(ReflectiveOperationException | RuntimeException e)
+            {
+                logger.log(Level.FINE, "Unable to unmap spool file, leaving it to be garbage collected", e);
+            }
+        }
+
+        /**
+         * Deletes the file.
+         */
+        void delete()
+        {
+            if(!file.delete())
+                logger.warning("Unable to delete spool file: "+file);
+        }
+    }
+}
@@ -19,6 +19,7 @@ package com.opsmatters.newrelic.api.services;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.stream.Stream;
 import com.google.common.base.Optional;
 import com.opsmatters.newrelic.api.NewRelicClient;
 import com.opsmatters.newrelic.api.model.plugins.Plugin;
@@ -51,6 +52,44 @@ public class PluginService extends BaseFluent
         return HTTP.GET("/v2/plugins.json", null, queryParams, PLUGINS).get();
     }
 
+    /**
+     * Returns an iterator over all the plugins with the given query parameters.
+     * <P>
+     * Each page of plugins is only fetched when the iterator reaches it.
+     * @param queryParams The query parameters
+     * @return The iterator over the plugins
+     */
+    public PagedIterator<Plugin> iterator(List<String> queryParams)
+    {
+        return new PagedIterator<Plugin>(HTTP, "/v2/plugins.json", queryParams, PLUGINS);
+    }
+
+    /**
+     * Returns a stream of all the plugins with the given query parameters.
+     * <P>
+     * Each page of plugins is only fetched when the stream reaches it.
+     * @param queryParams The query parameters
+     * @return The stream of plugins
+     */
+    public Stream<Plugin> stream(List<String> queryParams)
+    {
+        return iterator(queryParams).stream();
+    }
+
+    /**
+     * Returns all the plugins with the given query parameters.
+     * <P>
+     * The last page is taken from the first response, and the remaining pages 
+     * are then requested concurrently, limited by the client's page parallelism.
+     * @param queryParams The query parameters
+     * @return The set of plugins
+     */
+    public Collection<Plugin> listAll(List<String> queryParams)
+    {
+        return new ParallelPageFetcher<Plugin>(HTTP, "/v2/plugins.json", queryParams, PLUGINS, 
+            getClient().getPageParallelism()).fetch();
+    }
+
     /**
      * Returns the set of plugins.
      * @param detailed <CODE>true</CODE> if the details of the plugin should be included
@@ -17,8 +17,8 @@
 package com.opsmatters.newrelic.api.services;
 
 import java.util.List;
-import java.util.ArrayList;
 import java.util.Collection;
+import java.util.stream.Stream;
 import com.google.common.base.Optional;
 import com.opsmatters.newrelic.api.NewRelicClient;
 import com.opsmatters.newrelic.api.model.alerts.conditions.PluginsAlertCondition;
@@ -51,6 +51,44 @@ public class PluginsAlertConditionService extends BaseFluent
         return HTTP.GET("/v2/alerts_plugins_conditions.json", null, queryParams, PLUGINS_ALERT_CONDITIONS).get();
     }
 
+    /**
+     * Returns an iterator over all the alert conditions with the given query parameters.
+     * <P>
+     * Each page of alert conditions is only fetched when the iterator reaches it.
+     * @param queryParams The query parameters
+     * @return The iterator over the alert conditions
+     */
+    public PagedIterator<PluginsAlertCondition> iterator(List<String> queryParams)
+    {
+        return new PagedIterator<PluginsAlertCondition>(HTTP, "/v2/alerts_plugins_conditions.json", queryParams, PLUGINS_ALERT_CONDITIONS);
+    }
+
+    /**
+     * Returns a stream of all the alert conditions with the given query parameters.
+     * <P>
+     * Each page of alert conditions is only fetched when the stream reaches it.
+     * @param queryParams The query parameters
+     * @return The stream of alert conditions
+     */
+    public Stream<PluginsAlertCondition> stream(List<String> queryParams)
+    {
+        return iterator(queryParams).stream();
+    }
+
+    /**
+     * Returns all the alert conditions with the given query parameters.
+     * <P>
+     * The last page is taken from the first response, and the remaining pages 
+     * are then requested concurrently, limited by the client's page parallelism.
+     * @param queryParams The query parameters
+     * @return The set of alert conditions
+     */
+    public Collection<PluginsAlertCondition> listAll(List<String> queryParams)
+    {
+        return new ParallelPageFetcher<PluginsAlertCondition>(HTTP, "/v2/alerts_plugins_conditions.json", queryParams, PLUGINS_ALERT_CONDITIONS, 
+            getClient().getPageParallelism()).fetch();
+    }
+
     /**
      * Returns the set of alert conditions for the given policy id.
      * @param policyId The id of the alert policy to return the conditions for
@@ -69,14 +107,8 @@ public class PluginsAlertConditionService extends BaseFluent
      */
     public Collection<PluginsAlertCondition> list(long policyId, String name)
     {
-        List<PluginsAlertCondition> ret = new ArrayList<PluginsAlertCondition>();
-        Collection<PluginsAlertCondition> conditions = list(policyId);
-        for(PluginsAlertCondition condition : conditions)
-        {
-            if(condition.getName().equals(name))
-                ret.add(condition);
-        }
-        return ret;
+        return HTTP.getResourceIndex().findAll("/v2/alerts_plugins_conditions.json", filters().policyId(policyId).build(), 
+            PLUGINS_ALERT_CONDITIONS, ResourceIndex.NAME, name);
     }
 
     /**
@@ -89,14 +121,8 @@ public class PluginsAlertConditionService extends BaseFluent
      */
     public Optional<PluginsAlertCondition> show(long policyId, long conditionId)
     {
-        Optional<PluginsAlertCondition> ret = Optional.absent();
-        Collection<PluginsAlertCondition> conditions = list(policyId);
-        for(PluginsAlertCondition condition : conditions)
-        {
-            if(condition.getId() == conditionId)
-                ret = Optional.of(condition);
-        }
-        return ret;
+        return HTTP.getResourceIndex().find("/v2/alerts_plugins_conditions.json", filters().policyId(policyId).build(), 
+            PLUGINS_ALERT_CONDITIONS, ResourceIndex.ID, conditionId);
     }
    
     /**
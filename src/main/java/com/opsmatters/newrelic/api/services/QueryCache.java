@@ -0,0 +1,763 @@
+/*
+ * Copyright 2018 Gerald Curley
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.opsmatters.newrelic.api.services;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.LinkedHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.logging.Logger;
+import java.util.logging.Level;
+import com.google.common.base.Optional;
+import com.opsmatters.newrelic.api.model.insights.QueryData;
+import com.opsmatters.newrelic.api.model.insights.QueryResult;
+
+/**
+ * Represents a cache of the results of Insights NRQL queries, held in front of a query service.
+ * <P>
+ * Each result is cached against the account and the normalized NRQL of the query.
+ * A relative window such as "SINCE 1 hour ago" is replaced with an absolute window whose end is aligned
+ * to the end of the current time bucket, so that the same query made by many callers within
+ * a bucket shares one result. The result includes the current (open) bucket as it was when the result was fetched.
+ * A query whose window cannot be aligned (eg. without a SINCE clause, or with "SINCE today" or "COMPARE WITH")
+ * is cached as it is for the length of a bucket. Clauses inside quotes are ignored.
+ * <P>
+ * When the window of a TIMESERIES query without a FACET clause moves on to a new bucket, the buckets of the
+ * series that are still in the window are kept and only the buckets at the end of the window are requested.
+ * These are the new buckets, the bucket that was open, and any closed buckets within the settle time,
+ * as they may still receive late events.
+ * This needs the series to have a fixed bucket size (eg. "TIMESERIES 1 minute") that divides the cache bucket
+ * and the length of the window. The totals of a series that has been extended in this way are not available.
+ * <P>
+ * Concurrent calls for the same query and window make a single request.
+ * Cached results are returned as-is, so they should not be modified by the caller.
+ *
+ * @author Gerald Curley (opsmatters)
+ */
+public class QueryCache
+{
+    private static final Logger logger = Logger.getLogger(QueryCache.class.getName());
+
+    /**
+     * The default size of the time buckets used to align the windows (in milliseconds).
+     */
+    public static final long DEFAULT_BUCKET = 60000L;
+
+    /**
+     * The default maximum number of results in the cache.
+     */
+    public static final int DEFAULT_MAX_SIZE = 1000;
+
+    /**
+     * The default time-to-live of a result with an aligned window (in milliseconds).
+     */
+    public static final long DEFAULT_TTL = 600000L;
+
+    /**
+     * The default time for which a closed bucket is requested again (in milliseconds).
+     */
+    public static final long DEFAULT_SETTLE = 60000L;
+
+    private static final String DURATION = "(\\d+)\\s+(second|minute|hour|day|week)s?";
+    private static final Pattern SINCE_AGO = Pattern.compile("\\bSINCE\\s+"+DURATION+"\\s+AGO\\b", Pattern.CASE_INSENSITIVE);
+    private static final Pattern UNTIL_AGO = Pattern.compile("\\bUNTIL\\s+"+DURATION+"\\s+AGO\\b", Pattern.CASE_INSENSITIVE);
+    private static final Pattern UNALIGNED = Pattern.compile("\\b(SINCE|UNTIL|COMPARE\\s+WITH)\\b", Pattern.CASE_INSENSITIVE);
+    private static final Pattern TIMESERIES = Pattern.compile("\\bTIMESERIES\\s+"+DURATION+"\\b", Pattern.CASE_INSENSITIVE);
+    private static final Pattern FACET = Pattern.compile("\\bFACET\\b", Pattern.CASE_INSENSITIVE);
+
+    private QueryService service;
+    private long bucket = DEFAULT_BUCKET;
+    private int maxSize = DEFAULT_MAX_SIZE;
+    private long ttl = DEFAULT_TTL;
+    private long settle = DEFAULT_SETTLE;
+    private AtomicLong hits = new AtomicLong();
+    private AtomicLong misses = new AtomicLong();
+    private AtomicLong tailFetches = new AtomicLong();
+    private AtomicLong evictions = new AtomicLong();
+    private Map<String,CompletableFuture<Optional<?>>> pending = new ConcurrentHashMap<String,CompletableFuture<Optional<?>>>();
+    private Map<String,Entry> entries = new LinkedHashMap<String,Entry>(16, 0.75f, true)
+    {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String,QueryCache.Entry> eldest)
+        {
+            boolean ret = size() > maxSize;
+            if(ret)
+                evictions.incrementAndGet();
+            return ret;
+        }
+    };
+
+    /**
+     * Constructor that takes a query service.
+     * @param service The service used to make the queries
+     */
+    public QueryCache(QueryService service)
+    {
+        this.service = service;
+    }
+
+    /**
+     * Sets the size of the time buckets used to align the windows.
+     * @param bucket The size of the time buckets (in milliseconds)
+     */
+    public void setBucket(long bucket)
+    {
+        if(bucket <= 0L)
+            throw new IllegalArgumentException("bucket must be greater than 0");
+        this.bucket = bucket;
+    }
+
+    /**
+     * Returns the size of the time buckets used to align the windows.
+     * @return The size of the time buckets (in milliseconds)
+     */
+    public long getBucket()
+    {
+        return bucket;
+    }
+
+    /**
+     * Sets the maximum number of results in the cache.
+     * @param maxSize The maximum number of results in the cache
+     */
+    public synchronized void setMaxSize(int maxSize)
+    {
+        this.maxSize = maxSize;
+
+        // Remove the least recently used results that are now over the maximum size
+        Iterator<String> it = entries.keySet().iterator();
+        while(entries.size() > Math.max(maxSize, 0) && it.hasNext())
+        {
+            it.next();
+            it.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    /**
+     * Returns the maximum number of results in the cache.
+     * @return The maximum number of results in the cache
+     */
+    public int getMaxSize()
+    {
+        return maxSize;
+    }
+
+    /**
+     * Sets the time-to-live of a result with an aligned window.
+     * <P>
+     * The window of a result moves on with each bucket, so this limits how long the closed buckets
+     * of a TIMESERIES query are kept before they are requested again.
+     * @param ttl The time-to-live (in milliseconds)
+     */
+    public void setTtl(long ttl)
+    {
+        this.ttl = ttl;
+    }
+
+    /**
+     * Returns the time-to-live of a result with an aligned window.
+     * @return The time-to-live (in milliseconds)
+     */
+    public long getTtl()
+    {
+        return ttl;
+    }
+
+    /**
+     * Sets the time for which a closed bucket of a TIMESERIES query is requested again, as it may still receive late events.
+     * @param settle The settle time (in milliseconds)
+     */
+    public void setSettle(long settle)
+    {
+        this.settle = settle;
+    }
+
+    /**
+     * Returns the time for which a closed bucket of a TIMESERIES query is requested again.
+     * @return The settle time (in milliseconds)
+     */
+    public long getSettle()
+    {
+        return settle;
+    }
+
+    /**
+     * Returns the number of queries that were answered from the cache.
+     * @return The number of cache hits
+     */
+    public long getHits()
+    {
+        return hits.get();
+    }
+
+    /**
+     * Returns the number of queries that were requested in full.
+     * @return The number of cache misses
+     */
+    public long getMisses()
+    {
+        return misses.get();
+    }
+
+    /**
+     * Returns the number of queries for which only the new buckets at the end of the window were requested.
+     * @return The number of tail fetches
+     */
+    public long getTailFetches()
+    {
+        return tailFetches.get();
+    }
+
+    /**
+     * Returns the number of results removed to keep the cache within its maximum size.
+     * @return The number of evictions
+     */
+    public long getEvictions()
+    {
+        return evictions.get();
+    }
+
+    /**
+     * Returns the number of results in the cache, including any that have expired.
+     * @return The number of results in the cache
+     */
+    public synchronized int size()
+    {
+        return entries.size();
+    }
+
+    /**
+     * Removes all the results from the cache.
+     */
+    public synchronized void clear()
+    {
+        entries.clear();
+    }
+
+    /**
+     * Returns the set of data for a query, from the cache if possible.
+     * @param accountId The id of the account to query
+     * @param query The NRQL query to execute
+     * @return The query data
+     */
+    @SuppressWarnings("unchecked")
+    public Optional<QueryData> list(final long accountId, String query)
+    {
+        final Window window = new Window(query, System.currentTimeMillis());
+        return (Optional<QueryData>)get(accountId, "data", window, new Fetcher()
+        {
+            public Entry fetch(Entry previous, long expires)
+            {
+                misses.incrementAndGet();
+                return new Entry(window.start, window.end, service.list(accountId, window.getQuery()), expires);
+            }
+        });
+    }
+
+    /**
+     * Returns the result of a query decoded into primitive columns, from the cache if possible.
+     * <P>
+     * For a TIMESERIES query with a fixed bucket size and no FACET clause, only the buckets
+     * that are not already in the cache or that may still change are requested.
+     * @param accountId The id of the account to query
+     * @param query The NRQL query to execute
+     * @return The query result
+     */
+    @SuppressWarnings("unchecked")
+    public Optional<QueryResult> query(final long accountId, String query)
+    {
+        final Window window = new Window(query, System.currentTimeMillis());
+        return (Optional<QueryResult>)get(accountId, "result", window, new Fetcher()
+        {
+            public Entry fetch(Entry previous, long expires)
+            {
+                // Keep the settled buckets still in the window and only request the ones after them
+                if(previous != null && window.canExtend(previous))
+                {
+                    Optional<QueryResult> tail = service.query(accountId, window.getQuery(window.getTailStart(previous)));
+                    if(tail.isPresent())
+                    {
+                        QueryResult ret = extend((QueryResult)previous.value.get(), tail.get(), window);
+                        if(ret != null)
+                        {
+                            tailFetches.incrementAndGet();
+                            return new Entry(window.start, window.end, Optional.of(ret), previous.expires);
+                        }
+                    }
+                }
+
+                misses.incrementAndGet();
+                return new Entry(window.start, window.end, service.query(accountId, window.getQuery()), expires);
+            }
+        });
+    }
+
+    /**
+     * Returns the cached result for the given query and window, or fetches it if it is not in the cache.
+     * @param accountId The id of the account to query
+     * @param type The type of the result
+     * @param window The aligned window of the query
+     * @param fetcher Used to fetch the result if it is not in the cache
+     * @return The result of the query
+     */
+    private Optional<?> get(long accountId, String type, Window window, Fetcher fetcher)
+    {
+        String key = accountId+":"+type+":"+window.key;
+        long now = System.currentTimeMillis();
+        Entry previous = null;
+        synchronized(this)
+        {
+            Entry entry = entries.get(key);
+            if(entry != null && entry.expires > now)
+            {
+                if(entry.start == window.start && entry.end == window.end)
+                {
+                    hits.incrementAndGet();
+                    return entry.value;
+                }
+                previous = entry;
+            }
+        }
+
+        // Only make one request for concurrent calls for the same query and window
+        String fetchKey = key+":"+window.start+":"+window.end;
+        CompletableFuture<Optional<?>> future = new CompletableFuture<Optional<?>>();
+        CompletableFuture<Optional<?>> existing = pending.putIfAbsent(fetchKey, future);
+        if(existing != null)
+        {
+            hits.incrementAndGet();
+            return await(existing);
+        }
+
+        try
+        {
+            Entry entry = fetcher.fetch(previous, now+(window.aligned ? ttl : bucket));
+            if(entry.value.isPresent())
+            {
+                synchronized(this)
+                {
+                    entries.put(key, entry);
+                }
+            }
+            future.complete(entry.value);
+            return entry.value;
+        }
+        catch(RuntimeException e)
+        {
+            future.completeExceptionally(e);
+            throw e;
+        }
+        finally
+        {
+            pending.remove(fetchKey, future);
+        }
+    }
+
+    /**
+     * Returns the given series extended with the buckets of the given tail, and without the buckets before the window.
+     * <P>
+     * The buckets of the tail replace any buckets of the series from the start of the tail.
+     * @param result The cached series
+     * @param tail The new buckets at the end of the window
+     * @param window The aligned window of the query
+     * @return The extended series, or <CODE>null</CODE> if the buckets of the tail do not match the series
+     */
+    static QueryResult extend(QueryResult result, QueryResult tail, Window window)
+    {
+        int columns = result.getColumnCount();
+        if(!result.isTimeseries() || !tail.isTimeseries() || result.isFaceted() || tail.isFaceted()
+            || !Arrays.equals(result.getColumns(), tail.getColumns()))
+        {
+            return null;
+        }
+
+        long[] beginTimes = new long[(int)((window.end-window.start)/window.timeseries)];
+        long[] endTimes = new long[beginTimes.length];
+        double[] values = new double[beginTimes.length*columns];
+        int count = 0;
+        long split = tail.getBucketCount() > 0 ? tail.getBeginTimes()[0] : window.end;
+        for(QueryResult series : new QueryResult[]{result, tail})
+        {
+            for(int b = 0; b < series.getBucketCount(); b++)
+            {
+                long begin = series.getBeginTimes()[b];
+                if(begin < window.start || (series == result && begin >= split))
+                    continue;
+                if(count == beginTimes.length || (count > 0 && begin != endTimes[count-1]))
+                    return null;
+                beginTimes[count] = begin;
+                endTimes[count] = series.getEndTimes()[b];
+                System.arraycopy(series.getValues(), b*columns, values, count*columns, columns);
+                ++count;
+            }
+        }
+
+        if(count != beginTimes.length || beginTimes[0] != window.start)
+        {
+            if(logger.isLoggable(Level.FINE))
+                logger.fine("Unable to extend query result with "+tail.getBucketCount()+" buckets: "+window.key);
+            return null;
+        }
+
+        QueryResult ret = new QueryResult();
+        ret.setTimeseries(true);
+        ret.setColumns(result.getColumns());
+        ret.setBuckets(beginTimes, endTimes);
+        ret.setValues(values);
+        ret.setWindow(window.start, window.end);
+        ret.setInspectedCount(result.getInspectedCount()+tail.getInspectedCount());
+        ret.setEventTypes(result.getEventTypes());
+        return ret;
+    }
+
+    /**
+     * Waits for the given request made by another caller.
+     * @param future The future result of the request
+     * @return The result of the request
+     */
+    private Optional<?> await(CompletableFuture<Optional<?>> future)
+    {
+        try
+        {
+            return future.join();
+        }
+        catch(CompletionException e)
+        {
+            if(e.getCause() instanceof RuntimeException)
+                throw (RuntimeException)e.getCause();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the given NRQL with runs of whitespace outside quotes replaced by a single space.
+     * @param query The NRQL query
+     * @return The normalized query
+     */
+    static String normalize(String query)
+    {
+        StringBuilder ret = new StringBuilder(query.length());
+        char quote = 0;
+        for(int i = 0; i < query.length(); i++)
+        {
+            char c = query.charAt(i);
+            if(quote != 0)
+            {
+                ret.append(c);
+                if(c == '\\' && i+1 < query.length())
+                    ret.append(query.charAt(++i));
+                else if(c == quote)
+                    quote = 0;
+            }
+            else if(Character.isWhitespace(c))
+            {
+                if(ret.length() > 0 && ret.charAt(ret.length()-1) != ' ')
+                    ret.append(' ');
+            }
+            else
+            {
+                if(c == '\'' || c == '"' || c == '`')
+                    quote = c;
+                ret.append(c);
+            }
+        }
+
+        String str = ret.toString().trim();
+        while(str.endsWith(";"))
+            str = str.substring(0, str.length()-1).trim();
+        return str;
+    }
+
+    /**
+     * Returns the given normalized NRQL with the characters inside quotes replaced by "_",
+     * so that the clauses can be found without matching the contents of a string or a quoted name.
+     * The returned string has the same length as the query, so the positions of any matches are the same.
+     * @param query The normalized NRQL query
+     * @return The masked query
+     */
+    static String mask(String query)
+    {
+        StringBuilder ret = new StringBuilder(query);
+        char quote = 0;
+        for(int i = 0; i < query.length(); i++)
+        {
+            char c = query.charAt(i);
+            if(quote == 0)
+            {
+                if(c == '\'' || c == '"' || c == '`')
+                    quote = c;
+            }
+            else if(c == quote)
+            {
+                quote = 0;
+            }
+            else
+            {
+                ret.setCharAt(i, '_');
+                if(c == '\\' && i+1 < query.length())
+                    ret.setCharAt(++i, '_');
+            }
+        }
+        return ret.toString();
+    }
+
+    /**
+     * Returns the given query with the given match replaced by a space.
+     * @param query The query
+     * @param matcher The match in the masked query
+     * @return The query without the match
+     */
+    private static String remove(String query, Matcher matcher)
+    {
+        return query.substring(0, matcher.start())+" "+query.substring(matcher.end());
+    }
+
+    /**
+     * Returns the given duration in milliseconds.
+     * @param value The number of units
+     * @param unit The unit, eg. "minute"
+     * @return The duration (in milliseconds)
+     */
+    private static long getDuration(String value, String unit)
+    {
+        long n = Long.parseLong(value);
+        switch(unit.toLowerCase())
+        {
+            case "second":
+                return TimeUnit.SECONDS.toMillis(n);
+            case "minute":
+                return TimeUnit.MINUTES.toMillis(n);
+            case "hour":
+                return TimeUnit.HOURS.toMillis(n);
+            case "day":
+                return TimeUnit.DAYS.toMillis(n);
+            default:
+                return TimeUnit.DAYS.toMillis(n*7L);
+        }
+    }
+
+    /**
+     * Returns a builder for the query cache.
+     * @param service The service used to make the queries
+     * @return The builder instance.
+     */
+    public static Builder builder(QueryService service)
+    {
+        return new Builder(service);
+    }
+
+    /**
+     * Builder to make query cache construction easier.
+     */
+    public static class Builder
+    {
+        private QueryCache cache;
+
+        /**
+         * Constructor that takes a query service.
+         * @param service The service used to make the queries
+         */
+        public Builder(QueryService service)
+        {
+            cache = new QueryCache(service);
+        }
+
+        /**
+         * Sets the size of the time buckets used to align the windows.
+         * @param bucket The size of the time buckets (in milliseconds)
+         * @return This object
+         */
+        public Builder bucket(long bucket)
+        {
+            cache.setBucket(bucket);
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of results in the cache.
+         * @param maxSize The maximum number of results in the cache
+         * @return This object
+         */
+        public Builder maxSize(int maxSize)
+        {
+            cache.setMaxSize(maxSize);
+            return this;
+        }
+
+        /**
+         * Sets the time-to-live of a result with an aligned window.
+         * @param ttl The time-to-live (in milliseconds)
+         * @return This object
+         */
+        public Builder ttl(long ttl)
+        {
+            cache.setTtl(ttl);
+            return this;
+        }
+
+        /**
+         * Sets the time for which a closed bucket of a TIMESERIES query is requested again.
+         * @param settle The settle time (in milliseconds)
+         * @return This object
+         */
+        public Builder settle(long settle)
+        {
+            cache.setSettle(settle);
+            return this;
+        }
+
+        /**
+         * Returns the configured query cache instance
+         * @return The query cache instance
+         */
+        public QueryCache build()
+        {
+            return cache;
+        }
+    }
+
+    /**
+     * Fetches the result of a query that is not in the cache.
+     */
+    private interface Fetcher
+    {
+        Entry fetch(Entry previous, long expires);
+    }
+
+    /**
+     * A cached result and its window.
+     */
+    static class Entry
+    {
+        private long start;
+        private long end;
+        private Optional<?> value;
+        private long expires;
+
+        Entry(long start, long end, Optional<?> value, long expires)
+        {
+            this.start = start;
+            this.end = end;
+            this.value = value;
+            this.expires = expires;
+        }
+    }
+
+    /**
+     * The normalized query and its window aligned to the current time bucket.
+     */
+    class Window
+    {
+        String key;
+        String template;
+        boolean aligned;
+        long start;
+        long end;
+        long timeseries;
+
+        Window(String query, long now)
+        {
+            String normalized = normalize(query);
+            Matcher since = SINCE_AGO.matcher(mask(normalized));
+            if(!since.find())
+            {
+                key = normalized;
+                template = normalized;
+                return;
+            }
+
+            long sinceAgo = getDuration(since.group(1), since.group(2));
+            String str = remove(normalized, since);
+            Matcher until = UNTIL_AGO.matcher(mask(str));
+            long untilAgo = 0L;
+            if(until.find())
+            {
+                untilAgo = getDuration(until.group(1), until.group(2));
+                str = remove(str, until);
+            }
+            str = normalize(str);
+            String masked = mask(str);
+
+            // Any other time clause means that the window cannot be aligned
+            if(untilAgo >= sinceAgo || UNALIGNED.matcher(masked).find())
+            {
+                key = normalized;
+                template = normalized;
+                return;
+            }
+
+            // The window ends at the end of the bucket that is still open
+            aligned = true;
+            template = str;
+            key = str+" [since="+sinceAgo+",until="+untilAgo+"]";
+            end = ((now-untilAgo)/bucket)*bucket+bucket;
+            start = end-(sinceAgo-untilAgo);
+
+            Matcher series = TIMESERIES.matcher(masked);
+            if(series.find() && !FACET.matcher(masked).find())
+                timeseries = getDuration(series.group(1), series.group(2));
+        }
+
+        /**
+         * Returns the query for the whole window.
+         */
+        String getQuery()
+        {
+            return aligned ? getQuery(start) : template;
+        }
+
+        /**
+         * Returns the query for the window from the given time.
+         */
+        String getQuery(long from)
+        {
+            return template+" SINCE "+from+" UNTIL "+end;
+        }
+
+        /**
+         * Returns <CODE>true</CODE> if the given cached series can be extended to this window.
+         */
+        boolean canExtend(Entry previous)
+        {
+            return aligned && timeseries > 0L && bucket%timeseries == 0L && (end-start)%timeseries == 0L
+                && start%timeseries == 0L && previous.end < end && previous.end-previous.start == end-start
+                && getTailStart(previous) > start && previous.value.isPresent();
+        }
+
+        /**
+         * Returns the start of the buckets to request to extend the given cached series to this window.
+         * <P>
+         * This is the start of the bucket that was open when the series was fetched,
+         * less the settle time, aligned to the buckets of the series.
+         */
+        long getTailStart(Entry previous)
+        {
+            long from = Math.max(previous.end-bucket-Math.max(settle, 0L), start);
+            return (from/timeseries)*timeseries;
+        }
+    }
+}
@@ -20,6 +20,7 @@ import java.util.Collection;
 import com.google.common.base.Optional;
 import com.opsmatters.newrelic.api.NewRelicClient;
 import com.opsmatters.newrelic.api.model.insights.QueryData;
+import com.opsmatters.newrelic.api.model.insights.QueryResult;
 import com.opsmatters.newrelic.api.util.QueryParameterList;
 
 /**
@@ -51,4 +52,20 @@ public class QueryService extends BaseFluent
         queryParams.add("nrql", encode(query));
         return HTTP.GET(String.format("/v1/accounts/%d/query", accountId), null, queryParams, QUERY_DATA);
     }
+
+    /**
+     * Returns the result of a query, decoded into primitive columns.
+     * <P>
+     * The facets, time buckets and aggregates of the query are decoded as the response is read,
+     * which uses much less memory than the maps of {@link #list(long, String)} for large FACET or TIMESERIES queries.
+     * @param accountId The id of the account to query
+     * @param query The NRQL query to execute
+     * @return The query result
+     */
+    public Optional<QueryResult> query(long accountId, String query)
+    {
+        QueryParameterList queryParams = new QueryParameterList();
+        queryParams.add("nrql", encode(query));
+        return HTTP.GET(String.format("/v1/accounts/%d/query", accountId), null, queryParams, QUERY_RESULT);
+    }
 }
@@ -0,0 +1,351 @@
+/*
+ * Copyright 2018 Gerald Curley
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.opsmatters.newrelic.api.services;
+
+import java.net.URI;
+import java.util.Map;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+import java.util.logging.Level;
+import javax.ws.rs.core.GenericType;
+import com.google.common.base.Function;
+import com.google.common.base.Optional;
+import com.opsmatters.newrelic.api.model.IdResource;
+import com.opsmatters.newrelic.api.model.NamedResource;
+
+/**
+ * Represents the indexes of collections that can only be searched by listing them.
+ * <P>
+ * A lookup in a collection walks all of its pages and indexes the items by a key (eg. the id or name).
+ * By default the index is only used for that lookup, so every lookup sees the current collection.
+ * If a time-to-live is set, later lookups are answered from the index until it expires,
+ * and the least recently used indexes are removed once there are more than the maximum number.
+ * As with the {@link EntityCache}, a PUT, POST, PATCH or DELETE made through the same HTTP context
+ * removes the indexes of the resource it changes.
+ *
+ * @author Gerald Curley (opsmatters)
+ */
+public class ResourceIndex
+{
+    private static final Logger logger = Logger.getLogger(ResourceIndex.class.getName());
+
+    /**
+     * The default time after which an index is rebuilt (in milliseconds), which means that indexes are not kept.
+     */
+    public static final long DEFAULT_TTL = 0L;
+
+    /**
+     * The default maximum number of indexes kept.
+     */
+    public static final int DEFAULT_MAX_SIZE = 100;
+
+    /**
+     * Indexes resources by their id.
+     */
+    public static final Function<IdResource,Long> ID = new Function<IdResource,Long>()
+    {
+        @Override
+        public Long apply(IdResource resource)
+        {
+            return resource.getId();
+        }
+
+        @Override
+        public String toString()
+        {
+            return "id";
+        }
+    };
+
+    /**
+     * Indexes resources by their name.
+     */
+    public static final Function<NamedResource,String> NAME = new Function<NamedResource,String>()
+    {
+        @Override
+        public String apply(NamedResource resource)
+        {
+            return resource.getName();
+        }
+
+        @Override
+        public String toString()
+        {
+            return "name";
+        }
+    };
+
+    private HttpContext http;
+    private long ttl = DEFAULT_TTL;
+    private int maxSize = DEFAULT_MAX_SIZE;
+    private AtomicLong hits = new AtomicLong();
+    private AtomicLong builds = new AtomicLong();
+    private Map<String,Entry> entries = new LinkedHashMap<String,Entry>(16, 0.75f, true)
+    {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String,ResourceIndex.Entry> eldest)
+        {
+            return size() > maxSize;
+        }
+    };
+
+    /**
+     * Constructor that takes a http context.
+     * @param httpContext The set of HTTP operations used to build the indexes
+     */
+    public ResourceIndex(HttpContext httpContext)
+    {
+        this.http = httpContext;
+    }
+
+    /**
+     * Sets the time after which an index is rebuilt.
+     * <P>
+     * A time of 0 (the default) means that the collection is listed again for every lookup.
+     * @param ttl The time-to-live of an index (in milliseconds)
+     */
+    public void setTtl(long ttl)
+    {
+        this.ttl = ttl;
+        if(ttl <= 0L)
+            clear();
+    }
+
+    /**
+     * Returns the time after which an index is rebuilt.
+     * @return The time-to-live of an index (in milliseconds)
+     */
+    public long getTtl()
+    {
+        return ttl;
+    }
+
+    /**
+     * Sets the maximum number of indexes kept.
+     * @param maxSize The maximum number of indexes
+     */
+    public synchronized void setMaxSize(int maxSize)
+    {
+        this.maxSize = maxSize;
+        Iterator<String> it = entries.keySet().iterator();
+        while(entries.size() > maxSize && it.hasNext())
+        {
+            it.next();
+            it.remove();
+        }
+    }
+
+    /**
+     * Returns the maximum number of indexes kept.
+     * @return The maximum number of indexes
+     */
+    public int getMaxSize()
+    {
+        return maxSize;
+    }
+
+    /**
+     * Returns the number of indexes kept, including any that have expired.
+     * @return The number of indexes
+     */
+    public synchronized int size()
+    {
+        return entries.size();
+    }
+
+    /**
+     * Returns the number of lookups that were answered from an existing index.
+     * @return The number of index hits
+     */
+    public long getHits()
+    {
+        return hits.get();
+    }
+
+    /**
+     * Returns the number of times an index was built by listing a collection.
+     * @return The number of index builds
+     */
+    public long getBuilds()
+    {
+        return builds.get();
+    }
+
+    /**
+     * Returns the first item in the given collection with the given key.
+     * @param <K> The type parameter used for the key
+     * @param <T> The type parameter used for the items
+     * @param partialUrl The partial URL of the collection
+     * @param queryParams The query parameters of the collection
+     * @param returnType The type of each page of the collection
+     * @param key The function that returns the key of an item
+     * @param value The key of the item to return
+     * @return The item with the given key
+     */
+    public <K,T> Optional<T> find(String partialUrl, List<String> queryParams,
+        GenericType<Collection<T>> returnType, Function<? super T,K> key, K value)
+    {
+        List<T> ret = get(partialUrl, queryParams, returnType, key).get(value);
+        return ret != null ? Optional.of(ret.get(0)) : Optional.<T>absent();
+    }
+
+    /**
+     * Returns all the items in the given collection with the given key.
+     * @param <K> The type parameter used for the key
+     * @param <T> The type parameter used for the items
+     * @param partialUrl The partial URL of the collection
+     * @param queryParams The query parameters of the collection
+     * @param returnType The type of each page of the collection
+     * @param key The function that returns the key of an item
+     * @param value The key of the items to return
+     * @return The items with the given key
+     */
+    public <K,T> List<T> findAll(String partialUrl, List<String> queryParams,
+        GenericType<Collection<T>> returnType, Function<? super T,K> key, K value)
+    {
+        List<T> ret = get(partialUrl, queryParams, returnType, key).get(value);
+        return ret != null ? new ArrayList<T>(ret) : new ArrayList<T>();
+    }
+
+    /**
+     * Returns the index of the given collection, listing the collection if there is no current index.
+     * @param <K> The type parameter used for the key
+     * @param <T> The type parameter used for the items
+     * @param partialUrl The partial URL of the collection
+     * @param queryParams The query parameters of the collection
+     * @param returnType The type of each page of the collection
+     * @param key The function that returns the key of an item
+     * @return The items of the collection, keyed by the given function
+     */
+    @SuppressWarnings("unchecked")
+    public <K,T> Map<K,List<T>> get(String partialUrl, List<String> queryParams,
+        GenericType<Collection<T>> returnType, Function<? super T,K> key)
+    {
+        String name = partialUrl+(queryParams != null ? queryParams : "")+"|"+key;
+        Entry entry = null;
+        if(ttl > 0L)
+        {
+            synchronized(this)
+            {
+                entry = entries.get(name);
+            }
+        }
+
+        if(entry != null && entry.expires > System.currentTimeMillis())
+        {
+            hits.incrementAndGet();
+            return (Map<K,List<T>>)entry.index;
+        }
+
+        Map<K,List<T>> index = new HashMap<K,List<T>>();
+        Iterator<T> it = new PagedIterator<T>(http, partialUrl, queryParams, returnType);
+        while(it.hasNext())
+        {
+            T item = it.next();
+            K k = key.apply(item);
+            if(k == null)
+                continue;
+            List<T> items = index.get(k);
+            if(items == null)
+                index.put(k, items = new ArrayList<T>(1));
+            items.add(item);
+        }
+
+        builds.incrementAndGet();
+        if(logger.isLoggable(Level.FINE))
+            logger.fine("Built "+key+" index of "+partialUrl+" with "+index.size()+" keys");
+
+        index = Collections.unmodifiableMap(index);
+        if(ttl > 0L)
+        {
+            String[] resource = EntityCache.getResource(http.buildUri(partialUrl));
+            synchronized(this)
+            {
+                entries.put(name, new Entry(resource[0], resource[1], index, System.currentTimeMillis()+ttl));
+            }
+        }
+
+        return index;
+    }
+
+    /**
+     * Removes the indexes affected by a change to the resource at the given URI.
+     * @param uri The URI of the changed resource
+     */
+    synchronized void invalidate(URI uri)
+    {
+        String[] resource = EntityCache.getResource(uri);
+        List<String> related = EntityCache.getDependents(resource[0]);
+        Iterator<Entry> it = entries.values().iterator();
+        while(it.hasNext())
+        {
+            Entry entry = it.next();
+            if(EntityCache.isAffected(resource, entry.resource, entry.id) || related.contains(entry.resource))
+                it.remove();
+        }
+    }
+
+    /**
+     * Removes all the indexes.
+     */
+    public synchronized void clear()
+    {
+        entries.clear();
+    }
+
+    /**
+     * Returns a string representation of the object.
+     */
+    @Override
+    public String toString()
+    {
+        return "ResourceIndex [ttl="+ttl
+            +", maxSize="+maxSize
+            +", indexes="+size()
+            +", hits="+hits
+            +", builds="+builds
+            +"]";
+    }
+
+    /**
+     * An index with its resource type, entity id and expiry time.
+     */
+    private static class Entry
+    {
+        private String resource;
+        private String id;
+        private Map<?,?> index;
+        private long expires;
+
+        Entry(String resource, String id, Map<?,?> index, long expires)
+        {
+            this.resource = resource;
+            this.id = id;
+            this.index = index;
+            this.expires = expires;
+        }
+    }
+}
@@ -0,0 +1,728 @@
+/*
+ * Copyright 2018 Gerald Curley
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.opsmatters.newrelic.api.services;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Map;
+import java.util.Set;
+import java.util.HashSet;
+import java.util.TreeMap;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+import java.util.logging.Level;
+import javax.ws.rs.core.Response;
+
+/**
+ * Represents the policy used to retry HTTP calls that failed with a transient error.
+ * <P>
+ * A call is retried if its method is one of the retryable methods (by default, the idempotent methods)
+ * and it failed with a connection error or one of the retryable status codes (by default, 429, 502, 503 and 504).
+ * A call with any method is retried if it failed with a status code that means the server did not process
+ * the request (by default, 429).
+ * The delay before each retry grows exponentially with jitter, unless the response has a "Retry-After" header.
+ * A call is not retried after the maximum number of attempts, or if the retry would end after the deadline.
+ * <P>
+ * The policy also counts the attempts, retries and status codes of the calls it is used for.
+ *
+ * @author Gerald Curley (opsmatters)
+ */
+public class RetryPolicy
+{
+    private static final Logger logger = Logger.getLogger(RetryPolicy.class.getName());
+
+    /**
+     * The default maximum number of attempts for each call.
+     */
+    public static final int DEFAULT_MAX_ATTEMPTS = 3;
+
+    /**
+     * The default delay before the first retry (in milliseconds).
+     */
+    public static final long DEFAULT_INITIAL_BACKOFF = 500L;
+
+    /**
+     * The default maximum delay before a retry (in milliseconds).
+     */
+    public static final long DEFAULT_MAX_BACKOFF = 30000L;
+
+    /**
+     * The default maximum time for a call including all its retries (in milliseconds).
+     */
+    public static final long DEFAULT_DEADLINE = 60000L;
+
+    /**
+     * The status code used in the status counts for connection errors.
+     */
+    public static final int CONNECTION_ERROR = 0;
+
+    private static final String RETRY_AFTER = "Retry-After";
+    private static final String HTTP_DATE = "EEE, dd MMM yyyy HH:mm:ss zzz";
+
+    private static ScheduledExecutorService scheduler;
+
+    private int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+    private long initialBackoff = DEFAULT_INITIAL_BACKOFF;
+    private long maxBackoff = DEFAULT_MAX_BACKOFF;
+    private double multiplier = 2.0d;
+    private double jitter = 0.5d;
+    private boolean retryAfter = true;
+    private long deadline = DEFAULT_DEADLINE;
+    private Set<Integer> statusCodes = new HashSet<Integer>();
+    private Set<String> methods = new HashSet<String>();
+    private Set<Integer> unprocessedCodes = new HashSet<Integer>();
+
+    private AtomicLong attempts = new AtomicLong();
+    private AtomicLong retries = new AtomicLong();
+    private AtomicLong exhausted = new AtomicLong();
+    private AtomicLong delay = new AtomicLong();
+    private Map<Integer,AtomicLong> statuses = new ConcurrentHashMap<Integer,AtomicLong>();
+    private Map<Integer,AtomicLong> calls = new ConcurrentHashMap<Integer,AtomicLong>();
+
+    /**
+     * Default constructor.
+     */
+    public RetryPolicy()
+    {
+        statusCodes.add(429);
+        statusCodes.add(502);
+        statusCodes.add(503);
+        statusCodes.add(504);
+        methods.add("GET");
+        methods.add("HEAD");
+        methods.add("OPTIONS");
+        methods.add("PUT");
+        methods.add("DELETE");
+        unprocessedCodes.add(429);
+    }
+
+    /**
+     * Sets the maximum number of attempts for each call, including the first attempt.
+     * @param maxAttempts The maximum number of attempts
+     */
+    public void setMaxAttempts(int maxAttempts)
+    {
+        this.maxAttempts = maxAttempts;
+    }
+
+    /**
+     * Returns the maximum number of attempts for each call, including the first attempt.
+     * @return The maximum number of attempts
+     */
+    public int getMaxAttempts()
+    {
+        return maxAttempts;
+    }
+
+    /**
+     * Sets the delay before the first retry.
+     * @param initialBackoff The delay before the first retry (in milliseconds)
+     */
+    public void setInitialBackoff(long initialBackoff)
+    {
+        this.initialBackoff = initialBackoff;
+    }
+
+    /**
+     * Returns the delay before the first retry.
+     * @return The delay before the first retry (in milliseconds)
+     */
+    public long getInitialBackoff()
+    {
+        return initialBackoff;
+    }
+
+    /**
+     * Sets the maximum delay before a retry.
+     * <P>
+     * A longer delay given by a "Retry-After" header is still used if it ends before the deadline.
+     * @param maxBackoff The maximum delay before a retry (in milliseconds)
+     */
+    public void setMaxBackoff(long maxBackoff)
+    {
+        this.maxBackoff = maxBackoff;
+    }
+
+    /**
+     * Returns the maximum delay before a retry.
+     * @return The maximum delay before a retry (in milliseconds)
+     */
+    public long getMaxBackoff()
+    {
+        return maxBackoff;
+    }
+
+    /**
+     * Sets the factor the delay is multiplied by for each retry.
+     * @param multiplier The factor the delay is multiplied by for each retry
+     */
+    public void setMultiplier(double multiplier)
+    {
+        this.multiplier = multiplier;
+    }
+
+    /**
+     * Returns the factor the delay is multiplied by for each retry.
+     * @return The factor the delay is multiplied by for each retry
+     */
+    public double getMultiplier()
+    {
+        return multiplier;
+    }
+
+    /**
+     * Sets the fraction of each delay that is random.
+     * <P>
+     * For example, a jitter of 0.5 gives a delay between half and all of the backoff,
+     * so that clients that failed at the same time do not all retry at the same time.
+     * @param jitter The fraction of each delay that is random, between 0 and 1
+     */
+    public void setJitter(double jitter)
+    {
+        this.jitter = Math.max(0.0d, Math.min(jitter, 1.0d));
+    }
+
+    /**
+     * Returns the fraction of each delay that is random.
+     * @return The fraction of each delay that is random, between 0 and 1
+     */
+    public double getJitter()
+    {
+        return jitter;
+    }
+
+    /**
+     * Set to <CODE>true</CODE> if the delay given by a "Retry-After" header should be used.
+     * @param retryAfter <CODE>true</CODE> if the delay given by a "Retry-After" header should be used
+     */
+    public void setRetryAfter(boolean retryAfter)
+    {
+        this.retryAfter = retryAfter;
+    }
+
+    /**
+     * Returns <CODE>true</CODE> if the delay given by a "Retry-After" header is used.
+     * @return <CODE>true</CODE> if the delay given by a "Retry-After" header is used
+     */
+    public boolean useRetryAfter()
+    {
+        return retryAfter;
+    }
+
+    /**
+     * Sets the maximum time for a call including all its retries.
+     * @param deadline The maximum time for a call (in milliseconds)
+     */
+    public void setDeadline(long deadline)
+    {
+        this.deadline = deadline;
+    }
+
+    /**
+     * Returns the maximum time for a call including all its retries.
+     * @return The maximum time for a call (in milliseconds)
+     */
+    public long getDeadline()
+    {
+        return deadline;
+    }
+
+    /**
+     * Sets the status codes of the responses that are retried.
+     * @param statusCodes The status codes of the responses that are retried
+     */
+    public void setStatusCodes(Set<Integer> statusCodes)
+    {
+        this.statusCodes = new HashSet<Integer>(statusCodes);
+    }
+
+    /**
+     * Returns the status codes of the responses that are retried.
+     * @return The status codes of the responses that are retried
+     */
+    public Set<Integer> getStatusCodes()
+    {
+        return statusCodes;
+    }
+
+    /**
+     * Sets the HTTP methods of the calls that are retried.
+     * <P>
+     * Only idempotent methods should be included, unless the server is known not to have processed
+     * a request that failed with one of the retryable status codes.
+     * @param methods The HTTP methods of the calls that are retried
+     */
+    public void setMethods(Set<String> methods)
+    {
+        this.methods = new HashSet<String>(methods);
+    }
+
+    /**
+     * Returns the HTTP methods of the calls that are retried.
+     * @return The HTTP methods of the calls that are retried
+     */
+    public Set<String> getMethods()
+    {
+        return methods;
+    }
+
+    /**
+     * Sets the status codes of the responses to requests that the server did not process.
+     * <P>
+     * These responses are retried for any method, including methods that are not idempotent.
+     * @param unprocessedCodes The status codes of the responses to requests the server did not process
+     */
+    public void setUnprocessedCodes(Set<Integer> unprocessedCodes)
+    {
+        this.unprocessedCodes = new HashSet<Integer>(unprocessedCodes);
+    }
+
+    /**
+     * Returns the status codes of the responses to requests that the server did not process.
+     * @return The status codes of the responses to requests the server did not process
+     */
+    public Set<Integer> getUnprocessedCodes()
+    {
+        return unprocessedCodes;
+    }
+
+    /**
+     * Returns the number of attempts made, including the first attempt of each call.
+     * @return The number of attempts made
+     */
+    public long getAttempts()
+    {
+        return attempts.get();
+    }
+
+    /**
+     * Returns the number of retries made.
+     * @return The number of retries made
+     */
+    public long getRetries()
+    {
+        return retries.get();
+    }
+
+    /**
+     * Returns the number of calls that failed with a retryable error after the maximum number of attempts
+     * or at the deadline.
+     * @return The number of calls that could not be retried again
+     */
+    public long getExhausted()
+    {
+        return exhausted.get();
+    }
+
+    /**
+     * Returns the total delay before the retries.
+     * @return The total delay before the retries (in milliseconds)
+     */
+    public long getRetryDelay()
+    {
+        return delay.get();
+    }
+
+    /**
+     * Returns the number of attempts that returned each status code.
+     * <P>
+     * Attempts that failed with a connection error are counted with the status code {@link #CONNECTION_ERROR}.
+     * @return The number of attempts for each status code
+     */
+    public Map<Integer,Long> getStatusCounts()
+    {
+        return getCounts(statuses);
+    }
+
+    /**
+     * Returns the number of calls that completed after each number of attempts.
+     * @return The number of calls for each number of attempts
+     */
+    public Map<Integer,Long> getAttemptCounts()
+    {
+        return getCounts(calls);
+    }
+
+    /**
+     * Returns a copy of the given counts, sorted by key.
+     * @param counts The counts to copy
+     * @return The copy of the counts
+     */
+    private static Map<Integer,Long> getCounts(Map<Integer,AtomicLong> counts)
+    {
+        Map<Integer,Long> ret = new TreeMap<Integer,Long>();
+        for(Map.Entry<Integer,AtomicLong> entry : counts.entrySet())
+            ret.put(entry.getKey(), entry.getValue().get());
+        return ret;
+    }
+
+    /**
+     * Resets all the counts to zero.
+     */
+    public void resetCounts()
+    {
+        attempts.set(0L);
+        retries.set(0L);
+        exhausted.set(0L);
+        delay.set(0L);
+        statuses.clear();
+        calls.clear();
+    }
+
+    /**
+     * Returns the delay before the given attempt is retried, or -1 if the attempt should not be retried.
+     * @param method The HTTP method of the call
+     * @param attempt The number of the attempt, starting at 1
+     * @param response The response of the attempt, or <CODE>null</CODE> if the attempt failed with a connection error
+     * @param elapsed The time since the first attempt of the call (in milliseconds)
+     * @return The delay before the next attempt (in milliseconds), or -1 if the attempt should not be retried
+     */
+    long getDelay(String method, int attempt, Response response, long elapsed)
+    {
+        attempts.incrementAndGet();
+        int status = response != null ? response.getStatus() : CONNECTION_ERROR;
+        increment(statuses, status);
+
+        // A request the server did not process can be retried even if the method is not idempotent
+        boolean unprocessed = response != null && unprocessedCodes.contains(status);
+        if(!unprocessed && (!methods.contains(method) || (response != null && !statusCodes.contains(status))))
+            return complete(attempt);
+
+        if(attempt >= maxAttempts)
+            return exhausted(attempt, method, status, "after "+attempt+" attempts");
+
+        long ret = -1L;
+        if(retryAfter && response != null)
+            ret = getRetryAfter(response.getHeaderString(RETRY_AFTER));
+        if(ret < 0L)
+            ret = getBackoff(attempt);
+
+        if(elapsed+ret > deadline)
+            return exhausted(attempt, method, status, "at deadline of "+deadline+"ms");
+
+        retries.incrementAndGet();
+        delay.addAndGet(ret);
+        if(logger.isLoggable(Level.FINE))
+            logger.fine("Retrying "+method+" after status "+status+" in "+ret+"ms (attempt "+(attempt+1)+")");
+        return ret;
+    }
+
+    /**
+     * Counts a call that completed after the given number of attempts.
+     * @param attempt The number of attempts
+     * @return -1 to indicate that the call should not be retried
+     */
+    private long complete(int attempt)
+    {
+        increment(calls, attempt);
+        return -1L;
+    }
+
+    /**
+     * Counts a call that could not be retried again.
+     * @param attempt The number of attempts
+     * @param method The HTTP method of the call
+     * @param status The status code of the last attempt
+     * @param reason The reason the call was not retried
+     * @return -1 to indicate that the call should not be retried
+     */
+    private long exhausted(int attempt, String method, int status, String reason)
+    {
+        exhausted.incrementAndGet();
+        logger.warning("Not retrying "+method+" with status "+status+" "+reason);
+        return complete(attempt);
+    }
+
+    /**
+     * Returns the delay with jitter before the retry of the given attempt.
+     * @param attempt The number of the attempt, starting at 1
+     * @return The delay before the retry (in milliseconds)
+     */
+    long getBackoff(int attempt)
+    {
+        double backoff = Math.min(initialBackoff*Math.pow(multiplier, attempt-1), maxBackoff);
+        return (long)(backoff*(1.0d-jitter*ThreadLocalRandom.current().nextDouble()));
+    }
+
+    /**
+     * Returns the delay given by the value of a "Retry-After" header.
+     * @param value The value of the header, either a number of seconds or a HTTP date
+     * @return The delay (in milliseconds), or -1 if the value is missing or invalid
+     */
+    static long getRetryAfter(String value)
+    {
+        if(value == null || value.trim().length() == 0)
+            return -1L;
+
+        value = value.trim();
+        try
+        {
+            return Math.max(Long.parseLong(value)*1000L, 0L);
+        }
+        catch(NumberFormatException e)
+        {
+            // Try as a date
+        }
+
+        try
+        {
+            SimpleDateFormat format = new SimpleDateFormat(HTTP_DATE, Locale.US);
+            format.setTimeZone(TimeZone.getTimeZone("GMT"));
+            return Math.max(format.parse(value).getTime()-System.currentTimeMillis(), 0L);
+        }
+        catch(ParseException e)
+        {
+            logger.warning("Invalid "+RETRY_AFTER+" header: "+value);
+            return -1L;
+        }
+    }
+
+    /**
+     * Increments the count for the given key.
+     * @param counts The counts
+     * @param key The key to increment
+     */
+    private static void increment(Map<Integer,AtomicLong> counts, int key)
+    {
+        AtomicLong count = counts.get(key);
+        if(count == null)
+        {
+            AtomicLong created = new AtomicLong();
+            count = ((ConcurrentHashMap<Integer,AtomicLong>)counts).putIfAbsent(key, created);
+            if(count == null)
+                count = created;
+        }
+        count.incrementAndGet();
+    }
+
+    /**
+     * Hands the given task to the given executor after the given delay, used to retry asynchronous calls.
+     * <P>
+     * The delays of all the retries are timed on a single shared thread, so the task is never run on it.
+     * @param task The task to run
+     * @param delay The delay before running the task (in milliseconds)
+     * @param executor The executor used to run the task
+     * @param result The future to complete exceptionally if the executor does not accept the task
+     */
+    static void schedule(final Runnable task, long delay, final Executor executor, final CompletableFuture<?> result)
+    {
+        synchronized(RetryPolicy.class)
+        {
+            if(scheduler == null)
+            {
+                scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+                {
+                    public Thread newThread(Runnable r)
+                    {
+                        Thread thread = new Thread(r, "newrelic-retry");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+            }
+        }
+        scheduler.schedule(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    executor.execute(task);
+                }
+                catch(RejectedExecutionException e)
+                {
+                    result.completeExceptionally(e);
+                }
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Returns a string representation of the object.
+     */
+    @Override
+    public String toString()
+    {
+        return "RetryPolicy [maxAttempts="+maxAttempts
+            +", initialBackoff="+initialBackoff
+            +", maxBackoff="+maxBackoff
+            +", deadline="+deadline
+            +", attempts="+attempts
+            +", retries="+retries
+            +", exhausted="+exhausted
+            +", retryDelay="+delay
+            +", statuses="+getStatusCounts()
+            +"]";
+    }
+
+    /**
+     * Returns a builder for the retry policy.
+     * @return The builder instance.
+     */
+    public static Builder builder()
+    {
+        return new Builder();
+    }
+
+    /**
+     * Builder to make retry policy construction easier.
+     */
+    public static class Builder
+    {
+        private RetryPolicy policy = new RetryPolicy();
+
+        /**
+         * Sets the maximum number of attempts for each call, including the first attempt.
+         * @param maxAttempts The maximum number of attempts
+         * @return This object
+         */
+        public Builder maxAttempts(int maxAttempts)
+        {
+            policy.setMaxAttempts(maxAttempts);
+            return this;
+        }
+
+        /**
+         * Sets the delay before the first retry.
+         * @param initialBackoff The delay before the first retry (in milliseconds)
+         * @return This object
+         */
+        public Builder initialBackoff(long initialBackoff)
+        {
+            policy.setInitialBackoff(initialBackoff);
+            return this;
+        }
+
+        /**
+         * Sets the maximum delay before a retry.
+         * @param maxBackoff The maximum delay before a retry (in milliseconds)
+         * @return This object
+         */
+        public Builder maxBackoff(long maxBackoff)
+        {
+            policy.setMaxBackoff(maxBackoff);
+            return this;
+        }
+
+        /**
+         * Sets the factor the delay is multiplied by for each retry.
+         * @param multiplier The factor the delay is multiplied by for each retry
+         * @return This object
+         */
+        public Builder multiplier(double multiplier)
+        {
+            policy.setMultiplier(multiplier);
+            return this;
+        }
+
+        /**
+         * Sets the fraction of each delay that is random.
+         * @param jitter The fraction of each delay that is random, between 0 and 1
+         * @return This object
+         */
+        public Builder jitter(double jitter)
+        {
+            policy.setJitter(jitter);
+            return this;
+        }
+
+        /**
+         * Set to <CODE>true</CODE> if the delay given by a "Retry-After" header should be used.
+         * @param retryAfter <CODE>true</CODE> if the delay given by a "Retry-After" header should be used
+         * @return This object
+         */
+        public Builder retryAfter(boolean retryAfter)
+        {
+            policy.setRetryAfter(retryAfter);
+            return this;
+        }
+
+        /**
+         * Sets the maximum time for a call including all its retries.
+         * @param deadline The maximum time for a call (in milliseconds)
+         * @return This object
+         */
+        public Builder deadline(long deadline)
+        {
+            policy.setDeadline(deadline);
+            return this;
+        }
+
+        /**
+         * Sets the status codes of the responses that are retried.
+         * @param statusCodes The status codes of the responses that are retried
+         * @return This object
+         */
+        public Builder statusCodes(Integer... statusCodes)
+        {
+            Set<Integer> codes = new HashSet<Integer>();
+            for(Integer statusCode : statusCodes)
+                codes.add(statusCode);
+            policy.setStatusCodes(codes);
+            return this;
+        }
+
+        /**
+         * Sets the HTTP methods of the calls that are retried.
+         * @param methods The HTTP methods of the calls that are retried
+         * @return This object
+         */
+        public Builder methods(String... methods)
+        {
+            Set<String> set = new HashSet<String>();
+            for(String method : methods)
+                set.add(method.toUpperCase());
+            policy.setMethods(set);
+            return this;
+        }
+
+        /**
+         * Sets the status codes of the responses to requests that the server did not process.
+         * @param unprocessedCodes The status codes of the responses to requests the server did not process
+         * @return This object
+         */
+        public Builder unprocessedCodes(Integer... unprocessedCodes)
+        {
+            Set<Integer> codes = new HashSet<Integer>();
+            for(Integer statusCode : unprocessedCodes)
+                codes.add(statusCode);
+            policy.setUnprocessedCodes(codes);
+            return this;
+        }
+
+        /**
+         * Returns the configured retry policy instance
+         * @return The retry policy instance
+         */
+        public RetryPolicy build()
+        {
+            return policy;
+        }
+    }
+}
@@ -20,12 +20,17 @@ import java.util.Map;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Iterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
 import com.google.common.base.Optional;
 import com.google.common.collect.Maps;
 import com.opsmatters.newrelic.api.NewRelicClient;
 import com.opsmatters.newrelic.api.model.servers.Server;
 import com.opsmatters.newrelic.api.model.metrics.Metric;
 import com.opsmatters.newrelic.api.model.metrics.MetricData;
+import com.opsmatters.newrelic.api.model.metrics.MetricSeriesData;
+import com.opsmatters.newrelic.api.util.BatchResult;
 import com.opsmatters.newrelic.api.util.QueryParameterList;
 
 /**
@@ -55,6 +60,54 @@ public class ServerService extends BaseFluent
         return HTTP.GET("/v2/servers.json", null, queryParams, SERVERS).get();
     }
 
+    /**
+     * Returns an iterator over all the servers with the given query parameters.
+     * <P>
+     * Each page of servers is only fetched when the iterator reaches it.
+     * @param queryParams The query parameters
+     * @return The iterator over the servers
+     */
+    public PagedIterator<Server> iterator(List<String> queryParams)
+    {
+        return new PagedIterator<Server>(HTTP, "/v2/servers.json", queryParams, SERVERS);
+    }
+
+    /**
+     * Returns a stream of all the servers with the given query parameters.
+     * <P>
+     * Each page of servers is only fetched when the stream reaches it.
+     * @param queryParams The query parameters
+     * @return The stream of servers
+     */
+    public Stream<Server> stream(List<String> queryParams)
+    {
+        return iterator(queryParams).stream();
+    }
+
+    /**
+     * Returns all the servers with the given query parameters.
+     * <P>
+     * The last page is taken from the first response, and the remaining pages 
+     * are then requested concurrently, limited by the client's page parallelism.
+     * @param queryParams The query parameters
+     * @return The set of servers
+     */
+    public Collection<Server> listAll(List<String> queryParams)
+    {
+        return new ParallelPageFetcher<Server>(HTTP, "/v2/servers.json", queryParams, SERVERS, 
+            getClient().getPageParallelism()).fetch();
+    }
+
+    /**
+     * Asynchronously returns the set of servers with the given query parameters.
+     * @param queryParams The query parameters
+     * @return The future set of servers
+     */
+    public CompletableFuture<Collection<Server>> listAsync(List<String> queryParams)
+    {
+        return unwrap(HTTP.GETAsync("/v2/servers.json", null, queryParams, SERVERS));
+    }
+
     /**
      * Returns the set of servers.
      * @return The set of servers
@@ -67,15 +120,18 @@ public class ServerService extends BaseFluent
 
     /**
      * Returns the set of servers for the given name.
+     * <P>
+     * The server filters the servers on the name, and the pages of matches are then checked for an exact match.
      * @param name The name of the servers
      * @return The set of servers
      */
     public Collection<Server> list(String name)
     {
         List<Server> ret = new ArrayList<Server>();
-        Collection<Server> servers = list();
-        for(Server server : servers)
+        Iterator<Server> servers = name != null ? iterator(filters().name(name).build()) : list().iterator();
+        while(servers.hasNext())
         {
+            Server server = servers.next();
             if(name == null || server.getName().equals(name))
                 ret.add(server);
         }
@@ -92,6 +148,16 @@ public class ServerService extends BaseFluent
         return HTTP.GET(String.format("/v2/servers/%d.json", serverId), SERVER);
     }
 
+    /**
+     * Asynchronously returns the server for the given server id.
+     * @param serverId The id for the server to return
+     * @return The future server
+     */
+    public CompletableFuture<Optional<Server>> showAsync(long serverId)
+    {
+        return HTTP.GETAsync(String.format("/v2/servers/%d.json", serverId), SERVER);
+    }
+
     /**
      * Updates the given server.
      * @param server The server to update
@@ -148,6 +214,58 @@ public class ServerService extends BaseFluent
         return HTTP.GET(String.format("/v2/servers/%d/metrics/data.json", serverId), null, queryParams, METRIC_DATA);
     }
 
+    /**
+     * Returns the set of metric data for the given server, splitting a long time range into chunks.
+     * <P>
+     * The chunks are fetched concurrently and the timeslices are merged in time order.
+     * @param serverId The id of the server to return metric data for
+     * @param params The metric parameters, including the time range
+     * @return The set of metric data
+     */
+    public Optional<MetricData> metricData(long serverId, MetricParameterBuilder params)
+    {
+        return new MetricDataFetcher(HTTP, String.format("/v2/servers/%d/metrics/data.json", serverId), params,
+            getClient().getMaxTimeslices(), getClient().getMetricParallelism()).fetch();
+    }
+
+    /**
+     * Returns the metric data for each of the given servers.
+     * <P>
+     * At most the client's metric parallelism of calls are in flight at once,
+     * and a call that fails or times out is reported against its server id.
+     * @param serverIds The ids of the servers to return metric data for
+     * @param params The metric parameters to use for every server
+     * @param timeout The time allowed for the whole batch (in milliseconds), or 0 for no limit
+     * @return The metric data keyed by server id
+     */
+    public BatchResult<MetricData> metricData(Collection<Long> serverIds, MetricParameterBuilder params, long timeout)
+    {
+        return new BatchFetcher<MetricData>(HTTP, METRIC_DATA, getClient().getMetricParallelism(), timeout)
+            .fetch(serverIds, "/v2/servers/%d/metrics/data.json", params.build());
+    }
+
+    /**
+     * Asynchronously returns the set of metric data for the given server.
+     * @param serverId The id of the server to return metric data for
+     * @param queryParams The query parameters
+     * @return The future set of metric data
+     */
+    public CompletableFuture<Optional<MetricData>> metricDataAsync(long serverId, List<String> queryParams)
+    {
+        return HTTP.GETAsync(String.format("/v2/servers/%d/metrics/data.json", serverId), null, queryParams, METRIC_DATA);
+    }
+
+    /**
+     * Returns the set of metric data for the given server as columns of values.
+     * @param serverId The id of the server to return metric data for
+     * @param queryParams The query parameters
+     * @return The set of metric data as columns of values
+     */
+    public Optional<MetricSeriesData> metricSeries(long serverId, List<String> queryParams)
+    {
+        return HTTP.GET(String.format("/v2/servers/%d/metrics/data.json", serverId), null, queryParams, METRIC_SERIES_DATA);
+    }
+
     /**
      * Returns a builder for the metric data parameters.
      * @return The builder instance.
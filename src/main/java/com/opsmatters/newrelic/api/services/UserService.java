@@ -19,6 +19,7 @@ package com.opsmatters.newrelic.api.services;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.stream.Stream;
 import com.google.common.base.Optional;
 import com.opsmatters.newrelic.api.NewRelicClient;
 import com.opsmatters.newrelic.api.model.accounts.User;
@@ -51,6 +52,44 @@ public class UserService extends BaseFluent
         return HTTP.GET("/v2/users.json", null, queryParams, USERS).get();
     }
 
+    /**
+     * Returns an iterator over all the users with the given query parameters.
+     * <P>
+     * Each page of users is only fetched when the iterator reaches it.
+     * @param queryParams The query parameters
+     * @return The iterator over the users
+     */
+    public PagedIterator<User> iterator(List<String> queryParams)
+    {
+        return new PagedIterator<User>(HTTP, "/v2/users.json", queryParams, USERS);
+    }
+
+    /**
+     * Returns a stream of all the users with the given query parameters.
+     * <P>
+     * Each page of users is only fetched when the stream reaches it.
+     * @param queryParams The query parameters
+     * @return The stream of users
+     */
+    public Stream<User> stream(List<String> queryParams)
+    {
+        return iterator(queryParams).stream();
+    }
+
+    /**
+     * Returns all the users with the given query parameters.
+     * <P>
+     * The last page is taken from the first response, and the remaining pages 
+     * are then requested concurrently, limited by the client's page parallelism.
+     * @param queryParams The query parameters
+     * @return The set of users
+     */
+    public Collection<User> listAll(List<String> queryParams)
+    {
+        return new ParallelPageFetcher<User>(HTTP, "/v2/users.json", queryParams, USERS, 
+            getClient().getPageParallelism()).fetch();
+    }
+
     /**
      * Returns the set of users.
      * @return The set of users
@@ -0,0 +1,255 @@
+/*
+ * Copyright 2018 Gerald Curley
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.opsmatters.newrelic.api.services;
+
+import java.net.URI;
+import java.util.Map;
+import java.util.List;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.ws.rs.core.GenericType;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+import com.google.common.base.Optional;
+
+/**
+ * Represents the validators and parsed results of GET calls, used to make conditional requests.
+ * <P>
+ * When a GET response includes an "ETag" or "Last-Modified" header, the header is kept
+ * together with the parsed result. A later GET for the same URI sends the validators back as
+ * "If-None-Match" and "If-Modified-Since" headers, and if the server responds with
+ * 304 (Not Modified) the kept result is returned without reading or parsing a payload.
+ * <P>
+ * The least recently used results are removed once the cache reaches its maximum size.
+ * <P>
+ * Each result is copied when it is kept and again each time it is returned,
+ * so a caller can change a returned object or list without changing the result seen by other callers.
+ *
+ * @author Gerald Curley (opsmatters)
+ */
+public class ValidatorCache
+{
+    private static final Logger logger = Logger.getLogger(ValidatorCache.class.getName());
+
+    /**
+     * The default maximum number of results in the cache.
+     */
+    public static final int DEFAULT_MAX_SIZE = 500;
+
+    private int maxSize = DEFAULT_MAX_SIZE;
+    private AtomicLong notModified = new AtomicLong();
+    private AtomicLong modified = new AtomicLong();
+    private Map<String,Validator> validators = new LinkedHashMap<String,Validator>(16, 0.75f, true)
+    {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String,Validator> eldest)
+        {
+            return size() > maxSize;
+        }
+    };
+
+    /**
+     * Default constructor.
+     */
+    public ValidatorCache()
+    {
+    }
+
+    /**
+     * Constructor that takes a maximum size.
+     * @param maxSize The maximum number of results in the cache
+     */
+    public ValidatorCache(int maxSize)
+    {
+        setMaxSize(maxSize);
+    }
+
+    /**
+     * Sets the maximum number of results in the cache.
+     * @param maxSize The maximum number of results in the cache
+     */
+    public void setMaxSize(int maxSize)
+    {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Returns the maximum number of results in the cache.
+     * @return The maximum number of results in the cache
+     */
+    public int getMaxSize()
+    {
+        return maxSize;
+    }
+
+    /**
+     * Returns the number of conditional requests answered with 304 (Not Modified).
+     * <P>
+     * This is the number of payloads that did not need to be read and parsed.
+     * @return The number of conditional requests answered with 304 (Not Modified)
+     */
+    public long getNotModified()
+    {
+        return notModified.get();
+    }
+
+    /**
+     * Returns the number of conditional requests answered with a new payload.
+     * @return The number of conditional requests answered with a new payload
+     */
+    public long getModified()
+    {
+        return modified.get();
+    }
+
+    /**
+     * Returns the number of results in the cache.
+     * @return The number of results in the cache
+     */
+    public synchronized int size()
+    {
+        return validators.size();
+    }
+
+    /**
+     * Removes all the results from the cache.
+     */
+    public synchronized void clear()
+    {
+        validators.clear();
+    }
+
+    /**
+     * Returns the validators for the GET call for the given URI.
+     * @param uri The URI of the call
+     * @param queryParams The query parameters of the call
+     * @param returnType The return type of the call
+     * @return The validators, or <CODE>null</CODE> if the cache has no result for the call
+     */
+    synchronized Validator get(URI uri, List<String> queryParams, GenericType<?> returnType)
+    {
+        return validators.get(EntityCache.getKey(uri, queryParams, returnType));
+    }
+
+    /**
+     * Returns the kept result after a 304 (Not Modified) response.
+     * @param <T> The type parameter used for the return object
+     * @param validator The validators sent with the request
+     * @return A copy of the kept result
+     */
+    @SuppressWarnings("unchecked")
+    <T> Optional<T> notModified(Validator validator)
+    {
+        notModified.incrementAndGet();
+        return Optional.of((T)EntityCache.copy(validator.value));
+    }
+
+    /**
+     * Keeps the validators of the given response together with its parsed result.
+     * <P>
+     * Nothing is kept if the response does not include an "ETag" or "Last-Modified" header.
+     * @param <T> The type parameter used for the return object
+     * @param uri The URI of the call
+     * @param queryParams The query parameters of the call
+     * @param returnType The return type of the call
+     * @param validator The validators sent with the request, or <CODE>null</CODE> if it was not conditional
+     * @param response The response to the call
+     * @param result The parsed result of the call
+     */
+    <T> void put(URI uri, List<String> queryParams, GenericType<T> returnType, Validator validator,
+        Response response, Optional<T> result)
+    {
+        if(validator != null)
+            modified.incrementAndGet();
+
+        String key = EntityCache.getKey(uri, queryParams, returnType);
+        String etag = response.getHeaderString(HttpHeaders.ETAG);
+        String lastModified = response.getHeaderString(HttpHeaders.LAST_MODIFIED);
+        Object value = null;
+        if(result.isPresent() && (etag != null || lastModified != null))
+        {
+            try
+            {
+                value = EntityCache.copy(result.get());
+            }
+            catch(RuntimeException e)
+            {
+                logger.log(Level.FINE, "Unable to copy result for the cache: "+uri.getPath(), e);
+            }
+        }
+
+        synchronized(this)
+        {
+            if(value != null)
+                validators.put(key, new Validator(etag, lastModified, value));
+            else
+                validators.remove(key);
+        }
+    }
+
+    /**
+     * Returns a string representation of the object.
+     */
+    @Override
+    public String toString()
+    {
+        return "ValidatorCache [maxSize="+maxSize
+            +", size="+size()
+            +", notModified="+notModified
+            +", modified="+modified
+            +"]";
+    }
+
+    /**
+     * The validators of a response, together with its parsed result.
+     */
+    static class Validator
+    {
+        private String etag;
+        private String lastModified;
+        private Object value;
+
+        Validator(String etag, String lastModified, Object value)
+        {
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.value = value;
+        }
+
+        /**
+         * Returns the "ETag" header of the response.
+         * @return The entity tag, or <CODE>null</CODE> if the response did not include one
+         */
+        String getETag()
+        {
+            return etag;
+        }
+
+        /**
+         * Returns the "Last-Modified" header of the response.
+         * @return The last modified date, or <CODE>null</CODE> if the response did not include one
+         */
+        String getLastModified()
+        {
+            return lastModified;
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2018 Gerald Curley
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.opsmatters.newrelic.api.util;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Represents the results of a batch of API calls made for a set of entities.
+ * <P>
+ * Each call either returns a result or fails, and the results and failures are both keyed by entity id.
+ * A call that did not complete before the deadline of the batch fails with a
+ * {@link java.util.concurrent.TimeoutException}.
+ * 
+ * @author Gerald Curley (opsmatters)
+ */
+public class BatchResult<T>
+{
+    private Map<Long,T> results = new LinkedHashMap<Long,T>();
+    private Map<Long,Throwable> failures = new LinkedHashMap<Long,Throwable>();
+
+    /**
+     * Default constructor.
+     */
+    public BatchResult()
+    {
+    }
+
+    /**
+     * Adds the result of the call for the given entity.
+     * @param id The id of the entity
+     * @param result The result of the call
+     */
+    public void addResult(long id, T result)
+    {
+        results.put(id, result);
+    }
+
+    /**
+     * Adds the failure of the call for the given entity.
+     * @param id The id of the entity
+     * @param failure The cause of the failure
+     */
+    public void addFailure(long id, Throwable failure)
+    {
+        failures.put(id, failure);
+    }
+
+    /**
+     * Returns the results of the successful calls, keyed by entity id.
+     * @return The results of the successful calls
+     */
+    public Map<Long,T> getResults()
+    {
+        return Collections.unmodifiableMap(results);
+    }
+
+    /**
+     * Returns the result of the call for the given entity.
+     * @param id The id of the entity
+     * @return The result of the call, or <CODE>null</CODE> if the call failed
+     */
+    public T getResult(long id)
+    {
+        return results.get(id);
+    }
+
+    /**
+     * Returns the causes of the failed calls, keyed by entity id.
+     * @return The causes of the failed calls
+     */
+    public Map<Long,Throwable> getFailures()
+    {
+        return Collections.unmodifiableMap(failures);
+    }
+
+    /**
+     * Returns <CODE>true</CODE> if any of the calls failed.
+     * @return <CODE>true</CODE> if any of the calls failed
+     */
+    public boolean hasFailures()
+    {
+        return !failures.isEmpty();
+    }
+
+    /**
+     * Returns a string representation of the object.
+     */
+    @Override
+    public String toString()
+    {
+        return "BatchResult [results="+results.size()
+            +", failures="+failures
+            +"]";
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2018 Gerald Curley
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.opsmatters.newrelic.api.util;
+
+import java.util.Arrays;
+
+/**
+ * A hash map with primitive long keys, which avoids boxing the key for each lookup.
+ * <P>
+ * Uses open addressing with linear probing. Values cannot be <CODE>null</CODE>.
+ *
+ * @author Gerald Curley (opsmatters)
+ */
+public class LongHashMap<V>
+{
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private long[] keys;
+    private Object[] values;
+    private int size = 0;
+    private int mask;
+
+    /**
+     * Default constructor.
+     */
+    public LongHashMap()
+    {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructor that takes the expected number of entries.
+     * @param expected The expected number of entries
+     */
+    public LongHashMap(int expected)
+    {
+        int capacity = Integer.highestOneBit(Math.max(expected, DEFAULT_CAPACITY/2)*2-1)*2;
+        keys = new long[capacity];
+        values = new Object[capacity];
+        mask = capacity-1;
+    }
+
+    /**
+     * Adds the given value with the given key, replacing any existing value.
+     * @param key The key of the value
+     * @param value The value to add
+     * @return The previous value for the key, or <CODE>null</CODE> if there was no previous value
+     */
+    @SuppressWarnings("unchecked")
+    public V put(long key, V value)
+    {
+        if(value == null)
+            throw new IllegalArgumentException("null value");
+
+        int i = index(key);
+        while(values[i] != null)
+        {
+            if(keys[i] == key)
+            {
+                V ret = (V)values[i];
+                values[i] = value;
+                return ret;
+            }
+            i = (i+1) & mask;
+        }
+
+        keys[i] = key;
+        values[i] = value;
+        if(++size > (mask+1)/2) // Keep the table at most half full
+            resize();
+        return null;
+    }
+
+    /**
+     * Returns the value for the given key.
+     * @param key The key of the value
+     * @return The value for the key, or <CODE>null</CODE> if there is no value for the key
+     */
+    @SuppressWarnings("unchecked")
+    public V get(long key)
+    {
+        int i = index(key);
+        while(values[i] != null)
+        {
+            if(keys[i] == key)
+                return (V)values[i];
+            i = (i+1) & mask;
+        }
+        return null;
+    }
+
+    /**
+     * Returns <CODE>true</CODE> if there is a value for the given key.
+     * @param key The key of the value
+     * @return <CODE>true</CODE> if there is a value for the key
+     */
+    public boolean containsKey(long key)
+    {
+        return get(key) != null;
+    }
+
+    /**
+     * Returns the number of entries in the map.
+     * @return The number of entries in the map
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * Removes all the entries from the map.
+     */
+    public void clear()
+    {
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    /**
+     * Returns the slot for the given key.
+     * @param key The key
+     * @return The first slot to probe for the key
+     */
+    private int index(long key)
+    {
+        long h = key*0x9E3779B97F4A7C15L;
+        return (int)(h ^ (h >>> 32)) & mask;
+    }
+
+    /**
+     * Doubles the capacity of the map and adds the existing entries again.
+     */
+    @SuppressWarnings("unchecked")
+    private void resize()
+    {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        int capacity = oldKeys.length*2;
+        keys = new long[capacity];
+        values = new Object[capacity];
+        mask = capacity-1;
+        size = 0;
+        for(int i = 0; i < oldKeys.length; i++)
+        {
+            if(oldValues[i] != null)
+                put(oldKeys[i], (V)oldValues[i]);
+        }
+    }
+}
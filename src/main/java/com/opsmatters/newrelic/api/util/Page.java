@@ -0,0 +1,104 @@
+/*
+ * Copyright 2018 Gerald Curley
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.opsmatters.newrelic.api.util;
+
+/**
+ * Represents a single page of results returned by a paged API call.
+ * <P>
+ * The next and last page numbers are taken from the "Link" header of the response.
+ * 
+ * @author Gerald Curley (opsmatters)
+ */
+public class Page<T>
+{
+    private T data;
+    private int page;
+    private int nextPage;
+    private int lastPage;
+
+    /**
+     * Constructor that takes the data and page numbers.
+     * @param data The data contained in the page
+     * @param page The number of this page
+     * @param nextPage The number of the next page, or 0 if this is the last page
+     * @param lastPage The number of the last page, or 0 if it is not known
+     */
+    public Page(T data, int page, int nextPage, int lastPage)
+    {
+        this.data = data;
+        this.page = page;
+        this.nextPage = nextPage;
+        this.lastPage = lastPage;
+    }
+
+    /**
+     * Returns the data contained in the page.
+     * @return The data contained in the page
+     */
+    public T getData()
+    {
+        return data;
+    }
+
+    /**
+     * Returns the number of this page.
+     * @return The number of this page
+     */
+    public int getPage()
+    {
+        return page;
+    }
+
+    /**
+     * Returns the number of the next page.
+     * @return The number of the next page, or 0 if this is the last page
+     */
+    public int getNextPage()
+    {
+        return nextPage;
+    }
+
+    /**
+     * Returns <CODE>true</CODE> if there is a page after this one.
+     * @return <CODE>true</CODE> if there is a page after this one
+     */
+    public boolean hasNext()
+    {
+        return nextPage > 0;
+    }
+
+    /**
+     * Returns the number of the last page.
+     * @return The number of the last page, or 0 if it is not known
+     */
+    public int getLastPage()
+    {
+        return lastPage;
+    }
+
+    /**
+     * Returns a string representation of the object.
+     */
+    @Override
+    public String toString()
+    {
+        return "Page [page="+page
+            +", nextPage="+nextPage
+            +", lastPage="+lastPage
+            +"]";
+    }
+}
@@ -18,21 +18,34 @@ package com.opsmatters.newrelic.api.util;
 
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Map;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Pattern;
 import com.opsmatters.newrelic.api.model.IdResource;
 import com.opsmatters.newrelic.api.model.NamedResource;
 
 /**
  * Adds lookup functions to a list of New Relic resources.
+ * <P>
+ * The names are kept in a sorted index so that a name with a wildcard after a fixed prefix
+ * (eg. "prod-%") only has to check the names in the range of the prefix.
+ * The patterns for the names are compiled once and then reused.
  * 
  * @author Gerald Curley (opsmatters)
  */
 public abstract class ResourceList<T extends IdResource>
 {
+    private static final int MAX_PATTERNS = 1000;
+    private static final String SPECIAL = "%?\\.[]{}()*+^$|";
+    private static final Map<String,Pattern> patterns = new ConcurrentHashMap<String,Pattern>();
+
     private Map<String,NamedResource> names = new LinkedHashMap<String,NamedResource>();
-    private Map<Long,T> ids = new LinkedHashMap<Long,T>();
+    private LongHashMap<T> ids = new LongHashMap<T>();
+    private volatile NameIndex index;
 
     /**
      * Default constructor.
@@ -63,6 +76,7 @@ public abstract class ResourceList<T extends IdResource>
             if(resource instanceof NamedResource)
                 addName((NamedResource)resource);
         }
+        index = null;
     }
 
     /**
@@ -71,7 +85,8 @@ public abstract class ResourceList<T extends IdResource>
      */
     private void addName(NamedResource resource)
     {
-        names.put(resource.getName(), resource);
+        if(resource.getName() != null)
+            names.put(resource.getName(), resource);
     }
 
     /**
@@ -105,6 +120,9 @@ public abstract class ResourceList<T extends IdResource>
 
     /**
      * Returns the resources that match the given comma-separated list of names.
+     * <P>
+     * In each name, "%" matches any number of characters and "?" matches at most one character.
+     * The resources are returned in the order they were added.
      * @param str The comma-separated list of names (including wildcards)
      * @return The resources that match the given list
      */
@@ -120,12 +138,8 @@ public abstract class ResourceList<T extends IdResource>
             token = token.trim();
             if(token.length() > 0)
             {
-                Pattern pattern = Pattern.compile(token.replace("?", ".?").replace("%", ".*?"));
-                for(NamedResource resource : names.values())
-                {
-                   if(pattern.matcher(resource.getName()).matches())
-                        map.put(resource.getName(), (T)resource);
-                }
+                for(String name : match(token))
+                    map.put(name, (T)names.get(name));
             }
         }
 
@@ -134,6 +148,93 @@ public abstract class ResourceList<T extends IdResource>
         return ret;
     }
 
+    /**
+     * Returns the names that match the given name, in the order they were added.
+     * @param token The name (including wildcards)
+     * @return The names that match
+     */
+    private List<String> match(String token)
+    {
+        String prefix = getPrefix(token);
+        if(prefix.length() == token.length()) // No wildcards, so look up the name directly
+            return names.containsKey(token) ? Collections.singletonList(token) : Collections.<String>emptyList();
+
+        // Only the names that start with the prefix can match
+        NameIndex index = getIndex();
+        int from = Arrays.binarySearch(index.sorted, prefix);
+        if(from < 0)
+            from = -from-1;
+        int to = from;
+        while(to < index.sorted.length && index.sorted[to].startsWith(prefix))
+            ++to;
+
+        Pattern pattern = token.equals(prefix+"%") ? null : getPattern(token);
+        int[] matches = new int[to-from];
+        int count = 0;
+        for(int i = from; i < to; i++)
+        {
+            if(pattern == null || pattern.matcher(index.sorted[i]).matches())
+                matches[count++] = index.ordinals[i];
+        }
+
+        // Return the matches in the order they were added
+        Arrays.sort(matches, 0, count);
+        List<String> ret = new ArrayList<String>(count);
+        for(int i = 0; i < count; i++)
+            ret.add(index.added[matches[i]]);
+        return ret;
+    }
+
+    /**
+     * Returns the part of the given name before the first wildcard or regular expression character.
+     * @param token The name (including wildcards)
+     * @return The fixed prefix of the name
+     */
+    private static String getPrefix(String token)
+    {
+        if(token.indexOf('|') != -1) // An alternative can start with anything
+            return "";
+
+        int i = 0;
+        while(i < token.length() && SPECIAL.indexOf(token.charAt(i)) == -1)
+            ++i;
+
+        // A quantifier applies to the character before it
+        if(i > 0 && i < token.length() && "*+{".indexOf(token.charAt(i)) != -1)
+            --i;
+        return token.substring(0, i);
+    }
+
+    /**
+     * Returns the compiled pattern for the given name.
+     * @param token The name (including wildcards)
+     * @return The compiled pattern
+     */
+    private static Pattern getPattern(String token)
+    {
+        Pattern ret = patterns.get(token);
+        if(ret == null)
+        {
+            ret = Pattern.compile(token.replace("?", ".?").replace("%", ".*?"));
+            if(patterns.size() >= MAX_PATTERNS)
+                patterns.clear();
+            patterns.put(token, ret);
+        }
+        return ret;
+    }
+
+    /**
+     * Returns the sorted index of the names, building it if the list has changed.
+     * @return The sorted index of the names
+     */
+    private NameIndex getIndex()
+    {
+        NameIndex ret = index;
+        if(ret == null)
+            index = ret = new NameIndex(names.keySet().toArray(new String[names.size()]));
+        return ret;
+    }
+
     /**
      * Returns the resources that match the given ids.
      * @param ids The list of the resource ids
@@ -155,4 +256,28 @@ public abstract class ResourceList<T extends IdResource>
 
         return ret;
     }
-}
\ No newline at end of file
+
+    /**
+     * The names in sorted order, with the position in which each name was added.
+     */
+    private static class NameIndex
+    {
+        private String[] added;
+        private String[] sorted;
+        private int[] ordinals;
+
+        NameIndex(String[] added)
+        {
+            this.added = added;
+            this.sorted = added.clone();
+            Arrays.sort(sorted);
+
+            Map<String,Integer> positions = new HashMap<String,Integer>(added.length*2);
+            for(int i = 0; i < added.length; i++)
+                positions.put(added[i], i);
+            ordinals = new int[sorted.length];
+            for(int i = 0; i < sorted.length; i++)
+                ordinals[i] = positions.get(sorted[i]);
+        }
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright 2018 Gerald Curley
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.opsmatters.newrelic.api;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import junit.framework.Assert;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import com.opsmatters.newrelic.api.httpclient.ApiKeyHttpClientProvider;
+import com.opsmatters.newrelic.api.services.ValidatorCache;
+import com.opsmatters.newrelic.api.model.applications.Application;
+
+/**
+ * The set of tests used for conditional GET calls, using a local stub server.
+ *
+ * @author Gerald Curley (opsmatters)
+ */
+public class ConditionalGetTest
+{
+    private static final Logger logger = Logger.getLogger(ConditionalGetTest.class.getName());
+
+    private static final int APPLICATIONS = 500;
+
+    private HttpServer server;
+    private AtomicInteger payloads = new AtomicInteger();
+    private AtomicInteger notModified = new AtomicInteger();
+    private String etag = "\"v1\"";
+
+    @Before
+    public void startServer() throws IOException
+    {
+        // Serve a large list of applications, answering 304 when the client already has the current version
+        final byte[] body = getApplications(APPLICATIONS).getBytes("UTF-8");
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/v2/applications.json", new HttpHandler()
+        {
+            public void handle(HttpExchange exchange) throws IOException
+            {
+                exchange.getResponseHeaders().add("ETag", etag);
+                if(etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match")))
+                {
+                    notModified.incrementAndGet();
+                    exchange.sendResponseHeaders(304, -1);
+                }
+                else
+                {
+                    payloads.incrementAndGet();
+                    exchange.getResponseHeaders().add("Content-Type", "application/json");
+                    exchange.sendResponseHeaders(200, body.length);
+                    OutputStream os = exchange.getResponseBody();
+                    os.write(body);
+                    os.close();
+                }
+                exchange.close();
+            }
+        });
+        server.start();
+    }
+
+    @After
+    public void stopServer()
+    {
+        server.stop(0);
+    }
+
+    @Test
+    public void testConditionalGet()
+    {
+        String testName = "ConditionalGetTest";
+        logger.info("Starting test: "+testName);
+
+        ValidatorCache validators = new ValidatorCache();
+        NewRelicApi api = new NewRelicApi("localhost", server.getAddress().getPort(),
+            new ApiKeyHttpClientProvider("test")
+            {
+                @Override
+                public boolean useSsl()
+                {
+                    return false;
+                }
+            });
+        api.setValidatorCache(validators);
+
+        // The first call downloads and parses the payload
+        long start = System.nanoTime();
+        Collection<Application> first = api.applications().list();
+        long parsed = System.nanoTime()-start;
+        Assert.assertEquals(APPLICATIONS, first.size());
+        Assert.assertEquals(1, payloads.get());
+
+        // Later calls are answered with 304 and return a copy of the object that was already parsed
+        int polls = 10;
+        start = System.nanoTime();
+        for(int i = 0; i < polls; i++)
+        {
+            Collection<Application> applications = api.applications().list();
+            Assert.assertNotSame(first, applications);
+            Assert.assertEquals(APPLICATIONS, applications.size());
+        }
+        long revalidated = (System.nanoTime()-start)/polls;
+        Assert.assertEquals(1, payloads.get());
+        Assert.assertEquals(polls, notModified.get());
+        Assert.assertEquals(polls, validators.getNotModified());
+        logger.info("First call with "+APPLICATIONS+" applications took "+parsed/1000L
+            +"us, each revalidated call took "+revalidated/1000L+"us: "+validators);
+
+        // Changing a returned object does not change the kept result
+        Application application = first.iterator().next();
+        String name = application.getName();
+        application.setName("changed");
+        first.clear();
+        Collection<Application> next = api.applications().list();
+        Assert.assertEquals(APPLICATIONS, next.size());
+        Assert.assertEquals(name, next.iterator().next().getName());
+
+        // A changed payload is parsed again
+        etag = "\"v2\"";
+        Collection<Application> changed = api.applications().list();
+        Assert.assertNotSame(first, changed);
+        Assert.assertEquals(2, payloads.get());
+        Assert.assertEquals(1, validators.getModified());
+
+        logger.info("Completed test: "+testName);
+    }
+
+    private String getApplications(int count)
+    {
+        StringBuilder ret = new StringBuilder("{\"applications\":[");
+        for(int i = 0; i < count; i++)
+        {
+            if(i > 0)
+                ret.append(",");
+            ret.append("{\"id\":").append(i+1)
+                .append(",\"name\":\"application-").append(i+1)
+                .append("\",\"language\":\"java\",\"health_status\":\"green\",\"reporting\":true")
+                .append(",\"last_reported_at\":\"2018-01-01T00:00:00+00:00\"")
+                .append(",\"application_summary\":{\"response_time\":1.5,\"throughput\":100.0,")
+                .append("\"error_rate\":0.0,\"apdex_target\":0.5,\"apdex_score\":1.0,\"host_count\":2,\"instance_count\":2}")
+                .append(",\"links\":{\"servers\":[],\"application_hosts\":[").append(i).append("],\"application_instances\":[]}}");
+        }
+        return ret.append("]}").toString();
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2018 Gerald Curley
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.opsmatters.newrelic.api.httpclient;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import com.opsmatters.newrelic.api.NewRelicApi;
+
+/**
+ * Compares the time taken and the connections opened by a client with a connection pool
+ * and by a client without one, making the same calls to a local stub server.
+ * <P>
+ * This is not run as part of the unit tests, run it with:
+ * <PRE>mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.opsmatters.newrelic.api.httpclient.ConnectionPoolBenchmark</PRE>
+ *
+ * @author Gerald Curley (opsmatters)
+ */
+public class ConnectionPoolBenchmark
+{
+    private static final Logger logger = Logger.getLogger(ConnectionPoolBenchmark.class.getName());
+
+    private static final String APPLICATIONS = "{\"applications\":[{\"id\":1,\"name\":\"app1\"},{\"id\":2,\"name\":\"app2\"}]}";
+
+    private static final int WARMUPS = 200;
+    private static final int CALLS = 2000;
+    private static final int THREADS = 8;
+
+    private static Set<Integer> connections = ConcurrentHashMap.newKeySet();
+
+    public static void main(String[] args) throws Exception
+    {
+        // Otherwise each response on a kept-alive connection waits for a delayed ACK
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/v2/applications.json", new HttpHandler()
+        {
+            public void handle(HttpExchange exchange) throws IOException
+            {
+                // Each client port is a separate connection
+                connections.add(exchange.getRemoteAddress().getPort());
+                byte[] bytes = APPLICATIONS.getBytes("UTF-8");
+                exchange.getResponseHeaders().add("Content-Type", "application/json");
+                exchange.sendResponseHeaders(200, bytes.length);
+                OutputStream os = exchange.getResponseBody();
+                os.write(bytes);
+                os.close();
+            }
+        });
+        server.start();
+
+        try
+        {
+            int port = server.getAddress().getPort();
+            ConnectionPool pool = ConnectionPool.builder().maxPerRoute(THREADS).build();
+            run("Unpooled", getApi(port, null));
+            run("Pooled", getApi(port, pool));
+            pool.shutdown();
+        }
+        finally
+        {
+            server.stop(0);
+        }
+    }
+
+    private static void run(String name, final NewRelicApi api) throws InterruptedException
+    {
+        for(int i = 0; i < WARMUPS; i++)
+            api.applications().list();
+
+        connections.clear();
+        long start = System.nanoTime();
+        for(int i = 0; i < CALLS; i++)
+            api.applications().list();
+        long sequential = (System.nanoTime()-start)/CALLS;
+        int sequentialConnections = connections.size();
+
+        connections.clear();
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        start = System.nanoTime();
+        for(int i = 0; i < CALLS; i++)
+        {
+            executor.execute(new Runnable()
+            {
+                public void run()
+                {
+                    api.applications().list();
+                }
+            });
+        }
+        executor.shutdown();
+        executor.awaitTermination(5L, TimeUnit.MINUTES);
+        long concurrent = (System.nanoTime()-start)/CALLS;
+
+        logger.info(name+": "+CALLS+" calls, sequential="+sequential/1000L+"us per call with "+sequentialConnections
+            +" connections, "+THREADS+" threads="+concurrent/1000L+"us per call with "+connections.size()+" connections");
+    }
+
+    private static NewRelicApi getApi(int port, ConnectionPool pool)
+    {
+        HttpClientProvider provider = new ApiKeyHttpClientProvider("test")
+        {
+            @Override
+            public boolean useSsl()
+            {
+                return false;
+            }
+        };
+        if(pool != null)
+            provider.setConnectionPool(pool);
+        return new NewRelicApi("localhost", port, provider);
+    }
+}
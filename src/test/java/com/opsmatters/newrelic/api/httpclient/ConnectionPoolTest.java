@@ -0,0 +1,134 @@
+/*
+ * Copyright 2018 Gerald Curley
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.opsmatters.newrelic.api.httpclient;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import junit.framework.Assert;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import com.opsmatters.newrelic.api.NewRelicApi;
+
+/**
+ * The set of tests used for the pool of persistent connections, using a local stub server.
+ *
+ * @author Gerald Curley (opsmatters)
+ */
+public class ConnectionPoolTest
+{
+    private static final Logger logger = Logger.getLogger(ConnectionPoolTest.class.getName());
+
+    private static final String APPLICATIONS = "{\"applications\":[{\"id\":1,\"name\":\"app1\"}]}";
+
+    private HttpServer server;
+    private ConnectionPool pool;
+    private Set<Integer> connections = ConcurrentHashMap.newKeySet();
+
+    @Before
+    public void startServer() throws IOException
+    {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/v2/applications.json", new HttpHandler()
+        {
+            public void handle(HttpExchange exchange) throws IOException
+            {
+                // Each client port is a separate connection
+                connections.add(exchange.getRemoteAddress().getPort());
+                byte[] bytes = APPLICATIONS.getBytes("UTF-8");
+                exchange.getResponseHeaders().add("Content-Type", "application/json");
+                exchange.sendResponseHeaders(200, bytes.length);
+                OutputStream os = exchange.getResponseBody();
+                os.write(bytes);
+                os.close();
+            }
+        });
+        server.start();
+        pool = new ConnectionPool();
+    }
+
+    @After
+    public void stopServer()
+    {
+        pool.shutdown();
+        server.stop(0);
+    }
+
+    @Test
+    public void testReuse()
+    {
+        String testName = "ConnectionPoolReuseTest";
+        logger.info("Starting test: "+testName);
+
+        // Each call returns its connection to the pool, to be reused by the next call
+        NewRelicApi api = getApi();
+        for(int i = 0; i < 5; i++)
+            Assert.assertEquals(1, api.applications().list().size());
+        Assert.assertEquals(1, connections.size());
+        Assert.assertEquals(0, pool.getLeased());
+        Assert.assertEquals(1, pool.getAvailable());
+
+        logger.info("Completed test: "+testName);
+    }
+
+    @Test
+    public void testSettings()
+    {
+        String testName = "ConnectionPoolSettingsTest";
+        logger.info("Starting test: "+testName);
+
+        // The limits can be changed once the pool is in use, but not the timeouts
+        getApi().applications().list();
+        pool.setMaxTotal(10);
+        pool.setMaxPerRoute(5);
+        Assert.assertEquals(10, pool.getMaxTotal());
+        Assert.assertEquals(5, pool.getMaxPerRoute());
+        try
+        {
+            pool.setSocketTimeout(1000);
+            Assert.fail("Expected an exception");
+        }
+        catch(IllegalStateException e)
+        {
+            Assert.assertEquals(ConnectionPool.DEFAULT_SOCKET_TIMEOUT, pool.getSocketTimeout());
+        }
+
+        logger.info("Completed test: "+testName);
+    }
+
+    private NewRelicApi getApi()
+    {
+        HttpClientProvider provider = new ApiKeyHttpClientProvider("test")
+        {
+            @Override
+            public boolean useSsl()
+            {
+                return false;
+            }
+        };
+        provider.setConnectionPool(pool);
+        return new NewRelicApi("localhost", server.getAddress().getPort(), provider);
+    }
+}
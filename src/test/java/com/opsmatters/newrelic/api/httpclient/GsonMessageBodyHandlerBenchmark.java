@@ -0,0 +1,126 @@
+/*
+ * Copyright 2018 Gerald Curley
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.opsmatters.newrelic.api.httpclient;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.annotation.Annotation;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Type;
+import java.util.Collection;
+import java.util.logging.Logger;
+import javax.ws.rs.core.MediaType;
+import com.google.gson.reflect.TypeToken;
+import com.opsmatters.newrelic.api.model.applications.Application;
+
+/**
+ * Compares the time taken and the bytes allocated to read a page of 5000 applications
+ * by streaming it through the message body handler and by first copying it into a string, 
+ * as the handler did before.
+ * <P>
+ * This is not run as part of the unit tests, run it with:
+ * <PRE>mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.opsmatters.newrelic.api.httpclient.GsonMessageBodyHandlerBenchmark</PRE>
+ *
+ * @author Gerald Curley (opsmatters)
+ */
+public class GsonMessageBodyHandlerBenchmark
+{
+    private static final Logger logger = Logger.getLogger(GsonMessageBodyHandlerBenchmark.class.getName());
+
+    private static final Type APPLICATIONS_TYPE = new TypeToken<Collection<Application>>(){}.getType();
+
+    private static final int APPLICATIONS = 5000;
+    private static final int WARMUPS = 20;
+    private static final int ITERATIONS = 50;
+
+    public static void main(String[] args) throws IOException
+    {
+        byte[] payload = getApplications().getBytes("UTF-8");
+        logger.info("Response: "+payload.length/1024+"KB of JSON");
+
+        GsonMessageBodyHandler handler = new GsonMessageBodyHandler();
+        for(int i = 0; i < WARMUPS; i++)
+        {
+            stream(handler, payload);
+            buffer(payload);
+        }
+
+        long allocated = getAllocatedBytes();
+        long start = System.nanoTime();
+        for(int i = 0; i < ITERATIONS; i++)
+            stream(handler, payload);
+        long streamed = (System.nanoTime()-start)/ITERATIONS;
+        long streamedBytes = (getAllocatedBytes()-allocated)/ITERATIONS;
+
+        allocated = getAllocatedBytes();
+        start = System.nanoTime();
+        for(int i = 0; i < ITERATIONS; i++)
+            buffer(payload);
+        long buffered = (System.nanoTime()-start)/ITERATIONS;
+        long bufferedBytes = (getAllocatedBytes()-allocated)/ITERATIONS;
+
+        logger.info("Read time: streamed="+streamed/1000L+"us buffered="+buffered/1000L+"us");
+        logger.info("Allocated per read: streamed="+streamedBytes/1024L+"KB buffered="+bufferedBytes/1024L+"KB");
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Object stream(GsonMessageBodyHandler handler, byte[] payload) throws IOException
+    {
+        Class<Object> type = (Class<Object>)(Class<?>)Collection.class;
+        return handler.readFrom(type, APPLICATIONS_TYPE, new Annotation[0], MediaType.APPLICATION_JSON_TYPE,
+            null, new ByteArrayInputStream(payload));
+    }
+
+    private static Object buffer(byte[] payload) throws IOException
+    {
+        InputStream in = new ByteArrayInputStream(payload);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int n;
+        while((n = in.read(buffer)) != -1)
+            out.write(buffer, 0, n);
+        String json = out.toString("UTF-8");
+        return GsonRegistry.getGson().fromJson(json, APPLICATIONS_TYPE);
+    }
+
+    private static long getAllocatedBytes()
+    {
+        return ((com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean())
+            .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static String getApplications()
+    {
+        StringBuilder ret = new StringBuilder("{\"applications\":[");
+        for(int i = 0; i < APPLICATIONS; i++)
+        {
+            if(i > 0)
+                ret.append(",");
+            ret.append("{\"id\":").append(i+1)
+                .append(",\"name\":\"application-").append(i+1)
+                .append("\",\"language\":\"java\",\"health_status\":\"green\",\"reporting\":true")
+                .append(",\"last_reported_at\":\"2018-01-01T00:00:00+00:00\"")
+                .append(",\"application_summary\":{\"response_time\":1.5,\"throughput\":100.0,")
+                .append("\"error_rate\":0.0,\"apdex_target\":0.5,\"apdex_score\":1.0,\"host_count\":2,\"instance_count\":2}")
+                .append(",\"links\":{\"servers\":[],\"application_hosts\":[").append(i).append("],\"application_instances\":[]}}");
+        }
+        return ret.append("]}").toString();
+    }
+}
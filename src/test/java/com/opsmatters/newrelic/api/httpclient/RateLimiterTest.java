@@ -0,0 +1,308 @@
+/*
+ * Copyright 2018 Gerald Curley
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.opsmatters.newrelic.api.httpclient;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.HashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+import javax.ws.rs.core.GenericType;
+import javax.ws.rs.core.Response;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import junit.framework.Assert;
+import com.google.common.base.Optional;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import com.opsmatters.newrelic.api.model.Status;
+import com.opsmatters.newrelic.api.services.HttpContext;
+
+/**
+ * The set of tests used for the limits on the rate and concurrency of requests, using a local stub server.
+ *
+ * @author Gerald Curley (opsmatters)
+ */
+public class RateLimiterTest
+{
+    private static final Logger logger = Logger.getLogger(RateLimiterTest.class.getName());
+
+    private static final GenericType<Status> STATUS = new GenericType<Status>(){};
+    private static final int THREADS = 16;
+    private static final int CALLS = 25;
+    private static final int CAPACITY = 4;
+
+    private HttpServer server;
+    private AtomicInteger inFlight = new AtomicInteger();
+    private AtomicInteger throttled = new AtomicInteger();
+
+    @Before
+    public void startServer() throws IOException
+    {
+        // Requests over the capacity of the server are throttled with a 429
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/v1/status", new HttpHandler()
+        {
+            public void handle(HttpExchange exchange) throws IOException
+            {
+                try
+                {
+                    if(inFlight.incrementAndGet() > CAPACITY)
+                    {
+                        throttled.incrementAndGet();
+                        send(exchange, 429, "{\"error\":\"too many requests\"}");
+                    }
+                    else
+                    {
+                        Thread.sleep(10L);
+                        send(exchange, 200, "{\"status\":\"ok\"}");
+                    }
+                }
+                catch(InterruptedException e)
+                {
+                    exchange.sendResponseHeaders(503, -1);
+                }
+                finally
+                {
+                    inFlight.decrementAndGet();
+                    exchange.close();
+                }
+            }
+        });
+        server.start();
+    }
+
+    @After
+    public void stopServer()
+    {
+        server.stop(0);
+    }
+
+    @Test
+    public void testInterrupt() throws InterruptedException
+    {
+        String testName = "RateLimiterInterruptTest";
+        logger.info("Starting test: "+testName);
+
+        // A caller interrupted while waiting for its token hands back its slot
+        final RateLimiter limiter = RateLimiter.builder().rate(1.0d).burst(1).build();
+        RateLimiter.Permit permit = limiter.acquire();
+        final CountDownLatch interrupted = new CountDownLatch(1);
+        Thread waiter = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    limiter.acquire();
+                }
+                catch(InterruptedException e)
+                {
+                    interrupted.countDown();
+                }
+            }
+        };
+        waiter.start();
+        Thread.sleep(200L);
+        Assert.assertEquals(2, limiter.getInFlight());
+        waiter.interrupt();
+        Assert.assertTrue(interrupted.await(5L, TimeUnit.SECONDS));
+
+        // The slot is handed back once the token for the cancelled wait is available
+        Thread.sleep(1200L);
+        Assert.assertEquals(1, limiter.getInFlight());
+        Assert.assertEquals(1L, limiter.getRequests());
+        limiter.release(permit, 200);
+        Assert.assertEquals(0, limiter.getInFlight());
+        Assert.assertEquals(0, limiter.getQueued());
+
+        logger.info("Completed test: "+testName);
+    }
+
+    @Test
+    public void testAsync() throws Exception
+    {
+        String testName = "RateLimiterAsyncTest";
+        logger.info("Starting test: "+testName);
+
+        // Callers waiting for an asynchronous permit are not blocked, and are let through in order
+        RateLimiter limiter = RateLimiter.builder().maxConcurrency(1).build();
+        RateLimiter.Permit permit = limiter.acquireAsync().get(1L, TimeUnit.SECONDS);
+        CompletableFuture<RateLimiter.Permit> second = limiter.acquireAsync();
+        CompletableFuture<RateLimiter.Permit> third = limiter.acquireAsync();
+        CompletableFuture<RateLimiter.Permit> fourth = limiter.acquireAsync();
+        Assert.assertFalse(second.isDone());
+        Assert.assertEquals(3, limiter.getQueued());
+
+        // A cancelled caller gives up its turn
+        Assert.assertTrue(third.cancel(false));
+        Assert.assertEquals(2, limiter.getQueued());
+        limiter.release(permit, 200);
+        Assert.assertTrue(second.isDone());
+        Assert.assertFalse(fourth.isDone());
+        limiter.release(second.get(), 200);
+        Assert.assertTrue(fourth.isDone());
+        limiter.release(fourth.get(), 200);
+        Assert.assertEquals(0, limiter.getInFlight());
+        Assert.assertEquals(3L, limiter.getRequests());
+
+        // A permit is released only once
+        limiter.release(permit, 200);
+        Assert.assertEquals(0, limiter.getInFlight());
+
+        logger.info("Completed test: "+testName);
+    }
+
+    @Test
+    public void testBody() throws Exception
+    {
+        String testName = "RateLimiterBodyTest";
+        logger.info("Starting test: "+testName);
+
+        // A request is in flight until the body of its response has been read
+        RateLimiter limiter = RateLimiter.builder().maxConcurrency(2).build();
+        HttpContext context = getContext(limiter);
+        Optional<Response> response = context.POST("/v1/status", new HashMap<String,Object>());
+        Assert.assertEquals(1, limiter.getInFlight());
+        Assert.assertEquals("ok", response.get().readEntity(Status.class).getStatus());
+        Assert.assertEquals(0, limiter.getInFlight());
+
+        Optional<Status> status = context.GET("/v1/status", STATUS);
+        Assert.assertEquals("ok", status.get().getStatus());
+        Assert.assertEquals(0, limiter.getInFlight());
+
+        status = context.GETAsync("/v1/status", STATUS).get(10L, TimeUnit.SECONDS);
+        Assert.assertEquals("ok", status.get().getStatus());
+        Assert.assertEquals(0, limiter.getInFlight());
+        Assert.assertEquals(3L, limiter.getRequests());
+
+        logger.info("Completed test: "+testName);
+    }
+
+    @Test
+    public void testEndpoints() throws InterruptedException
+    {
+        String testName = "RateLimiterEndpointsTest";
+        logger.info("Starting test: "+testName);
+
+        Assert.assertEquals("GET /v2/applications/{id}/metrics/data.json",
+            RateLimiter.getEndpoint("GET", "/v2/applications/1234/metrics/data.json"));
+        Assert.assertEquals("DELETE /v3/monitors/{id}",
+            RateLimiter.getEndpoint("DELETE", "/v3/monitors/0e3b5a9e-64a8-4c42-8d3a-5f0e1d4c2b7a"));
+        Assert.assertEquals("GET /v2/applications.json", RateLimiter.getEndpoint("GET", "/v2/applications.json"));
+
+        // A slow endpoint is not a latency spike compared with a fast one
+        RateLimiter limiter = RateLimiter.builder().latencyTolerance(3.0d).build();
+        for(int i = 0; i < 5; i++)
+            limiter.release(limiter.acquire(), "GET /fast", 200);
+        RateLimiter.Permit permit = limiter.acquire();
+        Thread.sleep(100L);
+        limiter.release(permit, "GET /slow", 200);
+        Assert.assertEquals(0L, limiter.getLatencySpikes());
+
+        // The same latency is a spike for the fast endpoint
+        permit = limiter.acquire();
+        Thread.sleep(100L);
+        limiter.release(permit, "GET /fast", 200);
+        Assert.assertEquals(1L, limiter.getLatencySpikes());
+
+        logger.info("Completed test: "+testName);
+    }
+
+    @Test
+    public void testAdaptive() throws InterruptedException
+    {
+        String testName = "RateLimiterAdaptiveTest";
+        logger.info("Starting test: "+testName);
+
+        // Adaptive concurrency should get fewer requests throttled than a fixed concurrency over the server capacity
+        int fixed = run(RateLimiter.builder().maxConcurrency(THREADS).build());
+        throttled.set(0);
+        int adaptive = run(RateLimiter.builder().maxConcurrency(THREADS).adaptive(true).build());
+        logger.info(THREADS+" threads: throttled fixed="+fixed+" adaptive="+adaptive);
+        Assert.assertTrue(adaptive < fixed);
+
+        logger.info("Completed test: "+testName);
+    }
+
+    /**
+     * Makes the calls on each thread with the given limiter, and returns the number of calls that were throttled.
+     */
+    private int run(RateLimiter limiter) throws InterruptedException
+    {
+        final HttpContext context = getContext(limiter);
+        context.GET("/v1/status", STATUS); // Start the client
+        throttled.set(0);
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread[] workers = new Thread[THREADS];
+        for(int t = 0; t < THREADS; t++)
+        {
+            workers[t] = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        start.await();
+                    }
+                    catch(InterruptedException e)
+                    {
+                        return;
+                    }
+                    for(int i = 0; i < CALLS; i++)
+                        context.GET("/v1/status", STATUS);
+                }
+            };
+            workers[t].start();
+        }
+
+        start.countDown();
+        for(Thread worker : workers)
+            worker.join();
+        Assert.assertEquals(throttled.get(), limiter.getThrottled());
+        return throttled.get();
+    }
+
+    private HttpContext getContext(RateLimiter limiter)
+    {
+        HttpContext ret = new HttpContext(new ApiKeyHttpClientProvider("test").getClient(),
+            "http", "localhost", server.getAddress().getPort());
+        ret.setRateLimiter(limiter);
+        return ret;
+    }
+
+    private void send(HttpExchange exchange, int status, String body) throws IOException
+    {
+        byte[] bytes = body.getBytes("UTF-8");
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        OutputStream os = exchange.getResponseBody();
+        os.write(bytes);
+        os.close();
+    }
+}
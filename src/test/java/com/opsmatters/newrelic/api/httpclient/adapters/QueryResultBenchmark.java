@@ -0,0 +1,120 @@
+/*
+ * Copyright 2018 Gerald Curley
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.opsmatters.newrelic.api.httpclient.adapters;
+
+import java.io.StringReader;
+import java.util.logging.Logger;
+import com.google.gson.Gson;
+import com.opsmatters.newrelic.api.httpclient.GsonRegistry;
+import com.opsmatters.newrelic.api.model.insights.QueryResult;
+
+/**
+ * Compares the heap retained and the time taken to decode a FACET TIMESERIES response 
+ * with 1000 facets, 366 buckets and two functions into a query result and into maps.
+ * <P>
+ * This is not run as part of the unit tests, run it with:
+ * <PRE>mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.opsmatters.newrelic.api.httpclient.adapters.QueryResultBenchmark</PRE>
+ *
+ * @author Gerald Curley (opsmatters)
+ */
+public class QueryResultBenchmark
+{
+    private static final Logger logger = Logger.getLogger(QueryResultBenchmark.class.getName());
+
+    private static final int FACETS = 1000;
+    private static final int BUCKETS = 366;
+    private static final int WARMUPS = 3;
+    private static final int ITERATIONS = 5;
+
+    public static void main(String[] args)
+    {
+        String json = getResponse();
+        logger.info("Response: "+json.length()/(1024*1024)+"MB of JSON");
+
+        Gson gson = GsonRegistry.getGson();
+        Gson mapGson = new Gson();
+        for(int i = 0; i < WARMUPS; i++)
+        {
+            gson.fromJson(new StringReader(json), QueryResult.class);
+            mapGson.fromJson(new StringReader(json), Object.class);
+        }
+
+        long start = System.nanoTime();
+        for(int i = 0; i < ITERATIONS; i++)
+            gson.fromJson(new StringReader(json), QueryResult.class);
+        long decoded = (System.nanoTime()-start)/ITERATIONS;
+
+        start = System.nanoTime();
+        for(int i = 0; i < ITERATIONS; i++)
+            mapGson.fromJson(new StringReader(json), Object.class);
+        long mapped = (System.nanoTime()-start)/ITERATIONS;
+        logger.info("Decode time: result="+decoded/1000000L+"ms maps="+mapped/1000000L+"ms");
+
+        long before = getUsedMemory();
+        Object result = gson.fromJson(new StringReader(json), QueryResult.class);
+        long resultHeap = getUsedMemory()-before;
+        logger.info("Retained by "+result+": "+resultHeap/1024L+"KB");
+        result = null;
+
+        before = getUsedMemory();
+        Object maps = mapGson.fromJson(new StringReader(json), Object.class);
+        long mapHeap = getUsedMemory()-before;
+        logger.info("Retained by maps: "+mapHeap/1024L+"KB ("+maps.getClass().getSimpleName()+")");
+    }
+
+    private static String getResponse()
+    {
+        StringBuilder ret = new StringBuilder("{\"facets\":[");
+        long begin = 1500000000L;
+        for(int f = 0; f < FACETS; f++)
+        {
+            ret.append(f > 0 ? "," : "").append("{\"name\":\"app").append(f).append("\",\"timeSeries\":[");
+            for(int b = 0; b < BUCKETS; b++)
+            {
+                ret.append(b > 0 ? "," : "")
+                    .append("{\"results\":[{\"count\":").append(f*b)
+                    .append("},{\"average\":").append(0.001*(f+b))
+                    .append("}],\"beginTimeSeconds\":").append(begin+b*86400L)
+                    .append(",\"endTimeSeconds\":").append(begin+(b+1)*86400L)
+                    .append(",\"inspectedCount\":").append(f*b).append("}");
+            }
+            ret.append("]}");
+        }
+        ret.append("],\"metadata\":{\"facet\":\"appName\",\"beginTimeMillis\":").append(begin*1000L)
+            .append(",\"endTimeMillis\":").append((begin+BUCKETS*86400L)*1000L).append("}}");
+        return ret.toString();
+    }
+
+    private static long getUsedMemory()
+    {
+        Runtime runtime = Runtime.getRuntime();
+        for(int i = 0; i < 3; i++)
+        {
+            System.gc();
+            try
+            {
+                Thread.sleep(100L);
+            }
+            catch(InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return runtime.totalMemory()-runtime.freeMemory();
+    }
+}
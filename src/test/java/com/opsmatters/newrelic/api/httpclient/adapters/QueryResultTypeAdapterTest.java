@@ -0,0 +1,211 @@
+/*
+ * Copyright 2018 Gerald Curley
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.opsmatters.newrelic.api.httpclient.adapters;
+
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.logging.Logger;
+import org.junit.Test;
+import junit.framework.Assert;
+import com.google.gson.Gson;
+import com.opsmatters.newrelic.api.httpclient.GsonRegistry;
+import com.opsmatters.newrelic.api.model.insights.QueryResult;
+
+/**
+ * The set of tests used for decoding the results of NRQL queries, using the responses in src/test/resources/insights.
+ *
+ * @author Gerald Curley (opsmatters)
+ */
+public class QueryResultTypeAdapterTest
+{
+    private static final Logger logger = Logger.getLogger(QueryResultTypeAdapterTest.class.getName());
+
+    private static final double DELTA = 0.000001;
+    private static final long BEGIN_TIME = 1500000000000L;
+    private static final long END_TIME = 1500003600000L;
+
+    @Test
+    public void testSimple() throws IOException
+    {
+        String testName = "QueryResultSimpleTest";
+        logger.info("Starting test: "+testName);
+
+        QueryResult result = read("simple.json");
+        Assert.assertFalse(result.isFaceted());
+        Assert.assertFalse(result.isTimeseries());
+        Assert.assertEquals("[count, average]", Arrays.toString(result.getColumns()));
+        Assert.assertEquals(1234.0, result.getValue("count"), DELTA);
+        Assert.assertEquals(0.25, result.getValue("average"), DELTA);
+        Assert.assertEquals(2, result.getTotals().length);
+        Assert.assertEquals(1, result.getBucketCount());
+        Assert.assertEquals(BEGIN_TIME, result.getBeginTimes()[0]);
+        Assert.assertEquals(END_TIME, result.getEndTimes()[0]);
+        Assert.assertEquals(1234L, result.getInspectedCount());
+        Assert.assertEquals("Transaction", result.getEventTypes()[0]);
+        Assert.assertNull(result.getEvents());
+        Assert.assertNull(result.getPrevious());
+
+        logger.info("Completed test: "+testName);
+    }
+
+    @Test
+    public void testTimeseries() throws IOException
+    {
+        String testName = "QueryResultTimeseriesTest";
+        logger.info("Starting test: "+testName);
+
+        QueryResult result = read("timeseries.json");
+        Assert.assertTrue(result.isTimeseries());
+        Assert.assertEquals(1, result.getFacetCount());
+        Assert.assertEquals(2, result.getBucketCount());
+        Assert.assertEquals(BEGIN_TIME+1800000L, result.getBeginTimes()[1]);
+        Assert.assertEquals(END_TIME, result.getEndTimes()[1]);
+        Assert.assertEquals(10.0, result.getValue(0, 0, 0), DELTA);
+        Assert.assertEquals(20.0, result.getValue(0, 1, 0), DELTA);
+        Assert.assertEquals(30.0, result.getTotals()[0], DELTA);
+
+        logger.info("Completed test: "+testName);
+    }
+
+    @Test
+    public void testFacet() throws IOException
+    {
+        String testName = "QueryResultFacetTest";
+        logger.info("Starting test: "+testName);
+
+        QueryResult result = read("facet.json");
+        Assert.assertTrue(result.isFaceted());
+        Assert.assertEquals(2, result.getFacetCount());
+        Assert.assertEquals("appName", result.getFacetAttributes()[0]);
+        Assert.assertEquals(1, result.getFacetIndex("app2"));
+        Assert.assertEquals(50.0, result.getValue(1, 0, result.getColumnIndex("count")), DELTA);
+        Assert.assertEquals(0.5, result.getValue(0, 0, result.getColumnIndex("average")), DELTA);
+        Assert.assertEquals(150.0, result.getTotals()[0], DELTA);
+
+        // A facet without results is padded, including when it is the first facet
+        result = read("facet-empty.json");
+        Assert.assertEquals(3, result.getFacetCount());
+        Assert.assertEquals(2, result.getColumnCount());
+        Assert.assertEquals(6, result.getValues().length);
+        Assert.assertTrue(Double.isNaN(result.getValue(0, 0, 0)));
+        Assert.assertEquals(50.0, result.getValue(1, 0, 0), DELTA);
+        Assert.assertEquals(0.2, result.getValue(1, 0, 1), DELTA);
+        Assert.assertTrue(Double.isNaN(result.getValue(2, 0, 1)));
+
+        logger.info("Completed test: "+testName);
+    }
+
+    @Test
+    public void testFacetTimeseries() throws IOException
+    {
+        String testName = "QueryResultFacetTimeseriesTest";
+        logger.info("Starting test: "+testName);
+
+        // The facet without a time series does not shift the values of the facet after it
+        QueryResult result = read("facet-timeseries.json");
+        Assert.assertTrue(result.isFaceted());
+        Assert.assertTrue(result.isTimeseries());
+        Assert.assertEquals("[appName, host]", Arrays.toString(result.getFacetAttributes()));
+        Assert.assertEquals(3, result.getFacetCount());
+        Assert.assertEquals(2, result.getBucketCount());
+        Assert.assertEquals(6, result.getValues().length);
+        Assert.assertEquals(2.0, result.getValue(0, 1, 0), DELTA);
+        Assert.assertTrue(Double.isNaN(result.getValue(1, 0, 0)));
+        Assert.assertTrue(Double.isNaN(result.getValue(1, 1, 0)));
+        Assert.assertEquals(5.0, result.getValue(2, 0, 0), DELTA);
+        Assert.assertEquals(6.0, result.getSeries(2, 0)[1], DELTA);
+        Assert.assertEquals(14.0, result.getTotals()[0], DELTA);
+
+        logger.info("Completed test: "+testName);
+    }
+
+    @Test
+    public void testPercentile() throws IOException
+    {
+        String testName = "QueryResultPercentileTest";
+        logger.info("Starting test: "+testName);
+
+        // Each percentile is a column, and a value that is not a number is NaN
+        QueryResult result = read("percentile.json");
+        Assert.assertEquals("[percentiles.95, percentiles.99, latest]", Arrays.toString(result.getColumns()));
+        Assert.assertEquals(1.2, result.getValue("percentiles.95"), DELTA);
+        Assert.assertEquals(3.4, result.getValue("percentiles.99"), DELTA);
+        Assert.assertTrue(Double.isNaN(result.getValue("latest")));
+
+        logger.info("Completed test: "+testName);
+    }
+
+    @Test
+    public void testEvents() throws IOException
+    {
+        String testName = "QueryResultEventsTest";
+        logger.info("Starting test: "+testName);
+
+        QueryResult result = read("events.json");
+        Assert.assertEquals(0, result.getColumnCount());
+        Assert.assertEquals(2, result.getEvents().size());
+        Assert.assertEquals("app2", result.getEvents().get(1).get("appName"));
+        Assert.assertEquals(0.1, ((Number)result.getEvents().get(0).get("duration")).doubleValue(), DELTA);
+
+        logger.info("Completed test: "+testName);
+    }
+
+    @Test
+    public void testCompare() throws IOException
+    {
+        String testName = "QueryResultCompareTest";
+        logger.info("Starting test: "+testName);
+
+        // The current results are decoded into the result and the previous results into its own result
+        QueryResult result = read("compare.json");
+        Assert.assertTrue(result.isTimeseries());
+        Assert.assertEquals(20.0, result.getValue(0, 1, 0), DELTA);
+        Assert.assertEquals(30.0, result.getTotals()[0], DELTA);
+        Assert.assertEquals(BEGIN_TIME, result.getBeginTime());
+        QueryResult previous = result.getPrevious();
+        Assert.assertNotNull(previous);
+        Assert.assertTrue(previous.isTimeseries());
+        Assert.assertEquals(2, previous.getBucketCount());
+        Assert.assertEquals(BEGIN_TIME-86400000L, previous.getBeginTimes()[0]);
+        Assert.assertEquals(12.0, previous.getValue(0, 1, 0), DELTA);
+        Assert.assertEquals(20.0, previous.getTotals()[0], DELTA);
+
+        // The result is written in the same form as the response
+        Gson gson = GsonRegistry.getGson();
+        QueryResult copy = gson.fromJson(gson.toJson(result), QueryResult.class);
+        Assert.assertEquals(12.0, copy.getPrevious().getValue(0, 1, 0), DELTA);
+        Assert.assertEquals(20.0, copy.getValue(0, 1, 0), DELTA);
+
+        logger.info("Completed test: "+testName);
+    }
+
+    private QueryResult read(String name) throws IOException
+    {
+        Reader reader = new InputStreamReader(getClass().getResourceAsStream("/insights/"+name), "UTF-8");
+        try
+        {
+            return GsonRegistry.getGson().fromJson(reader, QueryResult.class);
+        }
+        finally
+        {
+            reader.close();
+        }
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright 2018 Gerald Curley
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.opsmatters.newrelic.api.model.metrics;
+
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+import org.junit.Test;
+import junit.framework.Assert;
+import com.google.gson.Gson;
+import com.opsmatters.newrelic.api.httpclient.GsonRegistry;
+
+/**
+ * The set of tests used for metric data held in columns of primitive values.
+ *
+ * @author Gerald Curley (opsmatters)
+ */
+public class MetricSeriesTest
+{
+    private static final Logger logger = Logger.getLogger(MetricSeriesTest.class.getName());
+
+    // The second metric has a value that is missing from its first timeslice
+    private static final String METRIC_DATA = "{\"metric_data\":{"
+        +"\"from\":\"2018-03-01T10:00:00+00:00\",\"to\":\"2018-03-01T10:03:00+00:00\","
+        +"\"metrics_not_found\":[\"Missing\"],\"metrics_found\":[\"HttpDispatcher\",\"Apdex\"],"
+        +"\"metrics\":["
+        +"{\"name\":\"HttpDispatcher\",\"timeslices\":["
+        +"{\"from\":\"2018-03-01T10:00:00+00:00\",\"to\":\"2018-03-01T10:01:00+00:00\",\"values\":{\"average_response_time\":12.5,\"call_count\":40}},"
+        +"{\"from\":\"2018-03-01T10:01:00+00:00\",\"to\":\"2018-03-01T10:02:00+00:00\",\"values\":{\"average_response_time\":9,\"call_count\":31}},"
+        +"{\"from\":\"2018-03-01T10:02:00+00:00\",\"to\":\"2018-03-01T10:03:00+00:00\",\"values\":{\"average_response_time\":10.25,\"call_count\":0}}]},"
+        +"{\"name\":\"Apdex\",\"timeslices\":["
+        +"{\"from\":\"2018-03-01T10:00:00+00:00\",\"to\":\"2018-03-01T10:01:00+00:00\",\"values\":{\"score\":0.5}},"
+        +"{\"from\":\"2018-03-01T10:01:00+00:00\",\"to\":\"2018-03-01T10:02:00+00:00\",\"values\":{\"score\":0.75,\"threshold\":0.5}},"
+        +"{\"from\":\"2018-03-01T10:02:00+00:00\",\"to\":\"2018-03-01T10:03:00+00:00\",\"values\":{\"score\":1.0,\"threshold\":0.5}}]}"
+        +"]}}";
+
+    private static final long START = 1519898400000L; // 2018-03-01T10:00:00Z
+
+    @Test
+    public void testDecode()
+    {
+        String testName = "MetricSeriesDecodeTest";
+        logger.info("Starting test: "+testName);
+
+        Gson gson = GsonRegistry.getGson();
+        MetricSeriesData data = gson.fromJson(METRIC_DATA, MetricSeriesData.class);
+        Assert.assertEquals(START, data.getFrom().getTime());
+        Assert.assertEquals(START+180000L, data.getTo().getTime());
+        Assert.assertEquals(2, data.getMetricsFound().size());
+        Assert.assertEquals("Missing", data.getMetricsNotFound().get(0));
+        Assert.assertEquals(2, data.getMetrics().size());
+        Assert.assertNull(data.getMetric("Missing"));
+
+        MetricSeries dispatcher = data.getMetric("HttpDispatcher");
+        Assert.assertEquals(3, dispatcher.size());
+        for(int i = 0; i < dispatcher.size(); i++)
+        {
+            Assert.assertEquals(START+i*60000L, dispatcher.getFrom(i));
+            Assert.assertEquals(START+(i+1)*60000L, dispatcher.getTo(i));
+        }
+        Assert.assertEquals(12.5d, dispatcher.getValue("average_response_time", 0));
+        Assert.assertEquals(31.0d, dispatcher.getValue("call_count", 1));
+        Assert.assertEquals(0.0d, dispatcher.getValue("call_count", 2));
+        Assert.assertTrue(Double.isNaN(dispatcher.getValue("missing_value", 0)));
+        Assert.assertNull(dispatcher.getValues("missing_value"));
+
+        // A value that first appears in a later timeslice is NaN for the earlier ones
+        MetricSeries apdex = data.getMetric("Apdex");
+        double[] threshold = apdex.getValues("threshold");
+        Assert.assertEquals(3, threshold.length);
+        Assert.assertTrue(Double.isNaN(threshold[0]));
+        Assert.assertEquals(0.5d, threshold[1]);
+        Assert.assertEquals(2, apdex.getValueNames().size());
+
+        // The columns should hold the same values as the timeslice object model
+        MetricData expected = gson.fromJson(METRIC_DATA, MetricData.class);
+        assertSame(expected, data.toMetricData());
+
+        logger.info("Completed test: "+testName);
+    }
+
+    @Test
+    public void testWrite()
+    {
+        String testName = "MetricSeriesWriteTest";
+        logger.info("Starting test: "+testName);
+
+        // The written metric data should read back to the same columns
+        Gson gson = GsonRegistry.getGson();
+        MetricSeriesData data = gson.fromJson(METRIC_DATA, MetricSeriesData.class);
+        MetricSeriesData copy = gson.fromJson(gson.toJson(data), MetricSeriesData.class);
+        Assert.assertEquals(data.getFrom(), copy.getFrom());
+        Assert.assertEquals(data.getTo(), copy.getTo());
+        assertSame(data.toMetricData(), copy.toMetricData());
+
+        logger.info("Completed test: "+testName);
+    }
+
+    @Test
+    public void testConversion()
+    {
+        String testName = "MetricSeriesConversionTest";
+        logger.info("Starting test: "+testName);
+
+        MetricTimeslices timeslices = new MetricTimeslices();
+        timeslices.setName("Custom/Queue");
+        for(int i = 0; i < 4; i++)
+        {
+            MetricTimeslice timeslice = new MetricTimeslice();
+            timeslice.setFrom(new Date(START+i*1000L));
+            timeslice.setTo(new Date(START+(i+1)*1000L));
+            timeslice.getValues().put("depth", i);
+            if(i%2 == 1)
+                timeslice.getValues().put("max_depth", i*2.0d);
+            timeslice.getValues().put("state", "ok"); // Not a number, so left out
+            timeslices.getTimeslices().add(timeslice);
+        }
+
+        MetricSeries series = MetricSeries.fromTimeslices(timeslices);
+        Assert.assertEquals("Custom/Queue", series.getName());
+        Assert.assertEquals(4, series.size());
+        Assert.assertEquals(2, series.getValueNames().size());
+        Assert.assertNull(series.getValues("state"));
+        Assert.assertEquals(3.0d, series.getValue("depth", 3));
+        Assert.assertTrue(Double.isNaN(series.getValue("max_depth", 2)));
+        Assert.assertEquals(6.0d, series.getValue("max_depth", 3));
+
+        // The NaN values are left out when converted back to timeslices
+        MetricTimeslices converted = series.toTimeslices();
+        Assert.assertEquals(4, converted.getTimeslices().size());
+        Assert.assertEquals(1, converted.getTimeslices().get(0).getValues().size());
+        Assert.assertEquals(2, converted.getTimeslices().get(1).getValues().size());
+        Assert.assertEquals(START+3000L, converted.getTimeslices().get(3).getFrom().getTime());
+
+        logger.info("Completed test: "+testName);
+    }
+
+    @Test
+    public void testLengths()
+    {
+        Map<String,double[]> values = new LinkedHashMap<String,double[]>();
+        values.put("count", new double[2]);
+        new MetricSeries("Metric", new long[2], new long[2], values);
+
+        try
+        {
+            new MetricSeries("Metric", new long[2], new long[3], values);
+            Assert.fail("Expected mismatched from and to to be rejected");
+        }
+        catch(IllegalArgumentException e)
+        {
+        }
+
+        values.put("total", new double[3]);
+        try
+        {
+            new MetricSeries("Metric", new long[2], new long[2], values);
+            Assert.fail("Expected a mismatched column to be rejected");
+        }
+        catch(IllegalArgumentException e)
+        {
+        }
+    }
+
+    /**
+     * Asserts that the two sets of metric data have the same timeslices and numeric values.
+     */
+    private void assertSame(MetricData expected, MetricData actual)
+    {
+        List<MetricTimeslices> metrics = actual.getMetrics();
+        Assert.assertEquals(expected.getMetrics().size(), metrics.size());
+        for(int m = 0; m < metrics.size(); m++)
+        {
+            MetricTimeslices e = expected.getMetrics().get(m);
+            MetricTimeslices a = metrics.get(m);
+            Assert.assertEquals(e.getName(), a.getName());
+            Assert.assertEquals(e.getTimeslices().size(), a.getTimeslices().size());
+            for(int i = 0; i < a.getTimeslices().size(); i++)
+            {
+                MetricTimeslice et = e.getTimeslices().get(i);
+                MetricTimeslice at = a.getTimeslices().get(i);
+                Assert.assertEquals(et.getFrom(), at.getFrom());
+                Assert.assertEquals(et.getTo(), at.getTo());
+                Assert.assertEquals(et.getValues().keySet(), at.getValues().keySet());
+                for(Map.Entry<String,Object> entry : et.getValues().entrySet())
+                {
+                    Assert.assertEquals(((Number)entry.getValue()).doubleValue(),
+                        ((Number)at.getValues().get(entry.getKey())).doubleValue());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2018 Gerald Curley
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.opsmatters.newrelic.api.model.plugins;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.logging.Logger;
+
+/**
+ * Compares the time taken to record a value with 16 contending threads in a metric aggregator
+ * against a timeslice updated while holding a lock.
+ * <P>
+ * This is not run as part of the unit tests, run it with:
+ * <PRE>mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.opsmatters.newrelic.api.model.plugins.MetricAggregatorBenchmark</PRE>
+ *
+ * @author Gerald Curley (opsmatters)
+ */
+public class MetricAggregatorBenchmark
+{
+    private static final Logger logger = Logger.getLogger(MetricAggregatorBenchmark.class.getName());
+
+    private static final int THREADS = 16;
+    private static final int VALUES = 200000;
+    private static final int WARMUPS = 3;
+    private static final int ITERATIONS = 10;
+
+    public static void main(String[] args) throws InterruptedException
+    {
+        final MetricAggregator aggregator = new MetricAggregator();
+        final LockedTimeslice locked = new LockedTimeslice();
+        Recorder striped = new Recorder()
+        {
+            public void record(int i)
+            {
+                aggregator.record(i);
+            }
+        };
+        Recorder synced = new Recorder()
+        {
+            public void record(int i)
+            {
+                locked.record(i);
+            }
+        };
+
+        for(int i = 0; i < WARMUPS; i++)
+        {
+            run(striped);
+            run(synced);
+        }
+
+        long stripedTime = 0L, syncedTime = 0L;
+        for(int i = 0; i < ITERATIONS; i++)
+        {
+            stripedTime += run(striped);
+            syncedTime += run(synced);
+            aggregator.getThenReset();
+        }
+
+        long values = (long)THREADS*VALUES*ITERATIONS;
+        logger.info(THREADS+" threads: record() striped="+stripedTime/values
+            +"ns synchronized="+syncedTime/values+"ns");
+    }
+
+    /**
+     * Runs the given recorder on each thread, and returns the elapsed time in nanoseconds.
+     */
+    private static long run(final Recorder recorder) throws InterruptedException
+    {
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread[] workers = new Thread[THREADS];
+        for(int t = 0; t < THREADS; t++)
+        {
+            workers[t] = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        start.await();
+                    }
+                    catch(InterruptedException e)
+                    {
+                        return;
+                    }
+                    for(int i = 0; i < VALUES; i++)
+                        recorder.record(i);
+                }
+            };
+            workers[t].start();
+        }
+
+        long ret = System.nanoTime();
+        start.countDown();
+        for(Thread worker : workers)
+            worker.join();
+        return System.nanoTime()-ret;
+    }
+
+    private interface Recorder
+    {
+        void record(int i);
+    }
+
+    /**
+     * A timeslice that is updated while holding a lock, for comparison.
+     */
+    private static class LockedTimeslice
+    {
+        private long count;
+        private double total, min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY, sumOfSquares;
+
+        synchronized void record(double value)
+        {
+            ++count;
+            total += value;
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+            sumOfSquares += value*value;
+        }
+    }
+}
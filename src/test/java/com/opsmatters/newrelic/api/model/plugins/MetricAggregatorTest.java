@@ -0,0 +1,217 @@
+/*
+ * Copyright 2018 Gerald Curley
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.opsmatters.newrelic.api.model.plugins;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+import org.junit.Test;
+import junit.framework.Assert;
+
+/**
+ * The set of tests used for the aggregation of plugin metrics.
+ * <P>
+ * See {@link MetricAggregatorBenchmark} for the timings with contending threads.
+ *
+ * @author Gerald Curley (opsmatters)
+ */
+public class MetricAggregatorTest
+{
+    private static final Logger logger = Logger.getLogger(MetricAggregatorTest.class.getName());
+
+    private static final int THREADS = 16;
+    private static final int VALUES = 200000;
+
+    @Test
+    public void testAggregation() throws InterruptedException
+    {
+        String testName = "MetricAggregationTest";
+        logger.info("Starting test: "+testName);
+
+        final MetricAggregator aggregator = new MetricAggregator();
+        Assert.assertNull(aggregator.getThenReset());
+
+        // Take timeslices while the values are being recorded, none of the values should be lost
+        final AtomicBoolean done = new AtomicBoolean(false);
+        final double[] harvested = new double[2];
+        Thread harvester = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                while(!done.get())
+                    add(harvested, aggregator.getThenReset());
+            }
+        };
+        harvester.start();
+
+        run(THREADS, new Recorder()
+        {
+            public void record(int thread, int i)
+            {
+                aggregator.record(i%10);
+            }
+        });
+
+        done.set(true);
+        harvester.join();
+        add(harvested, aggregator.getThenReset());
+        Assert.assertEquals((double)THREADS*VALUES, harvested[0]);
+        Assert.assertEquals(THREADS*(VALUES/10)*45.0d, harvested[1]);
+
+        // The timeslice should have the count, total, minimum, maximum and sum of squares
+        aggregator.record(2.0d);
+        aggregator.record(4.0d);
+        MetricTimeslice<Double> timeslice = aggregator.getThenReset();
+        Assert.assertEquals(2.0d, timeslice.getCount());
+        Assert.assertEquals(6.0d, timeslice.getTotal());
+        Assert.assertEquals(2.0d, timeslice.getMin());
+        Assert.assertEquals(4.0d, timeslice.getMax());
+        Assert.assertEquals(20.0d, timeslice.getSumOfSquares());
+        Assert.assertEquals(0L, aggregator.getCount());
+
+        // A timeslice added back should be merged with the new values
+        aggregator.add(timeslice);
+        aggregator.record(1.0d);
+        timeslice = aggregator.getThenReset();
+        Assert.assertEquals(3.0d, timeslice.getCount());
+        Assert.assertEquals(1.0d, timeslice.getMin());
+
+        Component component = new Component();
+        component.addMetricThenReset("Component/Empty[units]", aggregator);
+        Assert.assertTrue(component.getMetrics().isEmpty());
+        aggregator.record(5.0d);
+        component.addMetricThenReset("Component/Value[units]", aggregator);
+        Assert.assertEquals(1, component.getMetrics().size());
+        Assert.assertEquals(0L, aggregator.getCount());
+
+        logger.info("Completed test: "+testName);
+    }
+
+    @Test
+    public void testConsistency() throws InterruptedException
+    {
+        String testName = "MetricAggregatorConsistencyTest";
+        logger.info("Starting test: "+testName);
+
+        // Every field of a value should be in the same timeslice
+        final MetricAggregator aggregator = new MetricAggregator();
+        final AtomicBoolean done = new AtomicBoolean(false);
+        final AtomicInteger split = new AtomicInteger();
+        final double[] harvested = new double[2];
+        Thread harvester = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                while(!done.get())
+                {
+                    MetricTimeslice<Double> timeslice = aggregator.getThenReset();
+                    if(timeslice != null)
+                    {
+                        add(harvested, timeslice);
+                        if(!timeslice.getTotal().equals(timeslice.getCount())
+                            || !timeslice.getSumOfSquares().equals(timeslice.getCount())
+                            || timeslice.getMin() == null || timeslice.getMin() != 1.0d
+                            || timeslice.getMax() == null || timeslice.getMax() != 1.0d)
+                        {
+                            split.incrementAndGet();
+                        }
+                    }
+                }
+            }
+        };
+        harvester.start();
+
+        run(THREADS, new Recorder()
+        {
+            public void record(int thread, int i)
+            {
+                aggregator.record(1.0d);
+            }
+        });
+
+        done.set(true);
+        harvester.join();
+        add(harvested, aggregator.getThenReset());
+        Assert.assertEquals(0, split.get());
+        Assert.assertEquals((double)THREADS*VALUES, harvested[0]);
+
+        // The minimum and maximum are not made up when they are not known
+        MetricTimeslice<Double> timeslice = new MetricTimeslice<Double>();
+        timeslice.setCount(2.0d);
+        timeslice.setTotal(4.0d);
+        timeslice.setSumOfSquares(8.0d);
+        aggregator.add(timeslice);
+        timeslice = aggregator.getThenReset();
+        Assert.assertEquals(2.0d, timeslice.getCount());
+        Assert.assertNull(timeslice.getMin());
+        Assert.assertNull(timeslice.getMax());
+
+        logger.info("Completed test: "+testName);
+    }
+
+    /**
+     * Runs the given recorder on the given number of threads.
+     */
+    private void run(int threads, final Recorder recorder) throws InterruptedException
+    {
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread[] workers = new Thread[threads];
+        for(int t = 0; t < threads; t++)
+        {
+            final int thread = t;
+            workers[t] = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        start.await();
+                    }
+                    catch(InterruptedException e)
+                    {
+                        return;
+                    }
+                    for(int i = 0; i < VALUES; i++)
+                        recorder.record(thread, i);
+                }
+            };
+            workers[t].start();
+        }
+
+        start.countDown();
+        for(Thread worker : workers)
+            worker.join();
+    }
+
+    private void add(double[] harvested, MetricTimeslice<Double> timeslice)
+    {
+        if(timeslice != null)
+        {
+            harvested[0] += timeslice.getCount();
+            harvested[1] += timeslice.getTotal();
+        }
+    }
+
+    private interface Recorder
+    {
+        void record(int thread, int i);
+    }
+}
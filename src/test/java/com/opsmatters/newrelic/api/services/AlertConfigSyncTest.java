@@ -0,0 +1,231 @@
+/*
+ * Copyright 2018 Gerald Curley
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.opsmatters.newrelic.api.services;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.logging.Logger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import junit.framework.Assert;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import com.opsmatters.newrelic.api.NewRelicApi;
+import com.opsmatters.newrelic.api.httpclient.ApiKeyHttpClientProvider;
+import com.opsmatters.newrelic.api.model.alerts.conditions.AlertCondition;
+import com.opsmatters.newrelic.api.model.alerts.conditions.ApmAppAlertCondition;
+import com.opsmatters.newrelic.api.model.alerts.conditions.Term;
+import com.opsmatters.newrelic.api.model.alerts.policies.AlertPolicy;
+
+/**
+ * The set of tests used for planning the alert configuration changes, using a local stub server.
+ *
+ * @author Gerald Curley (opsmatters)
+ */
+public class AlertConfigSyncTest
+{
+    private static final Logger logger = Logger.getLogger(AlertConfigSyncTest.class.getName());
+
+    private static final String CONDITION = "{\"id\":%d,\"type\":\"apm_app_metric\",\"name\":\"%s\",\"enabled\":true,"
+        +"\"entities\":[\"123\"],\"metric\":\"apdex\",\"condition_scope\":\"application\",\"terms\":["
+        +"{\"duration\":\"10\",\"operator\":\"above\",\"priority\":\"warning\",\"threshold\":\"0.5\",\"time_function\":\"all\"},"
+        +"{\"duration\":\"10\",\"operator\":\"above\",\"priority\":\"critical\",\"threshold\":\"%s\",\"time_function\":\"all\"}]}";
+
+    private HttpServer server;
+
+    @Before
+    public void startServer() throws IOException
+    {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/v2/alerts_policies.json", new HttpHandler()
+        {
+            public void handle(HttpExchange exchange) throws IOException
+            {
+                send(exchange, "{\"policies\":[{\"id\":1,\"name\":\"policy1\",\"incident_preference\":\"PER_POLICY\"}]}");
+            }
+        });
+        server.createContext("/v2/alerts_channels.json", new HttpHandler()
+        {
+            public void handle(HttpExchange exchange) throws IOException
+            {
+                send(exchange, "{\"channels\":[]}");
+            }
+        });
+
+        // Serve the APM conditions of the policy two per page
+        server.createContext("/v2/alerts_conditions.json", new HttpHandler()
+        {
+            public void handle(HttpExchange exchange) throws IOException
+            {
+                String query = exchange.getRequestURI().getQuery();
+                Assert.assertTrue(query.contains("policy_id=1"));
+                int page = query.contains("page=") ? Integer.parseInt(query.replaceAll(".*page=(\\d+).*", "$1")) : 1;
+                String base = "http://localhost:"+server.getAddress().getPort()+"/v2/alerts_conditions.json?policy_id=1&page=";
+                String link = (page < 2 ? "<"+base+(page+1)+">; rel=\"next\", " : "")+"<"+base+2+">; rel=\"last\"";
+                exchange.getResponseHeaders().add("Link", link);
+                if(page == 1)
+                    send(exchange, "{\"conditions\":["+String.format(CONDITION, 11, "condition1", "1")+","
+                        +String.format(CONDITION, 12, "condition2", "1")+"]}");
+                else
+                    send(exchange, "{\"conditions\":["+String.format(CONDITION, 13, "condition3", "1")+"]}");
+            }
+        });
+
+        for(final String type : new String[]{"nrql", "external_service", "synthetics", "plugins"})
+        {
+            server.createContext("/v2/alerts_"+type+"_conditions.json", new HttpHandler()
+            {
+                public void handle(HttpExchange exchange) throws IOException
+                {
+                    send(exchange, "{\""+type+"_conditions\":[]}");
+                }
+            });
+        }
+
+        server.start();
+    }
+
+    @After
+    public void stopServer()
+    {
+        server.stop(0);
+    }
+
+    @Test
+    public void testDiff()
+    {
+        String testName = "AlertConfigSyncDiffTest";
+        logger.info("Starting test: "+testName);
+
+        // The order of the terms and the fields not set in the desired terms are not compared
+        AlertCondition current = getCondition("condition1", "1", "0.5");
+        current.setId(11L);
+        AlertCondition desired = getCondition("condition1", "1", "0.5");
+        desired.getTerms().get(0).setTimeFunction((String)null);
+        Collections.reverse(desired.getTerms());
+        Assert.assertTrue(AlertConfigSync.diff(desired, current).isEmpty());
+
+        // A different value in one of the terms is reported as a change to the terms
+        desired = getCondition("condition1", "2", "0.5");
+        Assert.assertEquals("[terms]", AlertConfigSync.diff(desired, current).toString());
+
+        // A missing term is a change
+        desired.getTerms().remove(1);
+        desired.getTerms().get(0).setThreshold("1");
+        Assert.assertEquals("[terms]", AlertConfigSync.diff(desired, current).toString());
+
+        // Only the fields set in the desired object are compared
+        desired = getCondition("condition1", "1", "0.5");
+        desired.setRunbookUrl("http://runbook");
+        desired.setEnabled(false);
+        List<String> fields = AlertConfigSync.diff(desired, current);
+        Assert.assertEquals(2, fields.size());
+        Assert.assertTrue(fields.contains("runbook_url"));
+        Assert.assertTrue(fields.contains("enabled"));
+
+        logger.info("Completed test: "+testName);
+    }
+
+    @Test
+    public void testPlan()
+    {
+        String testName = "AlertConfigSyncPlanTest";
+        logger.info("Starting test: "+testName);
+
+        AlertConfigSync sync = new AlertConfigSync(getApi());
+        AlertPolicy policy1 = AlertPolicy.builder().name("policy1").perPolicyIncidentPreference().build();
+        AlertPolicy policy2 = AlertPolicy.builder().name("policy2").perPolicyIncidentPreference().build();
+
+        // The conditions on the second page of the policy are matched too
+        AlertConfigSync.Plan plan = sync.plan(Arrays.asList(
+            new AlertConfigSync.PolicyConfig(policy1)
+                .condition(getCondition("condition1", "1", "0.5"))
+                .condition(getCondition("condition3", "2", "0.5")),
+            new AlertConfigSync.PolicyConfig(policy2)
+                .condition(getCondition("condition1", "1", "0.5"))));
+
+        List<AlertConfigSync.Change> changes = plan.getChanges("policy1");
+        Assert.assertEquals(plan.toString(), 2, changes.size());
+        Assert.assertEquals(AlertConfigSync.Change.Action.UPDATE, changes.get(0).getAction());
+        Assert.assertEquals("condition3", changes.get(0).getName());
+        Assert.assertEquals("[terms]", changes.get(0).getFields().toString());
+        Assert.assertEquals(AlertConfigSync.Change.Action.DELETE, changes.get(1).getAction());
+        Assert.assertEquals("condition2", changes.get(1).getName());
+
+        changes = plan.getChanges("policy2");
+        Assert.assertEquals(plan.toString(), 2, changes.size());
+        Assert.assertEquals(AlertConfigSync.Change.Action.CREATE, changes.get(0).getAction());
+        Assert.assertEquals("policy", changes.get(0).getType());
+        Assert.assertEquals(AlertConfigSync.Change.Action.CREATE, changes.get(1).getAction());
+        Assert.assertEquals("condition1", changes.get(1).getName());
+
+        // No changes are needed when the desired conditions are the same
+        plan = sync.plan(Collections.singletonList(
+            new AlertConfigSync.PolicyConfig(policy1)
+                .condition(getCondition("condition1", "1", "0.5"))
+                .condition(getCondition("condition2", "1", "0.5"))
+                .condition(getCondition("condition3", "1", "0.5"))));
+        Assert.assertTrue(plan.toString(), plan.isEmpty());
+
+        logger.info("Completed test: "+testName);
+    }
+
+    private AlertCondition getCondition(String name, String critical, String warning)
+    {
+        return ApmAppAlertCondition.builder()
+            .name(name)
+            .metric(ApmAppAlertCondition.Metric.APDEX)
+            .applicationConditionScope()
+            .addEntity(123L)
+            .addTerm(Term.builder().duration(Term.Duration.MINUTES_10).criticalPriority()
+                .aboveOperator().allTimeFunction().threshold(critical).build())
+            .addTerm(Term.builder().duration(Term.Duration.MINUTES_10).warningPriority()
+                .aboveOperator().allTimeFunction().threshold(warning).build())
+            .enabled(true)
+            .build();
+    }
+
+    private NewRelicApi getApi()
+    {
+        return new NewRelicApi("localhost", server.getAddress().getPort(),
+            new ApiKeyHttpClientProvider("test")
+            {
+                @Override
+                public boolean useSsl()
+                {
+                    return false;
+                }
+            });
+    }
+
+    private void send(HttpExchange exchange, String body) throws IOException
+    {
+        byte[] bytes = body.getBytes("UTF-8");
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, bytes.length);
+        OutputStream os = exchange.getResponseBody();
+        os.write(bytes);
+        os.close();
+    }
+}
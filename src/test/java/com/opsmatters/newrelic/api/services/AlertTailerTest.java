@@ -0,0 +1,300 @@
+/*
+ * Copyright 2018 Gerald Curley
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.opsmatters.newrelic.api.services;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import junit.framework.Assert;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import com.opsmatters.newrelic.api.NewRelicApi;
+import com.opsmatters.newrelic.api.httpclient.ApiKeyHttpClientProvider;
+import com.opsmatters.newrelic.api.model.alerts.AlertEvent;
+
+/**
+ * The set of tests used for tailing the alert events, using a local stub server.
+ *
+ * @author Gerald Curley (opsmatters)
+ */
+public class AlertTailerTest
+{
+    private static final Logger logger = Logger.getLogger(AlertTailerTest.class.getName());
+
+    private static final int PAGE_SIZE = 2;
+    private static final long OVERLAP = 10000L;
+
+    private HttpServer server;
+    private long now = System.currentTimeMillis();
+    private List<long[]> events = new CopyOnWriteArrayList<long[]>();
+    private AtomicInteger pages = new AtomicInteger();
+    private long nextId = 1L;
+    private volatile int failedPage = 0;
+    private volatile long arrival = 0L;
+
+    @Before
+    public void startServer() throws IOException
+    {
+        // Serve the events newest first, two per page
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/v2/alerts_events.json", new HttpHandler()
+        {
+            public void handle(HttpExchange exchange) throws IOException
+            {
+                pages.incrementAndGet();
+                String query = exchange.getRequestURI().getQuery();
+                int page = query != null && query.contains("page=") ? Integer.parseInt(query.replaceAll(".*page=(\\d+).*", "$1")) : 1;
+                if(page == failedPage)
+                {
+                    exchange.sendResponseHeaders(500, -1);
+                    exchange.close();
+                    return;
+                }
+
+                // An event that arrives after the first page is served moves the later events onto the next page
+                if(page > 1 && arrival > 0L)
+                {
+                    addEvent(arrival);
+                    arrival = 0L;
+                }
+
+                List<long[]> sorted = new ArrayList<long[]>(events);
+                Collections.sort(sorted, new Comparator<long[]>()
+                {
+                    public int compare(long[] e1, long[] e2)
+                    {
+                        return Long.compare(e2[1], e1[1]);
+                    }
+                });
+
+                int last = Math.max((sorted.size()+PAGE_SIZE-1)/PAGE_SIZE, 1);
+                StringBuilder body = new StringBuilder("{\"recent_events\":[");
+                for(int i = (page-1)*PAGE_SIZE; i < Math.min(page*PAGE_SIZE, sorted.size()); i++)
+                {
+                    if(i > (page-1)*PAGE_SIZE)
+                        body.append(",");
+                    body.append("{\"id\":").append(sorted.get(i)[0])
+                        .append(",\"event_type\":\"VIOLATION_OPEN\",\"timestamp\":").append(sorted.get(i)[1]).append("}");
+                }
+                body.append("]}");
+
+                String base = "http://localhost:"+server.getAddress().getPort()+"/v2/alerts_events.json?page=";
+                String link = (page < last ? "<"+base+(page+1)+">; rel=\"next\", " : "")+"<"+base+last+">; rel=\"last\"";
+                exchange.getResponseHeaders().add("Link", link);
+                send(exchange, body.toString());
+            }
+        });
+        server.start();
+    }
+
+    @After
+    public void stopServer()
+    {
+        server.stop(0);
+    }
+
+    @Test
+    public void testCursor()
+    {
+        String testName = "AlertTailerCursorTest";
+        logger.info("Starting test: "+testName);
+
+        // Only the events since the start are passed on, oldest first
+        for(int i = 0; i < 10; i++)
+            addEvent(now-100000L-i*1000L);
+        addEvent(now-3000L);
+        addEvent(now-2000L);
+        addEvent(now-1000L);
+        List<AlertEvent> received = new ArrayList<AlertEvent>();
+        AlertTailer tailer = getTailer(received, now-5000L);
+        Assert.assertEquals(3, tailer.poll());
+        Assert.assertEquals(now-3000L, received.get(0).getTimestamp().longValue());
+        Assert.assertEquals(now-1000L, received.get(2).getTimestamp().longValue());
+        Assert.assertTrue(tailer.getEventMark() >= now-1000L);
+
+        // The pages older than the window are not requested
+        Assert.assertEquals(2, pages.get());
+
+        // The mark moves forward with the new events
+        addEvent(now+1000L);
+        Assert.assertEquals(1, tailer.poll());
+        Assert.assertEquals(4, received.size());
+        Assert.assertEquals(now+1000L, tailer.getEventMark());
+
+        logger.info("Completed test: "+testName);
+    }
+
+    @Test
+    public void testDedupe()
+    {
+        String testName = "AlertTailerDedupeTest";
+        logger.info("Starting test: "+testName);
+
+        // The events within the overlap are passed on only once
+        addEvent(now-2000L);
+        addEvent(now-1000L);
+        List<AlertEvent> received = new ArrayList<AlertEvent>();
+        AlertTailer tailer = getTailer(received, now-5000L);
+        Assert.assertEquals(2, tailer.poll());
+        Assert.assertEquals(0, tailer.poll());
+
+        // An event that arrives late within the overlap is still passed on
+        addEvent(now-1500L);
+        Assert.assertEquals(1, tailer.poll());
+        Assert.assertEquals(0, tailer.poll());
+        Assert.assertEquals(3, received.size());
+        Assert.assertEquals(3L, received.get(2).getId().longValue());
+
+        logger.info("Completed test: "+testName);
+    }
+
+    @Test
+    public void testShiftedPage()
+    {
+        String testName = "AlertTailerShiftedPageTest";
+        logger.info("Starting test: "+testName);
+
+        // An event that moves onto the next page during a poll is passed on only once
+        addEvent(now-4000L);
+        addEvent(now-3000L);
+        addEvent(now-2000L);
+        addEvent(now-1000L);
+        arrival = now-500L;
+        List<AlertEvent> received = new ArrayList<AlertEvent>();
+        AlertTailer tailer = getTailer(received, now-5000L, true);
+        Assert.assertEquals(4, tailer.poll());
+        Assert.assertEquals(4, received.size());
+        Assert.assertEquals(now-4000L, received.get(0).getTimestamp().longValue());
+        Assert.assertEquals(now-1000L, received.get(3).getTimestamp().longValue());
+
+        // The event that arrived is passed on by the next poll
+        Assert.assertEquals(1, tailer.poll());
+        Assert.assertEquals(now-500L, received.get(4).getTimestamp().longValue());
+
+        logger.info("Completed test: "+testName);
+    }
+
+    @Test
+    public void testMissingPage()
+    {
+        String testName = "AlertTailerMissingPageTest";
+        logger.info("Starting test: "+testName);
+
+        // A page that is not returned leaves the mark unchanged, even when exceptions are not thrown
+        for(int i = 0; i < 6; i++)
+            addEvent(now-60000L+i*1000L);
+        List<AlertEvent> received = new ArrayList<AlertEvent>();
+        AlertTailer tailer = getTailer(received, now-120000L, false);
+        failedPage = 2;
+        Assert.assertEquals(0, tailer.poll());
+        Assert.assertEquals(0, received.size());
+        Assert.assertEquals(-1L, tailer.getEventMark());
+
+        // The same window is requested again once the page is returned
+        failedPage = 0;
+        Assert.assertEquals(6, tailer.poll());
+        Assert.assertEquals(now-60000L, received.get(0).getTimestamp().longValue());
+
+        logger.info("Completed test: "+testName);
+    }
+
+    @Test
+    public void testRestart()
+    {
+        String testName = "AlertTailerRestartTest";
+        logger.info("Starting test: "+testName);
+
+        // A tailer restarted from a saved mark only passes on the events from the mark less the overlap
+        addEvent(now-60000L);
+        addEvent(now-30000L);
+        addEvent(now-1000L);
+        List<AlertEvent> received = new ArrayList<AlertEvent>();
+        AlertTailer tailer = getTailer(received, now-120000L);
+        Assert.assertEquals(3, tailer.poll());
+        long mark = tailer.getEventMark();
+
+        addEvent(now+1000L);
+        received.clear();
+        tailer = getTailer(received, now-120000L);
+        tailer.setEventMark(mark);
+        Assert.assertEquals(mark, tailer.getEventMark());
+        tailer.poll();
+        Assert.assertEquals(now+1000L, received.get(received.size()-1).getTimestamp().longValue());
+        for(AlertEvent event : received)
+            Assert.assertTrue(event.getTimestamp() >= mark-OVERLAP);
+        Assert.assertTrue(received.size() <= 2);
+
+        logger.info("Completed test: "+testName);
+    }
+
+    private AlertTailer getTailer(List<AlertEvent> received, long since)
+    {
+        return getTailer(received, since, true);
+    }
+
+    private AlertTailer getTailer(final List<AlertEvent> received, long since, boolean handleErrors)
+    {
+        NewRelicApi api = new NewRelicApi("localhost", server.getAddress().getPort(),
+            new ApiKeyHttpClientProvider("test")
+            {
+                @Override
+                public boolean useSsl()
+                {
+                    return false;
+                }
+            });
+        api.setHandleErrors(handleErrors);
+        return AlertTailer.builder(api)
+            .since(since)
+            .overlap(OVERLAP)
+            .eventListener(new AlertTailer.Listener<AlertEvent>()
+            {
+                public void received(AlertEvent event)
+                {
+                    received.add(event);
+                }
+            })
+            .build();
+    }
+
+    private synchronized void addEvent(long timestamp)
+    {
+        events.add(new long[]{nextId++, timestamp});
+    }
+
+    private void send(HttpExchange exchange, String body) throws IOException
+    {
+        byte[] bytes = body.getBytes("UTF-8");
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, bytes.length);
+        OutputStream os = exchange.getResponseBody();
+        os.write(bytes);
+        os.close();
+    }
+}
@@ -0,0 +1,311 @@
+/*
+ * Copyright 2018 Gerald Curley
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.opsmatters.newrelic.api.services;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import junit.framework.Assert;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import com.opsmatters.newrelic.api.NewRelicApi;
+import com.opsmatters.newrelic.api.exceptions.ErrorResponseException;
+import com.opsmatters.newrelic.api.httpclient.ApiKeyHttpClientProvider;
+import com.opsmatters.newrelic.api.model.alerts.conditions.AlertCondition;
+import com.opsmatters.newrelic.api.model.metrics.MetricData;
+import com.opsmatters.newrelic.api.util.BatchResult;
+
+/**
+ * The set of tests used for batches of calls made for a set of entities, using a local stub server.
+ *
+ * @author Gerald Curley (opsmatters)
+ */
+public class BatchFetcherTest
+{
+    private static final Logger logger = Logger.getLogger(BatchFetcherTest.class.getName());
+
+    private static final String METRIC_DATA = "{\"metric_data\":{\"metrics_found\":[\"Apdex\"],"
+        +"\"metrics\":[{\"name\":\"Apdex\",\"timeslices\":[]}]}}";
+
+    private static final String CONDITION = "{\"condition\":{\"id\":5,\"type\":\"apm_app_metric\",\"name\":\"condition1\"}}";
+
+    private HttpServer server;
+    private AtomicInteger requests = new AtomicInteger();
+    private AtomicInteger inFlight = new AtomicInteger();
+    private AtomicInteger maxInFlight = new AtomicInteger();
+    private List<String> queries = new CopyOnWriteArrayList<String>();
+    private volatile long delay = 20L;
+
+    @Before
+    public void startServer() throws IOException
+    {
+        // Applications with an id that is a multiple of 10 have been deleted
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/v2/applications", new HttpHandler()
+        {
+            public void handle(HttpExchange exchange) throws IOException
+            {
+                requests.incrementAndGet();
+                int current = inFlight.incrementAndGet();
+                while(current > maxInFlight.get())
+                    maxInFlight.compareAndSet(maxInFlight.get(), current);
+
+                boolean interrupted = await();
+                try
+                {
+                    long id = Long.parseLong(exchange.getRequestURI().getPath().replaceAll(".*/applications/(\\d+)/.*", "$1"));
+                    if(interrupted)
+                        exchange.sendResponseHeaders(503, -1);
+                    else if(id%10L == 0L)
+                        send(exchange, 404, "{\"error\":{\"title\":\"Application not found\"}}");
+                    else
+                        send(exchange, 200, METRIC_DATA);
+                }
+                finally
+                {
+                    exchange.close();
+                }
+            }
+        });
+
+        // Entities with an id that is a multiple of 10 cannot be linked or unlinked
+        server.createContext("/v2/alerts_entity_conditions", new HttpHandler()
+        {
+            public void handle(HttpExchange exchange) throws IOException
+            {
+                requests.incrementAndGet();
+                int current = inFlight.incrementAndGet();
+                while(current > maxInFlight.get())
+                    maxInFlight.compareAndSet(maxInFlight.get(), current);
+
+                // The query is checked by the test, as a failed assertion here would only be seen as an error response
+                queries.add(String.valueOf(exchange.getRequestURI().getQuery()));
+                boolean interrupted = await();
+                try
+                {
+                    long id = Long.parseLong(exchange.getRequestURI().getPath().replaceAll(".*/(\\d+)\\.json", "$1"));
+                    if(interrupted)
+                        exchange.sendResponseHeaders(503, -1);
+                    else if(id%10L == 0L)
+                        send(exchange, 422, "{\"error\":{\"title\":\"Entity cannot be changed\"}}");
+                    else if(exchange.getRequestMethod().equals("PUT"))
+                        send(exchange, 200, CONDITION);
+                    else
+                        exchange.sendResponseHeaders(204, -1);
+                }
+                finally
+                {
+                    exchange.close();
+                }
+            }
+        });
+        server.start();
+    }
+
+    @After
+    public void stopServer()
+    {
+        server.stop(0);
+    }
+
+    @Test
+    public void testFetch()
+    {
+        String testName = "BatchFetchTest";
+        logger.info("Starting test: "+testName);
+
+        // Each deleted application is a failure, without stopping the rest of the batch
+        NewRelicApi api = getApi(true);
+        api.setMetricParallelism(3);
+        List<Long> ids = getIds(40);
+        BatchResult<MetricData> result = api.applications().metricData(ids, getParameters(), 0L);
+        Assert.assertEquals(40, requests.get());
+        Assert.assertTrue(maxInFlight.get() <= 3);
+        Assert.assertEquals(36, result.getResults().size());
+        Assert.assertEquals(4, result.getFailures().size());
+        Assert.assertTrue(result.getFailures().get(10L) instanceof ErrorResponseException);
+        Assert.assertEquals(404, ((ErrorResponseException)result.getFailures().get(10L)).getStatus());
+        Assert.assertEquals("Apdex", result.getResult(1L).getMetrics().get(0).getName());
+        Assert.assertNull(result.getResult(10L));
+
+        // Without exceptions, a call that returns no result is still a failure
+        result = getApi(false).applications().metricData(ids, getParameters(), 0L);
+        Assert.assertEquals(36, result.getResults().size());
+        Assert.assertEquals(4, result.getFailures().size());
+        Assert.assertTrue(result.getFailures().get(40L) instanceof NoSuchElementException);
+
+        logger.info("Completed test: "+testName);
+    }
+
+    @Test
+    public void testTimeout()
+    {
+        String testName = "BatchTimeoutTest";
+        logger.info("Starting test: "+testName);
+
+        // Calls that have not completed by the deadline are failures, once the client has started
+        NewRelicApi api = getApi(true);
+        api.setMetricParallelism(2);
+        Assert.assertEquals(1, api.applications().metricData(getIds(1), getParameters(), 0L).getResults().size());
+        delay = 500L;
+        BatchResult<MetricData> result = api.applications().metricData(getIds(9), getParameters(), 800L);
+        Assert.assertEquals(9, result.getResults().size()+result.getFailures().size());
+        Assert.assertTrue(result.getResults().size() >= 2);
+        Assert.assertTrue(result.getResults().size() < 9);
+        Assert.assertTrue(result.getFailures().get(9L) instanceof TimeoutException);
+
+        logger.info("Completed test: "+testName);
+    }
+
+    @Test
+    public void testLink()
+    {
+        String testName = "BatchLinkTest";
+        logger.info("Starting test: "+testName);
+
+        // Each entity that cannot be linked is a failure, with or without exceptions
+        for(boolean handleErrors : new boolean[]{true, false})
+        {
+            NewRelicApi api = getApi(handleErrors);
+            api.setBatchParallelism(3);
+            requests.set(0);
+            maxInFlight.set(0);
+            queries.clear();
+            BatchResult<AlertCondition> result = api.alertEntityConditions().add(getIds(20), "Application", 5L);
+            Assert.assertEquals(20, requests.get());
+            assertQueries(20, "condition_id=5");
+            Assert.assertTrue(maxInFlight.get() <= 3);
+            Assert.assertEquals(18, result.getResults().size());
+            Assert.assertEquals(2, result.getFailures().size());
+            Assert.assertEquals(5L, result.getResult(1L).getId().longValue());
+            Assert.assertTrue((handleErrors ? ErrorResponseException.class : NoSuchElementException.class)
+                .isInstance(result.getFailures().get(20L)));
+        }
+
+        logger.info("Completed test: "+testName);
+    }
+
+    @Test
+    public void testUnlink()
+    {
+        String testName = "BatchUnlinkTest";
+        logger.info("Starting test: "+testName);
+
+        // Each entity that cannot be unlinked is a failure, even when exceptions are not thrown
+        for(boolean handleErrors : new boolean[]{true, false})
+        {
+            NewRelicApi api = getApi(handleErrors);
+            api.setBatchParallelism(3);
+            requests.set(0);
+            maxInFlight.set(0);
+            queries.clear();
+            BatchResult<Boolean> result = api.alertEntityConditions().remove(getIds(20), "Application", 5L);
+            Assert.assertEquals(20, requests.get());
+            assertQueries(20, "condition_id=5");
+            Assert.assertTrue(maxInFlight.get() <= 3);
+            Assert.assertEquals(18, result.getResults().size());
+            Assert.assertEquals(Boolean.TRUE, result.getResult(1L));
+            Assert.assertEquals(2, result.getFailures().size());
+            Assert.assertNull(result.getResult(10L));
+            Assert.assertTrue((handleErrors ? ErrorResponseException.class : NoSuchElementException.class)
+                .isInstance(result.getFailures().get(10L)));
+        }
+
+        logger.info("Completed test: "+testName);
+    }
+
+    /**
+     * Waits for the delay of a request, returning <CODE>true</CODE> if the wait was interrupted.
+     * <P>
+     * The request is no longer counted as in flight before its response is sent,
+     * as the client can send its next request as soon as it has the response.
+     */
+    private boolean await()
+    {
+        try
+        {
+            Thread.sleep(delay);
+            return false;
+        }
+        catch(InterruptedException e)
+        {
+            return true;
+        }
+        finally
+        {
+            inFlight.decrementAndGet();
+        }
+    }
+
+    private void assertQueries(int count, String parameter)
+    {
+        Assert.assertEquals(count, queries.size());
+        for(String query : queries)
+            Assert.assertTrue(query, query.contains(parameter));
+    }
+
+    private NewRelicApi getApi(boolean handleErrors)
+    {
+        NewRelicApi ret = new NewRelicApi("localhost", server.getAddress().getPort(),
+            new ApiKeyHttpClientProvider("test")
+            {
+                @Override
+                public boolean useSsl()
+                {
+                    return false;
+                }
+            });
+        ret.setHandleErrors(handleErrors);
+        return ret;
+    }
+
+    private MetricParameterBuilder getParameters()
+    {
+        return MetricParameterBuilder.builder().names("Apdex").values("score").summarize(true);
+    }
+
+    private List<Long> getIds(int count)
+    {
+        List<Long> ret = new ArrayList<Long>();
+        for(long id = 1; id <= count; id++)
+            ret.add(id);
+        return ret;
+    }
+
+    private void send(HttpExchange exchange, int status, String body) throws IOException
+    {
+        byte[] bytes = body.getBytes("UTF-8");
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        OutputStream os = exchange.getResponseBody();
+        os.write(bytes);
+        os.close();
+    }
+}
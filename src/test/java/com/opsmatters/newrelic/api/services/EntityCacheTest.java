@@ -0,0 +1,243 @@
+/*
+ * Copyright 2018 Gerald Curley
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.opsmatters.newrelic.api.services;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.logging.Logger;
+import javax.ws.rs.core.GenericType;
+import org.junit.Test;
+import junit.framework.Assert;
+import com.google.common.base.Optional;
+import com.opsmatters.newrelic.api.model.applications.Application;
+import com.opsmatters.newrelic.api.util.QueryParameterList;
+
+/**
+ * The set of tests used for the cache of the results of GET calls.
+ *
+ * @author Gerald Curley (opsmatters)
+ */
+public class EntityCacheTest
+{
+    private static final Logger logger = Logger.getLogger(EntityCacheTest.class.getName());
+
+    private static final GenericType<String> STRING = new GenericType<String>(){};
+    private static final GenericType<Integer> INTEGER = new GenericType<Integer>(){};
+    private static final GenericType<Collection<Application>> APPLICATIONS = new GenericType<Collection<Application>>(){};
+
+    @Test
+    public void testResource()
+    {
+        assertResource("applications", null, "/v2/applications.json");
+        assertResource("applications", "123", "/v2/applications/123.json");
+        assertResource("applications", "123", "/v2/applications/123/metrics/data.json");
+        assertResource("alerts_conditions", "policies", "/v2/alerts_conditions/policies/5.json");
+        assertResource("dashboards", null, "/v2/dashboards");
+        assertResource(null, null, "/");
+    }
+
+    @Test
+    public void testGetAndPut()
+    {
+        String testName = "EntityCacheGetAndPutTest";
+        logger.info("Starting test: "+testName);
+
+        EntityCache cache = EntityCache.builder().ttl(60000L).ttl("applications", 0L).build();
+        URI uri = uri("/v2/alerts_policies.json");
+        QueryParameterList params = new QueryParameterList();
+        params.add("page", "2");
+
+        // The key includes the query parameters and the return type
+        Assert.assertNull(cache.get(uri, null, STRING));
+        cache.put(uri, null, STRING, Optional.of("page1"), cache.getGeneration());
+        cache.put(uri, params, STRING, Optional.of("page2"), cache.getGeneration());
+        Assert.assertEquals("page1", cache.get(uri, null, STRING).get());
+        Assert.assertEquals("page2", cache.get(uri, params, STRING).get());
+        Assert.assertNull(cache.get(uri, null, INTEGER));
+
+        // Empty results and resource types with a time-to-live of 0 are not cached
+        cache.put(uri("/v2/alerts_channels.json"), null, STRING, Optional.<String>absent(), cache.getGeneration());
+        cache.put(uri("/v2/applications.json"), null, STRING, Optional.of("apps"), cache.getGeneration());
+        Assert.assertNull(cache.get(uri("/v2/alerts_channels.json"), null, STRING));
+        Assert.assertNull(cache.get(uri("/v2/applications.json"), null, STRING));
+        Assert.assertEquals(2, cache.size());
+        Assert.assertEquals(2, cache.getHits());
+        Assert.assertEquals(4, cache.getMisses());
+
+        logger.info("Completed test: "+testName);
+    }
+
+    @Test
+    public void testExpiry() throws InterruptedException
+    {
+        String testName = "EntityCacheExpiryTest";
+        logger.info("Starting test: "+testName);
+
+        // The least recently used results are evicted first
+        EntityCache cache = EntityCache.builder().maxSize(2).ttl(60000L).ttl("servers", 50L).build();
+        cache.put(uri("/v2/applications/1.json"), null, STRING, Optional.of("1"), cache.getGeneration());
+        cache.put(uri("/v2/applications/2.json"), null, STRING, Optional.of("2"), cache.getGeneration());
+        Assert.assertNotNull(cache.get(uri("/v2/applications/1.json"), null, STRING));
+        cache.put(uri("/v2/applications/3.json"), null, STRING, Optional.of("3"), cache.getGeneration());
+        Assert.assertEquals(2, cache.size());
+        Assert.assertEquals(1, cache.getEvictions());
+        Assert.assertNotNull(cache.get(uri("/v2/applications/1.json"), null, STRING));
+        Assert.assertNull(cache.get(uri("/v2/applications/2.json"), null, STRING));
+
+        // A result of a resource type with its own time-to-live expires after it
+        cache.put(uri("/v2/servers/1.json"), null, STRING, Optional.of("s1"), cache.getGeneration());
+        Assert.assertNotNull(cache.get(uri("/v2/servers/1.json"), null, STRING));
+        Thread.sleep(100L);
+        Assert.assertNull(cache.get(uri("/v2/servers/1.json"), null, STRING));
+
+        logger.info("Completed test: "+testName);
+    }
+
+    @Test
+    public void testInvalidate()
+    {
+        String testName = "EntityCacheInvalidateTest";
+        logger.info("Starting test: "+testName);
+
+        EntityCache cache = new EntityCache();
+        put(cache, "/v2/applications.json", "/v2/applications/1.json", "/v2/applications/2.json", "/v2/servers.json");
+
+        // A change to an entity removes that entity and the lists of its resource type
+        cache.invalidate(uri("/v2/applications/1.json"));
+        assertCached(cache, false, "/v2/applications.json", "/v2/applications/1.json");
+        assertCached(cache, true, "/v2/applications/2.json", "/v2/servers.json");
+
+        // A change without an entity id removes all the results of the resource type
+        cache.invalidate(uri("/v2/applications.json"));
+        assertCached(cache, false, "/v2/applications/2.json");
+        assertCached(cache, true, "/v2/servers.json");
+
+        logger.info("Completed test: "+testName);
+    }
+
+    @Test
+    public void testInvalidateDependents()
+    {
+        String testName = "EntityCacheInvalidateDependentsTest";
+        logger.info("Starting test: "+testName);
+
+        EntityCache cache = new EntityCache();
+        String[] alerts = {"/v2/alerts_channels.json", "/v2/alerts_channels/9.json", "/v2/alerts_policies.json",
+            "/v2/alerts_conditions.json", "/v2/alerts_nrql_conditions.json", "/v2/alerts_entity_conditions/7.json",
+            "/v2/applications.json"};
+
+        // Linking a channel to a policy changes the channels and policies
+        put(cache, alerts);
+        cache.invalidate(uri("/v2/alerts_policy_channels.json"));
+        assertCached(cache, false, "/v2/alerts_channels.json", "/v2/alerts_channels/9.json", "/v2/alerts_policies.json");
+        assertCached(cache, true, "/v2/alerts_conditions.json", "/v2/alerts_entity_conditions/7.json", "/v2/applications.json");
+
+        // Linking an entity to a condition changes the conditions and the conditions of that entity
+        cache.clear();
+        put(cache, alerts);
+        cache.invalidate(uri("/v2/alerts_entity_conditions/7.json"));
+        assertCached(cache, false, "/v2/alerts_conditions.json", "/v2/alerts_entity_conditions/7.json");
+        assertCached(cache, true, "/v2/alerts_nrql_conditions.json", "/v2/alerts_channels.json", "/v2/alerts_policies.json");
+
+        // Deleting a policy removes its conditions and links to channels
+        cache.clear();
+        put(cache, alerts);
+        cache.invalidate(uri("/v2/alerts_policies/5.json"));
+        assertCached(cache, false, "/v2/alerts_policies.json", "/v2/alerts_conditions.json",
+            "/v2/alerts_nrql_conditions.json", "/v2/alerts_channels.json");
+        assertCached(cache, true, "/v2/alerts_entity_conditions/7.json", "/v2/applications.json");
+
+        logger.info("Completed test: "+testName);
+    }
+
+    @Test
+    public void testInFlight()
+    {
+        String testName = "EntityCacheInFlightTest";
+        logger.info("Starting test: "+testName);
+
+        // A GET that was in flight when a change removed its results does not add its stale result
+        EntityCache cache = new EntityCache();
+        URI uri = uri("/v2/applications/1.json");
+        long generation = cache.getGeneration();
+        Assert.assertNull(cache.get(uri, null, STRING));
+        cache.invalidate(uri);
+        cache.put(uri, null, STRING, Optional.of("stale"), generation);
+        Assert.assertNull(cache.get(uri, null, STRING));
+
+        // A GET made after the change is added
+        cache.put(uri, null, STRING, Optional.of("current"), cache.getGeneration());
+        Assert.assertEquals("current", cache.get(uri, null, STRING).get());
+
+        logger.info("Completed test: "+testName);
+    }
+
+    @Test
+    public void testCopy()
+    {
+        String testName = "EntityCacheCopyTest";
+        logger.info("Starting test: "+testName);
+
+        // Changing a returned object or list does not change the cached result
+        EntityCache cache = new EntityCache();
+        URI uri = uri("/v2/applications.json");
+        List<Application> applications = new ArrayList<Application>();
+        applications.add(Application.builder().id(1L).name("app1").build());
+        applications.add(Application.builder().id(2L).name("app2").build());
+        cache.put(uri, null, APPLICATIONS, Optional.<Collection<Application>>of(applications), cache.getGeneration());
+        applications.get(0).setName("changed before");
+
+        Collection<Application> first = cache.get(uri, null, APPLICATIONS).get();
+        Assert.assertEquals("app1", first.iterator().next().getName());
+        first.iterator().next().setName("changed after");
+        first.clear();
+
+        Collection<Application> second = cache.get(uri, null, APPLICATIONS).get();
+        Assert.assertNotSame(first, second);
+        Assert.assertEquals(2, second.size());
+        Assert.assertEquals("app1", second.iterator().next().getName());
+        Assert.assertEquals(2L, ((List<Application>)second).get(1).getId().longValue());
+
+        logger.info("Completed test: "+testName);
+    }
+
+    private void put(EntityCache cache, String... paths)
+    {
+        for(String path : paths)
+            cache.put(uri(path), null, STRING, Optional.of(path), cache.getGeneration());
+    }
+
+    private void assertCached(EntityCache cache, boolean cached, String... paths)
+    {
+        for(String path : paths)
+            Assert.assertEquals(path, cached, cache.get(uri(path), null, STRING) != null);
+    }
+
+    private void assertResource(String resource, String id, String path)
+    {
+        String[] ret = EntityCache.getResource(uri(path));
+        Assert.assertEquals(path, resource, ret[0]);
+        Assert.assertEquals(path, id, ret[1]);
+    }
+
+    private URI uri(String path)
+    {
+        return URI.create("https://api.newrelic.com"+path);
+    }
+}
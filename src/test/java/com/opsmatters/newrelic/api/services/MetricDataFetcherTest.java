@@ -0,0 +1,225 @@
+/*
+ * Copyright 2018 Gerald Curley
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.opsmatters.newrelic.api.services;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import junit.framework.Assert;
+import com.google.common.base.Optional;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import com.opsmatters.newrelic.api.NewRelicApi;
+import com.opsmatters.newrelic.api.exceptions.ErrorResponseException;
+import com.opsmatters.newrelic.api.httpclient.ApiKeyHttpClientProvider;
+import com.opsmatters.newrelic.api.model.metrics.MetricData;
+import com.opsmatters.newrelic.api.model.metrics.MetricTimeslice;
+
+/**
+ * The set of tests used for fetching metric data in chunks, using a local stub server.
+ *
+ * @author Gerald Curley (opsmatters)
+ */
+public class MetricDataFetcherTest
+{
+    private static final Logger logger = Logger.getLogger(MetricDataFetcherTest.class.getName());
+
+    private static final long START = 1519898400000L; // 2018-03-01T10:00:00Z
+    private static final long MINUTE = 60000L;
+
+    private HttpServer server;
+    private AtomicInteger requests = new AtomicInteger();
+    private AtomicInteger inFlight = new AtomicInteger();
+    private AtomicInteger maxInFlight = new AtomicInteger();
+    private volatile long failFrom = -1L;
+
+    @Before
+    public void startServer() throws IOException
+    {
+        // Return a timeslice for every minute from the start to the end of the range, including the end
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/v2/applications/1/metrics/data.json", new HttpHandler()
+        {
+            public void handle(HttpExchange exchange) throws IOException
+            {
+                requests.incrementAndGet();
+                int current = inFlight.incrementAndGet();
+                while(current > maxInFlight.get())
+                    maxInFlight.compareAndSet(maxInFlight.get(), current);
+
+                try
+                {
+                    String query = URLDecoder.decode(exchange.getRequestURI().getRawQuery(), "UTF-8");
+                    long from = getTime(query, "from");
+                    long to = getTime(query, "to");
+                    Thread.sleep(50L);
+                    if(from == failFrom)
+                    {
+                        exchange.sendResponseHeaders(500, -1);
+                        return;
+                    }
+
+                    byte[] body = getMetricData(from, to).getBytes("UTF-8");
+                    exchange.getResponseHeaders().add("Content-Type", "application/json");
+                    exchange.sendResponseHeaders(200, body.length);
+                    OutputStream os = exchange.getResponseBody();
+                    os.write(body);
+                    os.close();
+                }
+                catch(InterruptedException e)
+                {
+                    exchange.sendResponseHeaders(503, -1);
+                }
+                finally
+                {
+                    inFlight.decrementAndGet();
+                    exchange.close();
+                }
+            }
+        });
+        server.start();
+    }
+
+    @After
+    public void stopServer()
+    {
+        server.stop(0);
+    }
+
+    @Test
+    public void testChunks()
+    {
+        String testName = "MetricDataChunksTest";
+        logger.info("Starting test: "+testName);
+
+        // 45 minutes in chunks of 10 timeslices makes 5 requests, with at most 2 in flight
+        NewRelicApi api = getApi(true);
+        api.setMaxTimeslices(10);
+        api.setMetricParallelism(2);
+        Optional<MetricData> data = api.applications().metricData(1L, getParameters());
+        Assert.assertTrue(data.isPresent());
+        Assert.assertEquals(5, requests.get());
+        Assert.assertTrue(maxInFlight.get() <= 2);
+
+        // The timeslices at the chunk boundaries are only included once
+        Assert.assertEquals(1, data.get().getMetrics().size());
+        List<MetricTimeslice> timeslices = data.get().getMetrics().get(0).getTimeslices();
+        Assert.assertEquals(46, timeslices.size());
+        for(int i = 0; i < timeslices.size(); i++)
+            Assert.assertEquals(START+i*MINUTE, timeslices.get(i).getFrom().getTime());
+        Assert.assertEquals(START, data.get().getFrom().getTime());
+        Assert.assertEquals(START+45*MINUTE, data.get().getTo().getTime());
+
+        // A single chunk is requested directly
+        requests.set(0);
+        api.setMaxTimeslices(1440);
+        Assert.assertEquals(46, api.applications().metricData(1L, getParameters()).get()
+            .getMetrics().get(0).getTimeslices().size());
+        Assert.assertEquals(1, requests.get());
+
+        logger.info("Completed test: "+testName);
+    }
+
+    @Test
+    public void testFailedChunk()
+    {
+        String testName = "MetricDataFailedChunkTest";
+        logger.info("Starting test: "+testName);
+
+        // A chunk that fails should not leave a gap in the merged data
+        failFrom = START+20*MINUTE;
+        NewRelicApi api = getApi(false);
+        api.setMaxTimeslices(10);
+        Assert.assertFalse(api.applications().metricData(1L, getParameters()).isPresent());
+
+        api = getApi(true);
+        api.setMaxTimeslices(10);
+        try
+        {
+            api.applications().metricData(1L, getParameters());
+            Assert.fail("Expected the failed chunk to throw an exception");
+        }
+        catch(ErrorResponseException e)
+        {
+            Assert.assertEquals(500, e.getStatus());
+        }
+
+        logger.info("Completed test: "+testName);
+    }
+
+    private NewRelicApi getApi(boolean handleErrors)
+    {
+        NewRelicApi ret = new NewRelicApi("localhost", server.getAddress().getPort(),
+            new ApiKeyHttpClientProvider("test")
+            {
+                @Override
+                public boolean useSsl()
+                {
+                    return false;
+                }
+            });
+        ret.setHandleErrors(handleErrors);
+        return ret;
+    }
+
+    private MetricParameterBuilder getParameters()
+    {
+        return MetricParameterBuilder.builder()
+            .names("HttpDispatcher")
+            .values("call_count")
+            .from(START)
+            .to(START+45*MINUTE)
+            .period(60);
+    }
+
+    private long getTime(String query, String name)
+    {
+        String value = query.replaceAll(".*"+name+"=([^&]*).*", "$1");
+        return LocalDateTime.parse(value).toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+
+    private String getMetricData(long from, long to)
+    {
+        StringBuilder ret = new StringBuilder("{\"metric_data\":{\"from\":\""+format(from)+"\",\"to\":\""+format(to)+"\",")
+            .append("\"metrics_found\":[\"HttpDispatcher\"],\"metrics\":[{\"name\":\"HttpDispatcher\",\"timeslices\":[");
+        for(long time = from; time <= to; time += MINUTE)
+        {
+            if(time > from)
+                ret.append(",");
+            ret.append("{\"from\":\"").append(format(time)).append("\",\"to\":\"").append(format(time+MINUTE))
+                .append("\",\"values\":{\"call_count\":").append(time/MINUTE%100).append("}}");
+        }
+        return ret.append("]}]}}").toString();
+    }
+
+    private String format(long time)
+    {
+        return LocalDateTime.ofEpochSecond(time/1000L, 0, ZoneOffset.UTC)+"+00:00";
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright 2018 Gerald Curley
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.opsmatters.newrelic.api.services;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Iterator;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import junit.framework.Assert;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import com.opsmatters.newrelic.api.NewRelicApi;
+import com.opsmatters.newrelic.api.httpclient.ApiKeyHttpClientProvider;
+import com.opsmatters.newrelic.api.model.alerts.policies.AlertPolicy;
+
+/**
+ * The set of tests used for iterating over the pages of a paged API call, using a local stub server.
+ *
+ * @author Gerald Curley (opsmatters)
+ */
+public class PagedIteratorTest
+{
+    private static final Logger logger = Logger.getLogger(PagedIteratorTest.class.getName());
+
+    private static final int PAGES = 6;
+    private static final int PAGE_SIZE = 2;
+
+    private HttpServer server;
+    private AtomicInteger requests = new AtomicInteger();
+    private volatile int failedPage = 0;
+
+    @Before
+    public void startServer() throws IOException
+    {
+        // Serve the policies two per page, with the last page in the "Link" header
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/v2/alerts_policies.json", new HttpHandler()
+        {
+            public void handle(HttpExchange exchange) throws IOException
+            {
+                requests.incrementAndGet();
+                String query = exchange.getRequestURI().getQuery();
+                int page = query != null && query.contains("page=") ? Integer.parseInt(query.replaceAll(".*page=(\\d+).*", "$1")) : 1;
+                if(page == failedPage)
+                {
+                    exchange.sendResponseHeaders(500, -1);
+                    exchange.close();
+                    return;
+                }
+
+                StringBuilder body = new StringBuilder("{\"policies\":[");
+                for(int i = (page-1)*PAGE_SIZE; i < page*PAGE_SIZE; i++)
+                {
+                    if(i > (page-1)*PAGE_SIZE)
+                        body.append(",");
+                    body.append("{\"id\":").append(i+1).append(",\"name\":\"policy").append(i+1)
+                        .append("\",\"incident_preference\":\"PER_POLICY\"}");
+                }
+                body.append("]}");
+
+                String base = "http://localhost:"+server.getAddress().getPort()+"/v2/alerts_policies.json?page=";
+                String link = (page < PAGES ? "<"+base+(page+1)+">; rel=\"next\", " : "")+"<"+base+PAGES+">; rel=\"last\"";
+                exchange.getResponseHeaders().add("Link", link);
+                send(exchange, body.toString());
+            }
+        });
+        server.start();
+    }
+
+    @After
+    public void stopServer()
+    {
+        server.stop(0);
+    }
+
+    @Test
+    public void testIterator()
+    {
+        String testName = "PagedIteratorTest";
+        logger.info("Starting test: "+testName);
+
+        // The pages are requested in turn until there is no next page
+        Iterator<AlertPolicy> it = getApi(true).alertPolicies().iterator(null);
+        int count = 0;
+        while(it.hasNext())
+            Assert.assertEquals(++count, it.next().getId().longValue());
+        Assert.assertEquals(PAGES*PAGE_SIZE, count);
+        Assert.assertEquals(PAGES, requests.get());
+
+        logger.info("Completed test: "+testName);
+    }
+
+    @Test
+    public void testMissingPage()
+    {
+        String testName = "PagedIteratorMissingPageTest";
+        logger.info("Starting test: "+testName);
+
+        // A page that is not returned fails the iteration, rather than ending it early
+        failedPage = 3;
+        Iterator<AlertPolicy> it = getApi(false).alertPolicies().iterator(null);
+        int count = 0;
+        try
+        {
+            while(it.hasNext())
+            {
+                it.next();
+                ++count;
+            }
+            Assert.fail("Expected an exception, iterated over "+count+" policies");
+        }
+        catch(IllegalStateException e)
+        {
+            Assert.assertTrue(e.getMessage(), e.getMessage().startsWith("page 3 of "));
+        }
+        Assert.assertEquals(2*PAGE_SIZE, count);
+
+        logger.info("Completed test: "+testName);
+    }
+
+    private NewRelicApi getApi(boolean handleErrors)
+    {
+        NewRelicApi ret = new NewRelicApi("localhost", server.getAddress().getPort(),
+            new ApiKeyHttpClientProvider("test")
+            {
+                @Override
+                public boolean useSsl()
+                {
+                    return false;
+                }
+            });
+        ret.setHandleErrors(handleErrors);
+        return ret;
+    }
+
+    private void send(HttpExchange exchange, String body) throws IOException
+    {
+        byte[] bytes = body.getBytes("UTF-8");
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, bytes.length);
+        OutputStream os = exchange.getResponseBody();
+        os.write(bytes);
+        os.close();
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright 2018 Gerald Curley
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.opsmatters.newrelic.api.services;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import junit.framework.Assert;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import com.opsmatters.newrelic.api.NewRelicApi;
+import com.opsmatters.newrelic.api.httpclient.ApiKeyHttpClientProvider;
+import com.opsmatters.newrelic.api.model.alerts.policies.AlertPolicy;
+
+/**
+ * The set of tests used for fetching the pages of a paged API call concurrently, using a local stub server.
+ *
+ * @author Gerald Curley (opsmatters)
+ */
+public class ParallelPageFetcherTest
+{
+    private static final Logger logger = Logger.getLogger(ParallelPageFetcherTest.class.getName());
+
+    private static final int PAGES = 6;
+    private static final int PAGE_SIZE = 2;
+
+    private HttpServer server;
+    private AtomicInteger requests = new AtomicInteger();
+    private volatile int failedPage = 0;
+
+    @Before
+    public void startServer() throws IOException
+    {
+        // Serve the policies two per page, with the last page in the "Link" header
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/v2/alerts_policies.json", new HttpHandler()
+        {
+            public void handle(HttpExchange exchange) throws IOException
+            {
+                requests.incrementAndGet();
+                String query = exchange.getRequestURI().getQuery();
+                int page = query != null && query.contains("page=") ? Integer.parseInt(query.replaceAll(".*page=(\\d+).*", "$1")) : 1;
+                if(page == failedPage)
+                {
+                    exchange.sendResponseHeaders(500, -1);
+                    exchange.close();
+                    return;
+                }
+
+                StringBuilder body = new StringBuilder("{\"policies\":[");
+                for(int i = (page-1)*PAGE_SIZE; i < page*PAGE_SIZE; i++)
+                {
+                    if(i > (page-1)*PAGE_SIZE)
+                        body.append(",");
+                    body.append("{\"id\":").append(i+1).append(",\"name\":\"policy").append(i+1)
+                        .append("\",\"incident_preference\":\"PER_POLICY\"}");
+                }
+                body.append("]}");
+
+                String base = "http://localhost:"+server.getAddress().getPort()+"/v2/alerts_policies.json?page=";
+                String link = (page < PAGES ? "<"+base+(page+1)+">; rel=\"next\", " : "")+"<"+base+PAGES+">; rel=\"last\"";
+                exchange.getResponseHeaders().add("Link", link);
+                send(exchange, body.toString());
+            }
+        });
+        server.start();
+    }
+
+    @After
+    public void stopServer()
+    {
+        server.stop(0);
+    }
+
+    @Test
+    public void testFetch()
+    {
+        String testName = "ParallelPageFetchTest";
+        logger.info("Starting test: "+testName);
+
+        // The pages are merged in page order
+        List<AlertPolicy> policies = new ArrayList<AlertPolicy>(getApi(true).alertPolicies().listAll(null));
+        Assert.assertEquals(PAGES, requests.get());
+        Assert.assertEquals(PAGES*PAGE_SIZE, policies.size());
+        for(int i = 0; i < policies.size(); i++)
+            Assert.assertEquals(i+1, policies.get(i).getId().longValue());
+
+        logger.info("Completed test: "+testName);
+    }
+
+    @Test
+    public void testMissingPage()
+    {
+        String testName = "ParallelPageMissingPageTest";
+        logger.info("Starting test: "+testName);
+
+        // A page that is not returned fails the fetch, rather than leaving a hole in the results
+        for(int page : new int[]{1, 3})
+        {
+            failedPage = page;
+            try
+            {
+                Collection<AlertPolicy> policies = getApi(false).alertPolicies().listAll(null);
+                Assert.fail("Expected an exception, returned "+policies.size()+" policies");
+            }
+            catch(IllegalStateException e)
+            {
+                Assert.assertTrue(e.getMessage(), e.getMessage().startsWith("page "+page+" of "));
+            }
+        }
+
+        logger.info("Completed test: "+testName);
+    }
+
+    private NewRelicApi getApi(boolean handleErrors)
+    {
+        NewRelicApi ret = new NewRelicApi("localhost", server.getAddress().getPort(),
+            new ApiKeyHttpClientProvider("test")
+            {
+                @Override
+                public boolean useSsl()
+                {
+                    return false;
+                }
+            });
+        ret.setHandleErrors(handleErrors);
+        return ret;
+    }
+
+    private void send(HttpExchange exchange, String body) throws IOException
+    {
+        byte[] bytes = body.getBytes("UTF-8");
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, bytes.length);
+        OutputStream os = exchange.getResponseBody();
+        os.write(bytes);
+        os.close();
+    }
+}
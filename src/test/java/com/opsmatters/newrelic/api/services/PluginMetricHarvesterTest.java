@@ -0,0 +1,317 @@
+/*
+ * Copyright 2018 Gerald Curley
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.opsmatters.newrelic.api.services;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Logger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import junit.framework.Assert;
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import com.opsmatters.newrelic.api.NewRelicPluginsApi;
+import com.opsmatters.newrelic.api.httpclient.GsonRegistry;
+import com.opsmatters.newrelic.api.httpclient.LicenseKeyHttpClientProvider;
+import com.opsmatters.newrelic.api.model.plugins.MetricAggregator;
+import com.opsmatters.newrelic.api.model.plugins.MetricTimeslice;
+import com.opsmatters.newrelic.api.model.plugins.Component;
+import com.opsmatters.newrelic.api.model.plugins.PluginData;
+import com.opsmatters.newrelic.api.services.PluginMetricHarvester.ComponentKey;
+import com.opsmatters.newrelic.api.services.PluginMetricHarvester.Harvest;
+
+/**
+ * The set of tests used for the harvesting of plugin metrics, using a local stub server.
+ *
+ * @author Gerald Curley (opsmatters)
+ */
+public class PluginMetricHarvesterTest
+{
+    private static final Logger logger = Logger.getLogger(PluginMetricHarvesterTest.class.getName());
+
+    private static final String GUID = "com.opsmatters.test";
+
+    private HttpServer server;
+    private List<JsonObject> posted = new CopyOnWriteArrayList<JsonObject>();
+    private volatile String failing;
+
+    @Before
+    public void startServer() throws IOException
+    {
+        // The payloads that contain the failing component are rejected
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/platform/v1/metrics", new HttpHandler()
+        {
+            public void handle(HttpExchange exchange) throws IOException
+            {
+                try
+                {
+                    JsonObject data = new JsonParser().parse(new InputStreamReader(exchange.getRequestBody(), "UTF-8")).getAsJsonObject();
+                    if(failing != null && getDurations(data).containsKey(failing))
+                    {
+                        send(exchange, 500, "{\"error\":\"failed\"}");
+                    }
+                    else
+                    {
+                        posted.add(data);
+                        send(exchange, 200, "{\"status\":\"ok\"}");
+                    }
+                }
+                finally
+                {
+                    exchange.close();
+                }
+            }
+        });
+        server.start();
+    }
+
+    @After
+    public void stopServer()
+    {
+        server.stop(0);
+    }
+
+    @Test
+    public void testPayloads()
+    {
+        String testName = "PayloadsTest";
+        logger.info("Starting test: "+testName);
+
+        // Every metric is sent exactly once, and no payload is larger than the maximum size
+        Gson gson = GsonRegistry.getGson();
+        PluginMetricHarvester harvester = new PluginMetricHarvester(getApi().metrics());
+        harvester.setMaxPayloadSize(2000);
+        List<Harvest> harvested = new ArrayList<Harvest>();
+        for(int i = 0; i < 5; i++)
+        {
+            Harvest harvest = new Harvest(new ComponentKey(GUID, "Component"+i), 60);
+            for(int j = 0; j < i*10; j++)
+                harvest.add("Component/Metric"+j+"[units]", getTimeslice(j));
+            harvested.add(harvest);
+        }
+
+        List<PluginData> payloads = harvester.getPayloads(harvested);
+        Assert.assertTrue(payloads.size() > 1);
+        Map<String,Integer> metrics = new HashMap<String,Integer>();
+        for(PluginData data : payloads)
+        {
+            Assert.assertTrue(gson.toJson(data).getBytes().length <= 2000);
+            for(Component component : data.getComponents())
+            {
+                Assert.assertEquals(GUID, component.getGuid());
+                Assert.assertEquals(60, component.getDuration().intValue());
+                for(String metric : component.getMetrics().keySet())
+                    Assert.assertNull(metrics.put(component.getName()+"/"+metric, 1));
+            }
+        }
+        Assert.assertEquals(100, metrics.size());
+
+        // A component that is too big for one payload is split into several with the same name
+        int count = 0;
+        for(PluginData data : payloads)
+        {
+            for(Component component : data.getComponents())
+            {
+                if(component.getName().equals("Component4"))
+                    ++count;
+            }
+        }
+        Assert.assertTrue(count > 1);
+
+        logger.info("Completed test: "+testName);
+    }
+
+    @Test
+    public void testDuration() throws InterruptedException
+    {
+        String testName = "DurationTest";
+        logger.info("Starting test: "+testName);
+
+        // A component that was sent keeps its own duration after another component failed
+        // A small maximum size sends each component in its own payload, once the client has started
+        PluginMetricService service = getApi().metrics();
+        Assert.assertTrue(PluginMetricHarvester.send(service, PluginData.builder().build()));
+        posted.clear();
+        PluginMetricHarvester harvester = new PluginMetricHarvester(service);
+        harvester.setMaxPayloadSize(1);
+        failing = "Failed";
+        harvester.record(GUID, "Sent", "Component/Requests[requests]", 1.0d);
+        harvester.record(GUID, "Failed", "Component/Requests[requests]", 2.0d);
+        Thread.sleep(1200L);
+        Assert.assertFalse(harvester.harvest());
+        Assert.assertEquals(1, getDurations(posted).get("Sent").intValue());
+        Assert.assertNull(getDurations(posted).get("Failed"));
+
+        // The failed component covers both harvests
+        posted.clear();
+        failing = null;
+        harvester.record(GUID, "Sent", "Component/Requests[requests]", 3.0d);
+        harvester.record(GUID, "Failed", "Component/Requests[requests]", 4.0d);
+        Thread.sleep(1200L);
+        Assert.assertTrue(harvester.harvest());
+        Map<String,Integer> durations = getDurations(posted);
+        Assert.assertEquals(1, durations.get("Sent").intValue());
+        Assert.assertEquals(2, durations.get("Failed").intValue());
+
+        // The values of the failed harvest were kept
+        for(JsonObject data : posted)
+        {
+            for(JsonElement component : data.getAsJsonArray("components"))
+            {
+                JsonObject obj = component.getAsJsonObject();
+                if(obj.get("name").getAsString().equals("Failed"))
+                {
+                    JsonObject metric = obj.getAsJsonObject("metrics").getAsJsonObject("Component/Requests[requests]");
+                    Assert.assertEquals(6.0d, metric.get("total").getAsDouble());
+                    Assert.assertEquals(2, metric.get("count").getAsInt());
+                }
+            }
+        }
+
+        // A metric with no values is not sent
+        posted.clear();
+        Assert.assertTrue(harvester.harvest());
+        Assert.assertTrue(posted.isEmpty());
+
+        logger.info("Completed test: "+testName);
+    }
+
+    @Test
+    public void testExpiry() throws InterruptedException
+    {
+        String testName = "ExpiryTest";
+        logger.info("Starting test: "+testName);
+
+        // A metric with no values for a whole harvest is removed, unless its aggregator is kept
+        PluginMetricService service = getApi().metrics();
+        Assert.assertTrue(PluginMetricHarvester.send(service, PluginData.builder().build()));
+        posted.clear();
+        PluginMetricHarvester harvester = new PluginMetricHarvester(service);
+        harvester.record(GUID, "Recorded", "Component/Requests[requests]", 1.0d);
+        MetricAggregator aggregator = harvester.getAggregator(GUID, "Kept", "Component/Requests[requests]");
+        Assert.assertEquals(2, harvester.getMetricCount());
+        Thread.sleep(1200L);
+        Assert.assertTrue(harvester.harvest());
+        Assert.assertEquals(1, getDurations(posted).get("Recorded").intValue());
+        Assert.assertEquals(2, harvester.getMetricCount());
+        Assert.assertTrue(harvester.harvest());
+        Assert.assertEquals(1, harvester.getMetricCount());
+
+        // A kept aggregator still sends its values, and its metric is removed once it is released and idle
+        posted.clear();
+        aggregator.record(2.0d);
+        Assert.assertSame(aggregator, harvester.getAggregator(GUID, "Kept", "Component/Requests[requests]"));
+        Assert.assertTrue(harvester.harvest());
+        Assert.assertNotNull(getDurations(posted).get("Kept"));
+        harvester.release(GUID, "Kept", "Component/Requests[requests]");
+        Assert.assertTrue(harvester.harvest());
+        Assert.assertEquals(0, harvester.getMetricCount());
+
+        // A metric that was removed is created again when a value is recorded
+        posted.clear();
+        harvester.record(GUID, "Recorded", "Component/Requests[requests]", 3.0d);
+        Assert.assertEquals(1, harvester.getMetricCount());
+        Thread.sleep(1200L);
+        Assert.assertTrue(harvester.harvest());
+        Assert.assertNotNull(getDurations(posted).get("Recorded"));
+
+        logger.info("Completed test: "+testName);
+    }
+
+    @Test
+    public void testComponentKey()
+    {
+        String testName = "ComponentKeyTest";
+        logger.info("Starting test: "+testName);
+
+        Assert.assertEquals(new ComponentKey(GUID, null), new ComponentKey(GUID, null));
+        Assert.assertEquals(new ComponentKey(null, "Component").hashCode(), new ComponentKey(null, "Component").hashCode());
+        Assert.assertFalse(new ComponentKey(GUID, null).equals(new ComponentKey(GUID, "Component")));
+
+        logger.info("Completed test: "+testName);
+    }
+
+    private NewRelicPluginsApi getApi()
+    {
+        return new NewRelicPluginsApi("localhost", server.getAddress().getPort(),
+            new LicenseKeyHttpClientProvider("test")
+            {
+                @Override
+                public boolean useSsl()
+                {
+                    return false;
+                }
+            });
+    }
+
+    private MetricTimeslice<Double> getTimeslice(int value)
+    {
+        MetricTimeslice<Double> ret = new MetricTimeslice<Double>();
+        ret.setTotal((double)value);
+        ret.setCount(1.0d);
+        ret.setMin((double)value);
+        ret.setMax((double)value);
+        ret.setSumOfSquares((double)value*value);
+        return ret;
+    }
+
+    private static Map<String,Integer> getDurations(JsonObject data)
+    {
+        Map<String,Integer> ret = new HashMap<String,Integer>();
+        JsonArray components = data.getAsJsonArray("components");
+        for(JsonElement component : components)
+        {
+            JsonObject obj = component.getAsJsonObject();
+            ret.put(obj.get("name").getAsString(), obj.get("duration").getAsInt());
+        }
+        return ret;
+    }
+
+    private static Map<String,Integer> getDurations(List<JsonObject> payloads)
+    {
+        Map<String,Integer> ret = new HashMap<String,Integer>();
+        for(JsonObject data : payloads)
+            ret.putAll(getDurations(data));
+        return ret;
+    }
+
+    private void send(HttpExchange exchange, int status, String body) throws IOException
+    {
+        byte[] bytes = body.getBytes("UTF-8");
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        OutputStream os = exchange.getResponseBody();
+        os.write(bytes);
+        os.close();
+    }
+}
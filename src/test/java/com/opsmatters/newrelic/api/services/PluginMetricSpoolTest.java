@@ -0,0 +1,351 @@
+/*
+ * Copyright 2018 Gerald Curley
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.opsmatters.newrelic.api.services;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import junit.framework.Assert;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import com.opsmatters.newrelic.api.NewRelicPluginsApi;
+import com.opsmatters.newrelic.api.httpclient.GsonRegistry;
+import com.opsmatters.newrelic.api.httpclient.LicenseKeyHttpClientProvider;
+import com.opsmatters.newrelic.api.model.plugins.Component;
+import com.opsmatters.newrelic.api.model.plugins.PluginData;
+
+/**
+ * The set of tests used for the spool of plugin metric payloads, using a local stub server.
+ *
+ * @author Gerald Curley (opsmatters)
+ */
+public class PluginMetricSpoolTest
+{
+    private static final Logger logger = Logger.getLogger(PluginMetricSpoolTest.class.getName());
+
+    private HttpServer server;
+    private File directory;
+    private AtomicInteger requests = new AtomicInteger();
+    private AtomicInteger accepted = new AtomicInteger();
+    private volatile int accept = 0;
+
+    @Before
+    public void startServer() throws IOException
+    {
+        // Accepts the given number of payloads and then rejects the rest
+        directory = Files.createTempDirectory("spool").toFile();
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/platform/v1/metrics", new HttpHandler()
+        {
+            public void handle(HttpExchange exchange) throws IOException
+            {
+                try
+                {
+                    requests.incrementAndGet();
+                    if(accepted.get() < accept)
+                    {
+                        accepted.incrementAndGet();
+                        send(exchange, 200, "{\"status\":\"ok\"}");
+                    }
+                    else
+                    {
+                        send(exchange, 503, "{\"error\":\"unavailable\"}");
+                    }
+                }
+                finally
+                {
+                    exchange.close();
+                }
+            }
+        });
+        server.start();
+    }
+
+    @After
+    public void stopServer()
+    {
+        server.stop(0);
+        File[] files = directory.listFiles();
+        if(files != null)
+        {
+            for(File file : files)
+                file.delete();
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void testFormat() throws IOException
+    {
+        String testName = "SpoolFormatTest";
+        logger.info("Starting test: "+testName);
+
+        // Each record has the length, the CRC of the payload and the payload
+        PluginMetricSpool spool = getSpool().build();
+        PluginData first = getPayload("First");
+        Assert.assertTrue(spool.add(first));
+        Assert.assertTrue(spool.add(getPayload("Second")));
+        Assert.assertEquals(2, spool.getPending());
+        byte[] bytes = getBytes(first);
+        File file = getFiles()[0];
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try
+        {
+            Assert.assertEquals(bytes.length, raf.readInt());
+            Assert.assertEquals(getCrc(bytes), raf.readInt());
+            byte[] payload = new byte[bytes.length];
+            raf.readFully(payload);
+            Assert.assertTrue(Arrays.equals(bytes, payload));
+            Assert.assertTrue(raf.readInt() > 0);
+        }
+        finally
+        {
+            raf.close();
+        }
+
+        // A payload that was sent has its length negated
+        accept = 1;
+        Assert.assertEquals(1, spool.replay());
+        Assert.assertEquals(1, spool.getPending());
+        spool.close();
+        raf = new RandomAccessFile(file, "r");
+        try
+        {
+            Assert.assertEquals(-bytes.length, raf.readInt());
+        }
+        finally
+        {
+            raf.close();
+        }
+
+        logger.info("Completed test: "+testName);
+    }
+
+    @Test
+    public void testRecovery() throws IOException
+    {
+        String testName = "SpoolRecoveryTest";
+        logger.info("Starting test: "+testName);
+
+        // Only the payloads that were pending are kept when the spool is opened again
+        PluginMetricSpool spool = getSpool().build();
+        Assert.assertTrue(spool.add(getPayload("First")));
+        Assert.assertTrue(spool.add(getPayload("Second")));
+        Assert.assertTrue(spool.add(getPayload("Third")));
+        accept = 1;
+        Assert.assertEquals(1, spool.replay());
+        spool.close();
+
+        // Add a record with a bad CRC, and then a record that was torn before its length was written
+        File file = getFiles()[0];
+        long end = getEnd(file);
+        byte[] bytes = getBytes(getPayload("Corrupt"));
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try
+        {
+            raf.seek(end);
+            raf.writeInt(bytes.length);
+            raf.writeInt(getCrc(bytes)+1);
+            raf.write(bytes);
+            byte[] torn = getBytes(getPayload("TornWithALongerName"));
+            raf.writeInt(0);
+            raf.writeInt(getCrc(torn));
+            raf.write(torn);
+        }
+        finally
+        {
+            raf.close();
+        }
+
+        spool = getSpool().build();
+        Assert.assertEquals(3, spool.getPending());
+
+        // A new payload overwrites the torn record, and the rest of the torn record is not read as a record
+        Assert.assertTrue(spool.add(getPayload("Fourth")));
+        spool.close();
+        spool = getSpool().build();
+        Assert.assertEquals(4, spool.getPending());
+
+        // The corrupt record is skipped, and the spool files are deleted once every payload has been sent
+        accept = 100;
+        Assert.assertEquals(3, spool.replay());
+        Assert.assertEquals(0, spool.getPending());
+        Assert.assertEquals(0, getFiles().length);
+        spool.close();
+
+        logger.info("Completed test: "+testName);
+    }
+
+    @Test
+    public void testQuota() throws IOException
+    {
+        String testName = "SpoolQuotaTest";
+        logger.info("Starting test: "+testName);
+
+        // The oldest spool files are deleted to stay within the quota
+        PluginMetricSpool spool = getSpool().quota(3000L).segmentSize(1000).build();
+        int size = getBytes(getPayload("Component0")).length+8;
+        int count = 40;
+        for(int i = 0; i < count; i++)
+            Assert.assertTrue(spool.add(getPayload("Component"+i)));
+        Assert.assertTrue(spool.getSize() <= 3000L);
+        Assert.assertTrue(getFiles().length <= 3);
+        Assert.assertTrue(spool.getEvicted() > 0L);
+        Assert.assertEquals(count, spool.getPending()+spool.getEvicted());
+        Assert.assertTrue(size*spool.getPending() <= 3000);
+        spool.close();
+
+        // A spool file is never larger than the quota
+        spool = getSpool().quota(1000L).segmentSize(4000).build();
+        Assert.assertTrue(spool.add(getPayload("Component")));
+        Assert.assertTrue(spool.getSize() <= 1000L);
+        for(File file : getFiles())
+            Assert.assertTrue(file.length() <= 1000L);
+        Assert.assertFalse(spool.add(getPayload(new String(new char[2000]).replace('\0', 'x'))));
+        spool.close();
+
+        logger.info("Completed test: "+testName);
+    }
+
+    @Test
+    public void testBackoff() throws IOException, InterruptedException
+    {
+        String testName = "SpoolBackoffTest";
+        logger.info("Starting test: "+testName);
+
+        // A payload that cannot be sent is spooled, and later payloads are spooled behind it
+        PluginMetricSpool spool = getSpool().initialBackoff(300L).maxBackoff(500L).build();
+        Assert.assertTrue(spool.send(getPayload("First")));
+        Assert.assertEquals(1, requests.get());
+        Assert.assertTrue(spool.send(getPayload("Second")));
+        Assert.assertEquals(1, requests.get());
+        Assert.assertEquals(2, spool.getPending());
+
+        // No attempt is made until the backoff expires, and the backoff doubles after each failure
+        Assert.assertEquals(0, spool.replay());
+        Assert.assertEquals(2, requests.get());
+        Assert.assertEquals(0, spool.replay());
+        Assert.assertEquals(2, requests.get());
+        Thread.sleep(400L);
+        Assert.assertEquals(0, spool.replay());
+        Assert.assertEquals(3, requests.get());
+        Thread.sleep(400L);
+        Assert.assertEquals(0, spool.replay());
+        Assert.assertEquals(3, requests.get());
+
+        // The backoff is limited to the maximum
+        Thread.sleep(200L);
+        accept = 100;
+        Assert.assertEquals(2, spool.replay());
+        Assert.assertEquals(0, spool.getPending());
+        Assert.assertTrue(spool.send(getPayload("Third")));
+        Assert.assertEquals(0, spool.getPending());
+        spool.close();
+
+        logger.info("Completed test: "+testName);
+    }
+
+    private PluginMetricSpool.Builder getSpool()
+    {
+        NewRelicPluginsApi api = new NewRelicPluginsApi("localhost", server.getAddress().getPort(),
+            new LicenseKeyHttpClientProvider("test")
+            {
+                @Override
+                public boolean useSsl()
+                {
+                    return false;
+                }
+            });
+        return PluginMetricSpool.builder(api.metrics(), directory);
+    }
+
+    private PluginData getPayload(String name)
+    {
+        return PluginData.builder()
+            .host("localhost")
+            .version("1.0.0")
+            .addComponent(Component.builder().guid("com.opsmatters.test").name(name).duration(60)
+                .addMetric("Component/Requests[requests]", 1).build())
+            .build();
+    }
+
+    private File[] getFiles()
+    {
+        File[] ret = directory.listFiles();
+        Arrays.sort(ret);
+        return ret;
+    }
+
+    /**
+     * Returns the position after the last complete record in the given spool file.
+     */
+    private long getEnd(File file) throws IOException
+    {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try
+        {
+            long ret = 0L;
+            int length = raf.readInt();
+            while(length != 0)
+            {
+                ret += 8+Math.abs(length);
+                raf.seek(ret);
+                length = raf.readInt();
+            }
+            return ret;
+        }
+        finally
+        {
+            raf.close();
+        }
+    }
+
+    private byte[] getBytes(PluginData data)
+    {
+        return GsonRegistry.getGson().toJson(data).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private int getCrc(byte[] bytes)
+    {
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        return (int)crc.getValue();
+    }
+
+    private void send(HttpExchange exchange, int status, String body) throws IOException
+    {
+        byte[] bytes = body.getBytes("UTF-8");
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        OutputStream os = exchange.getResponseBody();
+        os.write(bytes);
+        os.close();
+    }
+}
@@ -0,0 +1,216 @@
+/*
+ * Copyright 2018 Gerald Curley
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.opsmatters.newrelic.api.services;
+
+import java.util.logging.Logger;
+import org.junit.Test;
+import junit.framework.Assert;
+import com.google.common.base.Optional;
+import com.opsmatters.newrelic.api.model.insights.QueryResult;
+
+/**
+ * The set of tests used for the normalized queries, aligned windows and extended series of the query cache.
+ *
+ * @author Gerald Curley (opsmatters)
+ */
+public class QueryCacheTest
+{
+    private static final Logger logger = Logger.getLogger(QueryCacheTest.class.getName());
+
+    private static final long MINUTE = 60000L;
+    private static final long HOUR = 3600000L;
+    private static final long NOW = 1500000030000L; // Half way through a bucket
+
+    @Test
+    public void testNormalize()
+    {
+        String testName = "QueryCacheNormalizeTest";
+        logger.info("Starting test: "+testName);
+
+        // Whitespace is collapsed outside quotes only, and trailing semicolons are removed
+        Assert.assertEquals("SELECT count(*) FROM Transaction WHERE name = 'a  b' SINCE 1 hour ago",
+            QueryCache.normalize("  SELECT count(*)\n FROM   Transaction\tWHERE name = 'a  b' SINCE 1 hour ago ;; "));
+        Assert.assertEquals("SELECT * FROM Log WHERE message = 'it\\'s  here'",
+            QueryCache.normalize("SELECT *  FROM Log WHERE message = 'it\\'s  here'"));
+
+        // The contents of strings and quoted names are masked without changing the length
+        String query = "SELECT count(*) FROM Transaction WHERE `SINCE` = 'it\\'s SINCE 2 hours ago' SINCE 1 hour ago";
+        String masked = QueryCache.mask(query);
+        Assert.assertEquals(query.length(), masked.length());
+        Assert.assertEquals(query.lastIndexOf("SINCE"), masked.indexOf("SINCE"));
+        Assert.assertTrue(masked.contains("`_____`"));
+
+        logger.info("Completed test: "+testName);
+    }
+
+    @Test
+    public void testWindow()
+    {
+        String testName = "QueryCacheWindowTest";
+        logger.info("Starting test: "+testName);
+
+        // The window ends at the end of the open bucket
+        QueryCache cache = new QueryCache(null);
+        QueryCache.Window window = cache.new Window("SELECT count(*) FROM Transaction SINCE 1 hour ago TIMESERIES 1 minute", NOW);
+        Assert.assertTrue(window.aligned);
+        Assert.assertEquals(1500000060000L, window.end);
+        Assert.assertEquals(window.end-HOUR, window.start);
+        Assert.assertEquals(MINUTE, window.timeseries);
+        Assert.assertEquals("SELECT count(*) FROM Transaction TIMESERIES 1 minute SINCE "+window.start+" UNTIL "+window.end,
+            window.getQuery());
+
+        // Queries within the same bucket have the same window
+        QueryCache.Window other = cache.new Window("SELECT count(*) FROM Transaction SINCE 60 minutes ago TIMESERIES 1 minute", NOW+29000L);
+        Assert.assertEquals(window.key, other.key);
+        Assert.assertEquals(window.end, other.end);
+        other = cache.new Window("SELECT count(*) FROM Transaction SINCE 1 hour ago TIMESERIES 1 minute", NOW+30000L);
+        Assert.assertEquals(window.end+MINUTE, other.end);
+
+        // An UNTIL clause moves the end of the window
+        window = cache.new Window("SELECT count(*) FROM Transaction SINCE 2 hours ago UNTIL 1 hour ago", NOW);
+        Assert.assertTrue(window.aligned);
+        Assert.assertEquals(1500000060000L-HOUR, window.end);
+        Assert.assertEquals(window.end-HOUR, window.start);
+
+        // Clauses inside quotes are ignored
+        window = cache.new Window("SELECT count(*) FROM Transaction WHERE name = 'SINCE 2 hours ago COMPARE WITH' "
+            +"SINCE 1 hour ago TIMESERIES 1 minute", NOW);
+        Assert.assertTrue(window.aligned);
+        Assert.assertEquals(window.end-HOUR, window.start);
+        Assert.assertTrue(window.getQuery().startsWith("SELECT count(*) FROM Transaction WHERE name = 'SINCE 2 hours ago COMPARE WITH' "));
+        window = cache.new Window("SELECT count(*) FROM Transaction WHERE name = 'FACET' SINCE 1 hour ago TIMESERIES 1 minute", NOW);
+        Assert.assertEquals(MINUTE, window.timeseries);
+
+        // A window that cannot be aligned is left as it is
+        String query = "SELECT count(*) FROM Transaction SINCE 1 hour ago COMPARE WITH 1 day ago";
+        window = cache.new Window(query, NOW);
+        Assert.assertFalse(window.aligned);
+        Assert.assertEquals(query, window.getQuery());
+        window = cache.new Window("SELECT count(*) FROM Transaction WHERE name = 'SINCE 1 hour ago'", NOW);
+        Assert.assertFalse(window.aligned);
+        window = cache.new Window("SELECT count(*) FROM Transaction SINCE 1 hour ago FACET appName TIMESERIES 1 minute", NOW);
+        Assert.assertTrue(window.aligned);
+        Assert.assertEquals(0L, window.timeseries);
+
+        logger.info("Completed test: "+testName);
+    }
+
+    @Test
+    public void testExtend()
+    {
+        String testName = "QueryCacheExtendTest";
+        logger.info("Starting test: "+testName);
+
+        // The series was fetched in the previous bucket, with its last bucket still open
+        String query = "SELECT count(*) FROM Transaction SINCE 1 hour ago TIMESERIES 1 minute";
+        QueryCache cache = new QueryCache(null);
+        QueryCache.Window previousWindow = cache.new Window(query, NOW-MINUTE);
+        QueryResult previous = getSeries(previousWindow.start, previousWindow.end, 0.0);
+        QueryCache.Entry entry = new QueryCache.Entry(previousWindow.start, previousWindow.end, Optional.of(previous), Long.MAX_VALUE);
+
+        // The bucket that was open and the closed bucket before it are requested again with the new bucket
+        QueryCache.Window window = cache.new Window(query, NOW);
+        Assert.assertTrue(window.canExtend(entry));
+        long from = window.getTailStart(entry);
+        Assert.assertEquals(previousWindow.end-2*MINUTE, from);
+        Assert.assertEquals(window.end-3*MINUTE, from);
+
+        QueryResult tail = getSeries(from, window.end, 1000.0);
+        QueryResult result = QueryCache.extend(previous, tail, window);
+        Assert.assertNotNull(result);
+        Assert.assertEquals(60, result.getBucketCount());
+        Assert.assertEquals(window.start, result.getBeginTimes()[0]);
+        Assert.assertEquals(window.end, result.getEndTimes()[59]);
+        Assert.assertEquals(window.start, result.getBeginTime());
+        for(int b = 0; b < 60; b++)
+        {
+            long begin = result.getBeginTimes()[b];
+            double expected = begin < from ? (begin-previousWindow.start)/MINUTE : 1000.0+(begin-from)/MINUTE;
+            Assert.assertEquals(expected, result.getValue(0, b, 0), 0.0);
+        }
+
+        // With no settle time only the bucket that was open is requested again
+        cache.setSettle(0L);
+        Assert.assertEquals(previousWindow.end-MINUTE, window.getTailStart(entry));
+
+        // A tail with a gap cannot be used
+        tail = getSeries(from+MINUTE, window.end, 1000.0);
+        Assert.assertNull(QueryCache.extend(getSeries(previousWindow.start, from, 0.0), tail, window));
+
+        // A window that has moved on by more than its length is requested in full
+        window = cache.new Window(query, NOW+HOUR);
+        Assert.assertFalse(window.canExtend(entry));
+
+        logger.info("Completed test: "+testName);
+    }
+
+    @Test
+    public void testMaxSize()
+    {
+        String testName = "QueryCacheMaxSizeTest";
+        logger.info("Starting test: "+testName);
+
+        // Reducing the maximum size evicts the results straight away
+        final int[] calls = new int[1];
+        QueryService service = new QueryService(null, null)
+        {
+            @Override
+            public Optional<QueryResult> query(long accountId, String query)
+            {
+                ++calls[0];
+                return Optional.of(new QueryResult());
+            }
+        };
+        QueryCache cache = QueryCache.builder(service).bucket(HOUR).maxSize(10).build();
+        for(int i = 0; i < 5; i++)
+            cache.query(1L, "SELECT count(*) FROM Transaction"+i+" SINCE 1 hour ago");
+        Assert.assertEquals(5, cache.size());
+        Assert.assertEquals(5, calls[0]);
+        cache.setMaxSize(2);
+        Assert.assertEquals(2, cache.size());
+        Assert.assertEquals(3L, cache.getEvictions());
+
+        // The most recently used results are kept
+        cache.query(1L, "SELECT count(*) FROM Transaction4 SINCE 1 hour ago");
+        Assert.assertEquals(5, calls[0]);
+
+        logger.info("Completed test: "+testName);
+    }
+
+    private QueryResult getSeries(long start, long end, double first)
+    {
+        int count = (int)((end-start)/MINUTE);
+        long[] beginTimes = new long[count];
+        long[] endTimes = new long[count];
+        double[] values = new double[count];
+        for(int b = 0; b < count; b++)
+        {
+            beginTimes[b] = start+b*MINUTE;
+            endTimes[b] = beginTimes[b]+MINUTE;
+            values[b] = first+b;
+        }
+
+        QueryResult ret = new QueryResult();
+        ret.setTimeseries(true);
+        ret.setColumns(new String[]{"count"});
+        ret.setBuckets(beginTimes, endTimes);
+        ret.setValues(values);
+        ret.setWindow(start, end);
+        return ret;
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright 2018 Gerald Curley
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.opsmatters.newrelic.api.services;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import junit.framework.Assert;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import com.opsmatters.newrelic.api.NewRelicApi;
+import com.opsmatters.newrelic.api.httpclient.ApiKeyHttpClientProvider;
+import com.opsmatters.newrelic.api.util.QueryParameterList;
+
+/**
+ * The set of tests used for the indexes of collections that can only be searched by listing them, using a local stub server.
+ *
+ * @author Gerald Curley (opsmatters)
+ */
+public class ResourceIndexTest
+{
+    private static final Logger logger = Logger.getLogger(ResourceIndexTest.class.getName());
+
+    private HttpServer server;
+    private List<String> labels = new CopyOnWriteArrayList<String>();
+    private AtomicInteger gets = new AtomicInteger();
+
+    @Before
+    public void startServer() throws IOException
+    {
+        // Serve the labels two per page, and delete a label on request
+        for(int i = 0; i < 5; i++)
+            labels.add("env:host"+i);
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/v2/labels", new HttpHandler()
+        {
+            public void handle(HttpExchange exchange) throws IOException
+            {
+                String path = exchange.getRequestURI().getPath();
+                if(exchange.getRequestMethod().equals("DELETE"))
+                {
+                    labels.remove(path.replaceAll(".*/labels/(.*)\\.json", "$1"));
+                    send(exchange, "{}");
+                    return;
+                }
+
+                gets.incrementAndGet();
+                String query = exchange.getRequestURI().getQuery();
+                int page = query != null && query.contains("page=") ? Integer.parseInt(query.replaceAll(".*page=(\\d+).*", "$1")) : 1;
+                int last = Math.max((labels.size()+1)/2, 1);
+                StringBuilder body = new StringBuilder("{\"labels\":[");
+                for(int i = (page-1)*2; i < Math.min(page*2, labels.size()); i++)
+                {
+                    String[] key = labels.get(i).split(":");
+                    if(i > (page-1)*2)
+                        body.append(",");
+                    body.append("{\"key\":\"").append(labels.get(i)).append("\",\"category\":\"").append(key[0])
+                        .append("\",\"name\":\"").append(key[1]).append("\"}");
+                }
+                body.append("]}");
+
+                String base = "http://localhost:"+server.getAddress().getPort()+"/v2/labels.json?page=";
+                String link = (page < last ? "<"+base+(page+1)+">; rel=\"next\", " : "")+"<"+base+last+">; rel=\"last\"";
+                exchange.getResponseHeaders().add("Link", link);
+                send(exchange, body.toString());
+            }
+        });
+        server.start();
+    }
+
+    @After
+    public void stopServer()
+    {
+        server.stop(0);
+    }
+
+    @Test
+    public void testFresh()
+    {
+        String testName = "ResourceIndexFreshTest";
+        logger.info("Starting test: "+testName);
+
+        // By default every lookup lists the collection, so changes made elsewhere are seen at once
+        NewRelicApi api = getApi();
+        Assert.assertTrue(api.labels().show("env:host4").isPresent());
+        Assert.assertEquals(3, gets.get());
+        labels.remove("env:host4");
+        Assert.assertFalse(api.labels().show("env:host4").isPresent());
+        Assert.assertEquals(5, gets.get());
+        Assert.assertEquals(0, api.getHttpContext().getResourceIndex().size());
+
+        logger.info("Completed test: "+testName);
+    }
+
+    @Test
+    public void testIndexed()
+    {
+        String testName = "ResourceIndexIndexedTest";
+        logger.info("Starting test: "+testName);
+
+        // With a time-to-live, later lookups are answered from the index
+        NewRelicApi api = getApi();
+        api.setIndexTtl(60000L);
+        Assert.assertTrue(api.labels().show("env:host0").isPresent());
+        Assert.assertTrue(api.labels().show("env:host3").isPresent());
+        Assert.assertFalse(api.labels().show("env:missing").isPresent());
+        ResourceIndex index = api.getHttpContext().getResourceIndex();
+        Assert.assertEquals(3, gets.get());
+        Assert.assertEquals(1, index.getBuilds());
+        Assert.assertEquals(2, index.getHits());
+
+        // A change made through the client removes the index
+        api.labels().delete("env:host3");
+        Assert.assertFalse(api.labels().show("env:host3").isPresent());
+        Assert.assertEquals(2, index.getBuilds());
+
+        // Turning the index off removes the indexes that were kept
+        api.setIndexTtl(0L);
+        Assert.assertEquals(0, index.size());
+
+        logger.info("Completed test: "+testName);
+    }
+
+    @Test
+    public void testMaxSize()
+    {
+        String testName = "ResourceIndexMaxSizeTest";
+        logger.info("Starting test: "+testName);
+
+        // The least recently used indexes are removed once there are more than the maximum
+        NewRelicApi api = getApi();
+        api.labels().list();
+        ResourceIndex index = api.getHttpContext().getResourceIndex();
+        index.setTtl(60000L);
+        index.setMaxSize(2);
+        for(int i = 1; i <= 3; i++)
+            index.get("/v2/labels.json", params(i), BaseFluent.LABELS, ResourceIndex.NAME);
+        Assert.assertEquals(2, index.size());
+        index.get("/v2/labels.json", params(3), BaseFluent.LABELS, ResourceIndex.NAME);
+        Assert.assertEquals(1, index.getHits());
+        index.get("/v2/labels.json", params(1), BaseFluent.LABELS, ResourceIndex.NAME);
+        Assert.assertEquals(4, index.getBuilds());
+
+        index.setMaxSize(1);
+        Assert.assertEquals(1, index.size());
+
+        logger.info("Completed test: "+testName);
+    }
+
+    private QueryParameterList params(int filter)
+    {
+        QueryParameterList ret = new QueryParameterList();
+        ret.add("filter[test]", filter);
+        return ret;
+    }
+
+    private NewRelicApi getApi()
+    {
+        return new NewRelicApi("localhost", server.getAddress().getPort(),
+            new ApiKeyHttpClientProvider("test")
+            {
+                @Override
+                public boolean useSsl()
+                {
+                    return false;
+                }
+            });
+    }
+
+    private void send(HttpExchange exchange, String body) throws IOException
+    {
+        byte[] bytes = body.getBytes("UTF-8");
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, bytes.length);
+        OutputStream os = exchange.getResponseBody();
+        os.write(bytes);
+        os.close();
+        exchange.close();
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2018 Gerald Curley
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.opsmatters.newrelic.api.services;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+import javax.ws.rs.core.Response;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import junit.framework.Assert;
+import com.google.common.base.Optional;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import com.opsmatters.newrelic.api.httpclient.ApiKeyHttpClientProvider;
+import com.opsmatters.newrelic.api.model.Status;
+
+/**
+ * The set of tests used for the retries of calls that failed with a transient error, using a local stub server.
+ *
+ * @author Gerald Curley (opsmatters)
+ */
+public class RetryPolicyTest
+{
+    private static final Logger logger = Logger.getLogger(RetryPolicyTest.class.getName());
+
+    private HttpServer server;
+    private AtomicInteger requests = new AtomicInteger();
+
+    @Before
+    public void startServer() throws IOException
+    {
+        // The first request is rejected as too many requests
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/v1/status", new HttpHandler()
+        {
+            public void handle(HttpExchange exchange) throws IOException
+            {
+                try
+                {
+                    if(requests.incrementAndGet() == 1)
+                        send(exchange, 429, "{\"error\":\"too many requests\"}");
+                    else
+                        send(exchange, 200, "{\"status\":\"ok\"}");
+                }
+                finally
+                {
+                    exchange.close();
+                }
+            }
+        });
+        server.start();
+    }
+
+    @After
+    public void stopServer()
+    {
+        server.stop(0);
+    }
+
+    @Test
+    public void testMethods()
+    {
+        String testName = "RetryMethodsTest";
+        logger.info("Starting test: "+testName);
+
+        // A call that is not idempotent is only retried if the server did not process it
+        RetryPolicy policy = RetryPolicy.builder().initialBackoff(10L).build();
+        Assert.assertTrue(policy.getDelay("POST", 1, Response.status(429).build(), 0L) >= 0L);
+        Assert.assertEquals(-1L, policy.getDelay("POST", 1, Response.status(503).build(), 0L));
+        Assert.assertEquals(-1L, policy.getDelay("POST", 1, null, 0L));
+        Assert.assertTrue(policy.getDelay("GET", 1, Response.status(503).build(), 0L) >= 0L);
+        Assert.assertTrue(policy.getDelay("GET", 1, null, 0L) >= 0L);
+        Assert.assertEquals(-1L, policy.getDelay("POST", 3, Response.status(429).build(), 0L));
+
+        policy = RetryPolicy.builder().unprocessedCodes().build();
+        Assert.assertEquals(-1L, policy.getDelay("POST", 1, Response.status(429).build(), 0L));
+
+        logger.info("Completed test: "+testName);
+    }
+
+    @Test
+    public void testAsync() throws Exception
+    {
+        String testName = "RetryAsyncTest";
+        logger.info("Starting test: "+testName);
+
+        // The retry is made on the executor of the context, not on the thread that times the delay
+        final List<String> threads = new CopyOnWriteArrayList<String>();
+        HttpContext context = new HttpContext(new ApiKeyHttpClientProvider("test").getClient(),
+            "http", "localhost", server.getAddress().getPort());
+        context.setRetryPolicy(RetryPolicy.builder().initialBackoff(50L).build());
+        final Executor executor = context.getExecutor();
+        context.setExecutor(new Executor()
+        {
+            @Override
+            public void execute(Runnable task)
+            {
+                threads.add(Thread.currentThread().getName());
+                executor.execute(task);
+            }
+        });
+
+        Optional<Status> status = context.POSTAsync("/v1/status", new HashMap<String,Object>(),
+            null, BaseFluent.STATUS).get(10L, TimeUnit.SECONDS);
+        Assert.assertTrue(status.isPresent());
+        Assert.assertEquals("ok", status.get().getStatus());
+        Assert.assertEquals(2, requests.get());
+        Assert.assertEquals(1, threads.size());
+        Assert.assertEquals("newrelic-retry", threads.get(0));
+        Assert.assertEquals(1L, context.getRetryPolicy().getRetries());
+
+        logger.info("Completed test: "+testName);
+    }
+
+    private void send(HttpExchange exchange, int status, String body) throws IOException
+    {
+        byte[] bytes = body.getBytes("UTF-8");
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        OutputStream os = exchange.getResponseBody();
+        os.write(bytes);
+        os.close();
+    }
+}
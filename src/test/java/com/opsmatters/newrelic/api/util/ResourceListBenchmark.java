@@ -0,0 +1,114 @@
+/*
+ * Copyright 2018 Gerald Curley
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.opsmatters.newrelic.api.util;
+
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.LinkedHashMap;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+import com.opsmatters.newrelic.api.model.Entity;
+import com.opsmatters.newrelic.api.model.EntityList;
+import com.opsmatters.newrelic.api.model.servers.Server;
+
+/**
+ * Compares the time taken by the lookups of resource lists with 10k and 100k entries
+ * against a scan of every name with a newly compiled pattern.
+ * <P>
+ * This is not run as part of the unit tests, run it with:
+ * <PRE>mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.opsmatters.newrelic.api.util.ResourceListBenchmark</PRE>
+ *
+ * @author Gerald Curley (opsmatters)
+ */
+public class ResourceListBenchmark
+{
+    private static final Logger logger = Logger.getLogger(ResourceListBenchmark.class.getName());
+
+    private static final int[] SIZES = {10000, 100000};
+    private static final String[] QUERIES = {"prod-web-1%", "%-db-0001%", "test-db-00042"};
+    private static final int WARMUPS = 3;
+    private static final int ITERATIONS = 20;
+    private static final int LOOKUPS = 1000000;
+
+    public static void main(String[] args)
+    {
+        for(int size : SIZES)
+        {
+            List<Entity> entities = getEntities(size);
+            EntityList list = new EntityList(entities);
+            list.list("prod-%"); // Build the index
+
+            for(String query : QUERIES)
+            {
+                for(int i = 0; i < WARMUPS; i++)
+                {
+                    scan(entities, query);
+                    list.list(query);
+                }
+
+                long start = System.nanoTime();
+                for(int i = 0; i < ITERATIONS; i++)
+                    scan(entities, query);
+                long scanned = (System.nanoTime()-start)/ITERATIONS;
+
+                start = System.nanoTime();
+                for(int i = 0; i < ITERATIONS; i++)
+                    list.list(query);
+                long indexed = (System.nanoTime()-start)/ITERATIONS;
+
+                logger.info(size+" entities: list(\""+query+"\") scan="+scanned/1000L+"us indexed="+indexed/1000L+"us");
+            }
+
+            long found = 0L;
+            long start = System.nanoTime();
+            for(int i = 0; i < LOOKUPS; i++)
+            {
+                if(list.get((long)(i%size)) != null)
+                    ++found;
+            }
+            logger.info(size+" entities: get(long) "+(System.nanoTime()-start)/LOOKUPS+"ns, found="+found);
+        }
+    }
+
+    private static List<Entity> getEntities(int count)
+    {
+        String[] prefixes = {"prod-web-", "prod-db-", "test-web-", "test-db-"};
+        List<Entity> ret = new ArrayList<Entity>(count);
+        for(int i = 0; i < count; i++)
+            ret.add(Server.builder().id(i).name(prefixes[i%prefixes.length]+String.format("%05d", i)).build());
+        return ret;
+    }
+
+    /**
+     * Selects the entities by checking the name of every entity against a newly compiled pattern.
+     */
+    private static List<Entity> scan(List<Entity> entities, String str)
+    {
+        Map<String,Entity> map = new LinkedHashMap<String,Entity>();
+        for(String token : str.split(","))
+        {
+            Pattern pattern = Pattern.compile(token.trim().replace("?", ".?").replace("%", ".*?"));
+            for(Entity entity : entities)
+            {
+                if(pattern.matcher(entity.getName()).matches())
+                    map.put(entity.getName(), entity);
+            }
+        }
+        return new ArrayList<Entity>(map.values());
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2018 Gerald Curley
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.opsmatters.newrelic.api.util;
+
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.LinkedHashMap;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+import org.junit.Test;
+import junit.framework.Assert;
+import com.opsmatters.newrelic.api.model.Entity;
+import com.opsmatters.newrelic.api.model.EntityList;
+import com.opsmatters.newrelic.api.model.servers.Server;
+
+/**
+ * The set of tests used for the lookups of resource lists.
+ * <P>
+ * The timings of the lookups for large lists are in {@link ResourceListBenchmark}.
+ *
+ * @author Gerald Curley (opsmatters)
+ */
+public class ResourceListTest
+{
+    private static final Logger logger = Logger.getLogger(ResourceListTest.class.getName());
+
+    private static final String[] QUERIES = {"prod-%", "prod-web-1%", "prod-web-0001?", "%-db-%",
+        "test-db-00042", "prod-web-%,test-%", "prod-web-00001,prod-web-00002", "%", "missing", "prod-(web|db)-0000%"};
+
+    @Test
+    public void testLookups()
+    {
+        String testName = "ResourceListLookupsTest";
+        logger.info("Starting test: "+testName);
+
+        List<Entity> entities = getEntities(5000);
+        EntityList list = new EntityList(entities);
+        Assert.assertEquals(entities.size(), list.size());
+
+        // The results should be the same as scanning every name with a pattern
+        for(String query : QUERIES)
+            Assert.assertEquals(query, getIds(scan(entities, query)), getIds(list.list(query)));
+
+        for(Entity entity : entities)
+            Assert.assertSame(entity, list.get(entity.getId()));
+        Assert.assertNull(list.get(-1L));
+
+        // Entities added later should be found
+        List<Entity> added = new ArrayList<Entity>();
+        added.add(Server.builder().id(99999L).name("prod-web-99999").build());
+        list.add(added);
+        Assert.assertEquals(entities.size()+1, list.size());
+        Assert.assertEquals(99999L, list.list("prod-web-99%").get(0).getId().longValue());
+
+        logger.info("Completed test: "+testName);
+    }
+
+    private List<Entity> getEntities(int count)
+    {
+        String[] prefixes = {"prod-web-", "prod-db-", "test-web-", "test-db-"};
+        List<Entity> ret = new ArrayList<Entity>(count);
+        for(int i = 0; i < count; i++)
+            ret.add(Server.builder().id(i).name(prefixes[i%prefixes.length]+String.format("%05d", i)).build());
+        return ret;
+    }
+
+    /**
+     * Selects the entities by checking the name of every entity against a newly compiled pattern.
+     */
+    private List<Entity> scan(List<Entity> entities, String str)
+    {
+        Map<String,Entity> map = new LinkedHashMap<String,Entity>();
+        for(String token : str.split(","))
+        {
+            Pattern pattern = Pattern.compile(token.trim().replace("?", ".?").replace("%", ".*?"));
+            for(Entity entity : entities)
+            {
+                if(pattern.matcher(entity.getName()).matches())
+                    map.put(entity.getName(), entity);
+            }
+        }
+        return new ArrayList<Entity>(map.values());
+    }
+
+    private List<Long> getIds(List<Entity> entities)
+    {
+        List<Long> ret = new ArrayList<Long>();
+        for(Entity entity : entities)
+            ret.add(entity.getId());
+        return ret;
+    }
+}